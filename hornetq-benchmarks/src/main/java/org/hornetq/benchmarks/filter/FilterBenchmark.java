@@ -0,0 +1,79 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.benchmarks.filter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link FilterImpl#match(ServerMessage)} against a message with a few properties.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FilterBenchmark
+{
+   // Attributes ----------------------------------------------------
+
+   @Param({ "color = 'red'",
+           "HQPriority > 3",
+           "price > 100 AND color IN ('blue', 'green', 'red')",
+           "description LIKE '%fast%'" })
+   public String filterString;
+
+   private Filter filter;
+
+   private ServerMessage message;
+
+   // Public --------------------------------------------------------
+
+   @Setup(Level.Trial)
+   public void setUp() throws Exception
+   {
+      filter = FilterImpl.createFilter(filterString);
+
+      message = new ServerMessageImpl(1, 100);
+      message.setAddress(new SimpleString("benchmark.address"));
+      message.setPriority((byte)4);
+      message.putStringProperty(new SimpleString("color"), new SimpleString("red"));
+      message.putIntProperty(new SimpleString("price"), 150);
+      message.putStringProperty(new SimpleString("description"), new SimpleString("a fast moving message"));
+   }
+
+   @Benchmark
+   public boolean match()
+   {
+      return filter.match(message);
+   }
+}
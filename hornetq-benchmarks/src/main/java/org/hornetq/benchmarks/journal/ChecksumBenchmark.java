@@ -0,0 +1,84 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.benchmarks.journal;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.core.journal.impl.dataformat.JournalRecordChecksum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the CRC32C of journal records, as used by the JVM ({@code crc32c}, which is the JDK
+ * intrinsic on Java 9 or newer) and by the table driven fallback. {@link JournalBenchmark} with
+ * {@code -p checksum=true,false} gives the cost on the whole append path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ChecksumBenchmark
+{
+   // Attributes ----------------------------------------------------
+
+   @Param({ "64", "1024", "16384" })
+   public int recordSize;
+
+   @Param({ "false", "true" })
+   public boolean direct;
+
+   private ByteBuffer buffer;
+
+   // Public --------------------------------------------------------
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      byte[] bytes = new byte[recordSize];
+
+      new Random(1).nextBytes(bytes);
+
+      buffer = direct ? ByteBuffer.allocateDirect(recordSize) : ByteBuffer.allocate(recordSize);
+
+      buffer.put(bytes);
+
+      buffer.rewind();
+   }
+
+   @Benchmark
+   public int crc32c()
+   {
+      return JournalRecordChecksum.crc32c(buffer, 0, recordSize);
+   }
+
+   @Benchmark
+   public int tableCrc32c()
+   {
+      return JournalRecordChecksum.tableCrc32c(buffer, 0, recordSize);
+   }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.benchmarks.journal;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link JournalImpl} appends of add, update and delete records.
+ * <p>
+ * The journal keeps growing while records are appended, so instead of a steady state throughput
+ * each iteration times a batch of {@link #RECORDS} appends on a freshly created journal. The result
+ * is the time spent on the whole batch.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, batchSize = JournalBenchmark.RECORDS)
+@Measurement(iterations = 20, batchSize = JournalBenchmark.RECORDS)
+@Fork(1)
+public class JournalBenchmark
+{
+   // Constants -----------------------------------------------------
+
+   static final int RECORDS = 20000;
+
+   private static final byte RECORD_TYPE = 1;
+
+   // Public --------------------------------------------------------
+
+   @Benchmark
+   public void appendAdd(final EmptyJournal state) throws Exception
+   {
+      state.journal.appendAddRecord(state.nextID++, RECORD_TYPE, state.record, state.sync);
+   }
+
+   @Benchmark
+   public void appendUpdate(final LoadedJournal state) throws Exception
+   {
+      state.journal.appendUpdateRecord(state.nextLoadedID(), RECORD_TYPE, state.record, state.sync);
+   }
+
+   @Benchmark
+   public void appendDelete(final LoadedJournal state) throws Exception
+   {
+      state.journal.appendDeleteRecord(state.nextLoadedID(), state.sync);
+   }
+
+   // Inner classes -------------------------------------------------
+
+   @State(Scope.Thread)
+   public static class EmptyJournal
+   {
+      @Param({ "NIO", "FAKE" })
+      public String factory;
+
+      @Param({ "false" })
+      public boolean sync;
+
+      @Param({ "1024" })
+      public int recordSize;
+
+      @Param({ "false", "true" })
+      public boolean checksum;
+
+      JournalImpl journal;
+
+      byte[] record;
+
+      long nextID;
+
+      private File directory;
+
+      @Setup(Level.Iteration)
+      public void setUp() throws Exception
+      {
+         SequentialFileFactory fileFactory;
+
+         if ("NIO".equals(factory))
+         {
+            directory = File.createTempFile("hornetq-journal-benchmark", "");
+            directory.delete();
+            directory.mkdirs();
+            fileFactory = new NIOSequentialFileFactory(directory.getAbsolutePath(), true);
+         }
+         else if ("FAKE".equals(factory))
+         {
+            fileFactory = new FakeSequentialFileFactory();
+         }
+         else
+         {
+            throw new IllegalArgumentException("Unknown factory " + factory);
+         }
+
+         record = new byte[recordSize];
+
+         journal = new JournalImpl(10 * 1024 * 1024, 2, 0, 0, fileFactory, "hornetq-data", "hq", 500);
+         journal.setRecordChecksum(checksum);
+         journal.start();
+         journal.loadInternalOnly();
+
+         nextID = 0;
+      }
+
+      @TearDown(Level.Iteration)
+      public void tearDown() throws Exception
+      {
+         journal.stop();
+
+         if (directory != null)
+         {
+            for (File file : directory.listFiles())
+            {
+               file.delete();
+            }
+            directory.delete();
+            directory = null;
+         }
+      }
+   }
+
+   /**
+    * A journal already holding the {@link JournalBenchmark#RECORDS} records that are going to be
+    * updated or deleted. JMH runs the setup of the superclass first.
+    */
+   @State(Scope.Thread)
+   public static class LoadedJournal extends EmptyJournal
+   {
+      private long nextLoadedID;
+
+      @Setup(Level.Iteration)
+      public void preload() throws Exception
+      {
+         for (int i = 0; i < RECORDS; i++)
+         {
+            journal.appendAddRecord(nextID++, RECORD_TYPE, record, false);
+         }
+
+         nextLoadedID = 0;
+      }
+
+      long nextLoadedID()
+      {
+         return nextLoadedID++ % RECORDS;
+      }
+   }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.benchmarks.journal;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.core.journal.IOAsyncTask;
+import org.hornetq.core.journal.impl.JournalConstants;
+import org.hornetq.core.journal.impl.TimedBuffer;
+import org.hornetq.core.journal.impl.TimedBufferObserver;
+import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures appends to a {@link TimedBuffer} whose flushes go nowhere, so only the cost of the
+ * buffer itself is taken. The buffer is shared, use {@code -t} to measure concurrent appends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TimedBufferBenchmark
+{
+   // Attributes ----------------------------------------------------
+
+   @Param({ "false", "true" })
+   public boolean sync;
+
+   @Param({ "1024" })
+   public int recordSize;
+
+   private TimedBuffer timedBuffer;
+
+   private ByteArrayEncoding record;
+
+   private final IOAsyncTask callback = new IOAsyncTask()
+   {
+      public void done()
+      {
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+      }
+   };
+
+   // Public --------------------------------------------------------
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      record = new ByteArrayEncoding(new byte[recordSize]);
+
+      timedBuffer = new TimedBuffer(JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_NIO,
+                                    JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_NIO,
+                                    false);
+      timedBuffer.start();
+      timedBuffer.setObserver(new NullObserver());
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown()
+   {
+      timedBuffer.stop();
+   }
+
+   @Benchmark
+   public void addBytes()
+   {
+      timedBuffer.checkSize(recordSize);
+      timedBuffer.addBytes(record, sync, callback);
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * An endless file that completes every flush straight away.
+    */
+   private static final class NullObserver implements TimedBufferObserver
+   {
+      public void flushBuffer(final ByteBuffer buffer, final boolean syncRequested, final List<IOAsyncTask> callbacks)
+      {
+         for (IOAsyncTask task : callbacks)
+         {
+            task.done();
+         }
+      }
+
+      public int getRemainingBytes()
+      {
+         return Integer.MAX_VALUE;
+      }
+
+      public ByteBuffer newBuffer(final int size, final int limit)
+      {
+         ByteBuffer buffer = ByteBuffer.allocate(size);
+         buffer.limit(limit);
+         return buffer;
+      }
+   }
+}
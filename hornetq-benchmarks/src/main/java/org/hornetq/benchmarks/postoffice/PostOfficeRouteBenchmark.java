@@ -0,0 +1,159 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.benchmarks.postoffice;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.config.Configuration;
+import org.hornetq.core.config.impl.ConfigurationImpl;
+import org.hornetq.core.postoffice.PostOffice;
+import org.hornetq.core.postoffice.impl.PostOfficeImpl;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.HornetQServers;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link PostOfficeImpl#route(ServerMessage, boolean)} of non persistent messages to the
+ * queues bound to one address, on a server started without persistence nor acceptors.
+ * <p>
+ * Nothing consumes the routed messages, so the queues are emptied every {@link #DRAIN_INTERVAL}
+ * messages to keep the heap from growing; that cost is part of the result, spread over the
+ * messages routed in between. The creation of each message is measured too, as a message can't be
+ * routed twice.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PostOfficeRouteBenchmark
+{
+   // Constants -----------------------------------------------------
+
+   private static final int DRAIN_INTERVAL = 10000;
+
+   private static final SimpleString ADDRESS = new SimpleString("benchmark.address");
+
+   // Attributes ----------------------------------------------------
+
+   /** Number of queues bound to the address */
+   @Param({ "1", "10" })
+   public int queues;
+
+   private File directory;
+
+   private HornetQServer server;
+
+   private PostOffice postOffice;
+
+   private Queue[] boundQueues;
+
+   private long nextMessageID;
+
+   private int routed;
+
+   // Public --------------------------------------------------------
+
+   @Setup(Level.Trial)
+   public void setUp() throws Exception
+   {
+      directory = File.createTempFile("hornetq-route-benchmark", "");
+      directory.delete();
+      directory.mkdirs();
+
+      Configuration configuration = new ConfigurationImpl();
+      configuration.setPersistenceEnabled(false);
+      configuration.setSecurityEnabled(false);
+      configuration.setJMXManagementEnabled(false);
+      configuration.setJournalDirectory(new File(directory, "journal").getAbsolutePath());
+      configuration.setBindingsDirectory(new File(directory, "bindings").getAbsolutePath());
+      configuration.setPagingDirectory(new File(directory, "paging").getAbsolutePath());
+      configuration.setLargeMessagesDirectory(new File(directory, "large-messages").getAbsolutePath());
+
+      server = HornetQServers.newHornetQServer(configuration, false);
+      server.start();
+
+      boundQueues = new Queue[queues];
+
+      for (int i = 0; i < queues; i++)
+      {
+         boundQueues[i] = server.createQueue(ADDRESS, new SimpleString("benchmark.queue" + i), null, false, false);
+      }
+
+      postOffice = server.getPostOffice();
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws Exception
+   {
+      server.stop();
+
+      deleteDirectory(directory);
+   }
+
+   @Benchmark
+   public void route() throws Exception
+   {
+      ServerMessage message = new ServerMessageImpl(nextMessageID++, 100);
+      message.setAddress(ADDRESS);
+      message.setDurable(false);
+
+      postOffice.route(message, false);
+
+      if (++routed == DRAIN_INTERVAL)
+      {
+         routed = 0;
+
+         for (Queue queue : boundQueues)
+         {
+            queue.deleteAllReferences();
+         }
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   private static void deleteDirectory(final File directory)
+   {
+      File[] files = directory.listFiles();
+
+      if (files != null)
+      {
+         for (File file : files)
+         {
+            deleteDirectory(file);
+         }
+      }
+
+      directory.delete();
+   }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.benchmarks.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.utils.LinkedListIterator;
+import org.hornetq.utils.PriorityLinkedListImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link PriorityLinkedListImpl} as used by the queues: messages are added at the tail with
+ * mixed priorities and polled back in priority order, or iterated over as the delivery loop does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PriorityLinkedListBenchmark
+{
+   // Constants -----------------------------------------------------
+
+   private static final int PRIORITIES = 10;
+
+   private static final int ELEMENTS = 1000;
+
+   // Attributes ----------------------------------------------------
+
+   /** How many of the priorities are really used by the elements */
+   @Param({ "1", "10" })
+   public int usedPriorities;
+
+   private PriorityLinkedListImpl<Integer> list;
+
+   /** Always holds all the elements, for the benchmarks that don't change the list */
+   private PriorityLinkedListImpl<Integer> filledList;
+
+   private Integer[] elements;
+
+   private int[] priorities;
+
+   // Public --------------------------------------------------------
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      list = new PriorityLinkedListImpl<Integer>(PRIORITIES);
+
+      elements = new Integer[ELEMENTS];
+      priorities = new int[ELEMENTS];
+
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         elements[i] = i;
+         priorities[i] = (i * 7) % usedPriorities;
+      }
+
+      filledList = new PriorityLinkedListImpl<Integer>(PRIORITIES);
+
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         filledList.addTail(elements[i], priorities[i]);
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(ELEMENTS)
+   public void addTailAndPoll(final Blackhole blackhole)
+   {
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         list.addTail(elements[i], priorities[i]);
+      }
+
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         blackhole.consume(list.poll());
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(ELEMENTS)
+   public void iterate(final Blackhole blackhole)
+   {
+      LinkedListIterator<Integer> iterator = filledList.iterator();
+      try
+      {
+         while (iterator.hasNext())
+         {
+            blackhole.consume(iterator.next());
+         }
+      }
+      finally
+      {
+         iterator.close();
+      }
+   }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.benchmarks.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.SimpleString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the hashing of {@link SimpleString}s, used as keys on every address, queue and property
+ * lookup.
+ * <p>
+ * A SimpleString caches its hash code, so each invocation hashes a new instance over the same data,
+ * which is what happens to the addresses and property names decoded from the wire.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SimpleStringBenchmark
+{
+   // Attributes ----------------------------------------------------
+
+   @Param({ "8", "64" })
+   public int length;
+
+   private byte[] data;
+
+   private SimpleString string;
+
+   // Public --------------------------------------------------------
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      StringBuilder builder = new StringBuilder();
+
+      for (int i = 0; i < length; i++)
+      {
+         builder.append((char)('a' + i % 26));
+      }
+
+      string = new SimpleString(builder.toString());
+      data = string.getData();
+   }
+
+   @Benchmark
+   public int hashCodeNewInstance()
+   {
+      return new SimpleString(data).hashCode();
+   }
+
+   @Benchmark
+   public boolean equalsNewInstance()
+   {
+      return string.equals(new SimpleString(data));
+   }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.benchmarks.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.utils.TypedProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the encoding and decoding of {@link TypedProperties}, which happens for every message
+ * going through the wire or the journal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TypedPropertiesBenchmark
+{
+   // Attributes ----------------------------------------------------
+
+   @Param({ "4", "16" })
+   public int numberOfProperties;
+
+   private TypedProperties properties;
+
+   private HornetQBuffer buffer;
+
+   // Public --------------------------------------------------------
+
+   @Setup(Level.Trial)
+   public void setUp()
+   {
+      properties = new TypedProperties();
+
+      for (int i = 0; i < numberOfProperties; i++)
+      {
+         SimpleString key = new SimpleString("property" + i);
+
+         switch (i % 4)
+         {
+            case 0:
+               properties.putSimpleStringProperty(key, new SimpleString("value" + i));
+               break;
+            case 1:
+               properties.putIntProperty(key, i);
+               break;
+            case 2:
+               properties.putLongProperty(key, i);
+               break;
+            default:
+               properties.putBooleanProperty(key, true);
+         }
+      }
+
+      buffer = HornetQBuffers.fixedBuffer(properties.getEncodeSize());
+   }
+
+   @Benchmark
+   public HornetQBuffer encode()
+   {
+      buffer.clear();
+      properties.encode(buffer);
+      return buffer;
+   }
+
+   @Benchmark
+   public TypedProperties decode()
+   {
+      buffer.clear();
+      properties.encode(buffer);
+
+      TypedProperties decoded = new TypedProperties();
+      decoded.decode(buffer);
+      return decoded;
+   }
+}
@@ -27,6 +27,7 @@ public final class HornetQDefaultConfiguration
    public static final String DEFAULT_JMX_DOMAIN = "org.hornetq";
    /** Used by the JBoss-AS integration code. */
    public static final boolean DEFAULT_PERSIST_DELIVERY_COUNT_BEFORE_DELIVERY = false;
+   public static final int DEFAULT_DELIVERY_BATCH_SIZE = 1;
    /** Used by the JBoss-AS integration code. */
    public static final boolean DEFAULT_BACKUP = false;
    /** Used by the JBoss-AS integration code. */
@@ -50,18 +51,27 @@ public final class HornetQDefaultConfiguration
    public static final String DEFAULT_PAGING_DIR = "data/paging";
    public static final String DEFAULT_LARGE_MESSAGES_DIR = "data/largemessages";
    public static final int DEFAULT_MAX_CONCURRENT_PAGE_IO = 5;
+   public static final int DEFAULT_PAGE_MAX_CONCURRENT_DEPAGE = 5;
    public static final boolean DEFAULT_CREATE_JOURNAL_DIR = true;
    public static final boolean DEFAULT_JOURNAL_SYNC_TRANSACTIONAL = true;
    public static final boolean DEFAULT_JOURNAL_SYNC_NON_TRANSACTIONAL = true;
    public static final int DEFAULT_JOURNAL_FILE_SIZE = 10485760;
    public static final int DEFAULT_JOURNAL_COMPACT_MIN_FILES = 10;
    public static final int DEFAULT_JOURNAL_COMPACT_PERCENTAGE = 30;
+   public static final int DEFAULT_JOURNAL_LOAD_THREADS = 1;
+   public static final long DEFAULT_JOURNAL_COMPACT_MAX_RATE = -1;
+   public static final int DEFAULT_JOURNAL_COMPACT_FILES_PER_PASS = 0;
+   public static final int DEFAULT_JOURNAL_MAX_PRE_CREATED_FILES = 0;
+   public static final int DEFAULT_JOURNAL_STRIPES = 1;
+   public static final boolean DEFAULT_JOURNAL_RECORD_CHECKSUM = false;
    public static final int DEFAULT_JOURNAL_MIN_FILES = 2;
    public static final int DEFAULT_JOURNAL_MAX_IO_AIO = 500;
    public static final int DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO = JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO;
    public static final int DEFAULT_JOURNAL_BUFFER_SIZE_AIO = JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_AIO;
    public static final int DEFAULT_JOURNAL_MAX_IO_NIO = 1;
    public static final int DEFAULT_JOURNAL_BUFFER_TIMEOUT_NIO = JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_NIO;
+   public static final boolean DEFAULT_JOURNAL_BUFFER_ADAPTIVE_TIMEOUT = false;
+   public static final int DEFAULT_JOURNAL_BUFFER_MIN_TIMEOUT = 0;
    public static final int DEFAULT_JOURNAL_BUFFER_SIZE_NIO = JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_NIO;
    public static final boolean DEFAULT_JOURNAL_LOG_WRITE_RATE = false;
    public static final int DEFAULT_JOURNAL_PERF_BLAST_PAGES = -1;
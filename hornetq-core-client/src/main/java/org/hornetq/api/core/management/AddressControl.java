@@ -62,6 +62,48 @@ public interface AddressControl
     */
    long getNumberOfBytesPerPage() throws Exception;
 
+   /**
+    * Returns the latency of the reads of page files for this address using JSON serialization,
+    * as the count, the 50th, 90th and 99th percentiles and the buckets of the histogram
+    * (in microseconds).
+    */
+   String getPageReadLatencyAsJSON() throws Exception;
+
+   /**
+    * Returns the ratio of the paged messages of this address found on the page cache.
+    */
+   double getPageCacheHitRatio() throws Exception;
+
+   /**
+    * Returns the number of pages of this address evicted from the page cache.
+    */
+   long getPageCacheEvictions() throws Exception;
+
+   /**
+    * Returns the number of messages depaged from this address into its queues.
+    */
+   long getDepagedMessages() throws Exception;
+
+   /**
+    * Returns the number of messages depaged per second from this address.
+    */
+   double getDepageRate() throws Exception;
+
+   /**
+    * Returns the time spent depaging messages from this address (in milliseconds).
+    */
+   long getDepageTime() throws Exception;
+
+   /**
+    * Returns the number of cleanups which deleted pages of this address.
+    */
+   long getPageCleanupCount() throws Exception;
+
+   /**
+    * Returns the time spent on cleanups deleting pages of this address (in milliseconds).
+    */
+   long getPageCleanupTime() throws Exception;
+
    /**
     * Returns the names of all bindings (both queues and diverts) bound to this address
     */
@@ -140,6 +140,39 @@ public interface HornetQServerControl
     */
    int getJournalBufferTimeout();
 
+   /**
+    * Returns whether the timeout used to flush internal buffers on the journal follows the sync
+    * latency of the journal.
+    */
+   boolean isJournalBufferAdaptiveTimeout();
+
+   /**
+    * Returns the lowest timeout (in nanoseconds) used to flush internal buffers on the journal when
+    * the timeout is adaptive, never above the buffer timeout. It is the buffer timeout when the
+    * timeout isn't adaptive.
+    */
+   int getJournalBufferMinTimeout();
+
+   /**
+    * Returns the timeout (in nanoseconds) currently used to flush internal buffers on the journal.
+    */
+   int getJournalBufferCurrentTimeout();
+
+   /**
+    * Returns the number of times the internal buffer of the journal was written to the journal files.
+    */
+   long getJournalBufferFlushCount();
+
+   /**
+    * Returns the number of bytes written to the journal files from the internal buffer of the journal.
+    */
+   long getJournalBufferBytesFlushed();
+
+   /**
+    * Returns the average time (in nanoseconds) the journal took to sync its internal buffer to disk.
+    */
+   long getJournalBufferAverageSyncLatency();
+
    /**
     * do any clients failover on a server shutdown
     */
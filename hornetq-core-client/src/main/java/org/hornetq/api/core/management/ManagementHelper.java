@@ -77,6 +77,14 @@ public final class ManagementHelper
 
    public static final SimpleString HDR_PROPOSAL_ALT_VALUE = new SimpleString("_JBM_ProposalAltValue");
 
+   public static final SimpleString HDR_DELETED_PAGES = new SimpleString("_HQ_DeletedPages");
+
+   public static final SimpleString HDR_CLEANUP_TIME = new SimpleString("_HQ_CleanupTime");
+
+   public static final SimpleString HDR_DEPAGE_RATE = new SimpleString("_HQ_DepageRate");
+
+   public static final SimpleString HDR_PAGE_CACHE_HIT_RATIO = new SimpleString("_HQ_PageCacheHitRatio");
+
    // Attributes ----------------------------------------------------
 
    // Static --------------------------------------------------------
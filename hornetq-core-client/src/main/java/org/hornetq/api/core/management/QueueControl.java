@@ -62,6 +62,16 @@ public interface QueueControl
     */
    long getMessageCount();
 
+   /**
+    * Returns the number of messages of this queue still on the page files of its address.
+    */
+   long getPagedMessageCount();
+
+   /**
+    * Returns how many pages this queue is behind the page being written on its address, 0 if the address is not paging.
+    */
+   long getPageLag();
+
    /**
     * Returns the number of scheduled messages in this queue.
     */
@@ -33,6 +33,7 @@ import org.hornetq.core.protocol.core.impl.wireformat.SessionConsumerFlowCreditM
 import org.hornetq.core.protocol.core.impl.wireformat.SessionQueueQueryResponseMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveLargeMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessageBatch;
 import org.hornetq.core.client.HornetQClientLogger;
 import org.hornetq.core.client.HornetQClientMessageBundle;
 import org.hornetq.utils.FutureLatch;
@@ -569,14 +570,41 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
          return;
       }
 
-      ClientMessageInternal messageToHandle = message;
+      addToBuffer(message);
 
-      if (messageToHandle.getAddress() == null)
+      messageAdded();
+   }
+
+   public synchronized void handleMessageBatch(final SessionReceiveMessageBatch batch) throws Exception
+   {
+      if (closing)
       {
-         messageToHandle.setAddressTransient(queueInfo.getAddress());
+         // This is ok - we just ignore the messages
+         return;
       }
 
-      messageToHandle.onReceipt(this);
+      for (int i = 0; i < batch.getMessageCount(); i++)
+      {
+         ClientMessageInternal message = (ClientMessageInternal)batch.getMessage(i);
+
+         message.setDeliveryCount(batch.getDeliveryCount(i));
+
+         message.setFlowControlSize(batch.getFlowControlSize(i));
+
+         addToBuffer(message);
+
+         messageAdded();
+      }
+   }
+
+   private void addToBuffer(final ClientMessageInternal message)
+   {
+      if (message.getAddress() == null)
+      {
+         message.setAddressTransient(queueInfo.getAddress());
+      }
+
+      message.onReceipt(this);
 
       if (message.getPriority() != 4)
       {
@@ -587,8 +615,11 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
       }
 
       // Add it to the buffer
-      buffer.addTail(messageToHandle, messageToHandle.getPriority());
+      buffer.addTail(message, message.getPriority());
+   }
 
+   private void messageAdded()
+   {
       if (handler != null)
       {
          // Execute using executor
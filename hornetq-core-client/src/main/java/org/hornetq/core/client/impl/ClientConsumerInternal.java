@@ -20,6 +20,7 @@ import org.hornetq.api.core.client.ClientMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionQueueQueryResponseMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveLargeMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessageBatch;
 
 /**
  *
@@ -40,6 +41,8 @@ public interface ClientConsumerInternal extends ClientConsumer
 
    void handleMessage(ClientMessageInternal message) throws Exception;
 
+   void handleMessageBatch(SessionReceiveMessageBatch batch) throws Exception;
+
    void handleLargeMessage(SessionReceiveLargeMessage largeMessageHeader) throws Exception;
 
    void handleLargeMessageContinuation(SessionReceiveContinuationMessage continuation) throws Exception;
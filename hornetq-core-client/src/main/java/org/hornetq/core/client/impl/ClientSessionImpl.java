@@ -66,6 +66,7 @@ import org.hornetq.core.protocol.core.impl.wireformat.SessionQueueQueryResponseM
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveLargeMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessageBatch;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionRequestProducerCreditsMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionSendContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionSendMessage;
@@ -908,6 +909,16 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
       }
    }
 
+   public void handleReceiveMessageBatch(final long consumerID, final SessionReceiveMessageBatch batch) throws Exception
+   {
+      ClientConsumerInternal consumer = getConsumer(consumerID);
+
+      if (consumer != null)
+      {
+         consumer.handleMessageBatch(batch);
+      }
+   }
+
    public void handleReceiveLargeMessage(final long consumerID, final SessionReceiveLargeMessage message) throws Exception
    {
       ClientConsumerInternal consumer = getConsumer(consumerID);
@@ -22,6 +22,7 @@ import org.hornetq.core.protocol.core.CoreRemotingConnection;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveLargeMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessageBatch;
 import org.hornetq.spi.core.protocol.RemotingConnection;
 
 /**
@@ -55,6 +56,8 @@ public interface ClientSessionInternal extends ClientSession
 
    void handleReceiveMessage(long consumerID, SessionReceiveMessage message) throws Exception;
 
+   void handleReceiveMessageBatch(long consumerID, SessionReceiveMessageBatch batch) throws Exception;
+
    void handleReceiveLargeMessage(long consumerID, SessionReceiveLargeMessage message) throws Exception;
 
    void handleReceiveContinuation(long consumerID, SessionReceiveContinuationMessage continuation) throws Exception;
@@ -17,6 +17,7 @@ import static org.hornetq.core.protocol.core.impl.PacketImpl.EXCEPTION;
 import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_CONTINUATION;
 import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_LARGE_MSG;
 import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_MSG;
+import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_MSG_BATCH;
 
 import org.hornetq.core.protocol.core.Channel;
 import org.hornetq.core.protocol.core.ChannelHandler;
@@ -28,6 +29,7 @@ import org.hornetq.core.protocol.core.impl.wireformat.SessionProducerCreditsMess
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveLargeMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessageBatch;
 import org.hornetq.core.client.HornetQClientLogger;
 
 /**
@@ -74,6 +76,14 @@ final class ClientSessionPacketHandler implements ChannelHandler
 
                break;
             }
+            case SESS_RECEIVE_MSG_BATCH:
+            {
+               SessionReceiveMessageBatch batch = (SessionReceiveMessageBatch)packet;
+
+               clientSession.handleReceiveMessageBatch(batch.getConsumerID(), batch);
+
+               break;
+            }
             case SESS_RECEIVE_LARGE_MSG:
             {
                SessionReceiveLargeMessage message = (SessionReceiveLargeMessage)packet;
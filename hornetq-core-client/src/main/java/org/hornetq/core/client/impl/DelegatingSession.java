@@ -33,6 +33,7 @@ import org.hornetq.core.protocol.core.CoreRemotingConnection;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveLargeMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessageBatch;
 import org.hornetq.core.client.HornetQClientLogger;
 import org.hornetq.spi.core.protocol.RemotingConnection;
 import org.hornetq.utils.ConcurrentHashSet;
@@ -399,6 +400,11 @@ public class DelegatingSession implements ClientSessionInternal
       session.handleReceiveMessage(consumerID, message);
    }
 
+   public void handleReceiveMessageBatch(final long consumerID, final SessionReceiveMessageBatch batch) throws Exception
+   {
+      session.handleReceiveMessageBatch(consumerID, batch);
+   }
+
    public boolean isAutoCommitAcks()
    {
       return session.isAutoCommitAcks();
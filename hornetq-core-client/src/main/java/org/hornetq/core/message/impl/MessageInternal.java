@@ -35,6 +35,12 @@ public interface MessageInternal extends Message
 {
    void decodeFromBuffer(HornetQBuffer buffer);
 
+   int getEncodeSize();
+
+   void encode(HornetQBuffer buffer);
+
+   void decode(HornetQBuffer buffer);
+
    int getEndOfMessagePosition();
 
    int getEndOfBodyPosition();
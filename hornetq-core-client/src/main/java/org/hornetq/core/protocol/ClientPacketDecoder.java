@@ -23,6 +23,7 @@ package org.hornetq.core.protocol;
 
 import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_LARGE_MSG;
 import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_MSG;
+import static org.hornetq.core.protocol.core.impl.PacketImpl.SESS_RECEIVE_MSG_BATCH;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.core.client.impl.ClientLargeMessageImpl;
@@ -31,6 +32,7 @@ import org.hornetq.core.protocol.core.Packet;
 import org.hornetq.core.protocol.core.impl.PacketDecoder;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveClientLargeMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessageBatch;
 /**
  * @author <a href="mailto:andy.taylor@jboss.org">Andy Taylor</a>
  *         10/12/12
@@ -54,6 +56,11 @@ public class ClientPacketDecoder extends PacketDecoder
             packet = new SessionReceiveMessage(new ClientMessageImpl());
             break;
          }
+         case SESS_RECEIVE_MSG_BATCH:
+         {
+            packet = new SessionReceiveMessageBatch();
+            break;
+         }
          case SESS_RECEIVE_LARGE_MSG:
          {
             packet = new SessionReceiveClientLargeMessage(new ClientLargeMessageImpl());
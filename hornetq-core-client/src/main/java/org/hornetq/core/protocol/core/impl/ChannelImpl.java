@@ -143,6 +143,8 @@ public final class ChannelImpl implements Channel
       {
          case PacketImpl.CLUSTER_TOPOLOGY_V2:
             return version >= 122;
+         case PacketImpl.SESS_RECEIVE_MSG_BATCH:
+            return version >= 123;
          default:
             return true;
       }
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.protocol.core.impl.wireformat;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.core.client.impl.ClientMessageImpl;
+import org.hornetq.core.message.impl.MessageImpl;
+import org.hornetq.core.message.impl.MessageInternal;
+import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.spi.core.protocol.RemotingConnection;
+import org.hornetq.utils.DataConstants;
+
+/**
+ * Several messages delivered to the same consumer in a single packet.
+ * <p>
+ * Each message is written as its delivery count, its encoded size and the message as encoded on
+ * the journal. The client copies every message into a buffer of its own laid out as if the
+ * message had come in a {@link SessionReceiveMessage}, so the messages of a batch can be consumed
+ * and released independently.
+ */
+public class SessionReceiveMessageBatch extends PacketImpl
+{
+   // Constants -----------------------------------------------------
+
+   private static final int BATCH_HEADER_SIZE = PACKET_HEADERS_SIZE + DataConstants.SIZE_LONG + DataConstants.SIZE_INT;
+
+   /** What every message adds to the batch besides its own encoding: the delivery count and the encoded size */
+   public static final int MESSAGE_OVERHEAD = DataConstants.SIZE_INT + DataConstants.SIZE_INT;
+
+   // Attributes ----------------------------------------------------
+
+   private long consumerID;
+
+   private MessageInternal[] messages;
+
+   private int[] deliveryCounts;
+
+   private int[] sizes;
+
+   private int count;
+
+   // Constructors --------------------------------------------------
+
+   public SessionReceiveMessageBatch(final long consumerID,
+                                     final MessageInternal[] messages,
+                                     final int[] deliveryCounts,
+                                     final int count)
+   {
+      super(SESS_RECEIVE_MSG_BATCH);
+
+      this.consumerID = consumerID;
+
+      this.messages = messages;
+
+      this.deliveryCounts = deliveryCounts;
+
+      this.count = count;
+   }
+
+   public SessionReceiveMessageBatch()
+   {
+      super(SESS_RECEIVE_MSG_BATCH);
+   }
+
+   // Public --------------------------------------------------------
+
+   public long getConsumerID()
+   {
+      return consumerID;
+   }
+
+   public int getMessageCount()
+   {
+      return count;
+   }
+
+   public MessageInternal getMessage(final int index)
+   {
+      return messages[index];
+   }
+
+   public int getDeliveryCount(final int index)
+   {
+      return deliveryCounts[index];
+   }
+
+   /**
+    * The bytes of the packet taken by the message at that index, the first message carrying the
+    * headers of the packet too, so the sizes of a batch add up to its packet size for flow control.
+    */
+   public int getFlowControlSize(final int index)
+   {
+      return sizes[index];
+   }
+
+   @Override
+   public HornetQBuffer encode(final RemotingConnection connection)
+   {
+      int capacity = BATCH_HEADER_SIZE;
+
+      for (int i = 0; i < count; i++)
+      {
+         capacity += MESSAGE_OVERHEAD + messages[i].getEncodeSize();
+      }
+
+      HornetQBuffer buffer = connection.createBuffer(capacity);
+
+      buffer.writeInt(0);
+      buffer.writeByte(getType());
+      buffer.writeLong(channelID);
+
+      encodeRest(buffer);
+
+      size = buffer.writerIndex();
+
+      buffer.setInt(0, size - DataConstants.SIZE_INT);
+
+      return buffer;
+   }
+
+   @Override
+   public void encodeRest(final HornetQBuffer buffer)
+   {
+      buffer.writeLong(consumerID);
+      buffer.writeInt(count);
+
+      for (int i = 0; i < count; i++)
+      {
+         buffer.writeInt(deliveryCounts[i]);
+
+         int sizePosition = buffer.writerIndex();
+
+         buffer.writeInt(0);
+
+         messages[i].encode(buffer);
+
+         buffer.setInt(sizePosition, buffer.writerIndex() - sizePosition - DataConstants.SIZE_INT);
+      }
+   }
+
+   @Override
+   public void decodeRest(final HornetQBuffer buffer)
+   {
+      consumerID = buffer.readLong();
+      count = buffer.readInt();
+
+      messages = new MessageInternal[count];
+      deliveryCounts = new int[count];
+      sizes = new int[count];
+
+      int position = buffer.readerIndex();
+
+      for (int i = 0; i < count; i++)
+      {
+         deliveryCounts[i] = buffer.readInt();
+
+         int length = buffer.readInt();
+
+         HornetQBuffer messageBuffer = HornetQBuffers.dynamicBuffer(MessageImpl.BUFFER_HEADER_SPACE + length);
+
+         messageBuffer.writerIndex(MessageImpl.BUFFER_HEADER_SPACE);
+
+         messageBuffer.writeBytes(buffer, length);
+
+         ClientMessageImpl message = new ClientMessageImpl();
+
+         message.decodeFromBuffer(messageBuffer);
+
+         // Positioned as SessionReceiveMessage would leave it, for reading the body
+         messageBuffer.setIndex(MessageImpl.BODY_OFFSET, message.getEndOfBodyPosition());
+
+         messages[i] = message;
+
+         sizes[i] = buffer.readerIndex() - position;
+
+         position = buffer.readerIndex();
+      }
+
+      if (count > 0)
+      {
+         // The packet headers are accounted on the first message
+         sizes[0] += BATCH_HEADER_SIZE;
+      }
+   }
+
+   @Override
+   public int hashCode()
+   {
+      final int prime = 31;
+      int result = super.hashCode();
+      result = prime * result + (int)(consumerID ^ (consumerID >>> 32));
+      result = prime * result + count;
+      return result;
+   }
+
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (this == obj)
+         return true;
+      if (!super.equals(obj))
+         return false;
+      if (!(obj instanceof SessionReceiveMessageBatch))
+         return false;
+      SessionReceiveMessageBatch other = (SessionReceiveMessageBatch)obj;
+      if (consumerID != other.consumerID)
+         return false;
+      if (count != other.count)
+         return false;
+      return true;
+   }
+}
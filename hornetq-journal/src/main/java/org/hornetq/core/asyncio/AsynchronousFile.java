@@ -54,6 +54,14 @@ public interface AsynchronousFile
 
    void fill(long position, int blocks, long size, byte fillChar) throws HornetQException;
 
+   /**
+    * Reserves {@code size} bytes on the disk from {@code position} on, without writing them.
+    * @return false if neither the native layer nor the file system support it, in which case
+    *         {@link #fill(long, int, long, byte)} must be used
+    * @throws HornetQException
+    */
+   boolean allocate(long position, long size) throws HornetQException;
+
    void setBufferCallback(BufferCallback callback);
 
    int getBlockSize();
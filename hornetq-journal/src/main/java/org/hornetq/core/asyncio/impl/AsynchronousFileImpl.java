@@ -54,6 +54,9 @@ public class AsynchronousFileImpl implements AsynchronousFile
        Or else the native module won't be loaded because of version mismatches */
    private static final int EXPECTED_NATIVE_VERSION = 31;
 
+   /** Set when the loaded native library was built before fallocate was added to it */
+   private static volatile boolean fallocateMissing = false;
+
    /** Used to determine the next writing sequence */
    private final AtomicLong nextWritingSequence = new AtomicLong(0);
 
@@ -414,6 +417,27 @@ public class AsynchronousFileImpl implements AsynchronousFile
       AsynchronousFileImpl.fill(handler, position, blocks, size, fillChar);
    }
 
+   public boolean allocate(final long position, final long size) throws HornetQException
+   {
+      checkOpened();
+
+      if (AsynchronousFileImpl.fallocateMissing)
+      {
+         return false;
+      }
+
+      try
+      {
+         return AsynchronousFileImpl.fallocate(handler, position, size);
+      }
+      catch (UnsatisfiedLinkError e)
+      {
+         HornetQJournalLogger.LOGGER.debug("The native library doesn't support fallocate, files will be filled instead", e);
+         AsynchronousFileImpl.fallocateMissing = true;
+         return false;
+      }
+   }
+
    public int getBlockSize()
    {
       return 512;
@@ -700,6 +724,8 @@ public class AsynchronousFileImpl implements AsynchronousFile
 
    private static native void fill(ByteBuffer handle, long position, int blocks, long size, byte fillChar) throws HornetQException;
 
+   private static native boolean fallocate(ByteBuffer handle, long position, long size) throws HornetQException;
+
    private static native void closeInternal(ByteBuffer handler) throws HornetQException;
 
    private static native void stopPoller(ByteBuffer handler) throws HornetQException;
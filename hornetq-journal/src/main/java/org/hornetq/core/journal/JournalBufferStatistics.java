@@ -0,0 +1,54 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal;
+
+/**
+ * The statistics of the buffer the writes of a {@link SequentialFileFactory} go through.
+ * <p>
+ * Timeouts and latencies are in nanoseconds.
+ */
+public interface JournalBufferStatistics
+{
+   /**
+    * @return the time a sync currently waits for more records before the buffer is flushed
+    */
+   int getTimeout();
+
+   /**
+    * @return the lowest timeout the buffer uses, the timeout itself when it isn't adaptive
+    */
+   int getMinTimeout();
+
+   /**
+    * @return the highest timeout the buffer uses, the timeout itself when it isn't adaptive
+    */
+   int getMaxTimeout();
+
+   /**
+    * @return the number of buffers written to the file
+    */
+   long getFlushCount();
+
+   /**
+    * @return the number of buffers written to the file that were also synced
+    */
+   long getSyncFlushCount();
+
+   long getBytesFlushed();
+
+   /**
+    * @return the average time the file took to sync a buffer, 0 if none was synced yet
+    */
+   long getAverageSyncLatency();
+}
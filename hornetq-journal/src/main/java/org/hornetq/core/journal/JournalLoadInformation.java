@@ -13,8 +13,15 @@
 
 package org.hornetq.core.journal;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * This is a POJO containing information about the journal during load time.
+ * <p>
+ * The time spent on each file is also kept, but it is not taken into account by
+ * {@link #equals(Object)} as it's not part of the journal state.
  *
  * @author <mailto:clebert.suconic@jboss.org">Clebert Suconic</a>
  *
@@ -30,6 +37,8 @@ public class JournalLoadInformation
 
    private long maxID = -1;
 
+   private final List<FileLoadInformation> files = new ArrayList<FileLoadInformation>();
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -84,6 +93,19 @@ public class JournalLoadInformation
       this.maxID = maxID;
    }
 
+   public void addFileLoadInformation(final FileLoadInformation fileInformation)
+   {
+      files.add(fileInformation);
+   }
+
+   /**
+    * @return the load information of every file read, in the order they were loaded
+    */
+   public List<FileLoadInformation> getFileLoadInformation()
+   {
+      return Collections.unmodifiableList(files);
+   }
+
    /* (non-Javadoc)
     * @see java.lang.Object#hashCode()
     */
@@ -144,4 +166,100 @@ public class JournalLoadInformation
 
    // Inner classes -------------------------------------------------
 
+   /**
+    * How long it took to load a single journal file.
+    * <p>
+    * The read time is the time spent reading and decoding the file, while the load time is the
+    * time the loading thread spent on it, waiting for the read and applying its records. On a
+    * sequential load the records are applied while the file is read, so both times are the same.
+    */
+   public static class FileLoadInformation
+   {
+      private final long fileID;
+
+      private final String fileName;
+
+      private final long fileSize;
+
+      private final int numberOfRecords;
+
+      private final long readTime;
+
+      private final long loadTime;
+
+      public FileLoadInformation(final long fileID,
+                                 final String fileName,
+                                 final long fileSize,
+                                 final int numberOfRecords,
+                                 final long readTime,
+                                 final long loadTime)
+      {
+         this.fileID = fileID;
+         this.fileName = fileName;
+         this.fileSize = fileSize;
+         this.numberOfRecords = numberOfRecords;
+         this.readTime = readTime;
+         this.loadTime = loadTime;
+      }
+
+      public long getFileID()
+      {
+         return fileID;
+      }
+
+      public String getFileName()
+      {
+         return fileName;
+      }
+
+      /**
+       * @return the size of the file in bytes
+       */
+      public long getFileSize()
+      {
+         return fileSize;
+      }
+
+      /**
+       * @return the number of records found on the file, including the transaction control records
+       */
+      public int getNumberOfRecords()
+      {
+         return numberOfRecords;
+      }
+
+      /**
+       * @return the time in nanoseconds spent reading and decoding the file
+       */
+      public long getReadTime()
+      {
+         return readTime;
+      }
+
+      /**
+       * @return the time in nanoseconds the loading thread spent on the file
+       */
+      public long getLoadTime()
+      {
+         return loadTime;
+      }
+
+      @Override
+      public String toString()
+      {
+         return "FileLoadInformation [fileID=" + fileID +
+                ", fileName=" +
+                fileName +
+                ", fileSize=" +
+                fileSize +
+                ", numberOfRecords=" +
+                numberOfRecords +
+                ", readTime=" +
+                readTime +
+                ", loadTime=" +
+                loadTime +
+                "]";
+      }
+   }
+
 }
@@ -54,6 +54,15 @@ public interface SequentialFile
 
    void fill(int position, int size, byte fillCharacter) throws Exception;
 
+   /**
+    * Reserves the disk space for {@code size} bytes from {@code position} on.
+    * <p>
+    * Where the file system can allocate the space without writing it the reserved bytes are left
+    * zeroed, otherwise this is the same as {@link #fill(int, int, byte)}. So this can only be used
+    * where the readers don't depend on the fill character.
+    */
+   void preallocate(int position, int size, byte fillCharacter) throws Exception;
+
    void delete() throws Exception;
 
    void write(HornetQBuffer bytes, boolean sync, IOAsyncTask callback) throws Exception;
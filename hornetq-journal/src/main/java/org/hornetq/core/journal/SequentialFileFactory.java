@@ -57,6 +57,18 @@ public interface SequentialFileFactory
 
    void deactivateBuffer();
 
+   /**
+    * @return the statistics of the buffer shared by the files of this factory, or null if their
+    *         writes aren't buffered
+    */
+   JournalBufferStatistics getBufferStatistics();
+
+   /**
+    * Makes the timeout of the buffer follow the sync latency observed on the files, within the given
+    * bounds (in nanoseconds). Does nothing if the writes aren't buffered.
+    */
+   void setBufferAdaptiveTimeout(int minTimeout, int maxTimeout);
+
    // To be used in tests only
    ByteBuffer wrapBuffer(byte[] bytes);
 
@@ -176,6 +176,21 @@ public class AIOSequentialFile extends AbstractSequentialFile implements IOExcep
       fileSize = aioFile.size();
    }
 
+   @Override
+   public void preallocate(final int position, final int size, final byte fillCharacter) throws Exception
+   {
+      checkOpened();
+
+      if (aioFile.allocate(position, size))
+      {
+         fileSize = aioFile.size();
+      }
+      else
+      {
+         fill(position, size, fillCharacter);
+      }
+   }
+
    public void open() throws Exception
    {
       open(maxIO, true);
@@ -183,6 +183,15 @@ public abstract class AbstractSequentialFile implements SequentialFile
       }
    }
 
+   /**
+    * There's no way to allocate the space without writing it from pure Java, so this just fills the
+    * file.
+    */
+   public void preallocate(final int position, final int size, final byte fillCharacter) throws Exception
+   {
+      fill(position, size, fillCharacter);
+   }
+
    public final boolean fits(final int size)
    {
       if (timedBuffer == null)
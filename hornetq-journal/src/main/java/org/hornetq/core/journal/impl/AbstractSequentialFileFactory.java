@@ -27,6 +27,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.hornetq.api.core.HornetQExceptionType;
 import org.hornetq.core.journal.IOCriticalErrorListener;
+import org.hornetq.core.journal.JournalBufferStatistics;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.journal.HornetQJournalLogger;
@@ -170,6 +171,27 @@ abstract class AbstractSequentialFileFactory implements SequentialFileFactory
       }
    }
 
+   /**
+    * @return the buffer shared by the files of this factory, or null if their writes aren't buffered
+    */
+   TimedBuffer getTimedBuffer()
+   {
+      return timedBuffer;
+   }
+
+   public JournalBufferStatistics getBufferStatistics()
+   {
+      return timedBuffer;
+   }
+
+   public void setBufferAdaptiveTimeout(final int minTimeout, final int maxTimeout)
+   {
+      if (timedBuffer != null)
+      {
+         timedBuffer.setAdaptiveTimeout(minTimeout, maxTimeout);
+      }
+   }
+
    public void releaseBuffer(final ByteBuffer buffer)
    {
    }
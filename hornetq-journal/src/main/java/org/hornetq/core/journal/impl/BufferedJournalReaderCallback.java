@@ -0,0 +1,248 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.SequentialFileFactory;
+
+/**
+ * A JournalReaderCallback that keeps every record read from a file, so they can be replayed later
+ * in the same order into another callback.
+ * <p>
+ * This is used on the parallel load, where files are read and decoded concurrently but their
+ * records must still be applied to the journal one file at a time, in file order.
+ */
+final class BufferedJournalReaderCallback implements JournalReaderCallback
+{
+   // Constants -----------------------------------------------------
+
+   private static final byte ADD = 0;
+
+   private static final byte UPDATE = 1;
+
+   private static final byte DELETE = 2;
+
+   private static final byte ADD_TX = 3;
+
+   private static final byte UPDATE_TX = 4;
+
+   private static final byte DELETE_TX = 5;
+
+   private static final byte PREPARE = 6;
+
+   private static final byte COMMIT = 7;
+
+   private static final byte ROLLBACK = 8;
+
+   // Attributes ----------------------------------------------------
+
+   private final JournalFile file;
+
+   private final List<Event> events = new ArrayList<Event>();
+
+   private int numberOfRecords;
+
+   /** markAsDataFile may be called once per record, we only need to pass it on once */
+   private boolean dataFile;
+
+   private int lastDataPos;
+
+   private long readTime;
+
+   // Constructors --------------------------------------------------
+
+   BufferedJournalReaderCallback(final JournalFile file)
+   {
+      this.file = file;
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * Reads and decodes the whole file, keeping its records in memory.
+    */
+   public BufferedJournalReaderCallback read(final SequentialFileFactory fileFactory) throws Exception
+   {
+      long start = System.nanoTime();
+
+      lastDataPos = JournalImpl.readJournalFile(fileFactory, file, this);
+
+      readTime = System.nanoTime() - start;
+
+      return this;
+   }
+
+   /**
+    * Sends every record that was read to target, in the order they were found on the file.
+    * @return the position of the last valid data on the file, as returned by
+    *         {@link JournalImpl#readJournalFile(SequentialFileFactory, JournalFile, JournalReaderCallback)}
+    */
+   public int replay(final JournalReaderCallback target) throws Exception
+   {
+      for (Event event : events)
+      {
+         switch (event.type)
+         {
+            case ADD:
+               target.onReadAddRecord(event.info);
+               break;
+            case UPDATE:
+               target.onReadUpdateRecord(event.info);
+               break;
+            case DELETE:
+               target.onReadDeleteRecord(event.id);
+               break;
+            case ADD_TX:
+               target.onReadAddRecordTX(event.id, event.info);
+               break;
+            case UPDATE_TX:
+               target.onReadUpdateRecordTX(event.id, event.info);
+               break;
+            case DELETE_TX:
+               target.onReadDeleteRecordTX(event.id, event.info);
+               break;
+            case PREPARE:
+               target.onReadPrepareRecord(event.id, event.extraData, event.numberOfRecords);
+               break;
+            case COMMIT:
+               target.onReadCommitRecord(event.id, event.numberOfRecords);
+               break;
+            case ROLLBACK:
+               target.onReadRollbackRecord(event.id);
+               break;
+            default:
+               throw new IllegalStateException("Invalid event type " + event.type);
+         }
+      }
+
+      events.clear();
+
+      if (dataFile)
+      {
+         target.markAsDataFile(file);
+      }
+
+      return lastDataPos;
+   }
+
+   public JournalFile getFile()
+   {
+      return file;
+   }
+
+   /**
+    * @return the number of records read from the file
+    */
+   public int getNumberOfRecords()
+   {
+      return numberOfRecords;
+   }
+
+   /**
+    * @return the time in nanoseconds spent reading and decoding the file
+    */
+   public long getReadTime()
+   {
+      return readTime;
+   }
+
+   public void onReadAddRecord(final RecordInfo info) throws Exception
+   {
+      add(new Event(ADD, info.id, info));
+   }
+
+   public void onReadUpdateRecord(final RecordInfo info) throws Exception
+   {
+      add(new Event(UPDATE, info.id, info));
+   }
+
+   public void onReadDeleteRecord(final long recordID) throws Exception
+   {
+      add(new Event(DELETE, recordID, null));
+   }
+
+   public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
+   {
+      add(new Event(ADD_TX, transactionID, info));
+   }
+
+   public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
+   {
+      add(new Event(UPDATE_TX, transactionID, info));
+   }
+
+   public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
+   {
+      add(new Event(DELETE_TX, transactionID, info));
+   }
+
+   public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords) throws Exception
+   {
+      Event event = new Event(PREPARE, transactionID, null);
+      event.extraData = extraData;
+      event.numberOfRecords = numberOfRecords;
+      add(event);
+   }
+
+   public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
+   {
+      Event event = new Event(COMMIT, transactionID, null);
+      event.numberOfRecords = numberOfRecords;
+      add(event);
+   }
+
+   public void onReadRollbackRecord(final long transactionID) throws Exception
+   {
+      add(new Event(ROLLBACK, transactionID, null));
+   }
+
+   public void markAsDataFile(final JournalFile file)
+   {
+      dataFile = true;
+   }
+
+   // Private -------------------------------------------------------
+
+   private void add(final Event event)
+   {
+      numberOfRecords++;
+      events.add(event);
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class Event
+   {
+      final byte type;
+
+      /** The record ID or the transaction ID, depending on the type */
+      final long id;
+
+      final RecordInfo info;
+
+      byte[] extraData;
+
+      int numberOfRecords;
+
+      Event(final byte type, final long id, final RecordInfo info)
+      {
+         this.type = type;
+         this.id = id;
+         this.info = info;
+      }
+   }
+}
@@ -18,7 +18,6 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.hornetq.api.core.HornetQBuffer;
@@ -54,7 +53,10 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    // Snapshot of transactions that were pending when the compactor started
    private final Map<Long, PendingTransaction> pendingTransactions = new ConcurrentHashMap<Long, PendingTransaction>();
 
-   private final Map<Long, JournalRecord> newRecords = new HashMap<Long, JournalRecord>();
+   private final JournalRecordIndex newRecords = new JournalRecordIndex();
+
+   // The highest ID the new files may take when compacting only some of the data files, -1 when compacting all of them
+   private final long lastFileID;
 
    private final Map<Long, JournalTransaction> newTransactions = new HashMap<Long, JournalTransaction>();
 
@@ -130,7 +132,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       return newDataFiles;
    }
 
-   public Map<Long, JournalRecord> getNewRecords()
+   public JournalRecordIndex getNewRecords()
    {
       return newRecords;
    }
@@ -143,10 +145,27 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    public JournalCompactor(final SequentialFileFactory fileFactory,
                            final JournalImpl journal,
                            final JournalFilesRepository filesRepository,
-                           final Set<Long> recordsSnapshot,
+                           final JournalRecordIndex recordsSnapshot,
                            final long firstFileID)
+   {
+      this(fileFactory, journal, filesRepository, recordsSnapshot, firstFileID, -1);
+   }
+
+   /**
+    * Used when compacting only the oldest data files, from firstFileID to lastFileID. The new files
+    * take the IDs of the ones being compacted, so they are still older than every other data file.
+    * Old records aren't split from the newer ones onto a file of their own, as that could take more
+    * files than the ones being compacted.
+    */
+   public JournalCompactor(final SequentialFileFactory fileFactory,
+                           final JournalImpl journal,
+                           final JournalFilesRepository filesRepository,
+                           final JournalRecordIndex recordsSnapshot,
+                           final long firstFileID,
+                           final long lastFileID)
    {
       super(fileFactory, journal, filesRepository, recordsSnapshot, firstFileID);
+      this.lastFileID = lastFileID;
    }
 
    /** This methods informs the Compactor about the existence of a pending (non committed) transaction */
@@ -157,7 +176,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
    public void addCommandCommit(final JournalTransaction liveTransaction, final JournalFile currentFile)
    {
-      pendingCommands.add(new CommitCompactCommand(liveTransaction, currentFile));
+      addCommand(new CommitCompactCommand(liveTransaction, currentFile));
 
       long ids[] = liveTransaction.getPositiveArray();
 
@@ -190,7 +209,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
    public void addCommandRollback(final JournalTransaction liveTransaction, final JournalFile currentFile)
    {
-      pendingCommands.add(new RollbackCompactCommand(liveTransaction, currentFile));
+      addCommand(new RollbackCompactCommand(liveTransaction, currentFile));
    }
 
    /**
@@ -199,7 +218,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
     */
    public void addCommandDelete(final long id, final JournalFile usedFile)
    {
-      pendingCommands.add(new DeleteCompactCommand(id, usedFile));
+      addCommand(new DeleteCompactCommand(id, usedFile));
    }
 
    /**
@@ -208,7 +227,19 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
     */
    public void addCommandUpdate(final long id, final JournalFile usedFile, final int size)
    {
-      pendingCommands.add(new UpdateCompactCommand(id, usedFile, size));
+      addCommand(new UpdateCompactCommand(id, usedFile, size));
+   }
+
+   /**
+    * Appends are not serialized when the journal is buffered, so the commands may be added
+    * concurrently
+    */
+   private void addCommand(final CompactCommand command)
+   {
+      synchronized (pendingCommands)
+      {
+         pendingCommands.add(command);
+      }
    }
 
    private void checkSize(final int size) throws Exception
@@ -254,6 +285,11 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
    private boolean checkCompact(final int compactCount) throws Exception
    {
+      if (lastFileID >= 0)
+      {
+         return false;
+      }
+
       if (compactCount >= COMPACT_SPLIT_LINE && !splitted)
       {
          willNeedToSplit = true;
@@ -272,12 +308,35 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       }
    }
 
+   @Override
+   protected void openFile() throws Exception
+   {
+      if (lastFileID >= 0 && nextOrderingID > lastFileID)
+      {
+         throw new IllegalStateException("The compacted records don't fit on the files they were compacted from, file " +
+                                         nextOrderingID +
+                                         " would be past " +
+                                         lastFileID);
+      }
+
+      super.openFile();
+   }
+
    /**
     * Replay pending counts that happened during compacting
     */
    public void replayPendingCommands()
    {
-      for (CompactCommand command : pendingCommands)
+      List<CompactCommand> commands;
+
+      synchronized (pendingCommands)
+      {
+         commands = new ArrayList<CompactCommand>(pendingCommands);
+
+         pendingCommands.clear();
+      }
+
+      for (CompactCommand command : commands)
       {
          try
          {
@@ -288,8 +347,6 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
             HornetQJournalLogger.LOGGER.errorReplayingCommands(e);
          }
       }
-
-      pendingCommands.clear();
    }
 
    // JournalReaderCallback implementation -------------------------------------------
@@ -304,11 +361,13 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
                                                                 new ByteArrayEncoding(info.data));
          addRecord.setCompactCount((short)(info.compactCount + 1));
 
+         addRecord.setChecksum(journal.isRecordChecksum());
+
          checkSize(addRecord.getEncodeSize(), info.compactCount);
 
          writeEncoder(addRecord);
 
-         newRecords.put(info.id, new JournalRecord(currentFile, addRecord.getEncodeSize()));
+         newRecords.add(info.id, currentFile, addRecord.getEncodeSize());
       }
    }
 
@@ -326,6 +385,8 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
          record.setCompactCount((short)(info.compactCount + 1));
 
+         record.setChecksum(journal.isRecordChecksum());
+
          checkSize(record.getEncodeSize(), info.compactCount);
 
          newTransaction.addPositive(currentFile, info.id, record.getEncodeSize());
@@ -350,6 +411,8 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
             JournalInternalRecord commitRecord =
                      new JournalCompleteRecordTX(TX_RECORD_TYPE.COMMIT, transactionID, null);
 
+            commitRecord.setChecksum(journal.isRecordChecksum());
+
             checkSize(commitRecord.getEncodeSize());
 
             writeEncoder(commitRecord, newTransaction.getCounter(currentFile));
@@ -361,7 +424,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
    public void onReadDeleteRecord(final long recordID) throws Exception
    {
-      if (newRecords.get(recordID) != null)
+      if (newRecords.contains(recordID))
       {
          // Sanity check, it should never happen
          HornetQJournalLogger.LOGGER.inconsistencyDuringCompactingDelete(recordID);
@@ -379,6 +442,8 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
                                                                   info.id,
                                                                   new ByteArrayEncoding(info.data));
 
+         record.setChecksum(journal.isRecordChecksum());
+
          checkSize(record.getEncodeSize());
 
          writeEncoder(record);
@@ -403,6 +468,8 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
          JournalInternalRecord prepareRecord =
                   new JournalCompleteRecordTX(TX_RECORD_TYPE.PREPARE, transactionID, new ByteArrayEncoding(extraData));
 
+         prepareRecord.setChecksum(journal.isRecordChecksum());
+
          checkSize(prepareRecord.getEncodeSize());
 
          writeEncoder(prepareRecord, newTransaction.getCounter(currentFile));
@@ -428,6 +495,8 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
             JournalInternalRecord rollbackRecord = new JournalRollbackRecordTX(transactionID);
 
+            rollbackRecord.setChecksum(journal.isRecordChecksum());
+
             checkSize(rollbackRecord.getEncodeSize());
 
             writeEncoder(rollbackRecord);
@@ -449,18 +518,14 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
          updateRecord.setCompactCount((short)(info.compactCount + 1));
 
-         checkSize(updateRecord.getEncodeSize(), info.compactCount);
+         updateRecord.setChecksum(journal.isRecordChecksum());
 
-         JournalRecord newRecord = newRecords.get(info.id);
+         checkSize(updateRecord.getEncodeSize(), info.compactCount);
 
-         if (newRecord == null)
+         if (!newRecords.addUpdate(info.id, currentFile, updateRecord.getEncodeSize()))
          {
             HornetQJournalLogger.LOGGER.compactingWithNoAddRecord(info.id);
          }
-         else
-         {
-            newRecord.addUpdateFile(currentFile, updateRecord.getEncodeSize());
-         }
 
          writeEncoder(updateRecord);
       }
@@ -480,6 +545,8 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
          updateRecordTX.setCompactCount((short)(info.compactCount + 1));
 
+         updateRecordTX.setChecksum(journal.isRecordChecksum());
+
          checkSize(updateRecordTX.getEncodeSize(), info.compactCount);
 
          writeEncoder(updateRecordTX);
@@ -527,15 +594,10 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       @Override
       void execute() throws Exception
       {
-         JournalRecord deleteRecord = journal.getRecords().remove(id);
-         if (deleteRecord == null)
+         if (!journal.getRecords().delete(id, usedFile))
          {
             HornetQJournalLogger.LOGGER.noRecordDuringCompactReplay(id);
          }
-         else
-         {
-            deleteRecord.delete(usedFile);
-         }
       }
    }
 
@@ -568,8 +630,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       @Override
       void execute() throws Exception
       {
-         JournalRecord updateRecord = journal.getRecords().get(id);
-         updateRecord.addUpdateFile(usedFile, size);
+         journal.getRecords().addUpdate(id, usedFile, size);
       }
    }
 
@@ -636,7 +697,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    /* (non-Javadoc)
     * @see org.hornetq.core.journal.impl.JournalRecordsProvider#getRecords()
     */
-   public Map<Long, JournalRecord> getRecords()
+   public JournalRecordIndex getRecords()
    {
       return newRecords;
    }
@@ -49,6 +49,12 @@ public interface JournalFile
    /** The total number of deletes this file has */
    int getTotalNegativeToOthers();
 
+   /** A transaction with records on this file was committed or rolled back on completionFile */
+   void completeTransaction(JournalFile completionFile);
+
+   /** The ID of the latest file a transaction with records on this file was completed on, -1 if none */
+   long getLastCompletionFileID();
+
    /**
     * Whether this file's contents can deleted and the file reused.
     * @param canDelete if {@code true} then this file's contents are unimportant and may be deleted
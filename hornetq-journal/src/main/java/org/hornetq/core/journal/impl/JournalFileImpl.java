@@ -17,6 +17,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.core.journal.SequentialFile;
 
@@ -46,6 +47,8 @@ public class JournalFileImpl implements JournalFile
 
    private final AtomicInteger totalNegativeToOthers = new AtomicInteger(0);
 
+   private final AtomicLong lastCompletionFileID = new AtomicLong(-1);
+
    private final int version;
 
    private final Map<JournalFile, AtomicInteger> negCounts = new ConcurrentHashMap<JournalFile, AtomicInteger>();
@@ -67,6 +70,7 @@ public class JournalFileImpl implements JournalFile
       posCount.set(0);
       liveBytes.set(0);
       totalNegativeToOthers.set(0);
+      lastCompletionFileID.set(-1);
    }
 
    public int getPosCount()
@@ -228,4 +232,20 @@ public class JournalFileImpl implements JournalFile
       return totalNegativeToOthers.get();
    }
 
+   public void completeTransaction(final JournalFile completionFile)
+   {
+      long fileID = completionFile.getFileID();
+      long last;
+      do
+      {
+         last = lastCompletionFileID.get();
+      }
+      while (fileID > last && !lastCompletionFileID.compareAndSet(last, fileID));
+   }
+
+   public long getLastCompletionFileID()
+   {
+      return lastCompletionFileID.get();
+   }
+
 }
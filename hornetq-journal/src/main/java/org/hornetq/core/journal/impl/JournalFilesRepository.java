@@ -45,6 +45,9 @@ public class JournalFilesRepository
     */
    private static final boolean CHECK_CONSISTENCE = false;
 
+   /** The pre-creator keeps enough free files for the turnover expected over this period */
+   private static final long PRE_CREATE_PERIOD = TimeUnit.SECONDS.toNanos(1);
+
    // This method exists just to make debug easier.
    // I could replace log.trace by log.info temporarily while I was debugging
    // Journal
@@ -79,6 +82,19 @@ public class JournalFilesRepository
 
    private Executor openFilesExecutor;
 
+   private volatile int maxPreCreatedFiles;
+
+   /** How many free files the pre-creator is keeping, from the observed file turnover */
+   private volatile int preCreatedFilesTarget;
+
+   private final Object turnoverLock = new Object();
+
+   /** guarded by turnoverLock */
+   private long lastTurnoverTime;
+
+   /** moving average of the time between two files being opened, guarded by turnoverLock */
+   private long averageTurnoverInterval;
+
    private final Runnable pushOpenRunnable = new Runnable()
    {
       public void run()
@@ -86,6 +102,8 @@ public class JournalFilesRepository
          try
          {
             pushOpenedFile();
+
+            preCreateFiles();
          }
          catch (Exception e)
          {
@@ -157,6 +175,31 @@ public class JournalFilesRepository
       return maxAIO;
    }
 
+   public int getMaxPreCreatedFiles()
+   {
+      return maxPreCreatedFiles;
+   }
+
+   /**
+    * Sets the maximum number of free files created ahead of demand, besides the minFiles. After
+    * each file is opened the free files are topped up in the background to cover the files the
+    * journal is expected to open over the next second, so bursts don't have to wait for new files
+    * to be created. 0 means files are only created when there are no free ones left.
+    */
+   public void setMaxPreCreatedFiles(final int maxPreCreatedFiles)
+   {
+      if (maxPreCreatedFiles < 0)
+      {
+         throw new IllegalArgumentException("maxPreCreatedFiles must be 0 or greater, was " + maxPreCreatedFiles);
+      }
+      this.maxPreCreatedFiles = maxPreCreatedFiles;
+
+      if (preCreatedFilesTarget > maxPreCreatedFiles)
+      {
+         preCreatedFilesTarget = maxPreCreatedFiles;
+      }
+   }
+
    public String getFileExtension()
    {
       return fileExtension;
@@ -399,7 +442,8 @@ public class JournalFilesRepository
       }
       else
       // FIXME - size() involves a scan!!!
-      if (!checkDelete || (freeFiles.size() + dataFiles.size() + 1 + openedFiles.size() < minFiles))
+      if (!checkDelete || (freeFiles.size() + dataFiles.size() + 1 + openedFiles.size() < minFiles) ||
+          freeFiles.size() < preCreatedFilesTarget)
       {
          // Re-initialise it
 
@@ -468,6 +512,8 @@ public class JournalFilesRepository
          JournalFilesRepository.trace("enqueueOpenFile with openedFiles.size=" + openedFiles.size());
       }
 
+      fileTurnedOver();
+
       if (openFilesExecutor == null)
       {
          pushOpenRunnable.run();
@@ -515,6 +561,21 @@ public class JournalFilesRepository
       }
    }
 
+   /**
+    * Creates free files until there are as many as the turnover requires. This is called on the
+    * openFilesExecutor, so the file IDs are kept in order with the files being reclaimed.
+    */
+   public void preCreateFiles() throws Exception
+   {
+      while (freeFiles.size() < preCreatedFilesTarget)
+      {
+         synchronized (this)
+         {
+            freeFiles.add(createFile(false, false, true, false, -1));
+         }
+      }
+   }
+
    public void closeFile(final JournalFile file) throws Exception
    {
       fileFactory.deactivateBuffer();
@@ -570,7 +631,8 @@ public class JournalFilesRepository
    }
 
    /**
-    * This method will create a new file on the file system, pre-fill it with FILL_CHARACTER
+    * This method will create a new file on the file system, pre-allocating it with
+    * {@link SequentialFile#preallocate(int, int, byte)}
     * @param keepOpened
     * @return an initialized journal file
     * @throws Exception
@@ -598,9 +660,9 @@ public class JournalFilesRepository
 
       if (init)
       {
-         sequentialFile.fill(0, fileSize, JournalImpl.FILL_CHARACTER);
+         sequentialFile.preallocate(0, fileSize, JournalImpl.FILL_CHARACTER);
 
-         JournalImpl.initFileHeader(fileFactory, sequentialFile, userVersion, fileID);
+         JournalImpl.initFileHeader(fileFactory, sequentialFile, journal.getFormatVersion(), userVersion, fileID);
       }
 
       long position = sequentialFile.position();
@@ -627,7 +689,7 @@ public class JournalFilesRepository
          sequentialFile.position(position);
       }
 
-      return new JournalFileImpl(sequentialFile, fileID, JournalImpl.FORMAT_VERSION);
+      return new JournalFileImpl(sequentialFile, fileID, journal.getFormatVersion());
    }
 
    /**
@@ -668,6 +730,43 @@ public class JournalFilesRepository
       }
    }
 
+   /**
+    * Updates the average time between two files being opened, and from it how many files the
+    * journal is expected to open over the {@link #PRE_CREATE_PERIOD}.
+    */
+   private void fileTurnedOver()
+   {
+      if (maxPreCreatedFiles == 0)
+      {
+         return;
+      }
+
+      synchronized (turnoverLock)
+      {
+         long now = System.nanoTime();
+
+         if (lastTurnoverTime != 0)
+         {
+            long interval = Math.max(1, now - lastTurnoverTime);
+
+            if (averageTurnoverInterval == 0)
+            {
+               averageTurnoverInterval = interval;
+            }
+            else
+            {
+               averageTurnoverInterval += interval - averageTurnoverInterval >> 3;
+            }
+
+            long expectedFiles = PRE_CREATE_PERIOD / Math.max(1, averageTurnoverInterval) + 1;
+
+            preCreatedFilesTarget = (int)Math.min(maxPreCreatedFiles, expectedFiles);
+         }
+
+         lastTurnoverTime = now;
+      }
+   }
+
    // Discard the old JournalFile and set it with a new ID
    private JournalFile reinitializeFile(final JournalFile file) throws Exception
    {
@@ -677,9 +776,11 @@ public class JournalFilesRepository
 
       sf.open(1, false);
 
-      int position = JournalImpl.initFileHeader(fileFactory, sf, userVersion, newFileID);
+      int journalVersion = journal.getFormatVersion();
+
+      int position = JournalImpl.initFileHeader(fileFactory, sf, journalVersion, userVersion, newFileID);
 
-      JournalFile jf = new JournalFileImpl(sf, newFileID, JournalImpl.FORMAT_VERSION);
+      JournalFile jf = new JournalFileImpl(sf, newFileID, journalVersion);
 
       sf.position(position);
 
@@ -61,6 +61,7 @@ import org.hornetq.core.journal.impl.dataformat.JournalCompleteRecordTX.TX_RECOR
 import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecordTX;
 import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
+import org.hornetq.core.journal.impl.dataformat.JournalRecordChecksum;
 import org.hornetq.core.journal.impl.dataformat.JournalRollbackRecordTX;
 import org.hornetq.journal.HornetQJournalBundle;
 import org.hornetq.journal.HornetQJournalLogger;
@@ -85,7 +86,10 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    public static final int FORMAT_VERSION = 2;
 
-   private static final int COMPATIBLE_VERSIONS[] = new int[] { 1 };
+   // written instead of FORMAT_VERSION when records have checksums, flagged on their compact count byte
+   public static final int CHECKSUM_FORMAT_VERSION = 3;
+
+   private static final int COMPATIBLE_VERSIONS[] = new int[] { 1, JournalImpl.CHECKSUM_FORMAT_VERSION };
 
    // Static --------------------------------------------------------
    private static final boolean trace = HornetQJournalLogger.LOGGER.isTraceEnabled();
@@ -179,7 +183,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    private final JournalFilesRepository filesRepository;
 
    // Compacting may replace this structure
-   private final ConcurrentMap<Long, JournalRecord> records = new ConcurrentHashMap<Long, JournalRecord>();
+   private volatile JournalRecordIndex records = new JournalRecordIndex();
 
    // Compacting may replace this structure
    private final ConcurrentMap<Long, JournalTransaction> transactions = new ConcurrentHashMap<Long, JournalTransaction>();
@@ -193,11 +197,31 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    private ExecutorService compactorExecutor = null;
 
+   // Number of threads reading and decoding files on load. With 1 (the default) files are loaded sequentially
+   private volatile int loadThreads = 1;
+
+   // Bytes per second the compactor may read from the data files, -1 for no limit
+   private volatile long compactMaxRate = -1;
+
+   // Data files each compacting pass takes, starting from the oldest one, 0 for all of them
+   private volatile int compactFilesPerPass = 0;
+
+   // Whether appended records end with a CRC32C of their content
+   private volatile boolean recordChecksum = false;
+
    // Lock used during the append of records
    // This lock doesn't represent a global lock.
    // After a record is appended, the usedFile can't be changed until the positives and negatives are updated
+   // It's only used when the file factory is not buffered, see concurrentAppends
    private final ReentrantLock lockAppend = new ReentrantLock();
 
+   // When the file factory is buffered the TimedBuffer reserves the space for each record atomically,
+   // so appends don't take lockAppend. The current file is then only replaced while holding the
+   // journalLock's write lock, so it can't change while an append holds the read lock
+   private final boolean concurrentAppends;
+
+   private final TimedBuffer timedBuffer;
+
    /**
     * We don't lock the journal during the whole compacting operation. During compacting we only
     * lock it (i) when gathering the initial structure, and (ii) when replicating the structures
@@ -205,7 +229,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
     * <p>
     * However we need to lock it while taking and updating snapshots
     */
-   private final ReadWriteLock journalLock = new ReentrantReadWriteLock();
+   private final ReentrantReadWriteLock journalLock = new ReentrantReadWriteLock();
    private final ReadWriteLock compactorLock = new ReentrantReadWriteLock();
 
    private volatile JournalFile currentFile;
@@ -267,6 +291,11 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       this.fileFactory = fileFactory;
 
+      timedBuffer = fileFactory instanceof AbstractSequentialFileFactory ? ((AbstractSequentialFileFactory)fileFactory).getTimedBuffer()
+                                                                          : null;
+
+      concurrentAppends = timedBuffer != null;
+
       filesRepository = new JournalFilesRepository(fileFactory,
                                                    this,
                                                    filePrefix,
@@ -346,7 +375,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       latch.await();
    }
 
-   public Map<Long, JournalRecord> getRecords()
+   public JournalRecordIndex getRecords()
    {
       return records;
    }
@@ -458,6 +487,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             short compactCount = 0;
 
+            boolean checksum = false;
+
             if (file.getJournalVersion() >= 2)
             {
                if (JournalImpl.isInvalidSize(journalFileSize, wholeFileBuffer.position(), DataConstants.SIZE_BYTE))
@@ -468,7 +499,16 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                   continue;
                }
 
-               compactCount = wholeFileBuffer.get();
+               byte compactCountByte = wholeFileBuffer.get();
+
+               if (file.getJournalVersion() >= JournalImpl.CHECKSUM_FORMAT_VERSION)
+               {
+                  checksum = (compactCountByte & JournalInternalRecord.CHECKSUM_FLAG) != 0;
+
+                  compactCountByte &= ~JournalInternalRecord.CHECKSUM_FLAG;
+               }
+
+               compactCount = compactCountByte;
             }
 
             long transactionID = 0;
@@ -576,6 +616,11 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             int recordSize = JournalImpl.getRecordSize(recordType, file.getJournalVersion());
 
+            if (checksum)
+            {
+               recordSize += DataConstants.SIZE_INT;
+            }
+
             // VI - this is completing V, We will validate the size at the end
             // of the record,
             // But we avoid buffer overflows by damaged data
@@ -639,6 +684,31 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                continue;
             }
 
+            if (checksum)
+            {
+               int checksumPos = pos + variableSize + recordSize + preparedTransactionExtraDataSize - 2 *
+                                 DataConstants.SIZE_INT;
+
+               // VIII - The content of the record has to match its CRC32C
+               if (wholeFileBuffer.getInt(checksumPos) != JournalRecordChecksum.crc32c(wholeFileBuffer,
+                                                                                       pos,
+                                                                                       checksumPos - pos))
+               {
+                  JournalImpl.trace("Record at position " + pos +
+                                    " recordType = " +
+                                    recordType +
+                                    " file:" +
+                                    file.getFile().getFileName() +
+                                    " doesn't match its checksum and it is being ignored (IV)");
+
+                  reader.markAsDataFile(file);
+
+                  wholeFileBuffer.position(pos + DataConstants.SIZE_BYTE);
+
+                  continue;
+               }
+            }
+
             wholeFileBuffer.position(oldPos);
 
             // At this point everything is checked. So we relax and just load
@@ -724,6 +794,12 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                }
             }
 
+            if (checksum)
+            {
+               // already verified at VIII
+               wholeFileBuffer.getInt();
+            }
+
             checkSize = wholeFileBuffer.getInt();
 
             // This is a sanity check about the loading code itself.
@@ -776,18 +852,20 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      JournalInternalRecord addRecord = new JournalAddRecord(true, id, recordType, record);
+
+      addRecord.setChecksum(recordChecksum);
+
+      lockForAppend(addRecord.getEncodeSize());
 
       try
       {
-         JournalInternalRecord addRecord = new JournalAddRecord(true, id, recordType, record);
-
          if (callback != null)
          {
             callback.storeLineUp();
          }
 
-         lockAppend.lock();
+         beginAppend();
          try
          {
             JournalFile usedFile = appendRecord(addRecord, false, sync, null, callback);
@@ -801,16 +879,16 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                                        usedFile);
             }
 
-            records.put(id, new JournalRecord(usedFile, addRecord.getEncodeSize()));
+            records.add(id, usedFile, addRecord.getEncodeSize());
          }
          finally
          {
-            lockAppend.unlock();
+            endAppend();
          }
       }
       finally
       {
-         journalLock.readLock().unlock();
+         unlockForAppend();
       }
    }
 
@@ -823,13 +901,17 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      JournalInternalRecord updateRecord = new JournalAddRecord(false, id, recordType, record);
+
+      updateRecord.setChecksum(recordChecksum);
+
+      lockForAppend(updateRecord.getEncodeSize());
 
       try
       {
-         JournalRecord jrnRecord = records.get(id);
+         boolean jrnRecord = records.contains(id);
 
-         if (jrnRecord == null)
+         if (!jrnRecord)
          {
             if (!(compactor != null && compactor.lookupRecord(id)))
             {
@@ -837,14 +919,12 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             }
          }
 
-         JournalInternalRecord updateRecord = new JournalAddRecord(false, id, recordType, record);
-
          if (callback != null)
          {
             callback.storeLineUp();
          }
 
-         lockAppend.lock();
+         beginAppend();
          try
          {
             JournalFile usedFile = appendRecord(updateRecord, false, sync, null, callback);
@@ -860,23 +940,23 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             // record== null here could only mean there is a compactor, and computing the delete should be done after
             // compacting is done
-            if (jrnRecord == null)
+            if (!jrnRecord)
             {
                compactor.addCommandUpdate(id, usedFile, updateRecord.getEncodeSize());
             }
             else
             {
-               jrnRecord.addUpdateFile(usedFile, updateRecord.getEncodeSize());
+               records.addUpdate(id, usedFile, updateRecord.getEncodeSize());
             }
          }
          finally
          {
-            lockAppend.unlock();
+            endAppend();
          }
       }
       finally
       {
-         journalLock.readLock().unlock();
+         unlockForAppend();
       }
    }
 
@@ -886,11 +966,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      JournalInternalRecord deleteRecord = new JournalDeleteRecord(id);
+
+      deleteRecord.setChecksum(recordChecksum);
+
+      lockForAppend(deleteRecord.getEncodeSize());
+
       try
       {
-
-         JournalRecord record = null;
+         JournalRecordIndex.RemovedRecord record = null;
 
          if (compactor == null)
          {
@@ -903,20 +987,18 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          }
          else
          {
-            if (!records.containsKey(id) && !compactor.lookupRecord(id))
+            if (!records.contains(id) && !compactor.lookupRecord(id))
             {
                throw new IllegalStateException("Cannot find add info " + id + " on compactor or current records");
             }
          }
 
-         JournalInternalRecord deleteRecord = new JournalDeleteRecord(id);
-
          if (callback != null)
          {
             callback.storeLineUp();
          }
 
-         lockAppend.lock();
+         beginAppend();
          try
          {
             JournalFile usedFile = appendRecord(deleteRecord, false, sync, null, callback);
@@ -940,12 +1022,12 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          }
          finally
          {
-            lockAppend.unlock();
+            endAppend();
          }
       }
       finally
       {
-         journalLock.readLock().unlock();
+         unlockForAppend();
       }
    }
 
@@ -957,15 +1039,17 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      JournalInternalRecord addRecord = new JournalAddRecordTX(true, txID, id, recordType, record);
+
+      addRecord.setChecksum(recordChecksum);
+
+      lockForAppend(addRecord.getEncodeSize());
 
       try
       {
-         JournalInternalRecord addRecord = new JournalAddRecordTX(true, txID, id, recordType, record);
-
          JournalTransaction tx = getTransactionInfo(txID);
 
-         lockAppend.lock();
+         beginAppend();
          try
          {
             JournalFile usedFile = appendRecord(addRecord, false, false, tx, null);
@@ -985,12 +1069,12 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          }
          finally
          {
-            lockAppend.unlock();
+            endAppend();
          }
       }
       finally
       {
-         journalLock.readLock().unlock();
+         unlockForAppend();
       }
    }
 
@@ -1015,15 +1099,17 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      JournalInternalRecord updateRecordTX = new JournalAddRecordTX(false, txID, id, recordType, record);
+
+      updateRecordTX.setChecksum(recordChecksum);
+
+      lockForAppend(updateRecordTX.getEncodeSize());
 
       try
       {
-         JournalInternalRecord updateRecordTX = new JournalAddRecordTX(false, txID, id, recordType, record);
-
          JournalTransaction tx = getTransactionInfo(txID);
 
-         lockAppend.lock();
+         beginAppend();
          try
          {
             JournalFile usedFile = appendRecord(updateRecordTX, false, false, tx, null);
@@ -1043,12 +1129,12 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          }
          finally
          {
-            lockAppend.unlock();
+            endAppend();
          }
       }
       finally
       {
-         journalLock.readLock().unlock();
+         unlockForAppend();
       }
    }
 
@@ -1058,15 +1144,17 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      JournalInternalRecord deleteRecordTX = new JournalDeleteRecordTX(txID, id, record);
+
+      deleteRecordTX.setChecksum(recordChecksum);
+
+      lockForAppend(deleteRecordTX.getEncodeSize());
 
       try
       {
-         JournalInternalRecord deleteRecordTX = new JournalDeleteRecordTX(txID, id, record);
-
          JournalTransaction tx = getTransactionInfo(txID);
 
-         lockAppend.lock();
+         beginAppend();
          try
          {
             JournalFile usedFile = appendRecord(deleteRecordTX, false, false, tx, null);
@@ -1084,12 +1172,12 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          }
          finally
          {
-            lockAppend.unlock();
+            endAppend();
          }
       }
       finally
       {
-         journalLock.readLock().unlock();
+         unlockForAppend();
       }
    }
 
@@ -1115,21 +1203,23 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      JournalInternalRecord prepareRecord =
+               new JournalCompleteRecordTX(TX_RECORD_TYPE.PREPARE, txID, transactionData);
+
+      prepareRecord.setChecksum(recordChecksum);
 
-     try
+      lockForAppend(prepareRecord.getEncodeSize());
+
+      try
       {
          JournalTransaction tx = getTransactionInfo(txID);
 
-         JournalInternalRecord prepareRecord =
-                  new JournalCompleteRecordTX(TX_RECORD_TYPE.PREPARE, txID, transactionData);
-
          if (callback != null)
          {
             callback.storeLineUp();
          }
 
-         lockAppend.lock();
+         beginAppend();
          try
          {
             JournalFile usedFile = appendRecord(prepareRecord, true, sync, tx, callback);
@@ -1143,13 +1233,13 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          }
          finally
          {
-            lockAppend.unlock();
+            endAppend();
          }
 
       }
       finally
       {
-         journalLock.readLock().unlock();
+         unlockForAppend();
       }
    }
 
@@ -1170,7 +1260,11 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      JournalInternalRecord commitRecord = new JournalCompleteRecordTX(TX_RECORD_TYPE.COMMIT, txID, null);
+
+      commitRecord.setChecksum(recordChecksum);
+
+      lockForAppend(commitRecord.getEncodeSize());
 
       try
       {
@@ -1181,14 +1275,12 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             throw new IllegalStateException("Cannot find tx with id " + txID);
          }
 
-         JournalInternalRecord commitRecord = new JournalCompleteRecordTX(TX_RECORD_TYPE.COMMIT, txID, null);
-
          if (callback != null && lineUpContext)
          {
             callback.storeLineUp();
          }
 
-         lockAppend.lock();
+         beginAppend();
          try
          {
             JournalFile usedFile = appendRecord(commitRecord, true, sync, tx, callback);
@@ -1202,13 +1294,13 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          }
          finally
          {
-            lockAppend.unlock();
+            endAppend();
          }
 
       }
       finally
       {
-         journalLock.readLock().unlock();
+         unlockForAppend();
       }
    }
 
@@ -1217,7 +1309,11 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    {
       checkJournalIsLoaded();
 
-      journalLock.readLock().lock();
+      JournalInternalRecord rollbackRecord = new JournalRollbackRecordTX(txID);
+
+      rollbackRecord.setChecksum(recordChecksum);
+
+      lockForAppend(rollbackRecord.getEncodeSize());
 
       JournalTransaction tx = null;
 
@@ -1230,14 +1326,12 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             throw new IllegalStateException("Cannot find tx with id " + txID);
          }
 
-         JournalInternalRecord rollbackRecord = new JournalRollbackRecordTX(txID);
-
          if (callback != null)
          {
             callback.storeLineUp();
          }
 
-         lockAppend.lock();
+         beginAppend();
          try
          {
             JournalFile usedFile = appendRecord(rollbackRecord, false, sync, tx, callback);
@@ -1246,13 +1340,13 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          }
          finally
          {
-            lockAppend.unlock();
+            endAppend();
          }
 
       }
       finally
       {
-         journalLock.readLock().unlock();
+         unlockForAppend();
       }
    }
 
@@ -1453,6 +1547,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
     *
     */
    protected synchronized void compact() throws Exception
+   {
+      compact(compactFilesPerPass);
+   }
+
+   /**
+    * Compacts the data files, or only the oldest of them when maxFiles is greater than 0 and some
+    * of them can be compacted on their own, see {@link #setCompactFilesPerPass(int)}.
+    */
+   protected synchronized void compact(final int maxFiles) throws Exception
    {
 
       if (compactor != null)
@@ -1463,198 +1566,382 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       compactorLock.writeLock().lock();
       try
       {
-      ArrayList<JournalFile> dataFilesToProcess = new ArrayList<JournalFile>(filesRepository.getDataFilesCount());
+         ArrayList<JournalFile> dataFilesToProcess = new ArrayList<JournalFile>(filesRepository.getDataFilesCount());
 
-         boolean previousReclaimValue = isAutoReclaim();
+         // When only some of the data files are compacted the other ones are left as they are, and so
+         // is the records index but for the records moved from the files being compacted
+         boolean incremental = false;
 
-      try
-      {
-         HornetQJournalLogger.LOGGER.debug("Starting compacting operation on journal");
+         SequentialFile controlFile = null;
 
-         onCompactStart();
+         boolean previousReclaimValue = isAutoReclaim();
 
-         // We need to guarantee that the journal is frozen for this short time
-         // We don't freeze the journal as we compact, only for the short time where we replace records
-         journalLock.writeLock().lock();
          try
          {
-            if (state != JournalState.LOADED)
+            HornetQJournalLogger.LOGGER.debug("Starting compacting operation on journal");
+
+            onCompactStart();
+
+            // We need to guarantee that the journal is frozen for this short time
+            // We don't freeze the journal as we compact, only for the short time where we replace records
+            journalLock.writeLock().lock();
+            try
             {
-               return;
-            }
+               if (state != JournalState.LOADED)
+               {
+                  return;
+               }
 
-            onCompactLockingTheJournal();
+               onCompactLockingTheJournal();
 
-            setAutoReclaim(false);
+               setAutoReclaim(false);
 
-            // We need to move to the next file, as we need a clear start for negatives and positives counts
-            moveNextFile(false);
+               // We need to move to the next file, as we need a clear start for negatives and positives counts
+               moveNextFile(false);
 
-            // Take the snapshots and replace the structures
+               if (maxFiles > 0)
+               {
+                  dataFilesToProcess.addAll(selectFilesToCompact(maxFiles));
 
-            dataFilesToProcess.addAll(filesRepository.getDataFiles());
+                  incremental = !dataFilesToProcess.isEmpty();
+               }
 
-            filesRepository.clearDataFiles();
+               if (incremental)
+               {
+                  for (JournalFile file : dataFilesToProcess)
+                  {
+                     filesRepository.removeDataFile(file);
+                  }
 
-            if (dataFilesToProcess.size() == 0)
-            {
-               trace("Finishing compacting, nothing to process");
-               return;
-            }
+                  // No open transaction has records on these files, so the transactions are left alone. The
+                  // compactor looks the records up on the current index, and the deletes are still replayed
+                  // after compacting as the compactor may already have moved the deleted records
+                  compactor = new JournalCompactor(fileFactory,
+                                                   this,
+                                                   filesRepository,
+                                                   records,
+                                                   dataFilesToProcess.get(0).getFileID(),
+                                                   dataFilesToProcess.get(dataFilesToProcess.size() - 1)
+                                                                     .getFileID());
+               }
+               else
+               {
+                  // Take the snapshots and replace the structures
 
-            compactor = new JournalCompactor(fileFactory,
-                                             this,
-                                             filesRepository,
-                                             records.keySet(),
-                                             dataFilesToProcess.get(0).getFileID());
+                  dataFilesToProcess.addAll(filesRepository.getDataFiles());
 
-            for (Map.Entry<Long, JournalTransaction> entry : transactions.entrySet())
-            {
-               compactor.addPendingTransaction(entry.getKey(), entry.getValue().getPositiveArray());
-               entry.getValue().setCompacting();
-            }
+                  filesRepository.clearDataFiles();
 
-            // We will calculate the new records during compacting, what will take the position the records will take
-            // after compacting
-            records.clear();
-         }
-         finally
-         {
-            journalLock.writeLock().unlock();
-         }
+                  if (dataFilesToProcess.size() == 0)
+                  {
+                     trace("Finishing compacting, nothing to process");
+                     return;
+                  }
 
-         Collections.sort(dataFilesToProcess, new JournalFileComparator());
+                  // The current records become the compactor's snapshot, as the compactor will calculate the
+                  // positions they take after compacting. The appends from now on go to a new index, so no
+                  // copy of the records is made while the journal is locked
+                  compactor = new JournalCompactor(fileFactory,
+                                                   this,
+                                                   filesRepository,
+                                                   records,
+                                                   dataFilesToProcess.get(0).getFileID());
 
-         // This is where most of the work is done, taking most of the time of the compacting routine.
-         // Notice there are no locks while this is being done.
+                  for (Map.Entry<Long, JournalTransaction> entry : transactions.entrySet())
+                  {
+                     compactor.addPendingTransaction(entry.getKey(), entry.getValue().getPositiveArray());
+                     entry.getValue().setCompacting();
+                  }
 
-         // Read the files, and use the JournalCompactor class to create the new outputFiles, and the new collections as
-         // well
-         for (final JournalFile file : dataFilesToProcess)
-         {
-            try
-            {
-               JournalImpl.readJournalFile(fileFactory, file, compactor);
+                  records = new JournalRecordIndex();
+               }
             }
-            catch (Throwable e)
+            finally
             {
-               HornetQJournalLogger.LOGGER.compactReadError(file);
-               throw new Exception("Error on reading compacting for " + file, e);
+               journalLock.writeLock().unlock();
             }
-         }
 
-         compactor.flush();
+            Collections.sort(dataFilesToProcess, new JournalFileComparator());
+
+            // This is where most of the work is done, taking most of the time of the compacting routine.
+            // Notice there are no locks while this is being done.
 
-         // pointcut for tests
-         // We need to test concurrent updates on the journal, as the compacting is being performed.
-         // Usually tests will use this to hold the compacting while other structures are being updated.
-         onCompactDone();
+            // Read the files, and use the JournalCompactor class to create the new outputFiles, and the new collections as
+            // well
+            long compactStart = System.nanoTime();
+            long bytesRead = 0;
+
+            for (final JournalFile file : dataFilesToProcess)
+            {
+               try
+               {
+                  JournalImpl.readJournalFile(fileFactory, file, compactor);
+               }
+               catch (Throwable e)
+               {
+                  HornetQJournalLogger.LOGGER.compactReadError(file);
+                  throw new Exception("Error on reading compacting for " + file, e);
+               }
 
-         List<JournalFile> newDatafiles = null;
+               bytesRead += fileSize;
 
-         JournalCompactor localCompactor = compactor;
+               throttleCompact(compactStart, bytesRead);
+            }
 
-         SequentialFile controlFile = createControlFile(dataFilesToProcess, compactor.getNewDataFiles(), null);
+            compactor.flush();
 
-         journalLock.writeLock().lock();
-         try
-         {
-            // Need to clear the compactor here, or the replay commands will send commands back (infinite loop)
-            compactor = null;
+            // pointcut for tests
+            // We need to test concurrent updates on the journal, as the compacting is being performed.
+            // Usually tests will use this to hold the compacting while other structures are being updated.
+            onCompactDone();
 
-            onCompactLockingTheJournal();
+            List<JournalFile> newDatafiles = null;
 
-            newDatafiles = localCompactor.getNewDataFiles();
+            JournalCompactor localCompactor = compactor;
 
-            // Restore newRecords created during compacting
-            for (Map.Entry<Long, JournalRecord> newRecordEntry : localCompactor.getNewRecords().entrySet())
-            {
-               records.put(newRecordEntry.getKey(), newRecordEntry.getValue());
-            }
+            controlFile = createControlFile(dataFilesToProcess, compactor.getNewDataFiles(), null);
 
-            // Restore compacted dataFiles
-            for (int i = newDatafiles.size() - 1; i >= 0; i--)
+            journalLock.writeLock().lock();
+            try
             {
-               JournalFile fileToAdd = newDatafiles.get(i);
+               // Need to clear the compactor here, or the replay commands will send commands back (infinite loop)
+               compactor = null;
+
+               onCompactLockingTheJournal();
+
+               newDatafiles = localCompactor.getNewDataFiles();
+
+               if (incremental)
+               {
+                  // Only the records moved by the compactor change on the index
+                  records.replaceCompacted(localCompactor.getNewRecords(),
+                                           new HashSet<JournalFile>(dataFilesToProcess));
+               }
+               else
+               {
+                  // The records moved by the compactor become the index, with the records added while compacting
+                  // (usually much fewer) put back into it
+                  JournalRecordIndex newRecords = localCompactor.getNewRecords();
+
+                  newRecords.putAll(records);
+
+                  records = newRecords;
+               }
+
+               // Restore compacted dataFiles
+               for (int i = newDatafiles.size() - 1; i >= 0; i--)
+               {
+                  JournalFile fileToAdd = newDatafiles.get(i);
+                  if (JournalImpl.trace)
+                  {
+                     JournalImpl.trace("Adding file " + fileToAdd + " back as datafile");
+                  }
+                  filesRepository.addDataFileOnTop(fileToAdd);
+               }
+
                if (JournalImpl.trace)
                {
-                  JournalImpl.trace("Adding file " + fileToAdd + " back as datafile");
+                  JournalImpl.trace("There are " + filesRepository.getDataFilesCount() + " datafiles Now");
                }
-               filesRepository.addDataFileOnTop(fileToAdd);
-            }
 
-            if (JournalImpl.trace)
-            {
-               JournalImpl.trace("There are " + filesRepository.getDataFilesCount() + " datafiles Now");
-            }
+               // Replay pending commands (including updates, deletes and commits)
+
+               for (JournalTransaction newTransaction : localCompactor.getNewTransactions().values())
+               {
+                  newTransaction.replaceRecordProvider(this);
+               }
+
+               localCompactor.replayPendingCommands();
 
-            // Replay pending commands (including updates, deletes and commits)
+               // Merge transactions back after compacting.
+               // This has to be done after the replay pending commands, as we need to delete commits
+               // that happened during the compacting
 
-            for (JournalTransaction newTransaction : localCompactor.getNewTransactions().values())
+               for (JournalTransaction newTransaction : localCompactor.getNewTransactions().values())
+               {
+                  if (JournalImpl.trace)
+                  {
+                     JournalImpl.trace("Merging pending transaction " + newTransaction + " after compacting the journal");
+                  }
+                  JournalTransaction liveTransaction = transactions.get(newTransaction.getId());
+                  if (liveTransaction != null)
+                  {
+                     liveTransaction.merge(newTransaction);
+                  }
+                  else
+                  {
+                     HornetQJournalLogger.LOGGER.compactMergeError(newTransaction.getId());
+                  }
+               }
+            }
+            finally
             {
-               newTransaction.replaceRecordProvider(this);
+               journalLock.writeLock().unlock();
             }
 
-            localCompactor.replayPendingCommands();
+            // At this point the journal is unlocked. We keep renaming files while the journal is already operational
+            renameFiles(dataFilesToProcess, newDatafiles);
+            deleteControlFile(controlFile);
 
-            // Merge transactions back after compacting.
-            // This has to be done after the replay pending commands, as we need to delete commits
-            // that happened during the compacting
+            HornetQJournalLogger.LOGGER.debug("Finished compacting on journal");
 
-            for (JournalTransaction newTransaction : localCompactor.getNewTransactions().values())
+         }
+         finally
+         {
+            // An Exception was probably thrown, and the compactor was not cleared
+            if (compactor != null)
             {
-               if (JournalImpl.trace)
+               JournalCompactor localCompactor = compactor;
+
+               try
                {
-                  JournalImpl.trace("Merging pending transaction " + newTransaction + " after compacting the journal");
+                  compactor.flush();
                }
-               JournalTransaction liveTransaction = transactions.get(newTransaction.getId());
-               if (liveTransaction != null)
+               catch (Throwable ignored)
                {
-                  liveTransaction.merge(newTransaction);
                }
-               else
+
+               if (incremental)
                {
-                  HornetQJournalLogger.LOGGER.compactMergeError(newTransaction.getId());
+                  abortCompact(localCompactor, dataFilesToProcess, controlFile);
                }
+
+               compactor = null;
             }
+            setAutoReclaim(previousReclaimValue);
          }
-         finally
-         {
-            journalLock.writeLock().unlock();
-         }
+      }
+      finally
+      {
+         compactorLock.writeLock().unlock();
+      }
 
-         // At this point the journal is unlocked. We keep renaming files while the journal is already operational
-         renameFiles(dataFilesToProcess, newDatafiles);
-         deleteControlFile(controlFile);
+   }
 
-         HornetQJournalLogger.LOGGER.debug("Finished compacting on journal");
+   /**
+    * Picks the oldest data files for a pass compacting only some of them. As they are the oldest
+    * ones, every record updated or deleted on them was also added on them. No open transaction may
+    * have records on them, and the transactions that do must also have been completed on them, as
+    * the compactor only knows what it reads. maxFiles are taken when possible, or more while the
+    * ones taken wouldn't free any file.
+    * @return an empty list when compacting some of the oldest files wouldn't free any of them
+    */
+   private List<JournalFile> selectFilesToCompact(final int maxFiles)
+   {
+      long firstOpenFileID = Long.MAX_VALUE;
 
+      for (JournalTransaction transaction : transactions.values())
+      {
+         firstOpenFileID = Math.min(firstOpenFileID, transaction.getFirstFileID());
       }
-      finally
+
+      ArrayList<JournalFile> dataFiles = new ArrayList<JournalFile>(filesRepository.getDataFiles());
+
+      Collections.sort(dataFiles, new JournalFileComparator());
+
+      long fileCapacity = fileSize - JournalImpl.SIZE_HEADER;
+
+      List<JournalFile> selected = Collections.emptyList();
+
+      long liveSize = 0;
+
+      long lastCompletionFileID = -1;
+
+      for (int i = 0; i < dataFiles.size(); i++)
       {
-         // An Exception was probably thrown, and the compactor was not cleared
-         if (compactor != null)
+         JournalFile file = dataFiles.get(i);
+
+         if (file.getFileID() >= firstOpenFileID)
          {
-            try
-            {
-               compactor.flush();
-            }
-            catch (Throwable ignored)
+            break;
+         }
+
+         liveSize += file.getLiveSize();
+
+         lastCompletionFileID = Math.max(lastCompletionFileID, file.getLastCompletionFileID());
+
+         boolean completed = lastCompletionFileID <= file.getFileID();
+
+         if (completed && i + 1 > (liveSize + fileCapacity - 1) / fileCapacity)
+         {
+            selected = dataFiles.subList(0, i + 1);
+
+            if (selected.size() >= maxFiles)
             {
+               break;
             }
-
-            compactor = null;
          }
-         setAutoReclaim(previousReclaimValue);
+      }
+
+      return new ArrayList<JournalFile>(selected);
+   }
+
+   /**
+    * Puts the files of an incremental pass that failed back as data files, with the commands that
+    * happened while compacting, and drops what the compactor wrote.
+    */
+   private void abortCompact(final JournalCompactor failedCompactor,
+                             final List<JournalFile> dataFilesToProcess,
+                             final SequentialFile controlFile)
+   {
+      journalLock.writeLock().lock();
+      try
+      {
+         compactor = null;
+
+         for (int i = dataFilesToProcess.size() - 1; i >= 0; i--)
+         {
+            filesRepository.addDataFileOnTop(dataFilesToProcess.get(i));
          }
+
+         failedCompactor.replayPendingCommands();
       }
       finally
       {
-         compactorLock.writeLock().unlock();
+         journalLock.writeLock().unlock();
       }
 
-   }
-
+      try
+      {
+         if (controlFile != null)
+         {
+            deleteControlFile(controlFile);
+         }
+
+         for (JournalFile file : failedCompactor.getNewDataFiles())
+         {
+            file.getFile().delete();
+         }
+      }
+      catch (Throwable e)
+      {
+         // the files are cleaned up on the next load anyway
+         HornetQJournalLogger.LOGGER.errorCompacting(e);
+      }
+   }
+
+   /**
+    * Holds the compactor back until reading bytesRead since start fits into the compactMaxRate.
+    */
+   private void throttleCompact(final long start, final long bytesRead) throws InterruptedException
+   {
+      long maxRate = compactMaxRate;
+
+      if (maxRate <= 0)
+      {
+         return;
+      }
+
+      long expectedTime = (long)(bytesRead * 1000000000d / maxRate);
+
+      long wait = expectedTime - (System.nanoTime() - start);
+
+      if (wait > 0)
+      {
+         TimeUnit.NANOSECONDS.sleep(wait);
+      }
+   }
+
    /**
     * <p>Load data accordingly to the record layouts</p>
     *
@@ -1737,272 +2024,345 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       // AtomicLong is used only as a reference, not as an Atomic value
       final AtomicLong maxID = new AtomicLong(-1);
 
-      for (final JournalFile file : orderedFiles)
+      final List<JournalLoadInformation.FileLoadInformation> filesLoadInformation = new ArrayList<JournalLoadInformation.FileLoadInformation>(orderedFiles.size());
+
+      ExecutorService loadExecutor = null;
+
+      ParallelJournalFileReader parallelReader = null;
+
+      if (loadThreads > 1 && orderedFiles.size() > 1)
       {
-         JournalImpl.trace("Loading file " + file.getFile().getFileName());
+         // Files are read and decoded in parallel, but their records are still applied here one file at a time and
+         // in the same order as the sequential load, as deletes and transactions may span over several files
+         loadExecutor = Executors.newFixedThreadPool(loadThreads, new ThreadFactory()
+         {
+            public Thread newThread(final Runnable r)
+            {
+               Thread thread = new Thread(r, "JournalImpl::LoadExecutor");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
 
-         final AtomicBoolean hasData = new AtomicBoolean(false);
+         parallelReader = new ParallelJournalFileReader(fileFactory, orderedFiles, loadExecutor, loadThreads * 2);
+      }
 
-         int resultLastPost = JournalImpl.readJournalFile(fileFactory, file, new JournalReaderCallback()
+      try
+      {
+         for (final JournalFile file : orderedFiles)
          {
+            JournalImpl.trace("Loading file " + file.getFile().getFileName());
+
+            final AtomicBoolean hasData = new AtomicBoolean(false);
 
-            private void checkID(final long id)
+            JournalReaderCallback fileLoader = new JournalReaderCallback()
             {
-               if (id > maxID.longValue())
+
+               private void checkID(final long id)
                {
-                  maxID.set(id);
+                  if (id > maxID.longValue())
+                  {
+                     maxID.set(id);
+                  }
                }
-            }
 
-            public void onReadAddRecord(final RecordInfo info) throws Exception
-            {
-               checkID(info.id);
-
-               hasData.set(true);
+               public void onReadAddRecord(final RecordInfo info) throws Exception
+               {
+                  checkID(info.id);
 
-               loadManager.addRecord(info);
+                  hasData.set(true);
 
-               records.put(info.id, new JournalRecord(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1));
-            }
+                  loadManager.addRecord(info);
 
-            public void onReadUpdateRecord(final RecordInfo info) throws Exception
-            {
-               checkID(info.id);
+                  records.add(info.id, file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1);
+               }
 
-               hasData.set(true);
+               public void onReadUpdateRecord(final RecordInfo info) throws Exception
+               {
+                  checkID(info.id);
 
-               loadManager.updateRecord(info);
+                  hasData.set(true);
 
-               JournalRecord posFiles = records.get(info.id);
+                  loadManager.updateRecord(info);
 
-               if (posFiles != null)
-               {
-                  // It's legal for this to be null. The file(s) with the may
+                  // It's legal for the record to not be found. The file(s) with the add may
                   // have been deleted
                   // just leaving some updates in this file
-
-                  posFiles.addUpdateFile(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1); // +1 = compact
+                  records.addUpdate(info.id, file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1); // +1 = compact
                   // count
                }
-            }
 
-            public void onReadDeleteRecord(final long recordID) throws Exception
-            {
-               hasData.set(true);
+               public void onReadDeleteRecord(final long recordID) throws Exception
+               {
+                  hasData.set(true);
 
-               loadManager.deleteRecord(recordID);
+                  loadManager.deleteRecord(recordID);
 
-               JournalRecord posFiles = records.remove(recordID);
+                  records.delete(recordID, file);
+               }
 
-               if (posFiles != null)
+               public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
                {
-                  posFiles.delete(file);
+                  onReadAddRecordTX(transactionID, info);
                }
-            }
 
-            public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
-            {
-               onReadAddRecordTX(transactionID, info);
-            }
-
-            public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
-            {
-
-               checkID(info.id);
-
-               hasData.set(true);
-
-               TransactionHolder tx = loadTransactions.get(transactionID);
-
-               if (tx == null)
+               public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
                {
-                  tx = new TransactionHolder(transactionID);
 
-                  loadTransactions.put(transactionID, tx);
-               }
+                  checkID(info.id);
 
-               tx.recordInfos.add(info);
+                  hasData.set(true);
 
-               JournalTransaction tnp = transactions.get(transactionID);
+                  TransactionHolder tx = loadTransactions.get(transactionID);
 
-               if (tnp == null)
-               {
-                  tnp = new JournalTransaction(transactionID, JournalImpl.this);
+                  if (tx == null)
+                  {
+                     tx = new TransactionHolder(transactionID);
 
-                  transactions.put(transactionID, tnp);
-               }
+                     loadTransactions.put(transactionID, tx);
+                  }
 
-               tnp.addPositive(file, info.id, info.data.length + JournalImpl.SIZE_ADD_RECORD_TX + 1); // +1 = compact
-               // count
-            }
+                  tx.recordInfos.add(info);
 
-            public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
-            {
-               hasData.set(true);
+                  JournalTransaction tnp = transactions.get(transactionID);
 
-               TransactionHolder tx = loadTransactions.get(transactionID);
+                  if (tnp == null)
+                  {
+                     tnp = new JournalTransaction(transactionID, JournalImpl.this);
 
-               if (tx == null)
-               {
-                  tx = new TransactionHolder(transactionID);
+                     transactions.put(transactionID, tnp);
+                  }
 
-                  loadTransactions.put(transactionID, tx);
+                  tnp.addPositive(file, info.id, info.data.length + JournalImpl.SIZE_ADD_RECORD_TX + 1); // +1 = compact
+                  // count
                }
 
-               tx.recordsToDelete.add(info);
-
-               JournalTransaction tnp = transactions.get(transactionID);
-
-               if (tnp == null)
+               public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
                {
-                  tnp = new JournalTransaction(transactionID, JournalImpl.this);
-
-                  transactions.put(transactionID, tnp);
-               }
+                  hasData.set(true);
 
-               tnp.addNegative(file, info.id);
+                  TransactionHolder tx = loadTransactions.get(transactionID);
 
-            }
+                  if (tx == null)
+                  {
+                     tx = new TransactionHolder(transactionID);
 
-            public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords) throws Exception
-            {
-               hasData.set(true);
+                     loadTransactions.put(transactionID, tx);
+                  }
 
-               TransactionHolder tx = loadTransactions.get(transactionID);
+                  tx.recordsToDelete.add(info);
 
-               if (tx == null)
-               {
-                  // The user could choose to prepare empty transactions
-                  tx = new TransactionHolder(transactionID);
+                  JournalTransaction tnp = transactions.get(transactionID);
 
-                  loadTransactions.put(transactionID, tx);
-               }
+                  if (tnp == null)
+                  {
+                     tnp = new JournalTransaction(transactionID, JournalImpl.this);
 
-               tx.prepared = true;
+                     transactions.put(transactionID, tnp);
+                  }
 
-               tx.extraData = extraData;
+                  tnp.addNegative(file, info.id);
 
-               JournalTransaction journalTransaction = transactions.get(transactionID);
+               }
 
-               if (journalTransaction == null)
+               public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords) throws Exception
                {
-                  journalTransaction = new JournalTransaction(transactionID, JournalImpl.this);
+                  hasData.set(true);
 
-                  transactions.put(transactionID, journalTransaction);
-               }
+                  TransactionHolder tx = loadTransactions.get(transactionID);
 
-               boolean healthy = checkTransactionHealth(file, journalTransaction, orderedFiles, numberOfRecords);
+                  if (tx == null)
+                  {
+                     // The user could choose to prepare empty transactions
+                     tx = new TransactionHolder(transactionID);
 
-               if (healthy)
-               {
-                  journalTransaction.prepare(file);
-               }
-               else
-               {
-                  HornetQJournalLogger.LOGGER.preparedTXIncomplete(transactionID);
-                  tx.invalid = true;
-               }
-            }
+                     loadTransactions.put(transactionID, tx);
+                  }
 
-            public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
-            {
-               TransactionHolder tx = loadTransactions.remove(transactionID);
+                  tx.prepared = true;
 
-               // The commit could be alone on its own journal-file and the
-               // whole transaction body was reclaimed but not the
-               // commit-record
-               // So it is completely legal to not find a transaction at this
-               // point
-               // If we can't find it, we assume the TX was reclaimed and we
-               // ignore this
-               if (tx != null)
-               {
-                  JournalTransaction journalTransaction = transactions.remove(transactionID);
+                  tx.extraData = extraData;
+
+                  JournalTransaction journalTransaction = transactions.get(transactionID);
 
                   if (journalTransaction == null)
                   {
-                     throw new IllegalStateException("Cannot find tx " + transactionID);
+                     journalTransaction = new JournalTransaction(transactionID, JournalImpl.this);
+
+                     transactions.put(transactionID, journalTransaction);
                   }
 
                   boolean healthy = checkTransactionHealth(file, journalTransaction, orderedFiles, numberOfRecords);
 
                   if (healthy)
                   {
-                     for (RecordInfo txRecord : tx.recordInfos)
+                     journalTransaction.prepare(file);
+                  }
+                  else
+                  {
+                     HornetQJournalLogger.LOGGER.preparedTXIncomplete(transactionID);
+                     tx.invalid = true;
+                  }
+               }
+
+               public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
+               {
+                  TransactionHolder tx = loadTransactions.remove(transactionID);
+
+                  // The commit could be alone on its own journal-file and the
+                  // whole transaction body was reclaimed but not the
+                  // commit-record
+                  // So it is completely legal to not find a transaction at this
+                  // point
+                  // If we can't find it, we assume the TX was reclaimed and we
+                  // ignore this
+                  if (tx != null)
+                  {
+                     JournalTransaction journalTransaction = transactions.remove(transactionID);
+
+                     if (journalTransaction == null)
                      {
-                        if (txRecord.isUpdate)
+                        throw new IllegalStateException("Cannot find tx " + transactionID);
+                     }
+
+                     boolean healthy = checkTransactionHealth(file, journalTransaction, orderedFiles, numberOfRecords);
+
+                     if (healthy)
+                     {
+                        for (RecordInfo txRecord : tx.recordInfos)
                         {
-                           loadManager.updateRecord(txRecord);
+                           if (txRecord.isUpdate)
+                           {
+                              loadManager.updateRecord(txRecord);
+                           }
+                           else
+                           {
+                              loadManager.addRecord(txRecord);
+                           }
                         }
-                        else
+
+                        for (RecordInfo deleteValue : tx.recordsToDelete)
                         {
-                           loadManager.addRecord(txRecord);
+                           loadManager.deleteRecord(deleteValue.id);
                         }
-                     }
 
-                     for (RecordInfo deleteValue : tx.recordsToDelete)
+                        journalTransaction.commit(file);
+                     }
+                     else
                      {
-                        loadManager.deleteRecord(deleteValue.id);
+                        HornetQJournalLogger.LOGGER.txMissingElements(transactionID);
+
+                        journalTransaction.forget();
                      }
 
-                     journalTransaction.commit(file);
+                     hasData.set(true);
                   }
-                  else
+
+               }
+
+               public void onReadRollbackRecord(final long transactionID) throws Exception
+               {
+                  TransactionHolder tx = loadTransactions.remove(transactionID);
+
+                  // The rollback could be alone on its own journal-file and the
+                  // whole transaction body was reclaimed but the commit-record
+                  // So it is completely legal to not find a transaction at this
+                  // point
+                  if (tx != null)
                   {
-                     HornetQJournalLogger.LOGGER.txMissingElements(transactionID);
+                     JournalTransaction tnp = transactions.remove(transactionID);
+
+                     if (tnp == null)
+                     {
+                        throw new IllegalStateException("Cannot find tx " + transactionID);
+                     }
+
+                     // There is no need to validate summaries/holes on
+                     // Rollbacks.. We will ignore the data anyway.
+                     tnp.rollback(file);
 
-                     journalTransaction.forget();
+                     hasData.set(true);
                   }
+               }
 
+               public void markAsDataFile(final JournalFile file)
+               {
                   hasData.set(true);
                }
 
-            }
+            };
+
+            long loadStart = System.nanoTime();
 
-            public void onReadRollbackRecord(final long transactionID) throws Exception
+            int resultLastPost;
+
+            int numberOfRecords;
+
+            long readTime;
+
+            if (parallelReader != null)
             {
-               TransactionHolder tx = loadTransactions.remove(transactionID);
+               BufferedJournalReaderCallback bufferedFile = parallelReader.next();
 
-               // The rollback could be alone on its own journal-file and the
-               // whole transaction body was reclaimed but the commit-record
-               // So it is completely legal to not find a transaction at this
-               // point
-               if (tx != null)
-               {
-                  JournalTransaction tnp = transactions.remove(transactionID);
+               resultLastPost = bufferedFile.replay(fileLoader);
 
-                  if (tnp == null)
-                  {
-                     throw new IllegalStateException("Cannot find tx " + transactionID);
-                  }
+               numberOfRecords = bufferedFile.getNumberOfRecords();
 
-                  // There is no need to validate summaries/holes on
-                  // Rollbacks.. We will ignore the data anyway.
-                  tnp.rollback(file);
+               readTime = bufferedFile.getReadTime();
+            }
+            else
+            {
+               CountingJournalReaderCallback countingLoader = new CountingJournalReaderCallback(fileLoader);
 
-                  hasData.set(true);
-               }
+               resultLastPost = JournalImpl.readJournalFile(fileFactory, file, countingLoader);
+
+               numberOfRecords = countingLoader.numberOfRecords;
+
+               readTime = -1;
             }
 
-            public void markAsDataFile(final JournalFile file)
+            long loadTime = System.nanoTime() - loadStart;
+
+            if (readTime < 0)
             {
-               hasData.set(true);
+               // on the sequential load the records are applied as the file is read
+               readTime = loadTime;
             }
 
-         });
+            JournalLoadInformation.FileLoadInformation fileInformation =
+               new JournalLoadInformation.FileLoadInformation(file.getFileID(),
+                                                              file.getFile().getFileName(),
+                                                              file.getFile().size(),
+                                                              numberOfRecords,
+                                                              readTime,
+                                                              loadTime);
 
-         if (hasData.get())
-         {
-            lastDataPos = resultLastPost;
-            filesRepository.addDataFileOnBottom(file);
-         }
-         else
-         {
-            if (changeData)
+            filesLoadInformation.add(fileInformation);
+
+            JournalImpl.trace("Loaded " + fileInformation);
+
+            if (hasData.get())
             {
-               // Empty dataFiles with no data
-               filesRepository.addFreeFile(file, false, false);
+               lastDataPos = resultLastPost;
+               filesRepository.addDataFileOnBottom(file);
             }
+            else
+            {
+               if (changeData)
+               {
+                  // Empty dataFiles with no data
+                  filesRepository.addFreeFile(file, false, false);
+               }
+            }
+         }
+
+      }
+      finally
+      {
+         if (parallelReader != null)
+         {
+            parallelReader.close();
+            loadExecutor.shutdown();
          }
       }
 
@@ -2055,7 +2415,14 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       checkReclaimStatus();
 
-      return new JournalLoadInformation(records.size(), maxID.longValue());
+      JournalLoadInformation loadInformation = new JournalLoadInformation(records.size(), maxID.longValue());
+
+      for (JournalLoadInformation.FileLoadInformation fileInformation : filesLoadInformation)
+      {
+         loadInformation.addFileLoadInformation(fileInformation);
+      }
+
+      return loadInformation;
    }
 
    /**
@@ -2318,6 +2685,107 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       return filesRepository.getMaxAIO();
    }
 
+   public int getLoadThreads()
+   {
+      return loadThreads;
+   }
+
+   /**
+    * Sets the number of threads reading and decoding files when the journal is loaded. With more
+    * than one thread several files are read in parallel, while their records are still applied in
+    * file order.
+    */
+   public void setLoadThreads(final int loadThreads)
+   {
+      if (loadThreads < 1)
+      {
+         throw new IllegalArgumentException("loadThreads must be at least 1, was " + loadThreads);
+      }
+      this.loadThreads = loadThreads;
+   }
+
+   public long getCompactMaxRate()
+   {
+      return compactMaxRate;
+   }
+
+   /**
+    * Limits how fast the compactor reads the data files, in bytes per second, so compacting doesn't
+    * take all the disk bandwidth from the appends. -1 means no limit.
+    */
+   public void setCompactMaxRate(final long compactMaxRate)
+   {
+      if (compactMaxRate == 0 || compactMaxRate < -1)
+      {
+         throw new IllegalArgumentException("compactMaxRate must be -1 or greater than 0, was " + compactMaxRate);
+      }
+      this.compactMaxRate = compactMaxRate;
+   }
+
+   public int getCompactFilesPerPass()
+   {
+      return compactFilesPerPass;
+   }
+
+   /**
+    * Makes each compacting pass take only the oldest filesPerPass data files, so a pass doesn't
+    * read the whole journal, and it doesn't replace the index of the records on the other files.
+    * More files are taken when these ones wouldn't free any, and every data file is compacted when
+    * an open transaction has records on the oldest ones. 0 compacts every data file on each pass.
+    */
+   public void setCompactFilesPerPass(final int compactFilesPerPass)
+   {
+      if (compactFilesPerPass < 0)
+      {
+         throw new IllegalArgumentException("compactFilesPerPass must be 0 or greater, was " + compactFilesPerPass);
+      }
+      this.compactFilesPerPass = compactFilesPerPass;
+   }
+
+   public boolean isRecordChecksum()
+   {
+      return recordChecksum;
+   }
+
+   /**
+    * Makes every record appended, including the ones rewritten by the compactor, end with a CRC32C
+    * of its content, which is verified when the record is read. Every record says whether it has a
+    * checksum, so files can hold records with and without checksums.
+    * <p>
+    * Only files written in {@link #CHECKSUM_FORMAT_VERSION} can hold checksums, and the files are
+    * only written in that version when checksums are enabled, so this must be set before the
+    * journal is loaded.
+    */
+   public void setRecordChecksum(final boolean recordChecksum)
+   {
+      if (state == JournalState.LOADED)
+      {
+         throw new IllegalStateException("The record checksum can't be changed on a loaded journal");
+      }
+      this.recordChecksum = recordChecksum;
+   }
+
+   /**
+    * @return the version written on new files, the older version unless records have checksums
+    */
+   int getFormatVersion()
+   {
+      return recordChecksum ? JournalImpl.CHECKSUM_FORMAT_VERSION : JournalImpl.FORMAT_VERSION;
+   }
+
+   public int getMaxPreCreatedFiles()
+   {
+      return filesRepository.getMaxPreCreatedFiles();
+   }
+
+   /**
+    * @see JournalFilesRepository#setMaxPreCreatedFiles(int)
+    */
+   public void setMaxPreCreatedFiles(final int maxPreCreatedFiles)
+   {
+      filesRepository.setMaxPreCreatedFiles(maxPreCreatedFiles);
+   }
+
    public int getUserVersion()
    {
       return userVersion;
@@ -2326,7 +2794,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    // In some tests we need to force the journal to move to a next file
    public void forceMoveNextFile() throws Exception
    {
-      journalLock.readLock().lock();
+      // the write lock, as appends may not be holding lockAppend
+      journalLock.writeLock().lock();
       try
       {
          lockAppend.lock();
@@ -2342,7 +2811,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       }
       finally
       {
-         journalLock.readLock().unlock();
+         journalLock.writeLock().unlock();
       }
    }
 
@@ -2698,13 +3167,28 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                                     final SequentialFile sequentialFile,
                                     final int userVersion,
                                     final long fileID) throws Exception
+   {
+      return JournalImpl.initFileHeader(fileFactory, sequentialFile, JournalImpl.FORMAT_VERSION, userVersion, fileID);
+   }
+
+   /**
+    * @param journalVersion the format version of the file
+    * @param fileID
+    * @param sequentialFile
+    * @throws Exception
+    */
+   public static int initFileHeader(final SequentialFileFactory fileFactory,
+                                    final SequentialFile sequentialFile,
+                                    final int journalVersion,
+                                    final int userVersion,
+                                    final long fileID) throws Exception
    {
       // We don't need to release buffers while writing.
       ByteBuffer bb = fileFactory.newBuffer(JournalImpl.SIZE_HEADER);
 
       HornetQBuffer buffer = HornetQBuffers.wrappedBuffer(bb);
 
-      JournalImpl.writeHeader(buffer, userVersion, fileID);
+      JournalImpl.writeHeader(buffer, journalVersion, userVersion, fileID);
 
       bb.rewind();
 
@@ -2724,7 +3208,21 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
     */
    public static void writeHeader(final HornetQBuffer buffer, final int userVersion, final long fileID)
    {
-      buffer.writeInt(JournalImpl.FORMAT_VERSION);
+      JournalImpl.writeHeader(buffer, JournalImpl.FORMAT_VERSION, userVersion, fileID);
+   }
+
+   /**
+    * @param buffer
+    * @param journalVersion the format version of the file
+    * @param userVersion
+    * @param fileID
+    */
+   public static void writeHeader(final HornetQBuffer buffer,
+                                  final int journalVersion,
+                                  final int userVersion,
+                                  final long fileID)
+   {
+      buffer.writeInt(journalVersion);
 
       buffer.writeInt(userVersion);
 
@@ -2748,7 +3246,11 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       final int size = encoder.getEncodeSize();
 
-      switchFileIfNecessary(size);
+      // with concurrent appends the space was already reserved by lockForAppend
+      if (!concurrentAppends)
+      {
+         switchFileIfNecessary(size);
+      }
 
       if (tx != null)
       {
@@ -2797,6 +3299,107 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       return currentFile;
    }
 
+   /**
+    * Takes the read lock for appending a record. With concurrent appends this also reserves the
+    * space for the record on the current file, before the append looks at the records and
+    * transactions, as moving to the next file may need to release the read lock.
+    */
+   private void lockForAppend(final int size) throws Exception
+   {
+      journalLock.readLock().lock();
+
+      if (concurrentAppends)
+      {
+         try
+         {
+            reserveOnCurrentFile(size);
+         }
+         catch (Exception e)
+         {
+            journalLock.readLock().unlock();
+            throw e;
+         }
+      }
+   }
+
+   private void unlockForAppend()
+   {
+      if (concurrentAppends)
+      {
+         // if the append failed before writing the record, the space reserved is given back
+         timedBuffer.cancelReservation();
+      }
+
+      journalLock.readLock().unlock();
+   }
+
+   private void beginAppend()
+   {
+      if (!concurrentAppends)
+      {
+         lockAppend.lock();
+      }
+   }
+
+   private void endAppend()
+   {
+      if (!concurrentAppends)
+      {
+         lockAppend.unlock();
+      }
+   }
+
+   /**
+    * Reserves space for the record on the current file, moving to the next file if it doesn't fit.
+    * <p>
+    * This is used instead of {@link #switchFileIfNecessary(int)} when appends are concurrent. The
+    * caller holds the read lock (only once), which is exchanged for the write lock while moving to
+    * the next file. Only the first thread finding the file full moves it, the others just retry on
+    * the new file. The reservation is consumed by the next write of the calling thread.
+    */
+   private void reserveOnCurrentFile(final int size) throws Exception
+   {
+      // We take into account the fileID used on the Header
+      if (size > fileSize - currentFile.getFile().calculateBlockStart(JournalImpl.SIZE_HEADER))
+      {
+         throw new IllegalArgumentException("Record is too large to store " + size);
+      }
+
+      while (true)
+      {
+         JournalFile file = currentFile;
+
+         if (file.getFile().fits(size))
+         {
+            return;
+         }
+
+         if (journalLock.getReadHoldCount() != 1)
+         {
+            throw new IllegalStateException("The journal read lock must be held exactly once when appending");
+         }
+
+         journalLock.readLock().unlock();
+
+         journalLock.writeLock().lock();
+         try
+         {
+            if (currentFile == file)
+            {
+               moveNextFile(true);
+            }
+         }
+         finally
+         {
+            // downgrading, so nobody can move the file again before we write to it
+            journalLock.readLock().lock();
+            journalLock.writeLock().unlock();
+         }
+
+         checkJournalIsLoaded();
+      }
+   }
+
    @Override
    void scheduleReclaim()
    {
@@ -2961,6 +3564,78 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    }
 
+   // Used on Load, to count the records of each file
+   private static class CountingJournalReaderCallback implements JournalReaderCallback
+   {
+      private final JournalReaderCallback delegate;
+
+      private int numberOfRecords;
+
+      public CountingJournalReaderCallback(final JournalReaderCallback delegate)
+      {
+         this.delegate = delegate;
+      }
+
+      public void onReadAddRecord(final RecordInfo info) throws Exception
+      {
+         numberOfRecords++;
+         delegate.onReadAddRecord(info);
+      }
+
+      public void onReadUpdateRecord(final RecordInfo info) throws Exception
+      {
+         numberOfRecords++;
+         delegate.onReadUpdateRecord(info);
+      }
+
+      public void onReadDeleteRecord(final long recordID) throws Exception
+      {
+         numberOfRecords++;
+         delegate.onReadDeleteRecord(recordID);
+      }
+
+      public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
+      {
+         numberOfRecords++;
+         delegate.onReadAddRecordTX(transactionID, info);
+      }
+
+      public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
+      {
+         numberOfRecords++;
+         delegate.onReadUpdateRecordTX(transactionID, info);
+      }
+
+      public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
+      {
+         numberOfRecords++;
+         delegate.onReadDeleteRecordTX(transactionID, info);
+      }
+
+      public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords) throws Exception
+      {
+         this.numberOfRecords++;
+         delegate.onReadPrepareRecord(transactionID, extraData, numberOfRecords);
+      }
+
+      public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
+      {
+         this.numberOfRecords++;
+         delegate.onReadCommitRecord(transactionID, numberOfRecords);
+      }
+
+      public void onReadRollbackRecord(final long transactionID) throws Exception
+      {
+         numberOfRecords++;
+         delegate.onReadRollbackRecord(transactionID);
+      }
+
+      public void markAsDataFile(final JournalFile file)
+      {
+         delegate.markAsDataFile(file);
+      }
+   }
+
    private static class JournalFileComparator implements Comparator<JournalFile>, Serializable
    {
       private static final long serialVersionUID = -6264728973604070321L;
@@ -2988,7 +3663,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       @Override
       public void run()
       {
-         lockAppend.lock();
+         beginAppend();
          try
          {
 
@@ -3011,7 +3686,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             for (int i = 0; i < pages; i++)
             {
-               appendRecord(blastRecord, false, false, null, null);
+               lockForAppend(blastRecord.getEncodeSize());
+               try
+               {
+                  appendRecord(blastRecord, false, false, null, null);
+               }
+               finally
+               {
+                  unlockForAppend();
+               }
             }
          }
          catch (Exception e)
@@ -3020,7 +3703,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          }
          finally
          {
-            lockAppend.unlock();
+            endAppend();
          }
       }
    }
@@ -3095,6 +3778,13 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       // The current file is the last one that has data
 
       currentFile = filesRepository.pollLastDataFile();
+      if (currentFile != null && currentFile.getJournalVersion() < getFormatVersion())
+      {
+         // records with checksums can't be appended to a file of an older format
+         filesRepository.addDataFileOnBottom(currentFile);
+         currentFile = null;
+      }
+
       if (currentFile != null)
       {
          if (!currentFile.getFile().isOpen())
@@ -0,0 +1,574 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.util.Set;
+
+/**
+ * This holds the relationship every live record has with the journal files in regard to reference
+ * counting, used on the ref-count for reclaiming.
+ * <p>
+ * There is no boxed key, map entry or record object per record: each record takes one slot on a
+ * set of parallel arrays (id, add file and add size), on an open addressing table with linear
+ * probing. The files holding updates for a record
+ * are only allocated for records that were actually updated, and consecutive updates on the same
+ * file are collapsed into a single entry.
+ * <p>
+ * The table is split into stripes, each one guarded by its own lock, as records are added,
+ * updated and deleted concurrently while holding the journal's read lock.
+ */
+public final class JournalRecordIndex
+{
+   // Constants -----------------------------------------------------
+
+   private static final int STRIPES = 32;
+
+   private static final int STRIPE_SHIFT = 26;
+
+   private static final int INITIAL_CAPACITY = 64;
+
+   // Attributes ----------------------------------------------------
+
+   private final Stripe[] stripes = new Stripe[STRIPES];
+
+   // Constructors --------------------------------------------------
+
+   public JournalRecordIndex()
+   {
+      for (int i = 0; i < STRIPES; i++)
+      {
+         stripes[i] = new Stripe();
+      }
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * Adds a record, taking into account its size and positive count on addFile. If the record
+    * already existed it's replaced.
+    */
+   public void add(final long id, final JournalFile addFile, final int size)
+   {
+      addFile.incPosCount();
+
+      addFile.addSize(size);
+
+      int hash = hash(id);
+
+      stripes[hash >>> STRIPE_SHIFT].put(hash, id, addFile, size, null);
+   }
+
+   /**
+    * @return false if the record doesn't exist, in which case nothing is accounted
+    */
+   public boolean addUpdate(final long id, final JournalFile updateFile, final int size)
+   {
+      int hash = hash(id);
+
+      if (stripes[hash >>> STRIPE_SHIFT].addUpdate(hash, id, updateFile, size))
+      {
+         updateFile.incPosCount();
+
+         updateFile.addSize(size);
+
+         return true;
+      }
+      else
+      {
+         return false;
+      }
+   }
+
+   public boolean contains(final long id)
+   {
+      int hash = hash(id);
+
+      return stripes[hash >>> STRIPE_SHIFT].indexOf(hash, id) >= 0;
+   }
+
+   /**
+    * Removes the record, adding the negative counts for its add and update files to deleteFile.
+    * @return false if the record doesn't exist
+    */
+   public boolean delete(final long id, final JournalFile deleteFile)
+   {
+      RemovedRecord removed = remove(id);
+
+      if (removed == null)
+      {
+         return false;
+      }
+
+      removed.delete(deleteFile);
+
+      return true;
+   }
+
+   /**
+    * Removes the record, leaving the negative counts to be taken into account later through
+    * {@link RemovedRecord#delete(JournalFile)}, once the file holding the delete is known.
+    * @return null if the record doesn't exist
+    */
+   public RemovedRecord remove(final long id)
+   {
+      int hash = hash(id);
+
+      return stripes[hash >>> STRIPE_SHIFT].remove(hash, id);
+   }
+
+   /**
+    * Moves every record from other into this index. The file counts are not touched as they were
+    * already taken into account when the records were added to other.
+    */
+   public void putAll(final JournalRecordIndex other)
+   {
+      for (Stripe stripe : other.stripes)
+      {
+         synchronized (stripe)
+         {
+            for (int i = 0; i < stripe.files.length; i++)
+            {
+               if (stripe.files[i] != null)
+               {
+                  long id = stripe.keys[i];
+                  int hash = hash(id);
+                  stripes[hash >>> STRIPE_SHIFT].put(hash, id, stripe.files[i], stripe.sizes[i], stripe.updates[i]);
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Moves the records a compactor rewrote from compactedFiles onto the files it wrote, as held by
+    * compacted: their add and the updates they had on compactedFiles are replaced by the ones on
+    * compacted, while their updates on any other file are kept. The file counts are not touched,
+    * compacted already took the new files into account and compactedFiles are going away.
+    */
+   public void replaceCompacted(final JournalRecordIndex compacted, final Set<JournalFile> compactedFiles)
+   {
+      for (Stripe stripe : compacted.stripes)
+      {
+         synchronized (stripe)
+         {
+            for (int i = 0; i < stripe.files.length; i++)
+            {
+               if (stripe.files[i] != null)
+               {
+                  long id = stripe.keys[i];
+                  int hash = hash(id);
+                  stripes[hash >>> STRIPE_SHIFT].replace(hash,
+                                                         id,
+                                                         stripe.files[i],
+                                                         stripe.sizes[i],
+                                                         stripe.updates[i],
+                                                         compactedFiles);
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * @return a copy of the IDs of every live record
+    */
+   public long[] getIDs()
+   {
+      long[] ids = new long[size()];
+      int count = 0;
+      for (Stripe stripe : stripes)
+      {
+         synchronized (stripe)
+         {
+            for (int i = 0; i < stripe.files.length; i++)
+            {
+               if (stripe.files[i] != null)
+               {
+                  if (count == ids.length)
+                  {
+                     // records were added while we were copying
+                     long[] newIDs = new long[ids.length * 2 + 1];
+                     System.arraycopy(ids, 0, newIDs, 0, count);
+                     ids = newIDs;
+                  }
+                  ids[count++] = stripe.keys[i];
+               }
+            }
+         }
+      }
+
+      if (count != ids.length)
+      {
+         long[] newIDs = new long[count];
+         System.arraycopy(ids, 0, newIDs, 0, count);
+         ids = newIDs;
+      }
+
+      return ids;
+   }
+
+   public int size()
+   {
+      int size = 0;
+      for (Stripe stripe : stripes)
+      {
+         size += stripe.size;
+      }
+      return size;
+   }
+
+   public boolean isEmpty()
+   {
+      return size() == 0;
+   }
+
+   public void clear()
+   {
+      for (Stripe stripe : stripes)
+      {
+         stripe.clear();
+      }
+   }
+
+   @Override
+   public String toString()
+   {
+      return "JournalRecordIndex(size=" + size() + ")";
+   }
+
+   // Private -------------------------------------------------------
+
+   private static int hash(final long id)
+   {
+      long h = id * 0x9E3779B97F4A7C15L;
+      return (int)(h ^ (h >>> 32)) & Integer.MAX_VALUE;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class Stripe
+   {
+      private long[] keys;
+
+      /** The file holding the add record. A null file means the slot is empty */
+      private JournalFile[] files;
+
+      private int[] sizes;
+
+      private UpdateFiles[] updates;
+
+      private volatile int size;
+
+      Stripe()
+      {
+         allocate(INITIAL_CAPACITY);
+      }
+
+      private void allocate(final int capacity)
+      {
+         keys = new long[capacity];
+         files = new JournalFile[capacity];
+         sizes = new int[capacity];
+         updates = new UpdateFiles[capacity];
+      }
+
+      synchronized void put(final int hash,
+                            final long id,
+                            final JournalFile file,
+                            final int recordSize,
+                            final UpdateFiles recordUpdates)
+      {
+         int mask = files.length - 1;
+         int slot = hash & mask;
+
+         while (files[slot] != null)
+         {
+            if (keys[slot] == id)
+            {
+               files[slot] = file;
+               sizes[slot] = recordSize;
+               updates[slot] = recordUpdates;
+               return;
+            }
+            slot = (slot + 1) & mask;
+         }
+
+         keys[slot] = id;
+         files[slot] = file;
+         sizes[slot] = recordSize;
+         updates[slot] = recordUpdates;
+
+         size++;
+
+         if (size > (files.length >> 1) + (files.length >> 2))
+         {
+            rehash(files.length << 1);
+         }
+      }
+
+      synchronized int indexOf(final int hash, final long id)
+      {
+         int mask = files.length - 1;
+         int slot = hash & mask;
+
+         while (files[slot] != null)
+         {
+            if (keys[slot] == id)
+            {
+               return slot;
+            }
+            slot = (slot + 1) & mask;
+         }
+
+         return -1;
+      }
+
+      synchronized boolean addUpdate(final int hash, final long id, final JournalFile updateFile, final int size)
+      {
+         int slot = indexOf(hash, id);
+
+         if (slot < 0)
+         {
+            return false;
+         }
+
+         if (updates[slot] == null)
+         {
+            updates[slot] = new UpdateFiles();
+         }
+
+         updates[slot].add(updateFile, size);
+
+         return true;
+      }
+
+      synchronized void replace(final int hash,
+                                final long id,
+                                final JournalFile file,
+                                final int recordSize,
+                                final UpdateFiles recordUpdates,
+                                final Set<JournalFile> replacedFiles)
+      {
+         int slot = indexOf(hash, id);
+
+         if (slot < 0)
+         {
+            put(hash, id, file, recordSize, recordUpdates);
+            return;
+         }
+
+         UpdateFiles mergedUpdates = recordUpdates;
+
+         if (updates[slot] != null)
+         {
+            if (mergedUpdates == null)
+            {
+               mergedUpdates = new UpdateFiles();
+            }
+
+            mergedUpdates.addAll(updates[slot], replacedFiles);
+
+            if (mergedUpdates.length == 0)
+            {
+               mergedUpdates = null;
+            }
+         }
+
+         files[slot] = file;
+         sizes[slot] = recordSize;
+         updates[slot] = mergedUpdates;
+      }
+
+      synchronized RemovedRecord remove(final int hash, final long id)
+      {
+         int slot = indexOf(hash, id);
+
+         if (slot < 0)
+         {
+            return null;
+         }
+
+         RemovedRecord removed = new RemovedRecord(files[slot], sizes[slot], updates[slot]);
+
+         int mask = files.length - 1;
+
+         // backward shift deletion, so we don't need tombstones on the table
+         int hole = slot;
+         int next = (hole + 1) & mask;
+
+         while (files[next] != null)
+         {
+            int ideal = hash(keys[next]) & mask;
+
+            // the entry at next can only fill the hole if its ideal slot is not cyclically within (hole, next]
+            boolean canMove = hole <= next ? (ideal <= hole || ideal > next) : (ideal <= hole && ideal > next);
+
+            if (canMove)
+            {
+               keys[hole] = keys[next];
+               files[hole] = files[next];
+               sizes[hole] = sizes[next];
+               updates[hole] = updates[next];
+               hole = next;
+            }
+
+            next = (next + 1) & mask;
+         }
+
+         files[hole] = null;
+         updates[hole] = null;
+
+         size--;
+
+         return removed;
+      }
+
+      synchronized void clear()
+      {
+         allocate(INITIAL_CAPACITY);
+         size = 0;
+      }
+
+      private void rehash(final int newCapacity)
+      {
+         long[] oldKeys = keys;
+         JournalFile[] oldFiles = files;
+         int[] oldSizes = sizes;
+         UpdateFiles[] oldUpdates = updates;
+
+         allocate(newCapacity);
+
+         int mask = newCapacity - 1;
+
+         for (int i = 0; i < oldFiles.length; i++)
+         {
+            if (oldFiles[i] != null)
+            {
+               int slot = hash(oldKeys[i]) & mask;
+               while (files[slot] != null)
+               {
+                  slot = (slot + 1) & mask;
+               }
+               keys[slot] = oldKeys[i];
+               files[slot] = oldFiles[i];
+               sizes[slot] = oldSizes[i];
+               updates[slot] = oldUpdates[i];
+            }
+         }
+      }
+   }
+
+   /**
+    * A record that was removed from the index, but whose delete wasn't accounted yet.
+    */
+   public static final class RemovedRecord
+   {
+      private final JournalFile addFile;
+
+      private final int size;
+
+      private final UpdateFiles updates;
+
+      RemovedRecord(final JournalFile addFile, final int size, final UpdateFiles updates)
+      {
+         this.addFile = addFile;
+         this.size = size;
+         this.updates = updates;
+      }
+
+      /** Adds the negative counts for the add and update files of this record to deleteFile */
+      public void delete(final JournalFile deleteFile)
+      {
+         deleteFile.incNegCount(addFile);
+         addFile.decSize(size);
+
+         if (updates != null)
+         {
+            updates.delete(deleteFile);
+         }
+      }
+   }
+
+   /**
+    * The files holding updates for a single record, with the number of updates and total size on
+    * each one of them.
+    */
+   private static final class UpdateFiles
+   {
+      private JournalFile[] files = new JournalFile[2];
+
+      private int[] sizes = new int[2];
+
+      private int[] counts = new int[2];
+
+      private int length;
+
+      void add(final JournalFile file, final int size)
+      {
+         add(file, size, 1);
+      }
+
+      /** Adds the updates other has on any file but the excluded ones */
+      void addAll(final UpdateFiles other, final Set<JournalFile> excluded)
+      {
+         for (int i = 0; i < other.length; i++)
+         {
+            if (!excluded.contains(other.files[i]))
+            {
+               add(other.files[i], other.sizes[i], other.counts[i]);
+            }
+         }
+      }
+
+      private void add(final JournalFile file, final int size, final int count)
+      {
+         if (length > 0 && files[length - 1] == file)
+         {
+            sizes[length - 1] += size;
+            counts[length - 1] += count;
+            return;
+         }
+
+         if (length == files.length)
+         {
+            JournalFile[] newFiles = new JournalFile[length * 2];
+            int[] newSizes = new int[length * 2];
+            int[] newCounts = new int[length * 2];
+            System.arraycopy(files, 0, newFiles, 0, length);
+            System.arraycopy(sizes, 0, newSizes, 0, length);
+            System.arraycopy(counts, 0, newCounts, 0, length);
+            files = newFiles;
+            sizes = newSizes;
+            counts = newCounts;
+         }
+
+         files[length] = file;
+         sizes[length] = size;
+         counts[length] = count;
+         length++;
+      }
+
+      void delete(final JournalFile deleteFile)
+      {
+         for (int i = 0; i < length; i++)
+         {
+            for (int c = 0; c < counts[i]; c++)
+            {
+               deleteFile.incNegCount(files[i]);
+            }
+            files[i].decSize(sizes[i]);
+         }
+      }
+   }
+}
@@ -26,6 +26,9 @@ import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 
 /**
  * A JournalTransaction
+ * <p>
+ * The methods changing the transaction are synchronized, as records from the same transaction may
+ * be appended concurrently when the journal appends are not serialized by the appendLock.
  *
  * @author <a href="mailto:clebert.suconic@jboss.org">Clebert Suconic</a>
  *
@@ -75,17 +78,17 @@ public class JournalTransaction
       return id;
    }
 
-   public int getCounter(final JournalFile file)
+   public synchronized int getCounter(final JournalFile file)
    {
       return internalgetCounter(file).intValue();
    }
 
-   public void incCounter(final JournalFile file)
+   public synchronized void incCounter(final JournalFile file)
    {
       internalgetCounter(file).incrementAndGet();
    }
 
-   public long[] getPositiveArray()
+   public synchronized long[] getPositiveArray()
    {
       if (pos == null)
       {
@@ -103,7 +106,25 @@ public class JournalTransaction
       }
    }
 
-   public void setCompacting()
+   /**
+    * @return the lowest ID of the files this transaction has records on, Long.MAX_VALUE if it has none
+    */
+   public synchronized long getFirstFileID()
+   {
+      long firstFileID = Long.MAX_VALUE;
+
+      if (pendingFiles != null)
+      {
+         for (JournalFile file : pendingFiles)
+         {
+            firstFileID = Math.min(firstFileID, file.getFileID());
+         }
+      }
+
+      return firstFileID;
+   }
+
+   public synchronized void setCompacting()
    {
       compacting = true;
 
@@ -113,7 +134,7 @@ public class JournalTransaction
    }
 
    /** This is used to merge transactions from compacting */
-   public void merge(final JournalTransaction other)
+   public synchronized void merge(final JournalTransaction other)
    {
       if (other.pos != null)
       {
@@ -151,7 +172,7 @@ public class JournalTransaction
    /**
     *
     */
-   public void clear()
+   public synchronized void clear()
    {
       // / Compacting is recreating all the previous files and everything
       // / so we just clear the list of previous files, previous pos and previous adds
@@ -188,12 +209,12 @@ public class JournalTransaction
     * @param currentFile
     * @param data
     */
-   public void fillNumberOfRecords(final JournalFile currentFile, final JournalInternalRecord data)
+   public synchronized void fillNumberOfRecords(final JournalFile currentFile, final JournalInternalRecord data)
    {
       data.setNumberOfRecords(getCounter(currentFile));
    }
 
-   public TransactionCallback getCallback(final JournalFile file) throws Exception
+   public synchronized TransactionCallback getCallback(final JournalFile file) throws Exception
    {
       if (callbackList == null)
       {
@@ -218,7 +239,7 @@ public class JournalTransaction
       return currentCallback;
    }
 
-   public void addPositive(final JournalFile file, final long id, final int size)
+   public synchronized void addPositive(final JournalFile file, final long id, final int size)
    {
       incCounter(file);
 
@@ -232,7 +253,7 @@ public class JournalTransaction
       pos.add(new JournalUpdate(file, id, size));
    }
 
-   public void addNegative(final JournalFile file, final long id)
+   public synchronized void addNegative(final JournalFile file, final long id)
    {
       incCounter(file);
 
@@ -249,7 +270,7 @@ public class JournalTransaction
    /**
     * The caller of this method needs to guarantee appendLock.lock at the journal. (unless this is being called from load what is a single thread process).
     * */
-   public void commit(final JournalFile file)
+   public synchronized void commit(final JournalFile file)
    {
       JournalCompactor compactor = journal.getCompactor();
 
@@ -264,8 +285,6 @@ public class JournalTransaction
          {
             for (JournalUpdate trUpdate : pos)
             {
-               JournalRecord posFiles = journal.getRecords().get(trUpdate.id);
-
                if (compactor != null && compactor.lookupRecord(trUpdate.id))
                {
                   // This is a case where the transaction was opened after compacting was started,
@@ -273,15 +292,9 @@ public class JournalTransaction
                   // We need to cache the counter update, so compacting will take the correct files when it is done
                   compactor.addCommandUpdate(trUpdate.id, trUpdate.file, trUpdate.size);
                }
-               else if (posFiles == null)
+               else if (!journal.getRecords().addUpdate(trUpdate.id, trUpdate.file, trUpdate.size))
                {
-                  posFiles = new JournalRecord(trUpdate.file, trUpdate.size);
-
-                  journal.getRecords().put(trUpdate.id, posFiles);
-               }
-               else
-               {
-                  posFiles.addUpdateFile(trUpdate.file, trUpdate.size);
+                  journal.getRecords().add(trUpdate.id, trUpdate.file, trUpdate.size);
                }
             }
          }
@@ -296,12 +309,7 @@ public class JournalTransaction
                }
                else
                {
-                  JournalRecord posFiles = journal.getRecords().remove(trDelete.id);
-
-                  if (posFiles != null)
-                  {
-                     posFiles.delete(trDelete.file);
-                  }
+                  journal.getRecords().delete(trDelete.id, trDelete.file);
                }
             }
          }
@@ -312,6 +320,7 @@ public class JournalTransaction
          for (JournalFile jf : pendingFiles)
          {
             file.incNegCount(jf);
+            jf.completeTransaction(file);
          }
       }
    }
@@ -340,7 +349,7 @@ public class JournalTransaction
     * The caller of this method needs to guarantee appendLock.lock before calling this method if being used outside of the lock context.
     * or else potFilesMap could be affected
     * */
-   public void rollback(final JournalFile file)
+   public synchronized void rollback(final JournalFile file)
    {
       JournalCompactor compactor = journal.getCompactor();
 
@@ -363,6 +372,7 @@ public class JournalTransaction
          for (JournalFile jf : pendingFiles)
          {
             file.incNegCount(jf);
+            jf.completeTransaction(file);
          }
       }
    }
@@ -371,7 +381,7 @@ public class JournalTransaction
     * The caller of this method needs to guarantee appendLock.lock before calling this method if being used outside of the lock context.
     * or else potFilesMap could be affected
     * */
-   public void prepare(final JournalFile file)
+   public synchronized void prepare(final JournalFile file)
    {
       // We don't want the prepare record getting deleted before time
 
@@ -379,7 +389,7 @@ public class JournalTransaction
    }
 
    /** Used by load, when the transaction was not loaded correctly */
-   public void forget()
+   public synchronized void forget()
    {
       // The transaction was not committed or rolled back in the file, so we
       // reverse any pos counts we added
@@ -0,0 +1,469 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+
+import org.hornetq.api.core.HornetQExceptionType;
+import org.hornetq.api.core.HornetQIOErrorException;
+import org.hornetq.core.journal.IOAsyncTask;
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.journal.HornetQJournalBundle;
+import org.hornetq.journal.HornetQJournalLogger;
+
+/**
+ * A SequentialFile that appends through a {@link MappedByteBuffer}.
+ * <p>
+ * Journal files are pre-filled to a fixed size, so the whole file is mapped once and the
+ * {@link TimedBuffer} is handed a slice of the mapping as its flush buffer: the flush copies the
+ * pending records straight into the page cache and no write syscall is issued. The mapping is only
+ * forced to disk when a sync was requested.
+ * <p>
+ * Files that were not pre-filled (such as paging files) are mapped in {@link #GROWTH_CHUNK} steps
+ * and truncated back to the written size on {@link #close()}.
+ */
+public class MappedSequentialFile extends AbstractSequentialFile
+{
+   /** Files that are written past their size are extended (and re-mapped) by this many bytes at a time */
+   private static final int GROWTH_CHUNK = 1024 * 1024;
+
+   private FileChannel channel;
+
+   private RandomAccessFile rfile;
+
+   private volatile MappedByteBuffer mappedBuffer;
+
+   /** The slice of {@link #mappedBuffer} handed out to the TimedBuffer on its last newBuffer call */
+   private ByteBuffer pendingSlice;
+
+   /** The size of the file when it was opened. We never truncate the file below this */
+   private long openedSize;
+
+   /** The highest position written since the file was opened */
+   private long writtenSize;
+
+   private boolean useExecutor;
+
+   private final int defaultMaxIO;
+
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final String directory,
+                               final String fileName,
+                               final int maxIO,
+                               final Executor writerExecutor)
+   {
+      super(directory, new File(directory + "/" + fileName), factory, writerExecutor);
+      defaultMaxIO = maxIO;
+   }
+
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final File file,
+                               final int maxIO,
+                               final Executor writerExecutor)
+   {
+      super(file.getParent(), new File(file.getPath()), factory, writerExecutor);
+      defaultMaxIO = maxIO;
+   }
+
+   public int getAlignment()
+   {
+      return 1;
+   }
+
+   public int calculateBlockStart(final int position) throws Exception
+   {
+      return position;
+   }
+
+   public synchronized boolean isOpen()
+   {
+      return channel != null;
+   }
+
+   public synchronized void open() throws Exception
+   {
+      open(defaultMaxIO, true);
+   }
+
+   public synchronized void open(final int maxIO, final boolean useExecutor) throws Exception
+   {
+      try
+      {
+         rfile = new RandomAccessFile(getFile(), "rw");
+
+         channel = rfile.getChannel();
+
+         fileSize = channel.size();
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+
+      openedSize = fileSize;
+
+      writtenSize = 0;
+
+      this.useExecutor = writerExecutor != null && useExecutor;
+   }
+
+   public synchronized void fill(final int position, final int size, final byte fillCharacter) throws Exception
+   {
+      unmap();
+
+      ByteBuffer bb = ByteBuffer.allocate(size);
+
+      for (int i = 0; i < size; i++)
+      {
+         bb.put(fillCharacter);
+      }
+
+      bb.flip();
+
+      channel.position(position);
+
+      channel.write(bb);
+
+      channel.force(false);
+
+      channel.position(0);
+
+      fileSize = channel.size();
+
+      openedSize = fileSize;
+   }
+
+   public synchronized void waitForClose() throws Exception
+   {
+      while (isOpen())
+      {
+         wait();
+      }
+   }
+
+   @Override
+   public synchronized void close() throws Exception
+   {
+      super.close();
+
+      unmap();
+
+      if (channel != null)
+      {
+         long logicalSize = Math.max(openedSize, writtenSize);
+         if (channel.size() > logicalSize)
+         {
+            // we grew the file ahead of the writes, give back what was never written
+            channel.truncate(logicalSize);
+         }
+         channel.close();
+      }
+
+      if (rfile != null)
+      {
+         rfile.close();
+      }
+
+      channel = null;
+
+      rfile = null;
+
+      notifyAll();
+   }
+
+   public int read(final ByteBuffer bytes) throws Exception
+   {
+      return read(bytes, null);
+   }
+
+   public synchronized int read(final ByteBuffer bytes, final IOAsyncTask callback) throws Exception
+   {
+      try
+      {
+         if (channel == null)
+         {
+            throw new Exception("File " + this.getFileName() + " has a null channel");
+         }
+
+         // The channel and the mapping share the same page cache, so reads see any mapped write
+         int bytesRead = channel.read(bytes);
+
+         if (callback != null)
+         {
+            callback.done();
+         }
+
+         bytes.flip();
+
+         return bytesRead;
+      }
+      catch (IOException e)
+      {
+         if (callback != null)
+         {
+            callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getLocalizedMessage());
+         }
+
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+
+         throw e;
+      }
+   }
+
+   public void sync() throws IOException
+   {
+      // not synchronized as close() holds the lock while waiting on the executor calling us
+      MappedByteBuffer buffer = mappedBuffer;
+
+      if (buffer != null)
+      {
+         buffer.force();
+      }
+   }
+
+   /**
+    * While the file is open this is the written size, and not the size we may have extended the
+    * file to when mapping it.
+    */
+   public synchronized long size() throws Exception
+   {
+      if (channel == null)
+      {
+         return getFile().length();
+      }
+      else
+      {
+         return Math.max(openedSize, writtenSize);
+      }
+   }
+
+   @Override
+   public synchronized void position(final long pos) throws Exception
+   {
+      super.position(pos);
+      channel.position(pos);
+   }
+
+   @Override
+   public String toString()
+   {
+      return "MappedSequentialFile " + getFile();
+   }
+
+   public SequentialFile cloneFile()
+   {
+      return new MappedSequentialFile(factory, getFile(), defaultMaxIO, writerExecutor);
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback)
+   {
+      if (callback == null)
+      {
+         throw new NullPointerException("callback parameter need to be set");
+      }
+
+      try
+      {
+         internalWrite(bytes, sync, callback);
+      }
+      catch (Exception e)
+      {
+         callback.onError(HornetQExceptionType.GENERIC_EXCEPTION.getCode(), e.getMessage());
+      }
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync) throws Exception
+   {
+      internalWrite(bytes, sync, null);
+   }
+
+   public void writeInternal(final ByteBuffer bytes) throws Exception
+   {
+      internalWrite(bytes, true, null);
+   }
+
+   /**
+    * The TimedBuffer will copy its content into the returned buffer before calling flushBuffer, so
+    * we give it the mapped region it is about to be written to.
+    */
+   @Override
+   protected synchronized ByteBuffer newBuffer(final int size, final int limit)
+   {
+      try
+      {
+         int start = (int)position.get();
+
+         ensureMapped(start + limit);
+
+         ByteBuffer slice = mappedBuffer.duplicate();
+         slice.position(start);
+         slice.limit(start + limit);
+         pendingSlice = slice.slice();
+
+         return pendingSlice;
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         // falling back to a regular buffer, writeDirect will then copy it
+         return super.newBuffer(limit, limit);
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   private void internalWrite(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback) throws Exception
+   {
+      if (!isOpen())
+      {
+         if (callback != null)
+         {
+            callback.onError(HornetQExceptionType.IO_ERROR.getCode(), "File not opened");
+         }
+         else
+         {
+            throw HornetQJournalBundle.BUNDLE.fileNotOpened();
+         }
+         return;
+      }
+
+      try
+      {
+         appendToMapping(bytes);
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         if (callback != null)
+         {
+            callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+         }
+         return;
+      }
+
+      if (useExecutor && callback != null)
+      {
+         // The data is already on the page cache. We only use the executor to keep the force (and the
+         // callbacks) off the caller's thread, in the same order the writes were made
+         writerExecutor.execute(new Runnable()
+         {
+            public void run()
+            {
+               complete(sync, callback);
+            }
+         });
+      }
+      else
+      {
+         complete(sync, callback);
+      }
+   }
+
+   private synchronized void appendToMapping(final ByteBuffer bytes) throws IOException
+   {
+      int length = bytes.remaining();
+
+      long start = position.getAndAdd(length);
+
+      if (bytes != pendingSlice)
+      {
+         ensureMapped(start + length);
+
+         ByteBuffer target = mappedBuffer.duplicate();
+         target.position((int)start);
+         target.put(bytes);
+      }
+
+      pendingSlice = null;
+
+      if (start + length > writtenSize)
+      {
+         writtenSize = start + length;
+      }
+   }
+
+   private void complete(final boolean sync, final IOAsyncTask callback)
+   {
+      try
+      {
+         if (sync)
+         {
+            sync();
+         }
+
+         if (callback != null)
+         {
+            callback.done();
+         }
+      }
+      catch (Throwable e)
+      {
+         HornetQJournalLogger.LOGGER.errorSubmittingWrite(e);
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         if (callback != null)
+         {
+            callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+         }
+      }
+   }
+
+   /** Makes sure the mapping covers the file up to requiredSize, growing the file if needed */
+   private void ensureMapped(final long requiredSize) throws IOException
+   {
+      if (mappedBuffer != null && mappedBuffer.capacity() >= requiredSize)
+      {
+         return;
+      }
+
+      long newSize = Math.max(fileSize, requiredSize);
+
+      if (newSize > fileSize)
+      {
+         newSize = ((newSize + GROWTH_CHUNK - 1) / GROWTH_CHUNK) * GROWTH_CHUNK;
+      }
+
+      if (newSize > Integer.MAX_VALUE)
+      {
+         throw new IOException("File " + getFileName() + " can't be mapped beyond " + Integer.MAX_VALUE + " bytes");
+      }
+
+      if (mappedBuffer != null)
+      {
+         // Pages written through the previous mapping must be on disk before we stop tracking it
+         mappedBuffer.force();
+      }
+
+      mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+
+      fileSize = newSize;
+   }
+
+   /**
+    * There's no public API to release a mapping before it's garbage collected, and forcing one that
+    * was released would crash the VM, so we just stop referencing it.
+    */
+   private void unmap()
+   {
+      mappedBuffer = null;
+      pendingSlice = null;
+   }
+}
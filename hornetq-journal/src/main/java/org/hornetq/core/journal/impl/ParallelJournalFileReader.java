@@ -0,0 +1,136 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.hornetq.core.journal.SequentialFileFactory;
+
+/**
+ * Reads and decodes journal files on an executor, handing them back in the order they were given.
+ * <p>
+ * At most {@code maxPendingFiles} files are read ahead of the one being consumed, as every pending
+ * file keeps all its records in memory until it's consumed.
+ */
+final class ParallelJournalFileReader
+{
+   // Attributes ----------------------------------------------------
+
+   private final SequentialFileFactory fileFactory;
+
+   private final List<JournalFile> files;
+
+   private final ExecutorService executor;
+
+   private final int maxPendingFiles;
+
+   private final LinkedList<Future<BufferedJournalReaderCallback>> pending = new LinkedList<Future<BufferedJournalReaderCallback>>();
+
+   private int nextFile;
+
+   // Constructors --------------------------------------------------
+
+   ParallelJournalFileReader(final SequentialFileFactory fileFactory,
+                             final List<JournalFile> files,
+                             final ExecutorService executor,
+                             final int maxPendingFiles)
+   {
+      this.fileFactory = fileFactory;
+      this.files = files;
+      this.executor = executor;
+      this.maxPendingFiles = maxPendingFiles;
+
+      fill();
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * Waits for the next file (in the order they were given) to be read.
+    */
+   public BufferedJournalReaderCallback next() throws Exception
+   {
+      Future<BufferedJournalReaderCallback> future = pending.poll();
+
+      if (future == null)
+      {
+         throw new IllegalStateException("There are no more files to be read");
+      }
+
+      BufferedJournalReaderCallback result;
+
+      try
+      {
+         result = future.get();
+      }
+      catch (ExecutionException e)
+      {
+         if (e.getCause() instanceof Exception)
+         {
+            throw (Exception)e.getCause();
+         }
+         throw e;
+      }
+
+      fill();
+
+      return result;
+   }
+
+   /**
+    * Stops reading ahead, waiting for the reads already submitted so no file is left open behind
+    * the caller's back. A cancelled task could still be running, so we don't cancel them.
+    */
+   public void close()
+   {
+      nextFile = files.size();
+
+      for (Future<BufferedJournalReaderCallback> future : pending)
+      {
+         try
+         {
+            future.get();
+         }
+         catch (Exception ignored)
+         {
+            // the load already failed, or it would not be closing the reader early
+         }
+      }
+
+      pending.clear();
+   }
+
+   // Private -------------------------------------------------------
+
+   private void fill()
+   {
+      while (pending.size() < maxPendingFiles && nextFile < files.size())
+      {
+         final JournalFile file = files.get(nextFile++);
+
+         pending.add(executor.submit(new Callable<BufferedJournalReaderCallback>()
+         {
+            public BufferedJournalReaderCallback call() throws Exception
+            {
+               return new BufferedJournalReaderCallback(file).read(fileFactory);
+            }
+         }));
+      }
+   }
+}
@@ -0,0 +1,931 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.api.core.HornetQExceptionType;
+import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.core.journal.IOAsyncTask;
+import org.hornetq.core.journal.IOCompletion;
+import org.hornetq.core.journal.Journal;
+import org.hornetq.core.journal.JournalLoadInformation;
+import org.hornetq.core.journal.LoaderCallback;
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.TransactionFailureCallback;
+import org.hornetq.journal.HornetQJournalLogger;
+
+/**
+ * A journal spreading its records over a number of independent journals (stripes), so appends
+ * going to different stripes don't contend on the same lock, file and buffer.
+ * <p>
+ * A record always goes to the same stripe as every other record with its ID, which is what makes
+ * updates and deletes find the record they refer to. Transactions touching a single stripe are
+ * handled by that stripe alone. Transactions spanning more than one stripe are committed with a
+ * two phase protocol:
+ * <ol>
+ * <li>every participant stripe prepares the transaction (unless it was already prepared by the
+ * user), the preparation being marked with empty extra data</li>
+ * <li>a commit decision record is stored on the first stripe</li>
+ * <li>every participant stripe commits the transaction</li>
+ * <li>the decision record is deleted</li>
+ * </ol>
+ * Every step is synced before the next one starts. The steps are chained on the completions of the
+ * stripes and run on an executor, so the caller isn't blocked while they're synced: its callback is
+ * completed once the commit records are synced or, if it didn't ask for a sync, once they're
+ * written. On load, a transaction prepared by this protocol is committed on every stripe if its decision was
+ * stored and rolled back otherwise. Transactions prepared by the user are merged over the stripes
+ * and reported as one, hence their extra data cannot be empty.
+ * <p>
+ * Records stored on a stripe other than their own (i.e. the number of stripes was changed) are
+ * kept where they are until deleted.
+ */
+public final class StripedJournal extends JournalBase
+{
+   // Constants -----------------------------------------------------
+
+   private static final byte[] PREPARE_MARKER = new byte[0];
+
+   private static final byte COMMIT_DECISION_RECORD = 0;
+
+   private static final int[] COORDINATOR = new int[] { 0 };
+
+   private static final int PREPARE_STEP = 0;
+
+   private static final int DECISION_STEP = 1;
+
+   private static final int COMMIT_STEP = 2;
+
+   private static final int CLEANUP_STEP = 3;
+
+   private static final Comparator<RecordInfo> RECORD_ID_ORDER = new Comparator<RecordInfo>()
+   {
+      public int compare(final RecordInfo r1, final RecordInfo r2)
+      {
+         return r1.id < r2.id ? -1 : r1.id == r2.id ? 0 : 1;
+      }
+   };
+
+   // Attributes ----------------------------------------------------
+
+   private final Journal[] stripes;
+
+   private final boolean supportsCallback;
+
+   /** runs the steps of the cross-stripe commits */
+   private final Executor executor;
+
+   private final ConcurrentMap<Long, StripedTransaction> transactions = new ConcurrentHashMap<Long, StripedTransaction>();
+
+   /** records loaded from a stripe other than the one their ID maps to */
+   private final ConcurrentMap<Long, Integer> relocatedRecords = new ConcurrentHashMap<Long, Integer>();
+
+   // Static --------------------------------------------------------
+
+   static long decisionID(final long txID)
+   {
+      // record IDs are never negative, so the decisions can't collide with them
+      return -1 - txID;
+   }
+
+   // Constructors --------------------------------------------------
+
+   public StripedJournal(final Executor executor, final Journal... stripes)
+   {
+      super(stripes[0].getFileFactory().isSupportsCallbacks(), stripes[0].getFileSize());
+      this.stripes = stripes;
+      this.supportsCallback = stripes[0].getFileFactory().isSupportsCallbacks();
+      this.executor = executor;
+   }
+
+   // HornetQComponent implementation -------------------------------
+
+   public void start() throws Exception
+   {
+      for (Journal stripe : stripes)
+      {
+         stripe.start();
+      }
+   }
+
+   public void stop() throws Exception
+   {
+      for (Journal stripe : stripes)
+      {
+         stripe.stop();
+      }
+
+      transactions.clear();
+
+      relocatedRecords.clear();
+   }
+
+   public boolean isStarted()
+   {
+      return stripes[0].isStarted();
+   }
+
+   // Journal implementation ----------------------------------------
+
+   @Override
+   public void appendAddRecord(final long id,
+                               final byte recordType,
+                               final EncodingSupport record,
+                               final boolean sync,
+                               final IOCompletion callback) throws Exception
+   {
+      stripes[stripeOf(id)].appendAddRecord(id, recordType, record, sync, callback);
+   }
+
+   @Override
+   public void appendUpdateRecord(final long id,
+                                  final byte recordType,
+                                  final EncodingSupport record,
+                                  final boolean sync,
+                                  final IOCompletion callback) throws Exception
+   {
+      stripes[stripeOf(id)].appendUpdateRecord(id, recordType, record, sync, callback);
+   }
+
+   @Override
+   public void appendDeleteRecord(final long id, final boolean sync, final IOCompletion callback) throws Exception
+   {
+      stripes[stripeOf(id)].appendDeleteRecord(id, sync, callback);
+
+      if (!relocatedRecords.isEmpty())
+      {
+         relocatedRecords.remove(id);
+      }
+   }
+
+   @Override
+   public void appendAddRecordTransactional(final long txID,
+                                            final long id,
+                                            final byte recordType,
+                                            final EncodingSupport record) throws Exception
+   {
+      stripes[enlist(txID, id)].appendAddRecordTransactional(txID, id, recordType, record);
+   }
+
+   @Override
+   public void appendUpdateRecordTransactional(final long txID,
+                                               final long id,
+                                               final byte recordType,
+                                               final EncodingSupport record) throws Exception
+   {
+      stripes[enlist(txID, id)].appendUpdateRecordTransactional(txID, id, recordType, record);
+   }
+
+   @Override
+   public void appendDeleteRecordTransactional(final long txID, final long id, final EncodingSupport record) throws Exception
+   {
+      stripes[enlist(txID, id)].appendDeleteRecordTransactional(txID, id, record);
+   }
+
+   @Override
+   public void appendPrepareRecord(final long txID,
+                                   final EncodingSupport transactionData,
+                                   final boolean sync,
+                                   final IOCompletion callback) throws Exception
+   {
+      StripedTransaction tx = getTransaction(txID);
+
+      int[] participants = tx.getParticipants();
+
+      if (participants.length == 0)
+      {
+         participants = COORDINATOR;
+         tx.enlist(0);
+      }
+
+      tx.prepared = true;
+
+      if (participants.length == 1)
+      {
+         stripes[participants[0]].appendPrepareRecord(txID, transactionData, sync, callback);
+         return;
+      }
+
+      if (callback != null)
+      {
+         callback.storeLineUp();
+      }
+
+      IOCompletion completion = newStripesCompletion(participants.length, callback);
+
+      for (int participant : participants)
+      {
+         stripes[participant].appendPrepareRecord(txID, transactionData, sync, completion);
+      }
+
+      if (completion == null && callback != null)
+      {
+         // the stripes wrote their records before returning
+         callback.done();
+      }
+   }
+
+   @Override
+   public void appendCommitRecord(final long txID,
+                                  final boolean sync,
+                                  final IOCompletion callback,
+                                  final boolean lineUpContext) throws Exception
+   {
+      StripedTransaction tx = transactions.remove(txID);
+
+      int[] participants = tx == null ? COORDINATOR : tx.getParticipants();
+
+      if (participants.length <= 1)
+      {
+         stripes[participants.length == 0 ? 0 : participants[0]].appendCommitRecord(txID, sync, callback, lineUpContext);
+         return;
+      }
+
+      if (callback != null && lineUpContext)
+      {
+         callback.storeLineUp();
+      }
+
+      new CrossStripeCommit(txID, participants, sync, callback).start(tx.prepared ? DECISION_STEP : PREPARE_STEP);
+   }
+
+   @Override
+   public void appendRollbackRecord(final long txID, final boolean sync, final IOCompletion callback) throws Exception
+   {
+      StripedTransaction tx = transactions.remove(txID);
+
+      int[] participants = tx == null ? COORDINATOR : tx.getParticipants();
+
+      if (participants.length <= 1)
+      {
+         stripes[participants.length == 0 ? 0 : participants[0]].appendRollbackRecord(txID, sync, callback);
+         return;
+      }
+
+      if (callback != null)
+      {
+         callback.storeLineUp();
+      }
+
+      IOCompletion completion = newStripesCompletion(participants.length, callback);
+
+      // a partial rollback is harmless, a transaction is only committed by the decision record
+      for (int participant : participants)
+      {
+         stripes[participant].appendRollbackRecord(txID, sync, completion);
+      }
+
+      if (completion == null && callback != null)
+      {
+         callback.done();
+      }
+   }
+
+   public JournalLoadInformation load(final LoaderCallback reloadManager) throws Exception
+   {
+      List<RecordInfo> committedRecords = new ArrayList<RecordInfo>();
+
+      List<PreparedTransactionInfo> preparedTransactions = new ArrayList<PreparedTransactionInfo>();
+
+      JournalLoadInformation info = load(committedRecords, preparedTransactions, reloadManager);
+
+      for (RecordInfo record : committedRecords)
+      {
+         reloadManager.addRecord(record);
+      }
+
+      for (PreparedTransactionInfo preparedTransaction : preparedTransactions)
+      {
+         reloadManager.addPreparedTransaction(preparedTransaction);
+      }
+
+      return info;
+   }
+
+   public JournalLoadInformation loadInternalOnly() throws Exception
+   {
+      return load(new ArrayList<RecordInfo>(), new ArrayList<PreparedTransactionInfo>(), null);
+   }
+
+   public JournalLoadInformation loadSyncOnly(final JournalState state) throws Exception
+   {
+      JournalLoadInformation info = new JournalLoadInformation();
+
+      for (Journal stripe : stripes)
+      {
+         JournalLoadInformation stripeInfo = stripe.loadSyncOnly(state);
+
+         info.setNumberOfRecords(info.getNumberOfRecords() + stripeInfo.getNumberOfRecords());
+
+         info.setMaxID(Math.max(info.getMaxID(), stripeInfo.getMaxID()));
+      }
+
+      return info;
+   }
+
+   public synchronized JournalLoadInformation load(final List<RecordInfo> committedRecords,
+                                                   final List<PreparedTransactionInfo> preparedTransactions,
+                                                   final TransactionFailureCallback transactionFailure) throws Exception
+   {
+      transactions.clear();
+
+      relocatedRecords.clear();
+
+      final Set<Long> failedTransactions = new HashSet<Long>();
+
+      TransactionFailureCallback failureCollector = new TransactionFailureCallback()
+      {
+         public void failedTransaction(final long transactionID,
+                                       final List<RecordInfo> records,
+                                       final List<RecordInfo> recordsToDelete)
+         {
+            failedTransactions.add(transactionID);
+
+            if (transactionFailure != null)
+            {
+               transactionFailure.failedTransaction(transactionID, records, recordsToDelete);
+            }
+         }
+      };
+
+      JournalLoadInformation info = new JournalLoadInformation();
+
+      List<List<RecordInfo>> stripeRecords = new ArrayList<List<RecordInfo>>(stripes.length);
+
+      List<List<PreparedTransactionInfo>> stripePrepared = new ArrayList<List<PreparedTransactionInfo>>(stripes.length);
+
+      for (Journal stripe : stripes)
+      {
+         List<RecordInfo> records = new ArrayList<RecordInfo>();
+
+         List<PreparedTransactionInfo> prepared = new ArrayList<PreparedTransactionInfo>();
+
+         JournalLoadInformation stripeInfo = stripe.load(records, prepared, failureCollector);
+
+         info.setNumberOfRecords(info.getNumberOfRecords() + stripeInfo.getNumberOfRecords());
+
+         info.setMaxID(Math.max(info.getMaxID(), stripeInfo.getMaxID()));
+
+         for (JournalLoadInformation.FileLoadInformation fileInfo : stripeInfo.getFileLoadInformation())
+         {
+            info.addFileLoadInformation(fileInfo);
+         }
+
+         stripeRecords.add(records);
+
+         stripePrepared.add(prepared);
+      }
+
+      // the decisions of the cross-stripe commits interrupted by a crash
+      Set<Long> decisions = new HashSet<Long>();
+
+      Iterator<RecordInfo> iterRecords = stripeRecords.get(0).iterator();
+
+      while (iterRecords.hasNext())
+      {
+         RecordInfo record = iterRecords.next();
+
+         if (record.id < 0)
+         {
+            decisions.add(record.id);
+            iterRecords.remove();
+         }
+      }
+
+      Map<Long, PreparedTransactionInfo> mergedPrepared = new HashMap<Long, PreparedTransactionInfo>();
+
+      for (int stripe = 0; stripe < stripes.length; stripe++)
+      {
+         List<RecordInfo> records = stripeRecords.get(stripe);
+
+         for (PreparedTransactionInfo prepared : stripePrepared.get(stripe))
+         {
+            if (decisions.contains(decisionID(prepared.id)))
+            {
+               stripes[stripe].appendCommitRecord(prepared.id, true);
+
+               applyCommit(prepared, records);
+            }
+            else if (prepared.extraData.length == 0 || failedTransactions.contains(prepared.id))
+            {
+               // either the commit was never decided or some of the stripes never got the user's prepare
+               stripes[stripe].appendRollbackRecord(prepared.id, false);
+            }
+            else
+            {
+               PreparedTransactionInfo merged = mergedPrepared.get(prepared.id);
+
+               if (merged == null)
+               {
+                  merged = new PreparedTransactionInfo(prepared.id, prepared.extraData);
+                  mergedPrepared.put(prepared.id, merged);
+
+                  StripedTransaction tx = getTransaction(prepared.id);
+                  tx.prepared = true;
+               }
+
+               merged.records.addAll(prepared.records);
+               merged.recordsToDelete.addAll(prepared.recordsToDelete);
+
+               getTransaction(prepared.id).enlist(stripe);
+
+               for (RecordInfo record : prepared.records)
+               {
+                  checkRelocated(record, stripe);
+               }
+            }
+         }
+
+         for (RecordInfo record : records)
+         {
+            checkRelocated(record, stripe);
+         }
+      }
+
+      for (Long decision : decisions)
+      {
+         stripes[0].appendDeleteRecord(decision, false);
+      }
+
+      int size = 0;
+
+      for (List<RecordInfo> records : stripeRecords)
+      {
+         size += records.size();
+      }
+
+      List<RecordInfo> merged = new ArrayList<RecordInfo>(size);
+
+      for (List<RecordInfo> records : stripeRecords)
+      {
+         merged.addAll(records);
+      }
+
+      // IDs are sequential, so ordering by ID keeps the order the records were sent in, and the
+      // sort being stable keeps the updates of a record after its add
+      Collections.sort(merged, RECORD_ID_ORDER);
+
+      committedRecords.addAll(merged);
+
+      preparedTransactions.addAll(mergedPrepared.values());
+
+      return info;
+   }
+
+   public void lineUpContex(final IOCompletion callback)
+   {
+      callback.storeLineUp();
+   }
+
+   public int getAlignment() throws Exception
+   {
+      return stripes[0].getAlignment();
+   }
+
+   public int getNumberOfRecords()
+   {
+      int records = 0;
+
+      for (Journal stripe : stripes)
+      {
+         records += stripe.getNumberOfRecords();
+      }
+
+      return records;
+   }
+
+   public int getUserVersion()
+   {
+      return stripes[0].getUserVersion();
+   }
+
+   public void perfBlast(final int pages)
+   {
+      stripes[0].perfBlast(pages);
+   }
+
+   public void runDirectJournalBlast() throws Exception
+   {
+      stripes[0].runDirectJournalBlast();
+   }
+
+   /**
+    * A replicated store is never striped (the configuration refuses it), so a backup being
+    * synchronized only ever gets the files of a single journal, kept by the first stripe.
+    */
+   public Map<Long, JournalFile> createFilesForBackupSync(final long[] fileIds) throws Exception
+   {
+      return stripes[0].createFilesForBackupSync(fileIds);
+   }
+
+   public void synchronizationLock()
+   {
+      for (Journal stripe : stripes)
+      {
+         stripe.synchronizationLock();
+      }
+   }
+
+   public void synchronizationUnlock()
+   {
+      for (int i = stripes.length - 1; i >= 0; i--)
+      {
+         stripes[i].synchronizationUnlock();
+      }
+   }
+
+   public void forceMoveNextFile() throws Exception
+   {
+      for (Journal stripe : stripes)
+      {
+         stripe.forceMoveNextFile();
+      }
+   }
+
+   public JournalFile[] getDataFiles()
+   {
+      List<JournalFile> files = new ArrayList<JournalFile>();
+
+      for (Journal stripe : stripes)
+      {
+         Collections.addAll(files, stripe.getDataFiles());
+      }
+
+      return files.toArray(new JournalFile[files.size()]);
+   }
+
+   /**
+    * @return the file factory of the first stripe
+    */
+   public SequentialFileFactory getFileFactory()
+   {
+      return stripes[0].getFileFactory();
+   }
+
+   public int getNumberOfStripes()
+   {
+      return stripes.length;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "StripedJournal(stripes=" + stripes.length + ")";
+   }
+
+   // Package protected ---------------------------------------------
+
+   @Override
+   void scheduleReclaim()
+   {
+      // every stripe reclaims its own files
+   }
+
+   int stripeOf(final long id)
+   {
+      if (!relocatedRecords.isEmpty())
+      {
+         Integer stripe = relocatedRecords.get(id);
+
+         if (stripe != null)
+         {
+            return stripe;
+         }
+      }
+
+      return (int)((id & Long.MAX_VALUE) % stripes.length);
+   }
+
+   // Private -------------------------------------------------------
+
+   private int enlist(final long txID, final long id)
+   {
+      int stripe = stripeOf(id);
+
+      getTransaction(txID).enlist(stripe);
+
+      return stripe;
+   }
+
+   private StripedTransaction getTransaction(final long txID)
+   {
+      StripedTransaction tx = transactions.get(txID);
+
+      if (tx == null)
+      {
+         tx = new StripedTransaction(stripes.length);
+
+         StripedTransaction existing = transactions.putIfAbsent(txID, tx);
+
+         if (existing != null)
+         {
+            tx = existing;
+         }
+      }
+
+      return tx;
+   }
+
+   private void checkRelocated(final RecordInfo record, final int stripe)
+   {
+      if (stripeOf(record.id) != stripe)
+      {
+         relocatedRecords.put(record.id, stripe);
+      }
+   }
+
+   private static void applyCommit(final PreparedTransactionInfo prepared, final List<RecordInfo> records)
+   {
+      if (!prepared.recordsToDelete.isEmpty())
+      {
+         Set<Long> deletes = new HashSet<Long>();
+
+         for (RecordInfo record : prepared.recordsToDelete)
+         {
+            deletes.add(record.id);
+         }
+
+         Iterator<RecordInfo> iter = records.iterator();
+
+         while (iter.hasNext())
+         {
+            if (deletes.contains(iter.next().id))
+            {
+               iter.remove();
+            }
+         }
+      }
+
+      records.addAll(prepared.records);
+   }
+
+   /**
+    * @return a completion of the given callback after as many stripes completed, or null if there's
+    *         no callback or the stripes don't call back
+    */
+   private IOCompletion newStripesCompletion(final int participants, final IOAsyncTask callback)
+   {
+      if (callback == null || !supportsCallback)
+      {
+         return null;
+      }
+
+      return new StripesCompletion(participants, callback);
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * Completes a callback once every stripe taking part in an operation completed. The context of
+    * the callback is lined up once for the whole operation, not by each stripe.
+    */
+   private static final class StripesCompletion implements IOCompletion
+   {
+      private final AtomicInteger pending;
+
+      private final AtomicBoolean completed = new AtomicBoolean(false);
+
+      private final IOAsyncTask callback;
+
+      StripesCompletion(final int participants, final IOAsyncTask callback)
+      {
+         pending = new AtomicInteger(participants);
+         this.callback = callback;
+      }
+
+      public void storeLineUp()
+      {
+      }
+
+      public void done()
+      {
+         if (pending.decrementAndGet() == 0 && completed.compareAndSet(false, true))
+         {
+            callback.done();
+         }
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+         if (completed.compareAndSet(false, true))
+         {
+            callback.onError(errorCode, errorMessage);
+         }
+      }
+   }
+
+   /**
+    * The steps of a commit spanning several stripes. Each step is appended once the previous one is
+    * synced on every stripe, from the executor, so the thread committing is never blocked. If the
+    * stripes don't call back their writes are synchronous, and the steps just follow each other.
+    */
+   private final class CrossStripeCommit implements IOCompletion, Runnable
+   {
+      private final long txID;
+
+      private final int[] participants;
+
+      private final boolean sync;
+
+      private final IOAsyncTask callback;
+
+      private final AtomicInteger pending = new AtomicInteger();
+
+      private final AtomicBoolean completed = new AtomicBoolean(false);
+
+      private volatile boolean failed;
+
+      private volatile int step;
+
+      CrossStripeCommit(final long txID, final int[] participants, final boolean sync, final IOAsyncTask callback)
+      {
+         this.txID = txID;
+         this.participants = participants;
+         this.sync = sync;
+         this.callback = callback;
+      }
+
+      void start(final int firstStep) throws Exception
+      {
+         step = firstStep;
+
+         appendStep();
+
+         if (!supportsCallback)
+         {
+            while (step != CLEANUP_STEP)
+            {
+               nextStep();
+            }
+         }
+      }
+
+      public void storeLineUp()
+      {
+      }
+
+      public void done()
+      {
+         if (pending.decrementAndGet() == 0 && !failed)
+         {
+            executor.execute(this);
+         }
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+         failed = true;
+
+         HornetQJournalLogger.LOGGER.ioError(errorCode, errorMessage);
+
+         if (callback != null && completed.compareAndSet(false, true))
+         {
+            callback.onError(errorCode, errorMessage);
+         }
+      }
+
+      public void run()
+      {
+         try
+         {
+            nextStep();
+         }
+         catch (Exception e)
+         {
+            onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+         }
+      }
+
+      private void appendStep() throws Exception
+      {
+         IOCompletion completion = supportsCallback ? this : null;
+
+         switch (step)
+         {
+            case PREPARE_STEP:
+               pending.set(participants.length);
+
+               for (int participant : participants)
+               {
+                  stripes[participant].appendPrepareRecord(txID, PREPARE_MARKER, true, completion);
+               }
+               break;
+
+            case DECISION_STEP:
+               pending.set(1);
+
+               stripes[0].appendAddRecord(decisionID(txID), COMMIT_DECISION_RECORD, PREPARE_MARKER, true, completion);
+               break;
+
+            case COMMIT_STEP:
+               pending.set(participants.length);
+
+               // synced whatever the caller asked, the decision can't go before every commit is stored
+               for (int participant : participants)
+               {
+                  stripes[participant].appendCommitRecord(txID, true, completion, false);
+               }
+
+               if (!sync)
+               {
+                  complete();
+               }
+               break;
+
+            default:
+               throw new IllegalStateException("Unknown step " + step);
+         }
+      }
+
+      private void nextStep() throws Exception
+      {
+         step++;
+
+         if (step == CLEANUP_STEP)
+         {
+            stripes[0].appendDeleteRecord(decisionID(txID), false);
+
+            complete();
+         }
+         else
+         {
+            appendStep();
+         }
+      }
+
+      private void complete()
+      {
+         if (callback != null && completed.compareAndSet(false, true))
+         {
+            callback.done();
+         }
+      }
+   }
+
+   /**
+    * The stripes a transaction has records on.
+    */
+   private static final class StripedTransaction
+   {
+      private final boolean[] enlisted;
+
+      private int count;
+
+      volatile boolean prepared;
+
+      StripedTransaction(final int stripes)
+      {
+         enlisted = new boolean[stripes];
+      }
+
+      synchronized void enlist(final int stripe)
+      {
+         if (!enlisted[stripe])
+         {
+            enlisted[stripe] = true;
+            count++;
+         }
+      }
+
+      synchronized int[] getParticipants()
+      {
+         int[] participants = new int[count];
+
+         for (int i = 0, pos = 0; i < enlisted.length; i++)
+         {
+            if (enlisted[i])
+            {
+               participants[pos++] = i;
+            }
+         }
+
+         return participants;
+      }
+   }
+}
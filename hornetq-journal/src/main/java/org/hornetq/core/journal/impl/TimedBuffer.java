@@ -15,33 +15,64 @@ package org.hornetq.core.journal.impl;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOAsyncTask;
+import org.hornetq.core.journal.JournalBufferStatistics;
 import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
 import org.hornetq.journal.HornetQJournalLogger;
 
 /**
- * A TimedBuffer
+ * A TimedBuffer groups the records written by many threads into a single write (and sync) on the
+ * file.
+ * <p>
+ * Records are written in two steps: {@link #checkSize(int)} reserves space for the record and
+ * {@link #addBytes(EncodingSupport, boolean, IOAsyncTask)} encodes it into the space reserved by
+ * the same thread. The reservation is a single compare-and-set on the segment being filled, so
+ * producers never block on each other and encode their records in parallel. The word the
+ * reservations are set on also carries the number of times the segment was opened, so a producer
+ * that read it before the segment was flushed and opened again can't reserve on the new opening
+ * against the limit of the old one.
+ * <p>
+ * There are two segments used in turns: while one is being flushed the producers fill the other.
+ * A segment is flushed once it's full (by the producer that sealed it) or once a sync was
+ * requested and the timeout elapsed (by the timer thread). Flushes are serialized, and a flush
+ * only hands the segment to the observer after every reservation on it was completed, so the
+ * callbacks of a whole segment are completed in a single batch.
+ * <p>
+ * With an adaptive timeout (see {@link #setAdaptiveTimeout(int, int)}) the time a sync may wait
+ * for more records is taken from the sync latency observed on the file: when syncs are requested
+ * more often than a sync takes to complete, waiting for that long batches them without slowing any
+ * of them down much, otherwise waiting only adds latency and the minimum timeout is used.
  *
  * @author <a href="mailto:clebert.suconic@jboss.org">Clebert Suconic</a>
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  *
  */
-public class TimedBuffer
+public class TimedBuffer implements JournalBufferStatistics
 {
    // Constants -----------------------------------------------------
+
+   private static final int SEGMENTS = 2;
+
+   /** The averages move 1/2^AVERAGE_SHIFT of the way towards each new sample */
+   private static final int AVERAGE_SHIFT = 3;
+
    // Attributes ----------------------------------------------------
 
-   private TimedBufferObserver bufferObserver;
+   private volatile TimedBufferObserver bufferObserver;
 
    // If the TimedBuffer is idle - i.e. no records are being added, then it's pointless the timer flush thread
    // in spinning and checking the time - and using up CPU in the process - this semaphore is used to
@@ -52,27 +83,46 @@ public class TimedBuffer
 
    private final int bufferSize;
 
-   private final HornetQBuffer buffer;
+   private final Segment[] segments = new Segment[SEGMENTS];
 
-   private int bufferLimit = 0;
+   /** The segment taking reservations. It's only replaced while holding the flushLock */
+   private volatile Segment current;
 
-   private List<IOAsyncTask> callbacks;
+   /** Serializes the flushes. Producers only take it when they fill a segment */
+   private final ReentrantLock flushLock = new ReentrantLock();
+
+   /** The space each thread reserved on checkSize, to be used by its next addBytes */
+   private final ThreadLocal<Reservation> reservations = new ThreadLocal<Reservation>()
+   {
+      @Override
+      protected Reservation initialValue()
+      {
+         return new Reservation();
+      }
+   };
 
    private volatile int timeout;
 
-   // used to measure sync requests. When a sync is requested, it shouldn't take more than timeout to happen
-   private volatile boolean pendingSync = false;
+   private volatile boolean adaptiveTimeout;
+
+   private volatile int minTimeout;
+
+   private volatile int maxTimeout;
+
+   /** Average time in nanoseconds the observer took to sync a flush */
+   private volatile long averageSyncLatency;
+
+   /** Average time in nanoseconds between two syncs requested on the buffer */
+   private volatile long averageSyncInterval;
+
+   /** When the last flush with syncs started, guarded by the flushLock */
+   private long lastSyncFlushTime;
 
    private Thread timerThread;
 
    private volatile boolean started;
 
-   // We use this flag to prevent flush occurring between calling checkSize and addBytes
-   // CheckSize must always be followed by it's corresponding addBytes otherwise the buffer
-   // can get in an inconsistent state
-   private boolean delayFlush;
-
-   // for logging write rates
+   // for logging write rates and the management statistics
 
    private final boolean logRates;
 
@@ -80,13 +130,15 @@ public class TimedBuffer
 
    private final AtomicLong flushesDone = new AtomicLong(0);
 
+   private final AtomicLong syncFlushesDone = new AtomicLong(0);
+
    private Timer logRatesTimer;
 
    private TimerTask logRatesTimerTask;
 
    private final AtomicLong lastFlushTime = new AtomicLong(0);
 
-   private boolean spinning = false;
+   private final AtomicBoolean spinning = new AtomicBoolean(false);
 
    // Static --------------------------------------------------------
 
@@ -106,15 +158,19 @@ public class TimedBuffer
       }
       // Setting the interval for nano-sleeps
 
-      buffer = HornetQBuffers.fixedBuffer(bufferSize);
+      for (int i = 0; i < SEGMENTS; i++)
+      {
+         segments[i] = new Segment(i, bufferSize);
+      }
 
-      buffer.clear();
+      // no reservations are accepted until there is an observer
+      current = segments[0];
 
-      bufferLimit = 0;
+      this.timeout = timeout;
 
-      callbacks = new ArrayList<IOAsyncTask>();
+      minTimeout = timeout;
 
-      this.timeout = timeout;
+      maxTimeout = timeout;
    }
 
    public synchronized void start()
@@ -183,21 +239,125 @@ public class TimedBuffer
       started = false;
    }
 
-   public synchronized void setObserver(final TimedBufferObserver observer)
+   /**
+    * Makes the timeout follow the sync latency observed on the file, within the given bounds (in
+    * nanoseconds). The timeout starts at the minimum until there is a latency to go by.
+    */
+   public void setAdaptiveTimeout(final int minTimeout, final int maxTimeout)
+   {
+      if (minTimeout < 0 || minTimeout > maxTimeout)
+      {
+         throw new IllegalArgumentException("Invalid adaptive timeout bounds: " + minTimeout + ", " + maxTimeout);
+      }
+
+      this.minTimeout = minTimeout;
+      this.maxTimeout = maxTimeout;
+
+      timeout = minTimeout;
+
+      adaptiveTimeout = true;
+   }
+
+   public boolean isAdaptiveTimeout()
+   {
+      return adaptiveTimeout;
+   }
+
+   /**
+    * @return the time in nanoseconds a sync currently waits for more records before being flushed
+    */
+   public int getTimeout()
+   {
+      return timeout;
+   }
+
+   public int getMinTimeout()
+   {
+      return minTimeout;
+   }
+
+   public int getMaxTimeout()
+   {
+      return maxTimeout;
+   }
+
+   /**
+    * @return the number of buffers written to the file
+    */
+   public long getFlushCount()
+   {
+      return flushesDone.get();
+   }
+
+   /**
+    * @return the number of buffers written to the file that were also synced
+    */
+   public long getSyncFlushCount()
+   {
+      return syncFlushesDone.get();
+   }
+
+   public long getBytesFlushed()
+   {
+      return bytesFlushed.get();
+   }
+
+   /**
+    * @return the average time in nanoseconds the file took to sync a buffer, 0 if none was synced yet
+    */
+   public long getAverageSyncLatency()
+   {
+      return averageSyncLatency;
+   }
+
+   /**
+    * @return the average time in nanoseconds between two syncs requested on the buffer
+    */
+   public long getAverageSyncInterval()
+   {
+      return averageSyncInterval;
+   }
+
+   /**
+    * Flushes what was written to the previous observer and opens the buffer for the new one.
+    * <p>
+    * This is used when the journal moves to another file, and it must not be called while other
+    * threads are writing to the buffer.
+    */
+   public void setObserver(final TimedBufferObserver observer)
    {
       if (bufferObserver != null)
       {
          flush();
       }
 
-      bufferObserver = observer;
+      flushLock.lock();
+      try
+      {
+         bufferObserver = observer;
+
+         if (observer == null)
+         {
+            current.seal();
+         }
+         else
+         {
+            current.open(observer.getRemainingBytes(), bufferSize);
+         }
+      }
+      finally
+      {
+         flushLock.unlock();
+      }
    }
 
    /**
-    * Verify if the size fits the buffer
+    * Verify if the size fits the buffer, reserving the space for the next
+    * {@link #addBytes(EncodingSupport, boolean, IOAsyncTask)} of the calling thread.
     * @param sizeChecked
+    * @return false if there is no space left on the file for the record
     */
-   public synchronized boolean checkSize(final int sizeChecked)
+   public boolean checkSize(final int sizeChecked)
    {
       if (!started)
       {
@@ -210,79 +370,78 @@ public class TimedBuffer
                                          ") on the journal");
       }
 
-      if (bufferLimit == 0 || buffer.writerIndex() + sizeChecked > bufferLimit)
-      {
-         // Either there is not enough space left in the buffer for the sized record
-         // Or a flush has just been performed and we need to re-calcualate bufferLimit
+      Reservation reservation = reservations.get();
 
-         flush();
+      // a checkSize that was never followed by its addBytes
+      cancel(reservation);
 
-         delayFlush = true;
+      return reserve(reservation, sizeChecked);
+   }
 
-         final int remainingInFile = bufferObserver.getRemainingBytes();
+   public void addBytes(final HornetQBuffer bytes, final boolean sync, final IOAsyncTask callback)
+   {
+      addBytes(new ByteArrayEncoding(bytes.toByteBuffer().array()), sync, callback);
+   }
 
-         if (sizeChecked > remainingInFile)
-         {
-            return false;
-         }
-         else
-         {
-            // There is enough space in the file for this size
+   public void addBytes(final EncodingSupport bytes, final boolean sync, final IOAsyncTask callback)
+   {
+      if (!started)
+      {
+         throw new IllegalStateException("TimedBuffer is not started");
+      }
 
-            // Need to re-calculate buffer limit
+      Reservation reservation = reservations.get();
 
-            bufferLimit = Math.min(remainingInFile, bufferSize);
+      int size = bytes.getEncodeSize();
 
-            return true;
-         }
-      }
-      else
+      if (reservation.segment == null || reservation.size != size)
       {
-         delayFlush = true;
+         cancel(reservation);
 
-         return true;
+         if (!reserve(reservation, size))
+         {
+            throw new IllegalStateException("There is no space left on the file for a record of " + size + " bytes");
+         }
       }
-   }
 
-   public synchronized void addBytes(final HornetQBuffer bytes, final boolean sync, final IOAsyncTask callback)
-   {
-      addBytes(new ByteArrayEncoding(bytes.toByteBuffer().array()), sync, callback);
-   }
+      Segment segment = reservation.segment;
 
-   public synchronized void addBytes(final EncodingSupport bytes, final boolean sync, final IOAsyncTask callback)
-   {
-      if (!started)
+      reservation.segment = null;
+
+      HornetQBuffer buffer = reservation.buffers[segment.index];
+
+      if (buffer == null)
       {
-         throw new IllegalStateException("TimedBuffer is not started");
+         buffer = HornetQBuffers.wrappedBuffer(segment.bytes);
+         reservation.buffers[segment.index] = buffer;
       }
 
-      delayFlush = false;
+      buffer.setIndex(0, reservation.offset);
 
       bytes.encode(buffer);
 
-      callbacks.add(callback);
+      segment.callbacks.add(callback);
 
       if (sync)
       {
-         pendingSync = true;
+         segment.syncs.incrementAndGet();
 
-         // if (System.nanoTime() - lastFlushTime.get() > timeout)
-         // {
-         // // This might happen if there is low activity in the buffer - the timer hasn't fired because no sync records
-         // // have been recently added, and suddenly a sync record is added
-         // // In this case we do a flush immediately, which can reduce latency in this case
-         //
-         // flush();
-         // }
-
-         if (!spinning)
-         {
-            spinLimiter.release();
+         segment.pendingSync = true;
 
-            spinning = true;
-         }
+         startSpinning();
       }
 
+      // this publishes the record, the callback and the sync request to the flusher
+      segment.completed.addAndGet(size);
+   }
+
+   /**
+    * Gives back the space reserved by the calling thread on {@link #checkSize(int)}, if it wasn't
+    * used by an addBytes.
+    */
+   public void cancelReservation()
+   {
+      cancel(reservations.get());
    }
 
    public void flush()
@@ -292,73 +451,293 @@ public class TimedBuffer
 
    /**
     * force means the Journal is moving to a new file. Any pending write need to be done immediately
-    * or data could be lost
+    * or data could be lost.
+    * <p>
+    * Records still being encoded by other threads are waited for, so every record added before
+    * this call is handed to the observer once it returns.
     * */
    public void flush(final boolean force)
    {
-      synchronized (this)
+      if (!started)
       {
-         if (!started)
-         {
-            throw new IllegalStateException("TimedBuffer is not started");
-         }
+         throw new IllegalStateException("TimedBuffer is not started");
+      }
+
+      // the calling thread would be waiting for itself otherwise
+      cancel(reservations.get());
 
-         if ((force || !delayFlush) && buffer.writerIndex() > 0)
+      while (true)
+      {
+         flushLock.lock();
+         try
          {
-            int pos = buffer.writerIndex();
+            if (bufferObserver == null)
+            {
+               return;
+            }
+
+            Segment segment = current;
+
+            int size = segment.sealIfNotEmpty();
 
-            if (logRates)
+            if (size == 0)
+            {
+               return;
+            }
+            else if (size > 0)
             {
-               bytesFlushed.addAndGet(pos);
+               flushSegment(segment, size);
+               return;
             }
+         }
+         finally
+         {
+            flushLock.unlock();
+         }
+
+         // a producer sealed the segment and it's about to flush it
+         Thread.yield();
+      }
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
 
-            ByteBuffer bufferToFlush = bufferObserver.newBuffer(bufferSize, pos);
+   // Private -------------------------------------------------------
+
+   /**
+    * @return false if the size doesn't fit on what's left of the file
+    */
+   private boolean reserve(final Reservation reservation, final int size)
+   {
+      while (true)
+      {
+         Segment segment = current;
+
+         long state = segment.state.get();
+
+         int reserved = Segment.reserved(state);
+
+         if (reserved < 0)
+         {
+            if (bufferObserver == null)
+            {
+               throw new IllegalStateException("There is no file set on the TimedBuffer");
+            }
 
-            // Putting a byteArray on a native buffer is much faster, since it will do in a single native call.
-            // Using bufferToFlush.put(buffer) would make several append calls for each byte
-            // We also transfer the content of this buffer to the native file's buffer
+            // sealed: the next segment is opened as soon as the flush starts
+            Thread.yield();
+            continue;
+         }
 
-            bufferToFlush.put(buffer.toByteBuffer().array(), 0, pos);
+         // limit and lastOnFile may already be of the next opening, the state is checked again (or
+         // compared and set) before trusting them
+         if (reserved + size > segment.limit)
+         {
+            if (segment.lastOnFile)
+            {
+               if (segment.state.get() != state)
+               {
+                  continue;
+               }
 
-            bufferObserver.flushBuffer(bufferToFlush, pendingSync, callbacks);
+               return false;
+            }
 
-            if (spinning)
+            if (segment.state.compareAndSet(state, Segment.state(state, -1 - reserved)))
             {
+               flushLock.lock();
                try
                {
-                  // We acquire the spinLimiter semaphore - this prevents the timer flush thread unnecessarily spinning
-                  // when the buffer is inactive
-                  spinLimiter.acquire();
+                  flushSegment(segment, reserved);
                }
-               catch (InterruptedException e)
+               finally
                {
-                  // Ignore
+                  flushLock.unlock();
                }
-
-               spinning = false;
             }
+            continue;
+         }
 
-            lastFlushTime.set(System.nanoTime());
+         if (segment.state.compareAndSet(state, Segment.state(state, reserved + size)))
+         {
+            reservation.segment = segment;
+            reservation.state = state;
+            reservation.offset = reserved;
+            reservation.size = size;
+            return true;
+         }
+      }
+   }
+
+   /**
+    * Gives the reserved space back if nothing was reserved after it, or fills it with zeros (which
+    * are skipped when reading the journal) so the segment can still be flushed.
+    */
+   private void cancel(final Reservation reservation)
+   {
+      Segment segment = reservation.segment;
+
+      if (segment == null)
+      {
+         return;
+      }
+
+      reservation.segment = null;
+
+      if (!segment.state.compareAndSet(Segment.state(reservation.state, reservation.offset + reservation.size),
+                                       Segment.state(reservation.state, reservation.offset)))
+      {
+         Arrays.fill(segment.bytes, reservation.offset, reservation.offset + reservation.size, (byte)0);
+
+         segment.completed.addAndGet(reservation.size);
+      }
+   }
+
+   /**
+    * Flushes a sealed segment, opening the next one for the producers first.
+    * Must be called holding the flushLock, with segment being the current one.
+    */
+   private void flushSegment(final Segment segment, final int size)
+   {
+      TimedBufferObserver observer = bufferObserver;
+
+      ByteBuffer bufferToFlush = observer.newBuffer(bufferSize, size);
+
+      Segment next = segments[(segment.index + 1) % SEGMENTS];
+
+      // the observer may align the write, moving the file position further than size
+      next.open(observer.getRemainingBytes() - bufferToFlush.limit(), bufferSize);
+
+      current = next;
+
+      while (segment.completed.get() != size)
+      {
+         Thread.yield();
+      }
 
-            pendingSync = false;
+      bytesFlushed.addAndGet(size);
 
-            // swap the instance as the previous callback list is being used asynchronously
-            callbacks = new LinkedList<IOAsyncTask>();
+      // Putting a byteArray on a native buffer is much faster, since it will do in a single native call.
+      // Using bufferToFlush.put(buffer) would make several append calls for each byte
+      // We also transfer the content of this buffer to the native file's buffer
+
+      bufferToFlush.put(segment.bytes, 0, size);
+
+      // a new list as the callbacks are completed asynchronously
+      List<IOAsyncTask> callbacks = new ArrayList<IOAsyncTask>();
+
+      IOAsyncTask callback;
+      while ((callback = segment.callbacks.poll()) != null)
+      {
+         callbacks.add(callback);
+      }
+
+      boolean sync = segment.pendingSync;
+
+      long now = System.nanoTime();
+
+      if (sync)
+      {
+         syncFlushesDone.incrementAndGet();
 
-            buffer.clear();
+         syncRequested(segment.syncs.get(), now);
 
-            bufferLimit = 0;
+         // the last callback is completed once the whole buffer is synced
+         int last = callbacks.size() - 1;
 
-            flushesDone.incrementAndGet();
+         if (last >= 0)
+         {
+            callbacks.set(last, new SyncLatencyTask(callbacks.get(last), now));
          }
       }
+
+      observer.flushBuffer(bufferToFlush, sync, callbacks);
+
+      if (spinning.compareAndSet(true, false))
+      {
+         // We acquire the spinLimiter semaphore - this prevents the timer flush thread unnecessarily spinning
+         // when the buffer is inactive
+         spinLimiter.acquireUninterruptibly();
+      }
+
+      lastFlushTime.set(System.nanoTime());
+
+      flushesDone.incrementAndGet();
+
+      // syncs requested on the next segment while we were flushing
+      if (next.pendingSync)
+      {
+         startSpinning();
+      }
    }
 
-   // Package protected ---------------------------------------------
+   /**
+    * Takes the syncs requested since the last flush with syncs into the average interval between
+    * syncs. Called holding the flushLock.
+    */
+   private void syncRequested(final int syncs, final long now)
+   {
+      long last = lastSyncFlushTime;
 
-   // Protected -----------------------------------------------------
+      lastSyncFlushTime = now;
 
-   // Private -------------------------------------------------------
+      if (last == 0 || syncs == 0)
+      {
+         return;
+      }
+
+      averageSyncInterval = average(averageSyncInterval, (now - last) / syncs);
+
+      adaptTimeout();
+   }
+
+   private void syncDone(final long latency)
+   {
+      // completions may race when the observer completes them on several threads, losing a sample
+      // now and then is fine for an average
+      averageSyncLatency = average(averageSyncLatency, latency);
+
+      adaptTimeout();
+   }
+
+   /**
+    * Waiting longer than a sync takes is pointless, and waiting at all only pays off if a few more
+    * syncs are likely to be requested while waiting. A single producer waiting on each of its syncs
+    * requests them about once per sync latency, so it never makes the buffer wait.
+    */
+   private void adaptTimeout()
+   {
+      if (!adaptiveTimeout)
+      {
+         return;
+      }
+
+      long latency = averageSyncLatency;
+
+      long newTimeout = latency == 0 || averageSyncInterval * 2 >= latency ? minTimeout : latency;
+
+      timeout = (int)Math.max(minTimeout, Math.min(maxTimeout, newTimeout));
+   }
+
+   private static long average(final long average, final long sample)
+   {
+      if (average == 0)
+      {
+         return sample;
+      }
+
+      return average + (sample - average >> AVERAGE_SHIFT);
+   }
+
+   private void startSpinning()
+   {
+      if (!spinning.get() && spinning.compareAndSet(false, true))
+      {
+         spinLimiter.release();
+      }
+   }
 
    // Inner classes -------------------------------------------------
 
@@ -407,6 +786,154 @@ public class TimedBuffer
       }
    }
 
+   /**
+    * One of the buffers the records are written to.
+    */
+   private static final class Segment
+   {
+      final int index;
+
+      final byte[] bytes;
+
+      /**
+       * The number of times the segment was opened (high int) and the bytes reserved so far, or
+       * -1 - size once it's sealed and no more reservations are taken (low int)
+       */
+      final AtomicLong state = new AtomicLong(Segment.state(0, -1));
+
+      /** Bytes already encoded. The segment can only be flushed when this reaches the sealed size */
+      final AtomicInteger completed = new AtomicInteger(0);
+
+      final ConcurrentLinkedQueue<IOAsyncTask> callbacks = new ConcurrentLinkedQueue<IOAsyncTask>();
+
+      volatile int limit;
+
+      /** If the segment reaches the end of the file, so a record not fitting here won't fit on the file */
+      volatile boolean lastOnFile;
+
+      // used to measure sync requests. When a sync is requested, it shouldn't take more than timeout to happen
+      volatile boolean pendingSync;
+
+      /** Number of records asking for a sync on the segment */
+      final AtomicInteger syncs = new AtomicInteger(0);
+
+      Segment(final int index, final int size)
+      {
+         this.index = index;
+         bytes = new byte[size];
+      }
+
+      static int reserved(final long state)
+      {
+         return (int)state;
+      }
+
+      /**
+       * @return the state of the same opening as the given one, with reserved bytes
+       */
+      static long state(final long state, final int reserved)
+      {
+         return state & 0xFFFFFFFF00000000L | reserved & 0xFFFFFFFFL;
+      }
+
+      void open(final int remainingInFile, final int bufferSize)
+      {
+         completed.set(0);
+         callbacks.clear();
+         pendingSync = false;
+         syncs.set(0);
+         limit = Math.max(0, Math.min(remainingInFile, bufferSize));
+         lastOnFile = remainingInFile <= bufferSize;
+
+         // publishes the fields above to the producers, on a new opening. This is only called on a
+         // sealed segment, so nobody else changes the state meanwhile
+         state.set((state.get() >>> 32) + 1 << 32);
+      }
+
+      void seal()
+      {
+         while (true)
+         {
+            long s = state.get();
+
+            int size = Segment.reserved(s);
+
+            if (size < 0 || state.compareAndSet(s, Segment.state(s, -1 - size)))
+            {
+               return;
+            }
+         }
+      }
+
+      /**
+       * @return the size it was sealed with, 0 if it's empty or -1 if it was already sealed
+       */
+      int sealIfNotEmpty()
+      {
+         while (true)
+         {
+            long s = state.get();
+
+            int size = Segment.reserved(s);
+
+            if (size <= 0)
+            {
+               return size == 0 ? 0 : -1;
+            }
+
+            if (state.compareAndSet(s, Segment.state(s, -1 - size)))
+            {
+               return size;
+            }
+         }
+      }
+   }
+
+   /**
+    * The space reserved by a thread, and the buffers it uses to encode records on each segment.
+    */
+   private static final class Reservation
+   {
+      final HornetQBuffer[] buffers = new HornetQBuffer[SEGMENTS];
+
+      Segment segment;
+
+      /** The state of the segment when the space was reserved, telling which opening it was on */
+      long state;
+
+      int offset;
+
+      int size;
+   }
+
+   /**
+    * Wraps the last callback of a synced flush, measuring how long the sync took.
+    */
+   private final class SyncLatencyTask implements IOAsyncTask
+   {
+      private final IOAsyncTask delegate;
+
+      private final long flushTime;
+
+      SyncLatencyTask(final IOAsyncTask delegate, final long flushTime)
+      {
+         this.delegate = delegate;
+         this.flushTime = flushTime;
+      }
+
+      public void done()
+      {
+         syncDone(System.nanoTime() - flushTime);
+
+         delegate.done();
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+         delegate.onError(errorCode, errorMessage);
+      }
+   }
+
    private class CheckTimer implements Runnable
    {
       private volatile boolean closed = false;
@@ -419,7 +946,7 @@ public class TimedBuffer
             // timeout since the time of the last flush.
             // Effectively flushing "resets" the timer
 
-            if (pendingSync && bufferObserver != null && System.nanoTime() > lastFlushTime.get() + timeout)
+            if (current.pendingSync && bufferObserver != null && System.nanoTime() > lastFlushTime.get() + timeout)
             {
                flush();
             }
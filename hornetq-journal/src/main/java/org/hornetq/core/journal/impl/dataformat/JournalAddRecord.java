@@ -56,6 +56,8 @@ public class JournalAddRecord extends JournalInternalRecord
     */
    public void encode(final HornetQBuffer buffer)
    {
+      final int start = buffer.writerIndex();
+
       if (add)
       {
          buffer.writeByte(JournalImpl.ADD_RECORD);
@@ -67,7 +69,7 @@ public class JournalAddRecord extends JournalInternalRecord
 
       buffer.writeInt(fileID);
 
-      buffer.writeByte(compactCount);
+      buffer.writeByte(getCompactCountByte());
 
       buffer.writeLong(id);
 
@@ -77,12 +79,12 @@ public class JournalAddRecord extends JournalInternalRecord
 
       record.encode(buffer);
 
-      buffer.writeInt(getEncodeSize());
+      writeChecksumAndSize(buffer, start);
    }
 
    @Override
    public int getEncodeSize()
    {
-      return JournalImpl.SIZE_ADD_RECORD + record.getEncodeSize() + 1;
+      return JournalImpl.SIZE_ADD_RECORD + record.getEncodeSize() + 1 + getChecksumSize();
    }
 }
\ No newline at end of file
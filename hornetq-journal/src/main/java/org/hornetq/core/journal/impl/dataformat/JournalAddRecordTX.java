@@ -63,6 +63,8 @@ public class JournalAddRecordTX extends JournalInternalRecord
    @Override
    public void encode(final HornetQBuffer buffer)
    {
+      final int start = buffer.writerIndex();
+
       if (add)
       {
          buffer.writeByte(JournalImpl.ADD_RECORD_TX);
@@ -74,7 +76,7 @@ public class JournalAddRecordTX extends JournalInternalRecord
 
       buffer.writeInt(fileID);
 
-      buffer.writeByte(compactCount);
+      buffer.writeByte(getCompactCountByte());
 
       buffer.writeLong(txID);
 
@@ -86,12 +88,12 @@ public class JournalAddRecordTX extends JournalInternalRecord
 
       record.encode(buffer);
 
-      buffer.writeInt(getEncodeSize());
+      writeChecksumAndSize(buffer, start);
    }
 
    @Override
    public int getEncodeSize()
    {
-      return JournalImpl.SIZE_ADD_RECORD_TX + record.getEncodeSize() + 1;
+      return JournalImpl.SIZE_ADD_RECORD_TX + record.getEncodeSize() + 1 + getChecksumSize();
    }
 }
@@ -59,6 +59,8 @@ public class JournalCompleteRecordTX extends JournalInternalRecord
    @Override
    public void encode(final HornetQBuffer buffer)
    {
+      final int start = buffer.writerIndex();
+
       if (txRecordType == TX_RECORD_TYPE.COMMIT)
       {
          buffer.writeByte(JournalImpl.COMMIT_RECORD);
@@ -70,7 +72,7 @@ public class JournalCompleteRecordTX extends JournalInternalRecord
 
       buffer.writeInt(fileID);
 
-      buffer.writeByte(compactCount);
+      buffer.writeByte(getCompactCountByte());
 
       buffer.writeLong(txID);
 
@@ -86,7 +88,7 @@ public class JournalCompleteRecordTX extends JournalInternalRecord
          transactionData.encode(buffer);
       }
 
-      buffer.writeInt(getEncodeSize());
+      writeChecksumAndSize(buffer, start);
    }
 
    @Override
@@ -106,11 +108,12 @@ public class JournalCompleteRecordTX extends JournalInternalRecord
    {
       if (txRecordType == TX_RECORD_TYPE.COMMIT)
       {
-         return JournalImpl.SIZE_COMPLETE_TRANSACTION_RECORD + 1;
+         return JournalImpl.SIZE_COMPLETE_TRANSACTION_RECORD + 1 + getChecksumSize();
       }
       else
       {
-         return JournalImpl.SIZE_PREPARE_RECORD + (transactionData != null ? transactionData.getEncodeSize() : 0) + 1;
+         return JournalImpl.SIZE_PREPARE_RECORD + (transactionData != null ? transactionData.getEncodeSize() : 0) + 1 +
+                getChecksumSize();
       }
    }
 }
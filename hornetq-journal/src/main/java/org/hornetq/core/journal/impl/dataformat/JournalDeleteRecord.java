@@ -38,20 +38,22 @@ public class JournalDeleteRecord extends JournalInternalRecord
 
    public void encode(final HornetQBuffer buffer)
    {
+      final int start = buffer.writerIndex();
+
       buffer.writeByte(JournalImpl.DELETE_RECORD);
 
       buffer.writeInt(fileID);
 
-      buffer.writeByte(compactCount);
+      buffer.writeByte(getCompactCountByte());
 
       buffer.writeLong(id);
 
-      buffer.writeInt(getEncodeSize());
+      writeChecksumAndSize(buffer, start);
    }
 
    @Override
    public int getEncodeSize()
    {
-      return JournalImpl.SIZE_DELETE_RECORD + 1;
+      return JournalImpl.SIZE_DELETE_RECORD + 1 + getChecksumSize();
    }
 }
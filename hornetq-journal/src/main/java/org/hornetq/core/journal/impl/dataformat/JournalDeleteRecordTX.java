@@ -52,11 +52,13 @@ public class JournalDeleteRecordTX extends JournalInternalRecord
     */
    public void encode(final HornetQBuffer buffer)
    {
+      final int start = buffer.writerIndex();
+
       buffer.writeByte(JournalImpl.DELETE_RECORD_TX);
 
       buffer.writeInt(fileID);
 
-      buffer.writeByte(compactCount);
+      buffer.writeByte(getCompactCountByte());
 
       buffer.writeLong(txID);
 
@@ -69,12 +71,12 @@ public class JournalDeleteRecordTX extends JournalInternalRecord
          record.encode(buffer);
       }
 
-      buffer.writeInt(getEncodeSize());
+      writeChecksumAndSize(buffer, start);
    }
 
    @Override
    public int getEncodeSize()
    {
-      return JournalImpl.SIZE_DELETE_RECORD_TX + (record != null ? record.getEncodeSize() : 0) + 1;
+      return JournalImpl.SIZE_DELETE_RECORD_TX + (record != null ? record.getEncodeSize() : 0) + 1 + getChecksumSize();
    }
 }
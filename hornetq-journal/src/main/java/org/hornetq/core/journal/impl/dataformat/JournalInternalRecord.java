@@ -15,6 +15,7 @@ package org.hornetq.core.journal.impl.dataformat;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.utils.DataConstants;
 
 /**
  * A InternalEncoder
@@ -25,11 +26,18 @@ import org.hornetq.core.journal.EncodingSupport;
  */
 public abstract class JournalInternalRecord implements EncodingSupport
 {
+   /**
+    * Set on the compact count byte of the records ending with a CRC32C of their content, just
+    * before the record size. Only files of the checksum format version carry it.
+    */
+   public static final byte CHECKSUM_FLAG = (byte)0x80;
 
    protected int fileID;
 
    protected byte compactCount;
 
+   protected boolean checksum;
+
    public int getFileID()
    {
       return fileID;
@@ -70,5 +78,38 @@ public abstract class JournalInternalRecord implements EncodingSupport
       }
    }
 
+   public boolean isChecksum()
+   {
+      return checksum;
+   }
+
+   public void setChecksum(final boolean checksum)
+   {
+      this.checksum = checksum;
+   }
+
    public abstract int getEncodeSize();
+
+   protected byte getCompactCountByte()
+   {
+      return checksum ? (byte)(compactCount | JournalInternalRecord.CHECKSUM_FLAG) : compactCount;
+   }
+
+   protected int getChecksumSize()
+   {
+      return checksum ? DataConstants.SIZE_INT : 0;
+   }
+
+   /**
+    * Closes the record started at {@code start} with its checksum, when enabled, and its size.
+    */
+   protected void writeChecksumAndSize(final HornetQBuffer buffer, final int start)
+   {
+      if (checksum)
+      {
+         buffer.writeInt(JournalRecordChecksum.crc32c(buffer, start, buffer.writerIndex() - start));
+      }
+
+      buffer.writeInt(getEncodeSize());
+   }
 }
@@ -37,17 +37,18 @@ public class JournalRollbackRecordTX extends JournalInternalRecord
     */
    public void encode(final HornetQBuffer buffer)
    {
+      final int start = buffer.writerIndex();
+
       buffer.writeByte(JournalImpl.ROLLBACK_RECORD);
       buffer.writeInt(fileID);
-      buffer.writeByte(compactCount);
+      buffer.writeByte(getCompactCountByte());
       buffer.writeLong(txID);
-      buffer.writeInt(JournalImpl.SIZE_ROLLBACK_RECORD + 1);
-
+      writeChecksumAndSize(buffer, start);
    }
 
    @Override
    public int getEncodeSize()
    {
-      return JournalImpl.SIZE_ROLLBACK_RECORD + 1;
+      return JournalImpl.SIZE_ROLLBACK_RECORD + 1 + getChecksumSize();
    }
 }
@@ -86,6 +86,19 @@ public interface Configuration extends Serializable
     */
    void setPersistDeliveryCountBeforeDelivery(boolean persistDeliveryCountBeforeDelivery);
 
+   /**
+    * Returns how many messages a consumer may hold back during a delivery pass to send them to the
+    * client in a single packet. {@code 1} sends every message on its own.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_DELIVERY_BATCH_SIZE}.
+    */
+   int getDeliveryBatchSize();
+
+   /**
+    * Sets how many messages a consumer may send to the client in a single packet.
+    */
+   void setDeliveryBatchSize(int deliveryBatchSize);
+
    /**
     * Returns {@code true} if this server is a backup, {@code false} if it is a live server.
     * <br>
@@ -509,6 +522,19 @@ public interface Configuration extends Serializable
     *  Default = 5 */
    void setPageMaxConcurrentIO(int maxIO);
 
+   /**
+    * Returns how many addresses can depage messages into their queues at once, the others wait
+    * for their turn. -1 means no limit.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_PAGE_MAX_CONCURRENT_DEPAGE}.
+    */
+   int getPageMaxConcurrentDepage();
+
+   /**
+    * Sets how many addresses can depage messages into their queues at once.
+    */
+   void setPageMaxConcurrentDepage(int maxDepage);
+
    /**
     * Returns the file system directory used to store journal log.
     * <br>
@@ -593,6 +619,85 @@ public interface Configuration extends Serializable
     */
    void setJournalCompactPercentage(int percentage);
 
+   /**
+    * Returns the number of threads reading the message journal files when the server starts.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_JOURNAL_LOAD_THREADS}.
+    */
+   int getJournalLoadThreads();
+
+   /**
+    * Sets the number of threads reading the message journal files when the server starts.
+    */
+   void setJournalLoadThreads(int loadThreads);
+
+   /**
+    * Returns the maximum number of bytes per second read from the journal files while compacting,
+    * {@code -1} means no limit.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_JOURNAL_COMPACT_MAX_RATE}.
+    */
+   long getJournalCompactMaxRate();
+
+   /**
+    * Sets the maximum number of bytes per second read from the journal files while compacting.
+    */
+   void setJournalCompactMaxRate(long maxRate);
+
+   /**
+    * Returns the number of journal files each compacting pass takes, starting from the oldest one,
+    * {@code 0} means every file.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_JOURNAL_COMPACT_FILES_PER_PASS}.
+    */
+   int getJournalCompactFilesPerPass();
+
+   /**
+    * Sets the number of journal files each compacting pass takes, starting from the oldest one.
+    */
+   void setJournalCompactFilesPerPass(int filesPerPass);
+
+   /**
+    * Returns the maximum number of journal files created ahead of demand by a background task, on
+    * top of the journal minimum files. {@code 0} means files are only created when needed.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_JOURNAL_MAX_PRE_CREATED_FILES}.
+    */
+   int getJournalMaxPreCreatedFiles();
+
+   /**
+    * Sets the maximum number of journal files created ahead of demand by a background task.
+    */
+   void setJournalMaxPreCreatedFiles(int maxPreCreatedFiles);
+
+   /**
+    * Returns the number of independent journals the message journal is spread over. Records are
+    * spread by their ID, {@code 1} means the message journal isn't striped. Striping is not used
+    * with a replicated (non shared) store.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_JOURNAL_STRIPES}.
+    */
+   int getJournalStripes();
+
+   /**
+    * Sets the number of independent journals the message journal is spread over.
+    */
+   void setJournalStripes(int stripes);
+
+   /**
+    * Returns whether the records written to the journal end with a CRC32C of their content, which
+    * is verified when the journal is loaded and compacted. Records failing the verification are
+    * ignored like any other damaged record.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_JOURNAL_RECORD_CHECKSUM}.
+    */
+   boolean isJournalRecordChecksum();
+
+   /**
+    * Sets whether the records written to the journal end with a CRC32C of their content.
+    */
+   void setJournalRecordChecksum(boolean recordChecksum);
+
    /**
     * Returns the number of journal files to pre-create.
     * <br>
@@ -679,6 +784,34 @@ public interface Configuration extends Serializable
     */
    void setJournalBufferSize_NIO(int journalBufferSize);
 
+   /**
+    * Returns whether the timeout used to flush the journal buffer follows the sync latency observed
+    * on the journal, between the minimum timeout and the buffer timeout of the journal type.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_JOURNAL_BUFFER_ADAPTIVE_TIMEOUT}.
+    */
+   boolean isJournalBufferAdaptiveTimeout();
+
+   /**
+    * Sets whether the timeout used to flush the journal buffer follows the sync latency observed on
+    * the journal.
+    */
+   void setJournalBufferAdaptiveTimeout(boolean adaptive);
+
+   /**
+    * Returns the lowest timeout (in nanoseconds) used to flush the journal buffer when the timeout is
+    * adaptive.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_JOURNAL_BUFFER_MIN_TIMEOUT}.
+    */
+   int getJournalBufferMinTimeout();
+
+   /**
+    * Sets the lowest timeout (in nanoseconds) used to flush the journal buffer when the timeout is
+    * adaptive.
+    */
+   void setJournalBufferMinTimeout(int minTimeout);
+
    /**
     * Returns whether the bindings directory is created on this server startup.
     * <br>
@@ -70,6 +70,8 @@ public class ConfigurationImpl implements Configuration
    private boolean persistDeliveryCountBeforeDelivery =
             HornetQDefaultConfiguration.DEFAULT_PERSIST_DELIVERY_COUNT_BEFORE_DELIVERY;
 
+   private int deliveryBatchSize = HornetQDefaultConfiguration.DEFAULT_DELIVERY_BATCH_SIZE;
+
    private int scheduledThreadPoolMaxSize = HornetQDefaultConfiguration.DEFAULT_SCHEDULED_THREAD_POOL_MAX_SIZE;
 
    private int threadPoolMaxSize = HornetQDefaultConfiguration.DEFAULT_THREAD_POOL_MAX_SIZE;
@@ -122,6 +124,8 @@ public class ConfigurationImpl implements Configuration
 
    private int maxConcurrentPageIO = HornetQDefaultConfiguration.DEFAULT_MAX_CONCURRENT_PAGE_IO;
 
+   private int maxConcurrentDepage = HornetQDefaultConfiguration.DEFAULT_PAGE_MAX_CONCURRENT_DEPAGE;
+
    protected String largeMessagesDirectory = HornetQDefaultConfiguration.DEFAULT_LARGE_MESSAGES_DIR;
 
    protected String bindingsDirectory = HornetQDefaultConfiguration.DEFAULT_BINDINGS_DIRECTORY;
@@ -142,6 +146,18 @@ public class ConfigurationImpl implements Configuration
 
    protected int journalCompactPercentage = HornetQDefaultConfiguration.DEFAULT_JOURNAL_COMPACT_PERCENTAGE;
 
+   protected int journalLoadThreads = HornetQDefaultConfiguration.DEFAULT_JOURNAL_LOAD_THREADS;
+
+   protected long journalCompactMaxRate = HornetQDefaultConfiguration.DEFAULT_JOURNAL_COMPACT_MAX_RATE;
+
+   protected int journalCompactFilesPerPass = HornetQDefaultConfiguration.DEFAULT_JOURNAL_COMPACT_FILES_PER_PASS;
+
+   protected int journalMaxPreCreatedFiles = HornetQDefaultConfiguration.DEFAULT_JOURNAL_MAX_PRE_CREATED_FILES;
+
+   protected int journalStripes = HornetQDefaultConfiguration.DEFAULT_JOURNAL_STRIPES;
+
+   protected boolean journalRecordChecksum = HornetQDefaultConfiguration.DEFAULT_JOURNAL_RECORD_CHECKSUM;
+
    protected int journalFileSize = HornetQDefaultConfiguration.DEFAULT_JOURNAL_FILE_SIZE;
 
    protected int journalMinFiles = HornetQDefaultConfiguration.DEFAULT_JOURNAL_MIN_FILES;
@@ -160,6 +176,10 @@ public class ConfigurationImpl implements Configuration
 
    protected int journalBufferSize_NIO = HornetQDefaultConfiguration.DEFAULT_JOURNAL_BUFFER_SIZE_NIO;
 
+   protected boolean journalBufferAdaptiveTimeout = HornetQDefaultConfiguration.DEFAULT_JOURNAL_BUFFER_ADAPTIVE_TIMEOUT;
+
+   protected int journalBufferMinTimeout = HornetQDefaultConfiguration.DEFAULT_JOURNAL_BUFFER_MIN_TIMEOUT;
+
    protected boolean logJournalWriteRate = HornetQDefaultConfiguration.DEFAULT_JOURNAL_LOG_WRITE_RATE;
 
    protected int journalPerfBlastPages = HornetQDefaultConfiguration.DEFAULT_JOURNAL_PERF_BLAST_PAGES;
@@ -278,6 +298,16 @@ public class ConfigurationImpl implements Configuration
       this.persistDeliveryCountBeforeDelivery = persistDeliveryCountBeforeDelivery;
    }
 
+   public int getDeliveryBatchSize()
+   {
+      return deliveryBatchSize;
+   }
+
+   public void setDeliveryBatchSize(final int deliveryBatchSize)
+   {
+      this.deliveryBatchSize = deliveryBatchSize;
+   }
+
    public void setBackup(final boolean backup)
    {
       this.backup = backup;
@@ -514,6 +544,16 @@ public class ConfigurationImpl implements Configuration
       this.maxConcurrentPageIO = maxIO;
    }
 
+   public int getPageMaxConcurrentDepage()
+   {
+      return maxConcurrentDepage;
+   }
+
+   public void setPageMaxConcurrentDepage(final int maxDepage)
+   {
+      maxConcurrentDepage = maxDepage;
+   }
+
 
    public String getJournalDirectory()
    {
@@ -825,6 +865,66 @@ public class ConfigurationImpl implements Configuration
       journalCompactPercentage = percentage;
    }
 
+   public int getJournalLoadThreads()
+   {
+      return journalLoadThreads;
+   }
+
+   public void setJournalLoadThreads(final int loadThreads)
+   {
+      journalLoadThreads = loadThreads;
+   }
+
+   public long getJournalCompactMaxRate()
+   {
+      return journalCompactMaxRate;
+   }
+
+   public void setJournalCompactMaxRate(final long maxRate)
+   {
+      journalCompactMaxRate = maxRate;
+   }
+
+   public int getJournalCompactFilesPerPass()
+   {
+      return journalCompactFilesPerPass;
+   }
+
+   public void setJournalCompactFilesPerPass(final int filesPerPass)
+   {
+      journalCompactFilesPerPass = filesPerPass;
+   }
+
+   public int getJournalMaxPreCreatedFiles()
+   {
+      return journalMaxPreCreatedFiles;
+   }
+
+   public void setJournalMaxPreCreatedFiles(final int maxPreCreatedFiles)
+   {
+      journalMaxPreCreatedFiles = maxPreCreatedFiles;
+   }
+
+   public int getJournalStripes()
+   {
+      return journalStripes;
+   }
+
+   public void setJournalStripes(final int stripes)
+   {
+      journalStripes = stripes;
+   }
+
+   public boolean isJournalRecordChecksum()
+   {
+      return journalRecordChecksum;
+   }
+
+   public void setJournalRecordChecksum(final boolean recordChecksum)
+   {
+      journalRecordChecksum = recordChecksum;
+   }
+
    public long getServerDumpInterval()
    {
       return serverDumpInterval;
@@ -915,6 +1015,26 @@ public class ConfigurationImpl implements Configuration
       journalBufferSize_NIO = journalBufferSize;
    }
 
+   public boolean isJournalBufferAdaptiveTimeout()
+   {
+      return journalBufferAdaptiveTimeout;
+   }
+
+   public void setJournalBufferAdaptiveTimeout(final boolean adaptive)
+   {
+      journalBufferAdaptiveTimeout = adaptive;
+   }
+
+   public int getJournalBufferMinTimeout()
+   {
+      return journalBufferMinTimeout;
+   }
+
+   public void setJournalBufferMinTimeout(final int minTimeout)
+   {
+      journalBufferMinTimeout = minTimeout;
+   }
+
    @Override
    public boolean equals(final Object obj)
    {
@@ -1003,6 +1123,14 @@ public class ConfigurationImpl implements Configuration
       {
          return false;
       }
+      if (journalBufferAdaptiveTimeout != other.journalBufferAdaptiveTimeout)
+      {
+         return false;
+      }
+      if (journalBufferMinTimeout != other.journalBufferMinTimeout)
+      {
+         return false;
+      }
       if (journalMaxIO_NIO != other.journalMaxIO_NIO)
       {
          return false;
@@ -1015,6 +1143,34 @@ public class ConfigurationImpl implements Configuration
       {
          return false;
       }
+      if (journalLoadThreads != other.journalLoadThreads)
+      {
+         return false;
+      }
+      if (journalCompactMaxRate != other.journalCompactMaxRate)
+      {
+         return false;
+      }
+      if (journalCompactFilesPerPass != other.journalCompactFilesPerPass)
+      {
+         return false;
+      }
+      if (journalMaxPreCreatedFiles != other.journalMaxPreCreatedFiles)
+      {
+         return false;
+      }
+      if (journalStripes != other.journalStripes)
+      {
+         return false;
+      }
+      if (journalRecordChecksum != other.journalRecordChecksum)
+      {
+         return false;
+      }
+      if (maxConcurrentDepage != other.maxConcurrentDepage)
+      {
+         return false;
+      }
       if (journalDirectory == null)
       {
          if (other.journalDirectory != null)
@@ -1152,6 +1308,10 @@ public class ConfigurationImpl implements Configuration
       {
          return false;
       }
+      if (deliveryBatchSize != other.deliveryBatchSize)
+      {
+         return false;
+      }
       if (persistDeliveryCountBeforeDelivery != other.persistDeliveryCountBeforeDelivery)
       {
          return false;
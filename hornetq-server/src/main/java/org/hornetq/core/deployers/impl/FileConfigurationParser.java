@@ -44,6 +44,7 @@ import org.hornetq.core.config.impl.Validators;
 import org.hornetq.core.journal.impl.AIOSequentialFileFactory;
 import org.hornetq.core.journal.impl.JournalConstants;
 import org.hornetq.core.security.Role;
+import org.hornetq.core.server.HornetQMessageBundle;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.server.JournalType;
 import org.hornetq.core.server.group.impl.GroupingHandlerConfiguration;
@@ -128,10 +129,16 @@ public final class FileConfigurationParser
 
    private static final String PAGE_MAX_CACHE_SIZE_NODE_NAME = "page-max-cache-size";
 
+   private static final String PAGE_MAX_CACHE_BYTES_NODE_NAME = "page-max-cache-bytes";
+
+   private static final String PAGE_COMPRESSION_NODE_NAME = "page-compression";
+
    private static final String MESSAGE_COUNTER_HISTORY_DAY_LIMIT_NODE_NAME = "message-counter-history-day-limit";
 
    private static final String LVQ_NODE_NAME = "last-value-queue";
 
+   private static final String QUEUE_PARTITIONS_NODE_NAME = "queue-partitions";
+
    private static final String REDISTRIBUTION_DELAY_NODE_NAME = "redistribution-delay";
 
    private static final String SEND_TO_DLA_ON_NO_ROUTE = "send-to-dla-on-no-route";
@@ -222,6 +229,11 @@ public final class FileConfigurationParser
                                                                                    "persist-delivery-count-before-delivery",
                                                                                    config.isPersistDeliveryCountBeforeDelivery()));
 
+      config.setDeliveryBatchSize(XMLConfigurationUtil.getInteger(e,
+                                                                  "delivery-batch-size",
+                                                                  config.getDeliveryBatchSize(),
+                                                                  Validators.GT_ZERO));
+
       config.setScheduledThreadPoolMaxSize(XMLConfigurationUtil.getInteger(e,
                                                                            "scheduled-thread-pool-max-size",
                                                                            config.getScheduledThreadPoolMaxSize(),
@@ -253,6 +265,25 @@ public final class FileConfigurationParser
                                                                    config.getConnectionTTLOverride(),
                                                                    Validators.MINUS_ONE_OR_GT_ZERO));
 
+      config.setJournalMaxPreCreatedFiles(XMLConfigurationUtil.getInteger(e,
+                                                                          "journal-max-pre-created-files",
+                                                                          config.getJournalMaxPreCreatedFiles(),
+                                                                          Validators.GE_ZERO));
+
+      config.setJournalStripes(XMLConfigurationUtil.getInteger(e,
+                                                               "journal-stripes",
+                                                               config.getJournalStripes(),
+                                                               Validators.GT_ZERO));
+
+      if (config.getJournalStripes() > 1 && !config.isSharedStore())
+      {
+         throw HornetQMessageBundle.BUNDLE.journalStripesWithReplication(config.getJournalStripes());
+      }
+
+      config.setJournalRecordChecksum(XMLConfigurationUtil.getBoolean(e,
+                                                                      "journal-record-checksum",
+                                                                      config.isJournalRecordChecksum()));
+
       config.setEnabledAsyncConnectionExecution(XMLConfigurationUtil.getBoolean(e,
                                                                                 "async-connection-execution-enabled",
                                                                                 config.isAsyncConnectionExecutionEnabled()));
@@ -500,6 +531,11 @@ public final class FileConfigurationParser
                                                                     5,
                                                                     Validators.MINUS_ONE_OR_GT_ZERO));
 
+      config.setPageMaxConcurrentDepage(XMLConfigurationUtil.getInteger(e,
+                                                                        "page-max-concurrent-depage",
+                                                                        config.getPageMaxConcurrentDepage(),
+                                                                        Validators.MINUS_ONE_OR_GT_ZERO));
+
       config.setPagingDirectory(XMLConfigurationUtil.getString(e,
                                                                "paging-directory",
                                                                config.getPagingDirectory(),
@@ -516,6 +552,10 @@ public final class FileConfigurationParser
       {
          config.setJournalType(JournalType.NIO);
       }
+      else if (s.equals(JournalType.MAPPED.toString()))
+      {
+         config.setJournalType(JournalType.MAPPED);
+      }
       else if (s.equals(JournalType.ASYNCIO.toString()))
       {
          // https://jira.jboss.org/jira/browse/HORNETQ-295
@@ -583,6 +623,15 @@ public final class FileConfigurationParser
          config.setJournalMaxIO_NIO(journalMaxIO);
       }
 
+      config.setJournalBufferAdaptiveTimeout(XMLConfigurationUtil.getBoolean(e,
+                                                                             "journal-buffer-adaptive-timeout",
+                                                                             config.isJournalBufferAdaptiveTimeout()));
+
+      config.setJournalBufferMinTimeout(XMLConfigurationUtil.getInteger(e,
+                                                                        "journal-buffer-min-timeout",
+                                                                        config.getJournalBufferMinTimeout(),
+                                                                        Validators.GE_ZERO));
+
       config.setJournalMinFiles(XMLConfigurationUtil.getInteger(e,
                                                                 "journal-min-files",
                                                                 config.getJournalMinFiles(),
@@ -598,6 +647,21 @@ public final class FileConfigurationParser
                                                                          config.getJournalCompactPercentage(),
                                                                          Validators.PERCENTAGE));
 
+      config.setJournalLoadThreads(XMLConfigurationUtil.getInteger(e,
+                                                                   "journal-load-threads",
+                                                                   config.getJournalLoadThreads(),
+                                                                   Validators.GT_ZERO));
+
+      config.setJournalCompactMaxRate(XMLConfigurationUtil.getLong(e,
+                                                                   "journal-compact-max-rate",
+                                                                   config.getJournalCompactMaxRate(),
+                                                                   Validators.MINUS_ONE_OR_GT_ZERO));
+
+      config.setJournalCompactFilesPerPass(XMLConfigurationUtil.getInteger(e,
+                                                                           "journal-compact-files-per-pass",
+                                                                           config.getJournalCompactFilesPerPass(),
+                                                                           Validators.GE_ZERO));
+
       config.setLogJournalWriteRate(XMLConfigurationUtil.getBoolean(e,
                                                                     "log-journal-write-rate",
                                                                     HornetQDefaultConfiguration.DEFAULT_JOURNAL_LOG_WRITE_RATE));
@@ -873,6 +937,14 @@ public final class FileConfigurationParser
          {
             addressSettings.setPageCacheMaxSize(Integer.valueOf(child.getTextContent()));
          }
+         else if (FileConfigurationParser.PAGE_MAX_CACHE_BYTES_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setPageCacheMaxBytes(Long.valueOf(child.getTextContent()));
+         }
+         else if (FileConfigurationParser.PAGE_COMPRESSION_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setPageCompression(Boolean.valueOf(child.getTextContent().trim()));
+         }
          else if (FileConfigurationParser.MESSAGE_COUNTER_HISTORY_DAY_LIMIT_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
          {
             addressSettings.setMessageCounterHistoryDayLimit(Integer.valueOf(child.getTextContent()));
@@ -905,6 +977,10 @@ public final class FileConfigurationParser
          {
             addressSettings.setLastValueQueue(Boolean.valueOf(child.getTextContent().trim()));
          }
+         else if (FileConfigurationParser.QUEUE_PARTITIONS_NODE_NAME.equalsIgnoreCase(child.getNodeName()))
+         {
+            addressSettings.setQueuePartitions(Integer.valueOf(child.getTextContent().trim()));
+         }
          else if (FileConfigurationParser.MAX_DELIVERY_ATTEMPTS.equalsIgnoreCase(child.getNodeName()))
          {
             addressSettings.setMaxDeliveryAttempts(Integer.valueOf(child.getTextContent().trim()));
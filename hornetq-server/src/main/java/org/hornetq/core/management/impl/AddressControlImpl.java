@@ -23,6 +23,7 @@ import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.management.AddressControl;
 import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.paging.cursor.PageCursorProvider;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.postoffice.Binding;
 import org.hornetq.core.postoffice.Bindings;
@@ -227,6 +228,115 @@ public class AddressControlImpl extends AbstractControl implements AddressContro
       }
    }
 
+   public String getPageReadLatencyAsJSON() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getCursorProvider().getReadLatency().toJSON();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public double getPageCacheHitRatio() throws Exception
+   {
+      clearIO();
+      try
+      {
+         PageCursorProvider provider = pagingManager.getPageStore(address).getCursorProvider();
+
+         long hits = provider.getCacheHits();
+         long reads = hits + provider.getCacheMisses();
+
+         return reads == 0 ? 0 : (double)hits / reads;
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageCacheEvictions() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getCursorProvider().getCacheEvictions();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getDepagedMessages() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getDepagedMessages();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public double getDepageRate() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getDepageRate();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getDepageTime() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getDepageTime();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageCleanupCount() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getCursorProvider().getCleanupCount();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageCleanupTime() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getCursorProvider().getCleanupTime();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    @Override
    protected MBeanOperationInfo[] fillMBeanOperationInfo()
    {
@@ -47,6 +47,8 @@ import org.hornetq.api.core.management.QueueControl;
 import org.hornetq.core.config.BridgeConfiguration;
 import org.hornetq.core.config.Configuration;
 import org.hornetq.core.config.DivertConfiguration;
+import org.hornetq.core.journal.Journal;
+import org.hornetq.core.journal.JournalBufferStatistics;
 import org.hornetq.core.messagecounter.MessageCounterManager;
 import org.hornetq.core.messagecounter.impl.MessageCounterManagerImpl;
 import org.hornetq.core.persistence.StorageManager;
@@ -282,6 +284,118 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       }
    }
 
+   public boolean isJournalBufferAdaptiveTimeout()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return configuration.isJournalBufferAdaptiveTimeout();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public int getJournalBufferMinTimeout()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         JournalBufferStatistics buffer = getJournalBufferStatistics();
+
+         if (buffer == null)
+         {
+            return configuration.getJournalBufferMinTimeout();
+         }
+
+         // the timeout the buffer really goes down to, never above the buffer timeout
+         return buffer.getMinTimeout();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public int getJournalBufferCurrentTimeout()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         JournalBufferStatistics buffer = getJournalBufferStatistics();
+
+         if (buffer == null)
+         {
+            return configuration.getJournalType() == JournalType.ASYNCIO ? configuration.getJournalBufferTimeout_AIO()
+                  : configuration.getJournalBufferTimeout_NIO();
+         }
+
+         return buffer.getTimeout();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalBufferFlushCount()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         JournalBufferStatistics buffer = getJournalBufferStatistics();
+
+         return buffer == null ? 0 : buffer.getFlushCount();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalBufferBytesFlushed()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         JournalBufferStatistics buffer = getJournalBufferStatistics();
+
+         return buffer == null ? 0 : buffer.getBytesFlushed();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalBufferAverageSyncLatency()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         JournalBufferStatistics buffer = getJournalBufferStatistics();
+
+         return buffer == null ? 0 : buffer.getAverageSyncLatency();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public void setFailoverOnServerShutdown(boolean failoverOnServerShutdown)
    {
       checkStarted();
@@ -1969,6 +2083,16 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       return MBeanInfoHelper.getMBeanOperationsInfo(HornetQServerControl.class);
    }
 
+   /**
+    * @return the statistics of the buffer of the message journal, or null if the journal isn't buffered
+    */
+   private JournalBufferStatistics getJournalBufferStatistics()
+   {
+      Journal journal = storageManager == null ? null : storageManager.getMessageJournal();
+
+      return journal == null ? null : journal.getFileFactory().getBufferStatistics();
+   }
+
    private void checkStarted()
    {
       if (!server.isStarted())
@@ -29,6 +29,7 @@ import org.hornetq.core.filter.Filter;
 import org.hornetq.core.filter.impl.FilterImpl;
 import org.hornetq.core.messagecounter.MessageCounter;
 import org.hornetq.core.messagecounter.impl.MessageCounterHelper;
+import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.postoffice.Binding;
 import org.hornetq.core.postoffice.PostOffice;
@@ -39,7 +40,6 @@ import org.hornetq.core.server.Queue;
 import org.hornetq.core.server.ServerConsumer;
 import org.hornetq.core.settings.HierarchicalRepository;
 import org.hornetq.core.settings.impl.AddressSettings;
-import org.hornetq.utils.LinkedListIterator;
 import org.hornetq.utils.json.JSONArray;
 import org.hornetq.utils.json.JSONObject;
 
@@ -182,6 +182,40 @@ public class QueueControlImpl extends AbstractControl implements QueueControl
       }
    }
 
+   public long getPagedMessageCount()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         PageSubscription subscription = queue.getPageSubscription();
+
+         return subscription == null ? 0 : subscription.getMessageCount();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageLag()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         PageSubscription subscription = queue.getPageSubscription();
+
+         return subscription == null ? 0 : subscription.getPageLag();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public int getConsumerCount()
    {
       checkStarted();
@@ -393,25 +427,15 @@ public class QueueControlImpl extends AbstractControl implements QueueControl
       {
          Filter filter = FilterImpl.createFilter(filterStr);
          List<Map<String, Object>> messages = new ArrayList<Map<String, Object>>();
-         queue.flushExecutor();
-         LinkedListIterator<MessageReference> iterator = queue.iterator();
-         try
+         for (MessageReference ref : queue.getQueuedReferences())
          {
-            while (iterator.hasNext())
+            if (filter == null || filter.match(ref.getMessage()))
             {
-               MessageReference ref = iterator.next();
-               if (filter == null || filter.match(ref.getMessage()))
-               {
-                  Message message = ref.getMessage();
-                  messages.add(message.toMap());
-               }
+               Message message = ref.getMessage();
+               messages.add(message.toMap());
             }
-            return messages.toArray(new Map[messages.size()]);
-         }
-         finally
-         {
-            iterator.close();
          }
+         return messages.toArray(new Map[messages.size()]);
       }
       catch (HornetQException e)
       {
@@ -452,24 +476,15 @@ public class QueueControlImpl extends AbstractControl implements QueueControl
          }
          else
          {
-            LinkedListIterator<MessageReference> iterator = queue.iterator();
-            try
+            int count = 0;
+            for (MessageReference ref : queue.getQueuedReferences())
             {
-               int count = 0;
-               while (iterator.hasNext())
+               if (filter.match(ref.getMessage()))
                {
-                  MessageReference ref = iterator.next();
-                  if (filter.match(ref.getMessage()))
-                  {
-                     count++;
-                  }
+                  count++;
                }
-               return count;
-            }
-            finally
-            {
-               iterator.close();
             }
+            return count;
          }
       }
       finally
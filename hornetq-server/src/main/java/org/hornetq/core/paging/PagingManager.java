@@ -14,6 +14,8 @@
 package org.hornetq.core.paging;
 
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.journal.SequentialFile;
@@ -76,6 +78,21 @@ public interface PagingManager extends HornetQComponent, HierarchicalRepositoryC
 
    void deletePageStore(SimpleString storeName) throws Exception;
 
+   /**
+    * Executes the depage of a queue on the executor of its store, limiting how many stores are
+    * depaging at once.
+    * @param store the store the messages are depaged from
+    * @param executor the executor of the store
+    * @param depage the depage, returning the number of messages depaged
+    */
+   void scheduleDepage(PagingStore store, Executor executor, Callable<Integer> depage);
+
+   /**
+    * Sends a management notification about the pages deleted by the cleanup of a store.
+    * @param cleanupTime how long the cleanup took, in milliseconds
+    */
+   void notifyPageCleanup(PagingStore store, int deletedPages, long cleanupTime);
+
    void processReload() throws Exception;
 
    /**
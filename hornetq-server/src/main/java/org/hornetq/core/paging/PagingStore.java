@@ -73,6 +73,9 @@ public interface PagingStore extends HornetQComponent
    /** Performs a real sync on the current IO file. */
    void ioSync() throws Exception;
 
+   /** Writes the messages still pending on the write buffer of the current page, without a sync. */
+   void ioFlush() throws Exception;
+
    /**
     * Write message to page if we are paging.
     * @param readLock a read lock from the storage manager. This is an encapsulation violation made
@@ -92,6 +95,46 @@ public interface PagingStore extends HornetQComponent
 
    PageCursorProvider getCursorProvider();
 
+   /**
+    * Records the depage of messages from this store into a queue.
+    * @param messages the number of messages depaged
+    * @param waitTime how long the depage waited for its turn, in nanoseconds
+    * @param depageTime how long the depage took, in nanoseconds
+    */
+   void addDepageStats(int messages, long waitTime, long depageTime);
+
+   /**
+    * @return the number of messages depaged from this store into its queues
+    */
+   long getDepagedMessages();
+
+   /**
+    * @return the time spent depaging messages from this store, in milliseconds
+    */
+   long getDepageTime();
+
+   /**
+    * @return the time the depages of this store waited for their turn, in milliseconds
+    */
+   long getDepageWaitTime();
+
+   /**
+    * @return the messages depaged per second since the previous sample, sampled at most once a
+    *         second
+    */
+   double getDepageRate();
+
+   /**
+    * @return bytes written to the page files divided by the bytes of the messages written, while
+    *         page compression was enabled (1 if nothing was compressed)
+    */
+   double getPageCompressionRatio();
+
+   /**
+    * @return the time spent compressing and decompressing page files, in milliseconds
+    */
+   long getPageCompressionTime();
+
    void processReload() throws Exception;
 
    /**
@@ -42,6 +42,7 @@ import org.hornetq.core.paging.impl.PagingStoreFactoryNIO;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.CursorAckRecordEncoding;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager.CursorAcksRecordEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PageUpdateTXEncoding;
 import org.hornetq.core.persistence.impl.nullpm.NullStorageManager;
 import org.hornetq.core.settings.HierarchicalRepository;
@@ -286,6 +287,24 @@ public class PrintPages // NO_UCD (unused code)
 
             set.add(encoding.position);
          }
+         else if (record.userRecordType == JournalStorageManager.PAGE_CURSOR_ACKS)
+         {
+            CursorAcksRecordEncoding encoding = new CursorAcksRecordEncoding();
+            encoding.decode(buff);
+
+            Set<PagePosition> set = cursorInfo.getCursorRecords().get(encoding.queueID);
+
+            if (set == null)
+            {
+               set = new HashSet<PagePosition>();
+               cursorInfo.getCursorRecords().put(encoding.queueID, set);
+            }
+
+            for (int messageNr = encoding.acks.first(); messageNr >= 0; messageNr = encoding.acks.next(messageNr + 1))
+            {
+               set.add(new PagePositionImpl(encoding.pageNr, messageNr));
+            }
+         }
          else if (record.userRecordType == JournalStorageManager.PAGE_CURSOR_COMPLETE)
          {
             CursorAckRecordEncoding encoding = new CursorAckRecordEncoding();
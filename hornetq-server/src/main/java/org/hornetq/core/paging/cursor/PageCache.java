@@ -32,10 +32,14 @@ public interface PageCache extends SoftValueHashMap.ValueCache
 
    int getNumberOfMessages();
 
-   void setMessages(PagedMessage[] messages);
-
    PagedMessage[] getMessages();
 
+   /**
+    * @return an estimate of the memory used by the messages held on this cache, live caches
+    *         are not accounted for as their messages are held by the paging store anyway
+    */
+   long getMemorySize();
+
    /**
     * @return whether this cache is still being updated
     */
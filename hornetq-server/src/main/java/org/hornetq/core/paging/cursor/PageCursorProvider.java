@@ -16,6 +16,7 @@ package org.hornetq.core.paging.cursor;
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.PagingStore;
+import org.hornetq.utils.LatencyHistogram;
 
 /**
  * The provider of Cursor for a given Address
@@ -45,6 +46,14 @@ public interface PageCursorProvider
 
    PagedMessage getMessage(PagePosition pos) throws Exception;
 
+   /**
+    * Evaluates the filter of a subscription on a paged message. The filters of the other
+    * subscriptions the message is routed to are evaluated at the same time, and the results are
+    * kept for when they reach it.
+    * @return true if the message matches or the subscription has no filter
+    */
+   boolean match(long queueId, PagePosition pos, PagedMessage msg);
+
    void processReload() throws Exception;
 
    void stop();
@@ -67,6 +76,41 @@ public interface PageCursorProvider
 
    void setCacheMaxSize(int size);
 
+   long getCacheMaxBytes();
+
+   void setCacheMaxBytes(long bytes);
+
+   /**
+    * Loads the cache of the page in the background, ahead of the cursors moving into it.
+    */
+   void readAhead(long pageId);
+
+   long getCacheHits();
+
+   long getCacheMisses();
+
+   long getCacheEvictions();
+
+   /**
+    * @return the memory used by the page caches
+    */
+   long getCacheMemorySize();
+
+   /**
+    * @return the latency of the reads of page files into the cache
+    */
+   LatencyHistogram getReadLatency();
+
+   /**
+    * @return how many cleanups deleted pages
+    */
+   long getCleanupCount();
+
+   /**
+    * @return the time spent on cleanups deleting pages, in milliseconds
+    */
+   long getCleanupTime();
+
    /**
     * @param pageCursorImpl
     */
@@ -17,6 +17,7 @@ import java.util.concurrent.Executor;
 
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.paging.cursor.impl.PageBitmap;
 import org.hornetq.core.paging.impl.Page;
 import org.hornetq.core.server.Queue;
 import org.hornetq.core.transaction.Transaction;
@@ -86,6 +87,11 @@ public interface PageSubscription
     */
    long getFirstPage();
 
+   /**
+    * @return how many pages the subscription is behind the page being written, 0 if not paging
+    */
+   long getPageLag();
+
    // Reload operations
 
    /**
@@ -95,6 +101,14 @@ public interface PageSubscription
 
    void reloadPageCompletion(PagePosition position);
 
+   /**
+    * Reloads a snapshot with every ACK on a page, stored when the ACK records of the page were
+    * collapsed into a single record.
+    * @param recordID the ID of the snapshot record
+    * @param bookmark the lowest ACK before the first message of the page, null if none
+    */
+   void reloadACKs(long recordID, long pageNr, PagePosition bookmark, PageBitmap acks);
+
    /**
     * To be called when the cursor decided to ignore a position.
     *
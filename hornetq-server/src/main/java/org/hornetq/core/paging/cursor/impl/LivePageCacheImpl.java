@@ -13,16 +13,35 @@
 
 package org.hornetq.core.paging.cursor.impl;
 
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.cursor.LivePageCache;
 import org.hornetq.core.paging.impl.Page;
+import org.hornetq.core.paging.impl.PagedMessageImpl;
+import org.hornetq.core.persistence.StorageManager;
+import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.server.LargeServerMessage;
 
 /**
  * This is the same as PageCache, however this is for the page that's being currently written.
+ * <p>
+ * Messages are kept encoded on off-heap chunks taken from a pool shared by every live cache, and
+ * are only decoded when they are requested. Large messages are kept as they are, as their body is
+ * not on the page and their files must not be deleted while the page is live.
+ * <p>
+ * Once the page is no longer live the cache can still be used, the chunks are only given back to
+ * the pool when the cache is closed again (e.g. evicted from the provider), messages are then read
+ * from the page file.
  *
  * @author clebertsuconic
  *
@@ -30,17 +49,97 @@ import org.hornetq.core.server.LargeServerMessage;
  */
 public class LivePageCacheImpl implements LivePageCache
 {
-   private final List<PagedMessage> messages = new LinkedList<PagedMessage>();
+   // Constants -----------------------------------------------------
+
+   static final int CHUNK_SIZE = 64 * 1024;
+
+   /**
+    * How many free chunks are kept on the pool
+    */
+   static final int MAX_POOLED_CHUNKS = 256;
+
+   private static final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<ByteBuffer>();
+
+   private static final AtomicInteger pooledChunks = new AtomicInteger(0);
+
+   // Attributes ----------------------------------------------------
 
    private final Page page;
 
-   private boolean isLive = true;
+   private final StorageManager storageManager;
+
+   private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+
+   /**
+    * The chunk (high int) and the offset on the chunk (low int) of every message, -1 for the
+    * messages kept on {@link #heapMessages}
+    */
+   private long[] index = new long[16];
+
+   private int numberOfMessages;
+
+   private final Map<Integer, PagedMessage> heapMessages = new HashMap<Integer, PagedMessage>();
+
+   // volatile so the size can be read without waiting for the page writer
+   private volatile long arenaSize;
+
+   private volatile boolean isLive = true;
+
+   private boolean released;
+
+   /**
+    * Reads from the page file once the chunks are released
+    */
+   private PageCacheImpl fileCache;
+
+   // Static --------------------------------------------------------
+
+   /**
+    * @return the number of free chunks on the pool
+    */
+   static int getPooledChunks()
+   {
+      return pooledChunks.get();
+   }
+
+   private static ByteBuffer allocateChunk()
+   {
+      ByteBuffer chunk = pool.poll();
+
+      if (chunk == null)
+      {
+         return ByteBuffer.allocateDirect(CHUNK_SIZE);
+      }
+
+      pooledChunks.decrementAndGet();
+
+      chunk.clear();
+
+      return chunk;
+   }
 
-   public LivePageCacheImpl(final Page page)
+   private static void releaseChunk(final ByteBuffer chunk)
+   {
+      if (chunk.capacity() == CHUNK_SIZE && pooledChunks.incrementAndGet() <= MAX_POOLED_CHUNKS)
+      {
+         pool.offer(chunk);
+      }
+      else if (chunk.capacity() == CHUNK_SIZE)
+      {
+         pooledChunks.decrementAndGet();
+      }
+   }
+
+   // Constructors --------------------------------------------------
+
+   public LivePageCacheImpl(final Page page, final StorageManager storageManager)
    {
       this.page = page;
+      this.storageManager = storageManager;
    }
 
+   // Public --------------------------------------------------------
+
    @Override
    public Page getPage()
    {
@@ -56,30 +155,23 @@ public class LivePageCacheImpl implements LivePageCache
    @Override
    public synchronized int getNumberOfMessages()
    {
-      return messages.size();
-   }
-
-   @Override
-   public synchronized void setMessages(PagedMessage[] messages)
-   {
-      // This method shouldn't be called on liveCache, but we will provide the implementation for it anyway
-      for (PagedMessage msg : messages)
-      {
-         addLiveMessage(msg);
-      }
+      return numberOfMessages;
    }
 
    @Override
    public synchronized PagedMessage getMessage(int messageNumber)
    {
-      if (messageNumber < messages.size())
+      if (messageNumber >= numberOfMessages)
       {
-         return messages.get(messageNumber);
+         return null;
       }
-      else
+
+      if (released)
       {
-         return null;
+         return getFileCache().getMessage(messageNumber);
       }
+
+      return decode(messageNumber);
    }
 
    @Override
@@ -95,7 +187,7 @@ public class LivePageCacheImpl implements LivePageCache
    }
 
    @Override
-   public synchronized boolean isLive()
+   public boolean isLive()
    {
       return isLive;
    }
@@ -103,29 +195,155 @@ public class LivePageCacheImpl implements LivePageCache
    @Override
    public synchronized void addLiveMessage(PagedMessage message)
    {
+      if (numberOfMessages == index.length)
+      {
+         index = Arrays.copyOf(index, index.length * 2);
+      }
+
       if (message.getMessage().isLargeMessage())
       {
          ((LargeServerMessage)message.getMessage()).incrementDelayDeletionCount();
+         heapMessages.put(numberOfMessages, message);
+         index[numberOfMessages++] = -1;
+         return;
+      }
+
+      int size = message.getEncodeSize();
+
+      ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+
+      if (chunk == null || chunk.remaining() < size)
+      {
+         // a message bigger than a chunk gets a chunk of its own, which is not pooled
+         chunk = size > CHUNK_SIZE ? ByteBuffer.allocateDirect(size) : allocateChunk();
+         chunks.add(chunk);
+         arenaSize += chunk.capacity();
       }
-      this.messages.add(message);
+
+      int offset = chunk.position();
+
+      ByteBuffer target = chunk.duplicate();
+      target.limit(offset + size);
+
+      message.encode(HornetQBuffers.wrappedBuffer(target));
+
+      chunk.position(offset + size);
+
+      index[numberOfMessages++] = (long)(chunks.size() - 1) << 32 | offset;
    }
 
+   /**
+    * The first call only marks the cache as no longer live, the chunks are released on the next one.
+    */
    @Override
    public synchronized void close()
    {
-      this.isLive = false;
+      if (isLive)
+      {
+         isLive = false;
+         return;
+      }
+
+      if (!released)
+      {
+         released = true;
+
+         for (ByteBuffer chunk : chunks)
+         {
+            releaseChunk(chunk);
+         }
+
+         chunks.clear();
+         arenaSize = 0;
+      }
+
+      if (fileCache != null)
+      {
+         fileCache.close();
+      }
+   }
+
+   @Override
+   public long getMemorySize()
+   {
+      return isLive ? 0 : arenaSize;
    }
 
    @Override
    public synchronized PagedMessage[] getMessages()
    {
-      return messages.toArray(new PagedMessage[messages.size()]);
+      if (released)
+      {
+         return getFileCache().getMessages();
+      }
+
+      PagedMessage[] messages = new PagedMessage[numberOfMessages];
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         messages[i] = decode(i);
+      }
+
+      return messages;
    }
 
    @Override
    public String toString()
    {
-      return "LivePacheCacheImpl::page=" + page.getPageId() + " number of messages=" + messages.size() + " isLive = " +
-               isLive;
+      return "LivePacheCacheImpl::page=" + page.getPageId() + " number of messages=" + numberOfMessages +
+             " isLive = " + isLive;
+   }
+
+   // Private -------------------------------------------------------
+
+   private PagedMessage decode(final int messageNumber)
+   {
+      long position = index[messageNumber];
+
+      if (position < 0)
+      {
+         return heapMessages.get(messageNumber);
+      }
+
+      ByteBuffer chunk = chunks.get((int)(position >>> 32)).duplicate();
+
+      chunk.position((int)position);
+
+      HornetQBuffer buffer = HornetQBuffers.wrappedBuffer(chunk);
+      buffer.writerIndex(buffer.capacity());
+
+      PagedMessage message = new PagedMessageImpl();
+
+      message.decode(buffer);
+
+      message.initMessage(storageManager);
+
+      return message;
+   }
+
+   private PageCacheImpl getFileCache()
+   {
+      if (fileCache == null)
+      {
+         PageCacheImpl cache = new PageCacheImpl(page, storageManager);
+
+         try
+         {
+            cache.readIndex();
+         }
+         catch (Exception e)
+         {
+            HornetQServerLogger.LOGGER.warn("Error reading page " + page.getPageId(), e);
+            throw new RuntimeException("Couldn't complete paging due to an IO Exception on Paging - " +
+                                       e.getMessage(), e);
+         }
+
+         // the file is only open during the reads
+         cache.close();
+
+         fileCache = cache;
+      }
+
+      return fileCache;
    }
 }
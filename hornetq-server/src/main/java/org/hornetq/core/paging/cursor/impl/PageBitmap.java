@@ -0,0 +1,474 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.utils.DataConstants;
+
+/**
+ * A set of message numbers within a page, such as the messages acknowledged by a subscription.
+ * <p>
+ * The numbers are kept as bits on blocks of {@link #BLOCK_SIZE} messages, allocated as the numbers
+ * are added. A block is released as soon as all its numbers are added, so a subscription consuming
+ * a page in order will use no more than a block no matter the size of the page, and never more
+ * than one bit per message of the page otherwise.
+ * <p>
+ * When encoded, blocks with only a few numbers are written as a list of offsets instead of bits.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class PageBitmap implements EncodingSupport
+{
+   // Constants -----------------------------------------------------
+
+   static final int BLOCK_SIZE = 4096;
+
+   private static final int BLOCK_SHIFT = 12;
+
+   private static final int WORDS = BLOCK_SIZE / 64;
+
+   /**
+    * Blocks with less numbers are encoded as offsets
+    */
+   private static final int MAX_OFFSETS = BLOCK_SIZE / 16;
+
+   /**
+    * Placed on a block where every number was added
+    */
+   private static final long[] FULL = new long[0];
+
+   private static final byte ENCODING_FULL = 0;
+
+   private static final byte ENCODING_BITS = 1;
+
+   private static final byte ENCODING_OFFSETS = 2;
+
+   private static final long[][] NO_BLOCKS = new long[0][];
+
+   private static final int[] NO_COUNTS = new int[0];
+
+   // Attributes ----------------------------------------------------
+
+   private long[][] blocks = NO_BLOCKS;
+
+   private int[] blockCounts = NO_COUNTS;
+
+   private int size;
+
+   // Public --------------------------------------------------------
+
+   /**
+    * @return false if the number was already on the set
+    */
+   public boolean add(final int messageNr)
+   {
+      checkNumber(messageNr);
+
+      int block = messageNr >>> BLOCK_SHIFT;
+
+      if (block >= blocks.length)
+      {
+         grow(block + 1);
+      }
+
+      long[] bits = blocks[block];
+
+      if (bits == FULL)
+      {
+         return false;
+      }
+
+      if (bits == null)
+      {
+         bits = new long[WORDS];
+         blocks[block] = bits;
+      }
+
+      int word = (messageNr & BLOCK_SIZE - 1) >>> 6;
+
+      long mask = 1L << messageNr;
+
+      if ((bits[word] & mask) != 0)
+      {
+         return false;
+      }
+
+      bits[word] |= mask;
+
+      size++;
+
+      if (++blockCounts[block] == BLOCK_SIZE)
+      {
+         blocks[block] = FULL;
+      }
+
+      return true;
+   }
+
+   public boolean contains(final int messageNr)
+   {
+      if (messageNr < 0)
+      {
+         return false;
+      }
+
+      int block = messageNr >>> BLOCK_SHIFT;
+
+      if (block >= blocks.length)
+      {
+         return false;
+      }
+
+      long[] bits = blocks[block];
+
+      if (bits == null)
+      {
+         return false;
+      }
+
+      if (bits == FULL)
+      {
+         return true;
+      }
+
+      return (bits[(messageNr & BLOCK_SIZE - 1) >>> 6] & 1L << messageNr) != 0;
+   }
+
+   /**
+    * @return whether every number from 0 (inclusive) to {@code numberOfMessages} (exclusive) is on
+    *         the set
+    */
+   public boolean containsAll(final int numberOfMessages)
+   {
+      if (size < numberOfMessages)
+      {
+         return false;
+      }
+
+      int fullBlocks = numberOfMessages >>> BLOCK_SHIFT;
+
+      for (int i = 0; i < fullBlocks; i++)
+      {
+         if (blocks[i] != FULL)
+         {
+            return false;
+         }
+      }
+
+      for (int i = fullBlocks << BLOCK_SHIFT; i < numberOfMessages; i++)
+      {
+         if (!contains(i))
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * @return the lowest number on the set, or -1 when empty
+    */
+   public int first()
+   {
+      return next(0);
+   }
+
+   /**
+    * @return the lowest number on the set that is not lower than {@code from}, or -1 if there's
+    *         none
+    */
+   public int next(final int from)
+   {
+      for (int block = Math.max(0, from) >> BLOCK_SHIFT; block < blocks.length; block++)
+      {
+         long[] bits = blocks[block];
+
+         int blockStart = block << BLOCK_SHIFT;
+
+         if (bits == FULL)
+         {
+            return Math.max(blockStart, from);
+         }
+
+         if (bits != null)
+         {
+            int firstWord = from > blockStart ? (from - blockStart) >> 6 : 0;
+
+            for (int word = firstWord; word < WORDS; word++)
+            {
+               long value = bits[word];
+
+               if (word == firstWord && from > blockStart)
+               {
+                  // ignore the numbers lower than from on its word
+                  value &= -1L << (from & 63);
+               }
+
+               if (value != 0)
+               {
+                  return blockStart + (word << 6) + Long.numberOfTrailingZeros(value);
+               }
+            }
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * @return a copy of the set, independent of any further change on this one
+    */
+   public PageBitmap copy()
+   {
+      PageBitmap copy = new PageBitmap();
+
+      copy.blocks = new long[blocks.length][];
+
+      for (int block = 0; block < blocks.length; block++)
+      {
+         long[] bits = blocks[block];
+
+         copy.blocks[block] = bits == null || bits == FULL ? bits : bits.clone();
+      }
+
+      copy.blockCounts = blockCounts.clone();
+      copy.size = size;
+
+      return copy;
+   }
+
+   public int size()
+   {
+      return size;
+   }
+
+   public boolean isEmpty()
+   {
+      return size == 0;
+   }
+
+   public void clear()
+   {
+      blocks = NO_BLOCKS;
+      blockCounts = NO_COUNTS;
+      size = 0;
+   }
+
+   /**
+    * @return an estimate of the memory used by the bitmap
+    */
+   public long getMemorySize()
+   {
+      long memory = 12L * blocks.length;
+
+      for (long[] bits : blocks)
+      {
+         if (bits != null && bits != FULL)
+         {
+            memory += 8 * WORDS;
+         }
+      }
+
+      return memory;
+   }
+
+   public int getEncodeSize()
+   {
+      int encodeSize = DataConstants.SIZE_INT;
+
+      for (int block = 0; block < blocks.length; block++)
+      {
+         if (blocks[block] != null)
+         {
+            encodeSize += DataConstants.SIZE_INT + DataConstants.SIZE_BYTE;
+
+            if (blocks[block] == FULL)
+            {
+               continue;
+            }
+
+            if (blockCounts[block] < MAX_OFFSETS)
+            {
+               encodeSize += DataConstants.SIZE_SHORT + blockCounts[block] * DataConstants.SIZE_SHORT;
+            }
+            else
+            {
+               encodeSize += WORDS * DataConstants.SIZE_LONG;
+            }
+         }
+      }
+
+      return encodeSize;
+   }
+
+   public void encode(final HornetQBuffer buffer)
+   {
+      int numberOfBlocks = 0;
+
+      for (long[] bits : blocks)
+      {
+         if (bits != null)
+         {
+            numberOfBlocks++;
+         }
+      }
+
+      buffer.writeInt(numberOfBlocks);
+
+      for (int block = 0; block < blocks.length; block++)
+      {
+         long[] bits = blocks[block];
+
+         if (bits == null)
+         {
+            continue;
+         }
+
+         buffer.writeInt(block);
+
+         if (bits == FULL)
+         {
+            buffer.writeByte(ENCODING_FULL);
+         }
+         else if (blockCounts[block] < MAX_OFFSETS)
+         {
+            buffer.writeByte(ENCODING_OFFSETS);
+            buffer.writeShort((short)blockCounts[block]);
+
+            for (int word = 0; word < WORDS; word++)
+            {
+               long value = bits[word];
+
+               while (value != 0)
+               {
+                  buffer.writeShort((short)((word << 6) + Long.numberOfTrailingZeros(value)));
+                  value &= value - 1;
+               }
+            }
+         }
+         else
+         {
+            buffer.writeByte(ENCODING_BITS);
+
+            for (int word = 0; word < WORDS; word++)
+            {
+               buffer.writeLong(bits[word]);
+            }
+         }
+      }
+   }
+
+   public void decode(final HornetQBuffer buffer)
+   {
+      clear();
+
+      int numberOfBlocks = buffer.readInt();
+
+      for (int i = 0; i < numberOfBlocks; i++)
+      {
+         int block = buffer.readInt();
+
+         if (block < 0)
+         {
+            throw new IllegalStateException("Invalid block " + block);
+         }
+
+         byte encoding = buffer.readByte();
+
+         grow(block + 1);
+
+         if (blocks[block] != null)
+         {
+            throw new IllegalStateException("Block " + block + " was already decoded");
+         }
+
+         if (encoding == ENCODING_FULL)
+         {
+            blocks[block] = FULL;
+            blockCounts[block] = BLOCK_SIZE;
+            size += BLOCK_SIZE;
+         }
+         else if (encoding == ENCODING_OFFSETS)
+         {
+            int count = buffer.readShort();
+
+            for (int j = 0; j < count; j++)
+            {
+               add((block << BLOCK_SHIFT) + (buffer.readShort() & BLOCK_SIZE - 1));
+            }
+         }
+         else if (encoding == ENCODING_BITS)
+         {
+            long[] bits = new long[WORDS];
+
+            int count = 0;
+
+            for (int word = 0; word < WORDS; word++)
+            {
+               bits[word] = buffer.readLong();
+               count += Long.bitCount(bits[word]);
+            }
+
+            if (count > 0)
+            {
+               blocks[block] = count == BLOCK_SIZE ? FULL : bits;
+               blockCounts[block] = count;
+               size += count;
+            }
+         }
+         else
+         {
+            throw new IllegalStateException("Invalid block encoding " + encoding);
+         }
+      }
+   }
+
+   @Override
+   public String toString()
+   {
+      return "PageBitmap [size=" + size + ", blocks=" + blocks.length + "]";
+   }
+
+   // Private -------------------------------------------------------
+
+   private void grow(final int numberOfBlocks)
+   {
+      if (numberOfBlocks <= blocks.length)
+      {
+         return;
+      }
+
+      long[][] newBlocks = new long[numberOfBlocks][];
+
+      System.arraycopy(blocks, 0, newBlocks, 0, blocks.length);
+
+      int[] newCounts = new int[numberOfBlocks];
+
+      System.arraycopy(blockCounts, 0, newCounts, 0, blockCounts.length);
+
+      blocks = newBlocks;
+
+      blockCounts = newCounts;
+   }
+
+   private static void checkNumber(final int messageNr)
+   {
+      if (messageNr < 0)
+      {
+         throw new IllegalArgumentException("Invalid message number " + messageNr);
+      }
+   }
+}
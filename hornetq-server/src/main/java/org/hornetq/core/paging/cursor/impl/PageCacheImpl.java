@@ -13,15 +13,25 @@
 
 package org.hornetq.core.paging.cursor.impl;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.cursor.PageCache;
 import org.hornetq.core.paging.impl.Page;
+import org.hornetq.core.persistence.StorageManager;
+import org.hornetq.core.server.HornetQServerLogger;
+import org.hornetq.utils.LatencyHistogram;
 
 /**
  * The caching associated to a single page.
+ * <p>
+ * The position of the messages on the page file is read first, messages are then read and decoded
+ * as they are requested, {@link #READ_SIZE} bytes at a time, and kept until the cache is closed.
+ * The page file is kept open until the cache is closed, a closed cache (e.g. evicted from the
+ * provider) still works but opens the file on every read.
  *
  * @author <a href="mailto:clebert.suconic@jboss.org">Clebert Suconic</a>
  *
@@ -32,21 +42,52 @@ class PageCacheImpl implements PageCache
 
    // Constants -----------------------------------------------------
 
+   /**
+    * How much of the page file is read and decoded at once
+    */
+   static final int READ_SIZE = 64 * 1024;
+
    // Attributes ----------------------------------------------------
 
    private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
-   private PagedMessage[] messages;
+   /**
+    * The position of every message on the page, followed by the end of the last one
+    */
+   private int[] index;
+
+   /**
+    * The messages read so far
+    */
+   private volatile PagedMessage[] messages;
+
+   private volatile long memorySize;
+
+   private boolean closed;
 
    private final Page page;
 
+   private final StorageManager storageManager;
+
+   private final LatencyHistogram readLatency;
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
 
-   public PageCacheImpl(final Page page)
+   public PageCacheImpl(final Page page, final StorageManager storageManager)
+   {
+      this(page, storageManager, null);
+   }
+
+   /**
+    * @param readLatency where the time spent reading the page file is recorded, may be null
+    */
+   public PageCacheImpl(final Page page, final StorageManager storageManager, final LatencyHistogram readLatency)
    {
       this.page = page;
+      this.storageManager = storageManager;
+      this.readLatency = readLatency;
    }
 
    // Public --------------------------------------------------------
@@ -63,14 +104,23 @@ class PageCacheImpl implements PageCache
       lock.readLock().lock();
       try
       {
-         if (messageNumber < messages.length)
+         if (messageNumber >= index.length - 1)
          {
-            return messages[messageNumber];
+            return null;
          }
-         else
+
+         PagedMessage[] localMessages = messages;
+
+         if (localMessages != null && localMessages[messageNumber] != null)
          {
-            return null;
+            return localMessages[messageNumber];
          }
+
+         return readMessages(messageNumber);
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException("Couldn't complete paging due to an IO Exception on Paging - " + e.getMessage(), e);
       }
       finally
       {
@@ -93,9 +143,31 @@ class PageCacheImpl implements PageCache
       lock.writeLock().unlock();
    }
 
-   public void setMessages(final PagedMessage[] messages)
+   /**
+    * Opens the page and reads the position of its messages.
+    */
+   public synchronized void readIndex() throws Exception
+   {
+      long start = System.nanoTime();
+
+      page.open();
+
+      index = page.readIndex(storageManager);
+
+      if (readLatency != null)
+      {
+         readLatency.record(System.nanoTime() - start);
+      }
+
+      memorySize = index.length * 4;
+   }
+
+   /**
+    * Reads the first messages of the page ahead of the cursors.
+    */
+   public void readAhead()
    {
-      this.messages = messages;
+      getMessage(0);
    }
 
    public int getNumberOfMessages()
@@ -103,7 +175,7 @@ class PageCacheImpl implements PageCache
       lock.readLock().lock();
       try
       {
-         return messages.length;
+         return index.length - 1;
       }
       finally
       {
@@ -111,8 +183,36 @@ class PageCacheImpl implements PageCache
       }
    }
 
-   public void close()
+   public long getMemorySize()
    {
+      return memorySize;
+   }
+
+   /**
+    * Releases the page file and the messages read so far, the cache can still be used afterwards.
+    */
+   public synchronized void close()
+   {
+      closed = true;
+
+      messages = null;
+
+      if (index != null)
+      {
+         memorySize = index.length * 4;
+      }
+
+      try
+      {
+         if (page.getFile().isOpen())
+         {
+            page.close();
+         }
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.debug("Error closing page " + page.getPageId(), e);
+      }
    }
 
    @Override
@@ -124,12 +224,148 @@ class PageCacheImpl implements PageCache
    @Override
    public String toString()
    {
-      return "PageCacheImpl::page=" + page.getPageId() + " numberOfMessages = " + messages.length;
+      return "PageCacheImpl::page=" + page.getPageId() + " numberOfMessages = " + (index.length - 1);
    }
 
+   /**
+    * Reads and decodes every message on the page.
+    */
    @Override
    public PagedMessage[] getMessages()
    {
-      return messages;
+      lock.readLock().lock();
+      try
+      {
+         storageManager.beforePageRead();
+         try
+         {
+            List<PagedMessage> messages = read(0, index.length - 1);
+
+            return messages.toArray(new PagedMessage[messages.size()]);
+         }
+         finally
+         {
+            storageManager.afterPageRead();
+         }
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException("Couldn't complete paging due to an IO Exception on Paging - " + e.getMessage(), e);
+      }
+      finally
+      {
+         lock.readLock().unlock();
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   /**
+    * Reads the message and the ones following it, up to {@link #READ_SIZE} bytes.
+    */
+   private synchronized PagedMessage readMessages(final int messageNumber) throws Exception
+   {
+      PagedMessage[] localMessages = messages;
+
+      if (localMessages == null)
+      {
+         localMessages = new PagedMessage[index.length - 1];
+      }
+      else if (localMessages[messageNumber] != null)
+      {
+         // read by another thread meanwhile
+         return localMessages[messageNumber];
+      }
+
+      // messages of a compressed block share its position and can only be read together
+      int first = messageNumber;
+
+      while (first > 0 && index[first - 1] == index[messageNumber])
+      {
+         first--;
+      }
+
+      int last = messageNumber + 1;
+
+      while (last < localMessages.length && index[last] == index[messageNumber])
+      {
+         last++;
+      }
+
+      while (last < localMessages.length && localMessages[last] == null &&
+             index[last + 1] - index[first] <= READ_SIZE)
+      {
+         last++;
+      }
+
+      while (last < localMessages.length && index[last] == index[last - 1])
+      {
+         last++;
+      }
+
+      storageManager.beforePageRead();
+      try
+      {
+         List<PagedMessage> read = read(first, last);
+
+         for (int i = 0; i < read.size(); i++)
+         {
+            if (localMessages[first + i] == null)
+            {
+               localMessages[first + i] = read.get(i);
+            }
+         }
+      }
+      finally
+      {
+         storageManager.afterPageRead();
+      }
+
+      if (!closed)
+      {
+         memorySize += index[last] - index[first];
+
+         messages = localMessages;
+      }
+
+      return localMessages[messageNumber];
+   }
+
+   /**
+    * Reads the messages from {@code first} (inclusive) to {@code last} (exclusive).
+    * <p>
+    * The cache may be used again after being closed (e.g. when it was evicted), the file is then
+    * only open during the read.
+    */
+   private synchronized List<PagedMessage> read(final int first, final int last) throws Exception
+   {
+      if (first == last)
+      {
+         return new ArrayList<PagedMessage>();
+      }
+
+      long start = System.nanoTime();
+
+      if (!page.getFile().isOpen())
+      {
+         page.open();
+      }
+
+      try
+      {
+         return page.readMessages(storageManager, index[first], index[last]);
+      }
+      finally
+      {
+         if (closed)
+         {
+            page.close();
+         }
+
+         if (readLatency != null)
+         {
+            readLatency.record(System.nanoTime() - start);
+         }
+      }
    }
 }
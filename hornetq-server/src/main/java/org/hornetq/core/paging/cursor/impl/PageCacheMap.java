@@ -0,0 +1,227 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.hornetq.core.paging.cursor.PageCache;
+
+/**
+ * The page caches of an address, evicted on a least recently used basis when there are more than
+ * {@code maxElements} caches or when they use more than {@code maxBytes}.
+ * <p>
+ * Evicted caches are closed. Live caches (the page being written) are never evicted. A value
+ * {@code <= 0} means no limit.
+ * <p>
+ * This class is not thread safe, the caller should synchronize on it.
+ */
+class PageCacheMap
+{
+   // Attributes ----------------------------------------------------
+
+   /**
+    * Iterated from the least recently used to the most recently used
+    */
+   private final LinkedHashMap<Long, CacheEntry> caches = new LinkedHashMap<Long, CacheEntry>(16, 0.75f, true);
+
+   private int maxElements;
+
+   private long maxBytes;
+
+   private long memorySize;
+
+   private long evictions;
+
+   // Constructors --------------------------------------------------
+
+   PageCacheMap(final int maxElements, final long maxBytes)
+   {
+      this.maxElements = maxElements;
+      this.maxBytes = maxBytes;
+   }
+
+   // Public --------------------------------------------------------
+
+   public PageCache get(final long pageId)
+   {
+      CacheEntry entry = caches.get(pageId);
+
+      if (entry == null)
+      {
+         return null;
+      }
+
+      // the caches grow as their messages are read, only the one accessed is measured again
+      updateMemorySize(entry);
+
+      checkCacheSize(pageId);
+
+      return entry.cache;
+   }
+
+   public boolean containsKey(final long pageId)
+   {
+      return caches.containsKey(pageId);
+   }
+
+   public void put(final long pageId, final PageCache cache)
+   {
+      CacheEntry entry = new CacheEntry(cache);
+
+      CacheEntry previous = caches.put(pageId, entry);
+
+      if (previous != null)
+      {
+         memorySize -= previous.memorySize;
+      }
+
+      updateMemorySize(entry);
+
+      checkCacheSize(pageId);
+   }
+
+   public PageCache remove(final long pageId)
+   {
+      CacheEntry entry = caches.remove(pageId);
+
+      if (entry == null)
+      {
+         return null;
+      }
+
+      memorySize -= entry.memorySize;
+
+      return entry.cache;
+   }
+
+   public int size()
+   {
+      return caches.size();
+   }
+
+   public Collection<PageCache> values()
+   {
+      ArrayList<PageCache> values = new ArrayList<PageCache>(caches.size());
+
+      for (CacheEntry entry : caches.values())
+      {
+         values.add(entry.cache);
+      }
+
+      return values;
+   }
+
+   public int getMaxElements()
+   {
+      return maxElements;
+   }
+
+   public void setMaxElements(final int maxElements)
+   {
+      this.maxElements = maxElements;
+      checkCacheSize(-1);
+   }
+
+   public long getMaxBytes()
+   {
+      return maxBytes;
+   }
+
+   public void setMaxBytes(final long maxBytes)
+   {
+      this.maxBytes = maxBytes;
+      checkCacheSize(-1);
+   }
+
+   /**
+    * @return the memory used by the caches when they were last accessed
+    */
+   public long getMemorySize()
+   {
+      return memorySize;
+   }
+
+   public long getEvictions()
+   {
+      return evictions;
+   }
+
+   // Private -------------------------------------------------------
+
+   private void updateMemorySize(final CacheEntry entry)
+   {
+      long size = entry.cache.getMemorySize();
+
+      memorySize += size - entry.memorySize;
+
+      entry.memorySize = size;
+   }
+
+   /**
+    * Evicts the least recently used caches until the limits are respected, the cache just accessed
+    * is kept.
+    */
+   private void checkCacheSize(final long accessedPageId)
+   {
+      if (!isOverLimit())
+      {
+         return;
+      }
+
+      Iterator<CacheEntry> iterator = caches.values().iterator();
+
+      while (isOverLimit() && iterator.hasNext())
+      {
+         CacheEntry entry = iterator.next();
+
+         if (entry.cache.isLive() || entry.cache.getPageId() == accessedPageId)
+         {
+            continue;
+         }
+
+         iterator.remove();
+
+         memorySize -= entry.memorySize;
+
+         evictions++;
+
+         entry.cache.close();
+      }
+   }
+
+   private boolean isOverLimit()
+   {
+      return maxElements > 0 && caches.size() > maxElements || maxBytes > 0 && memorySize > maxBytes;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * A cache and the memory it used when it was last accessed
+    */
+   private static final class CacheEntry
+   {
+      final PageCache cache;
+
+      long memorySize;
+
+      CacheEntry(final PageCache cache)
+      {
+         this.cache = cache;
+      }
+   }
+}
@@ -18,6 +18,8 @@ import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.paging.PagedMessage;
@@ -33,8 +35,9 @@ import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.impl.TransactionImpl;
 import org.hornetq.core.server.HornetQServerLogger;
+import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.utils.FutureLatch;
-import org.hornetq.utils.SoftValueHashMap;
+import org.hornetq.utils.LatencyHistogram;
 import java.util.concurrent.atomic.AtomicInteger;
 /**
  * A PageProviderIMpl
@@ -66,10 +69,23 @@ public class PageCursorProviderImpl implements PageCursorProvider
    // This is the same executor used at the PageStoreImpl. One Executor per pageStore
    private final Executor executor;
 
-   private final SoftValueHashMap<Long, PageCache> softCache;
+   private final PageCacheMap caches;
+
+   private long cacheHits;
+
+   private long cacheMisses;
 
    private final ConcurrentMap<Long, PageSubscription> activeCursors = new ConcurrentHashMap<Long, PageSubscription>();
 
+   private final PageFilterIndex filterIndex = new PageFilterIndex();
+
+   private final LatencyHistogram readLatency = new LatencyHistogram();
+
+   private final AtomicLong cleanupCount = new AtomicLong();
+
+   // nanoseconds
+   private final AtomicLong cleanupTime = new AtomicLong();
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -78,11 +94,20 @@ public class PageCursorProviderImpl implements PageCursorProvider
                                  final StorageManager storageManager,
                                  final Executor executor,
                                  final int maxCacheSize)
+   {
+      this(pagingStore, storageManager, executor, maxCacheSize, AddressSettings.DEFAULT_PAGE_MAX_CACHE_BYTES);
+   }
+
+   public PageCursorProviderImpl(final PagingStore pagingStore,
+                                 final StorageManager storageManager,
+                                 final Executor executor,
+                                 final int maxCacheSize,
+                                 final long maxCacheBytes)
    {
       this.pagingStore = pagingStore;
       this.storageManager = storageManager;
       this.executor = executor;
-      this.softCache = new SoftValueHashMap<Long, PageCache>(maxCacheSize);
+      this.caches = new PageCacheMap(maxCacheSize, maxCacheBytes);
    }
 
    // Public --------------------------------------------------------
@@ -107,6 +132,7 @@ public class PageCursorProviderImpl implements PageCursorProvider
       PageSubscription activeCursor =
                new PageSubscriptionImpl(this, pagingStore, storageManager, executor, filter, cursorID, persistent);
       activeCursors.put(cursorID, activeCursor);
+      filterIndex.addSubscription(cursorID, filter);
       return activeCursor;
    }
 
@@ -131,6 +157,11 @@ public class PageCursorProviderImpl implements PageCursorProvider
       return cache.getMessage(pos.getMessageNr());
    }
 
+   public boolean match(final long queueId, final PagePosition pos, final PagedMessage msg)
+   {
+      return filterIndex.match(queueId, pos, msg);
+   }
+
    public PagedReference newReference(final PagePosition pos,
                                       final PagedMessage msg,
                                       final PageSubscription subscription)
@@ -147,19 +178,69 @@ public class PageCursorProviderImpl implements PageCursorProvider
    }
 
    public PageCache getPageCache(final long pageId)
+   {
+      return getPageCache(pageId, false);
+   }
+
+   public void readAhead(final long pageId)
+   {
+      synchronized (caches)
+      {
+         // the page being written is always on the cache
+         if (pageId >= pagingStore.getCurrentWritingPage() || caches.containsKey(pageId))
+         {
+            return;
+         }
+      }
+
+      executor.execute(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               if (pagingStore.isStarted())
+               {
+                  PageCache cache = getPageCache(pageId, true);
+
+                  if (cache instanceof PageCacheImpl)
+                  {
+                     ((PageCacheImpl)cache).readAhead();
+                  }
+               }
+            }
+            catch (Exception e)
+            {
+               // the cursor will read the page itself
+               HornetQServerLogger.LOGGER.debug("Error reading ahead page " + pageId + " on " + pagingStore.getAddress(), e);
+            }
+         }
+      });
+   }
+
+   /**
+    * @param readAhead the cache is being loaded before it's needed, it won't count as a miss and
+    *           the cache is only returned if it was loaded
+    */
+   private PageCache getPageCache(final long pageId, final boolean readAhead)
    {
       try
       {
-         boolean needToRead = false;
+         PageCacheImpl needToRead = null;
          PageCache cache = null;
-         synchronized (softCache)
+         synchronized (caches)
          {
             if (pageId > pagingStore.getCurrentWritingPage())
             {
                return null;
             }
 
-            cache = softCache.get(pageId);
+            if (readAhead && caches.containsKey(pageId))
+            {
+               return null;
+            }
+
+            cache = caches.get(pageId);
             if (cache == null)
             {
                if (!pagingStore.checkPageFileExists((int)pageId))
@@ -167,8 +248,13 @@ public class PageCursorProviderImpl implements PageCursorProvider
                   return null;
                }
 
-               cache = createPageCache(pageId);
-               needToRead = true;
+               if (!readAhead)
+               {
+                  cacheMisses++;
+               }
+
+               needToRead = createPageCache(pageId);
+               cache = needToRead;
                // anyone reading from this cache will have to wait reading to finish first
                // we also want only one thread reading this cache
                cache.lock();
@@ -176,37 +262,39 @@ public class PageCursorProviderImpl implements PageCursorProvider
                {
                   HornetQServerLogger.LOGGER.trace("adding " + pageId +  " into cursor = " + this.pagingStore.getAddress());
                }
-               softCache.put(pageId, cache);
+               caches.put(pageId, cache);
+            }
+            else
+            {
+               cacheHits++;
             }
          }
 
          // Reading is done outside of the synchronized block, however
          // the page stays locked until the entire reading is finished
-         if (needToRead)
+         if (needToRead != null)
          {
-            Page page = null;
+            boolean read = false;
             try
             {
-               page = pagingStore.createPage((int)pageId);
-
                storageManager.beforePageRead();
-               page.open();
 
-               List<PagedMessage> pgdMessages = page.read(storageManager);
-               cache.setMessages(pgdMessages.toArray(new PagedMessage[pgdMessages.size()]));
+               // only the position of the messages is read, they are decoded as they are requested
+               needToRead.readIndex();
+
+               read = true;
             }
             finally
             {
-               try
+               if (!read)
                {
-                  if (page != null)
+                  needToRead.close();
+
+                  synchronized (caches)
                   {
-                     page.close();
+                     caches.remove(pageId);
                   }
                }
-               catch (Throwable ignored)
-               {
-               }
                storageManager.afterPageRead();
                cache.unlock();
             }
@@ -222,27 +310,96 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    public void addPageCache(PageCache cache)
    {
-      synchronized (softCache)
+      synchronized (caches)
       {
-         softCache.put(cache.getPageId(), cache);
+         caches.put(cache.getPageId(), cache);
       }
    }
 
    public int getCacheMaxSize()
    {
-      return softCache.getMaxEelements();
+      synchronized (caches)
+      {
+         return caches.getMaxElements();
+      }
    }
 
    public void setCacheMaxSize(final int size)
    {
-      softCache.setMaxElements(size);
+      synchronized (caches)
+      {
+         caches.setMaxElements(size);
+      }
+   }
+
+   public long getCacheMaxBytes()
+   {
+      synchronized (caches)
+      {
+         return caches.getMaxBytes();
+      }
+   }
+
+   public void setCacheMaxBytes(final long bytes)
+   {
+      synchronized (caches)
+      {
+         caches.setMaxBytes(bytes);
+      }
+   }
+
+   public long getCacheHits()
+   {
+      synchronized (caches)
+      {
+         return cacheHits;
+      }
+   }
+
+   public long getCacheMisses()
+   {
+      synchronized (caches)
+      {
+         return cacheMisses;
+      }
+   }
+
+   public long getCacheEvictions()
+   {
+      synchronized (caches)
+      {
+         return caches.getEvictions();
+      }
+   }
+
+   public long getCacheMemorySize()
+   {
+      synchronized (caches)
+      {
+         return caches.getMemorySize();
+      }
+   }
+
+   public LatencyHistogram getReadLatency()
+   {
+      return readLatency;
+   }
+
+   public long getCleanupCount()
+   {
+      return cleanupCount.get();
+   }
+
+   public long getCleanupTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(cleanupTime.get());
    }
 
    public int getCacheSize()
    {
-      synchronized (softCache)
+      synchronized (caches)
       {
-         return softCache.size();
+         return caches.size();
       }
    }
 
@@ -265,6 +422,18 @@ public class PageCursorProviderImpl implements PageCursorProvider
       }
 
       waitForFuture();
+
+      // release the files held by the caches
+      synchronized (caches)
+      {
+         for (PageCache cache : caches.values())
+         {
+            if (!cache.isLive())
+            {
+               cache.close();
+            }
+         }
+      }
    }
 
    private void waitForFuture()
@@ -291,6 +460,7 @@ public class PageCursorProviderImpl implements PageCursorProvider
    public void close(PageSubscription cursor)
    {
       activeCursors.remove(cursor.getId());
+      filterIndex.removeSubscription(cursor.getId());
 
       scheduleCleanup();
    }
@@ -360,6 +530,8 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    public void cleanup()
    {
+      long start = System.nanoTime();
+
       ArrayList<Page> depagedPages = new ArrayList<Page>();
 
       while (true)
@@ -491,9 +663,9 @@ public class PageCursorProviderImpl implements PageCursorProvider
          {
             PageCache cache;
             PagedMessage[] pgdMessages;
-            synchronized (softCache)
+            synchronized (caches)
             {
-               cache = softCache.get((long)depagedPage.getPageId());
+               cache = caches.get((long)depagedPage.getPageId());
             }
 
             if (isTrace)
@@ -534,13 +706,32 @@ public class PageCursorProviderImpl implements PageCursorProvider
                pgdMessages = cache.getMessages();
             }
 
+            if (cache != null)
+            {
+               cache.close();
+            }
+
             depagedPage.delete(pgdMessages);
             onDeletePage(depagedPage);
 
-            synchronized (softCache)
+            synchronized (caches)
             {
-               softCache.remove((long)depagedPage.getPageId());
+               caches.remove((long)depagedPage.getPageId());
             }
+
+            filterIndex.removePage(depagedPage.getPageId());
+         }
+
+         if (!depagedPages.isEmpty())
+         {
+            long time = System.nanoTime() - start;
+
+            cleanupCount.incrementAndGet();
+            cleanupTime.addAndGet(time);
+
+            pagingStore.getPagingManager().notifyPageCleanup(pagingStore,
+                                                             depagedPages.size(),
+                                                             TimeUnit.NANOSECONDS.toMillis(time));
          }
       }
       catch (Exception ex)
@@ -602,9 +793,14 @@ public class PageCursorProviderImpl implements PageCursorProvider
    public void printDebug()
    {
       System.out.println("Debug information for PageCursorProviderImpl:");
-      for (PageCache cache : softCache.values())
+      synchronized (caches)
       {
-         System.out.println("Cache " + cache);
+         System.out.println("Cache hits=" + cacheHits + ", misses=" + cacheMisses + ", evictions=" +
+                            caches.getEvictions() + ", memorySize=" + caches.getMemorySize());
+         for (PageCache cache : caches.values())
+         {
+            System.out.println("Cache " + cache);
+         }
       }
    }
 
@@ -615,7 +811,7 @@ public class PageCursorProviderImpl implements PageCursorProvider
    /* Protected as we may let test cases to instrument the test */
    protected PageCacheImpl createPageCache(final long pageId) throws Exception
    {
-      return new PageCacheImpl(pagingStore.createPage((int)pageId));
+      return new PageCacheImpl(pagingStore.createPage((int)pageId), storageManager, readLatency);
    }
 
    // Private -------------------------------------------------------
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.paging.PagedMessage;
+import org.hornetq.core.paging.cursor.PagePosition;
+import org.hornetq.core.server.ServerMessage;
+
+/**
+ * The filters of the subscriptions of a store, evaluated once per paged message.
+ * <p>
+ * The first subscription reaching a message evaluates the filter of every subscription the message
+ * is routed to, the results are kept on bitmaps per page and used by the other subscriptions and on
+ * later iterations. Only the last {@link #MAX_PAGES} pages used are kept, and every result is
+ * discarded when the filtered subscriptions change.
+ */
+class PageFilterIndex
+{
+   // Constants -----------------------------------------------------
+
+   static final int MAX_PAGES = 10;
+
+   // Attributes ----------------------------------------------------
+
+   private final Map<Long, Filter> filters = new HashMap<Long, Filter>();
+
+   private final LinkedHashMap<Long, PageMatches> pages = new LinkedHashMap<Long, PageMatches>(16, 0.75f, true);
+
+   // Public --------------------------------------------------------
+
+   public synchronized void addSubscription(final long subscriptionID, final Filter filter)
+   {
+      if (filter != null)
+      {
+         filters.put(subscriptionID, filter);
+         pages.clear();
+      }
+   }
+
+   public synchronized void removeSubscription(final long subscriptionID)
+   {
+      if (filters.remove(subscriptionID) != null)
+      {
+         pages.clear();
+      }
+   }
+
+   public synchronized void removePage(final long pageId)
+   {
+      pages.remove(pageId);
+   }
+
+   /**
+    * @return the number of pages with results
+    */
+   public synchronized int getNumberOfPages()
+   {
+      return pages.size();
+   }
+
+   /**
+    * @return whether the message matches the filter of the subscription, true if it has no filter
+    */
+   public boolean match(final long subscriptionID, final PagePosition position, final PagedMessage message)
+   {
+      Filter filter;
+
+      PageMatches page = null;
+
+      synchronized (this)
+      {
+         filter = filters.get(subscriptionID);
+
+         if (filter == null)
+         {
+            return true;
+         }
+
+         // nothing to share with a single filter
+         if (filters.size() > 1)
+         {
+            page = getPage(position.getPageNr());
+         }
+      }
+
+      if (page == null)
+      {
+         return filter.match(message.getMessage());
+      }
+
+      return page.match(subscriptionID, position.getMessageNr(), message);
+   }
+
+   // Private -------------------------------------------------------
+
+   private PageMatches getPage(final long pageId)
+   {
+      PageMatches page = pages.get(pageId);
+
+      if (page == null)
+      {
+         page = new PageMatches(new HashMap<Long, Filter>(filters));
+
+         pages.put(pageId, page);
+
+         Iterator<PageMatches> iterator = pages.values().iterator();
+
+         while (pages.size() > MAX_PAGES)
+         {
+            iterator.next();
+            iterator.remove();
+         }
+      }
+
+      return page;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class PageMatches
+   {
+      private final Map<Long, Filter> filters;
+
+      // messages on the page whose filters were evaluated
+      private final PageBitmap evaluated = new PageBitmap();
+
+      // messages on the page matching each subscription
+      private final Map<Long, PageBitmap> matches = new HashMap<Long, PageBitmap>();
+
+      private PageMatches(final Map<Long, Filter> filters)
+      {
+         this.filters = filters;
+
+         for (Long subscriptionID : filters.keySet())
+         {
+            matches.put(subscriptionID, new PageBitmap());
+         }
+      }
+
+      private synchronized boolean match(final long subscriptionID, final int messageNr, final PagedMessage message)
+      {
+         if (messageNr < 0)
+         {
+            return filters.get(subscriptionID).match(message.getMessage());
+         }
+
+         if (evaluated.add(messageNr))
+         {
+            ServerMessage serverMessage = message.getMessage();
+
+            for (long queueID : message.getQueueIDs())
+            {
+               Filter filter = filters.get(queueID);
+
+               if (filter != null && filter.match(serverMessage))
+               {
+                  matches.get(queueID).add(messageNr);
+               }
+            }
+         }
+
+         return matches.get(subscriptionID).contains(messageNr);
+      }
+   }
+}
@@ -15,14 +15,13 @@ package org.hornetq.core.paging.cursor.impl;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.Executor;
@@ -45,12 +44,10 @@ import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.Queue;
-import org.hornetq.core.server.ServerMessage;
 import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.TransactionOperationAbstract;
 import org.hornetq.core.transaction.TransactionPropertyIndexes;
 import org.hornetq.core.transaction.impl.TransactionImpl;
-import org.hornetq.utils.ConcurrentHashSet;
 import org.hornetq.utils.FutureLatch;
 import org.hornetq.utils.LinkedListIterator;
 
@@ -63,6 +60,11 @@ class PageSubscriptionImpl implements PageSubscription
 {
    // Constants -----------------------------------------------------
 
+   private static final long[] NO_RECORDS = new long[0];
+
+   // The ACK records of a page are collapsed into a single snapshot record after this many
+   static final int CHECKPOINT_RECORDS = 1000;
+
    // Attributes ----------------------------------------------------
 
    private final boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
@@ -92,6 +94,8 @@ class PageSubscriptionImpl implements PageSubscription
 
    private List<PagePosition> recoveredACK;
 
+   private List<RecoveredACKs> recoveredACKs;
+
    private final SortedMap<Long, PageCursorInfo> consumedPages = new TreeMap<Long, PageCursorInfo>();
 
    private final PageSubscriptionCounter counter;
@@ -327,21 +331,18 @@ class PageSubscriptionImpl implements PageSubscription
          }
 
          // it will delete the page ack records
-         for (PagePosition pos : infoPG.acks)
+         for (long recordID : infoPG.getAckRecords())
          {
-            if (pos.getRecordID() >= 0)
+            store.deleteCursorAcknowledgeTransactional(tx.getID(), recordID);
+            if (!persist)
             {
-               store.deleteCursorAcknowledgeTransactional(tx.getID(), pos.getRecordID());
-               if (!persist)
-               {
-                  // only need to set it once
-                  tx.setContainsPersistent();
-                  persist = true;
-               }
+               // only need to set it once
+               tx.setContainsPersistent();
+               persist = true;
             }
          }
 
-         infoPG.acks.clear();
+         infoPG.clearAcks();
       }
 
       tx.addOperation(new TransactionOperationAbstract()
@@ -405,6 +406,12 @@ class PageSubscriptionImpl implements PageSubscription
          cache = cursorProvider.getPageCache(retPos);
       }
 
+      if (cache != null && retPos.getPageNr() != pos.getPageNr())
+      {
+         // moving forward into a new page, load the one after it while this one is consumed
+         cursorProvider.readAhead(retPos.getPageNr() + 1);
+      }
+
       if (cache == null)
       {
          return null;
@@ -469,28 +476,14 @@ class PageSubscriptionImpl implements PageSubscription
          {
             if (!entry.getValue().isPendingDelete())
             {
-               if (entry.getValue().acks.isEmpty())
+               PagePosition retValue = entry.getValue().getFirstACK();
+
+               if (retValue == null)
                {
                   return new PagePositionImpl(entry.getKey(), -1);
                }
                else
                {
-                  // The list is not ordered...
-                  // This is only done at creation of the queue, so we just scan instead of keeping the list ordened
-                  PagePosition retValue = null;
-
-                  for (PagePosition pos : entry.getValue().acks)
-                  {
-                     if (isTrace)
-                     {
-                        HornetQServerLogger.LOGGER.trace("Analizing " + pos);
-                     }
-                     if (retValue == null || retValue.getMessageNr() > pos.getMessageNr())
-                     {
-                        retValue = pos;
-                     }
-                  }
-
                   if (isTrace)
                   {
                      HornetQServerLogger.LOGGER.trace("Returning initial position " + retValue);
@@ -598,6 +591,23 @@ class PageSubscriptionImpl implements PageSubscription
 
    }
 
+   public long getPageLag()
+   {
+      if (!pageStore.isPaging())
+      {
+         return 0;
+      }
+
+      long firstPage = getFirstPage();
+
+      if (firstPage < 0)
+      {
+         return 0;
+      }
+
+      return Math.max(0, pageStore.getCurrentWritingPage() - firstPage);
+   }
+
    public void addPendingDelivery(final PagePosition position)
    {
       getPageInfo(position).incrementPendingTX();
@@ -651,6 +661,19 @@ class PageSubscriptionImpl implements PageSubscription
       recoveredACK.add(position);
    }
 
+   /**
+    * Theres no need to synchronize this method as it's only called from journal load on startup
+    */
+   public void reloadACKs(final long recordID, final long pageNr, final PagePosition bookmark, final PageBitmap acks)
+   {
+      if (recoveredACKs == null)
+      {
+         recoveredACKs = new LinkedList<RecoveredACKs>();
+      }
+
+      recoveredACKs.add(new RecoveredACKs(recordID, pageNr, bookmark, acks));
+   }
+
    /* (non-Javadoc)
     * @see org.hornetq.core.paging.cursor.PageCursor#recoverPreparedACK(org.hornetq.core.paging.cursor.PagePosition)
     */
@@ -712,13 +735,10 @@ class PageSubscriptionImpl implements PageSubscription
          {
             for (PageCursorInfo cursor : consumedPages.values())
             {
-               for (PagePosition info : cursor.acks)
+               for (long recordID : cursor.getAckRecords())
                {
-                  if (info.getRecordID() >= 0)
-                  {
-                     isPersistent = true;
-                     store.deleteCursorAcknowledgeTransactional(tx, info.getRecordID());
-                  }
+                  isPersistent = true;
+                  store.deleteCursorAcknowledgeTransactional(tx, recordID);
                }
                PagePosition completeInfo = cursor.getCompleteInfo();
                if (completeInfo != null && completeInfo.getRecordID() >= 0)
@@ -764,6 +784,38 @@ class PageSubscriptionImpl implements PageSubscription
 
    public void processReload() throws Exception
    {
+      long txDeleteCursorOnReload = -1;
+
+      if (recoveredACKs != null)
+      {
+         for (RecoveredACKs snapshot : recoveredACKs)
+         {
+            PageCursorInfo pageInfo = getPageInfo(new PagePositionImpl(snapshot.pageNr, 0));
+
+            if (pageInfo == null)
+            {
+               HornetQServerLogger.LOGGER.pageNotFound(new PagePositionImpl(snapshot.pageNr, 0));
+               if (txDeleteCursorOnReload == -1)
+               {
+                  txDeleteCursorOnReload = store.generateUniqueID();
+               }
+               store.deleteCursorAcknowledgeTransactional(txDeleteCursorOnReload, snapshot.recordID);
+            }
+            else
+            {
+               PagePosition last = pageInfo.loadACKs(snapshot.recordID, snapshot.bookmark, snapshot.acks);
+
+               if (last != null && (lastAckedPosition == null || last.compareTo(lastAckedPosition) > 0))
+               {
+                  lastAckedPosition = last;
+               }
+            }
+         }
+
+         recoveredACKs.clear();
+         recoveredACKs = null;
+      }
+
       if (recoveredACK != null)
       {
          if (isTrace)
@@ -772,11 +824,12 @@ class PageSubscriptionImpl implements PageSubscription
          }
          Collections.sort(recoveredACK);
 
-         long txDeleteCursorOnReload = -1;
-
          for (PagePosition pos : recoveredACK)
          {
-            lastAckedPosition = pos;
+            if (lastAckedPosition == null || pos.compareTo(lastAckedPosition) > 0)
+            {
+               lastAckedPosition = pos;
+            }
             PageCursorInfo pageInfo = getPageInfo(pos);
 
             if (pageInfo == null)
@@ -794,14 +847,14 @@ class PageSubscriptionImpl implements PageSubscription
             }
          }
 
-         if (txDeleteCursorOnReload >= 0)
-         {
-            store.commit(txDeleteCursorOnReload);
-         }
-
          recoveredACK.clear();
          recoveredACK = null;
       }
+
+      if (txDeleteCursorOnReload >= 0)
+      {
+         store.commit(txDeleteCursorOnReload);
+      }
    }
 
    public void flushExecutors()
@@ -856,21 +909,18 @@ class PageSubscriptionImpl implements PageSubscription
             }
             info.setCompleteInfo(null);
          }
-         for (PagePosition deleteInfo : info.acks)
+         for (long recordID : info.getAckRecords())
          {
-            if (deleteInfo.getRecordID() >= 0)
+            try
             {
-               try
-               {
-                  store.deleteCursorAcknowledge(deleteInfo.getRecordID());
-               }
-               catch (Exception e)
-               {
-                  HornetQServerLogger.LOGGER.warn("Error while deleting page-complete-record", e);
-               }
+               store.deleteCursorAcknowledge(recordID);
+            }
+            catch (Exception e)
+            {
+               HornetQServerLogger.LOGGER.warn("Error while deleting page-complete-record", e);
             }
          }
-         info.acks.clear();
+         info.clearAcks();
       }
    }
 
@@ -909,7 +959,7 @@ class PageSubscriptionImpl implements PageSubscription
 
    // Protected -----------------------------------------------------
 
-   private boolean match(final ServerMessage message)
+   private boolean match(final PagedReference reference)
    {
       if (filter == null)
       {
@@ -917,7 +967,8 @@ class PageSubscriptionImpl implements PageSubscription
       }
       else
       {
-         return filter.match(message);
+         // the filters of every subscription are evaluated once per message by the provider
+         return cursorProvider.match(cursorId, reference.getPosition(), reference.getPagedMessage());
       }
    }
 
@@ -1021,12 +1072,24 @@ class PageSubscriptionImpl implements PageSubscription
 
       private final long pageId;
 
-      // Confirmed ACKs on this page
-      private final Set<PagePosition> acks = Collections.synchronizedSet(new LinkedHashSet<PagePosition>());
+      // Confirmed ACKs on this page, by message number
+      private final PageBitmap acks = new PageBitmap();
+
+      // The lowest ACK stored before the first message of the page (a bookmark such as -1), if any
+      private PagePosition bookmark;
+
+      // The IDs of the ACK records stored for this page, to be deleted once the page is complete
+      private long[] ackRecords = PageSubscriptionImpl.NO_RECORDS;
+
+      private int numberOfAckRecords;
+
+      // The ACK records are being collapsed into a snapshot
+      private boolean checkpointing;
 
       private WeakReference<PageCache> cache;
 
-      private final Set<PagePosition> removedReferences = new ConcurrentHashSet<PagePosition>();
+      // ACKed messages and messages being acknowledged on a pending transaction
+      private final PageBitmap removedReferences = new PageBitmap();
 
       // The page was live at the time of the creation
       private final boolean wasLive;
@@ -1137,12 +1200,65 @@ class PageSubscriptionImpl implements PageSubscription
 
       public boolean isRemoved(final PagePosition pos)
       {
-         return removedReferences.contains(pos);
+         synchronized (removedReferences)
+         {
+            return removedReferences.contains(pos.getMessageNr());
+         }
       }
 
       public void remove(final PagePosition position)
       {
-         removedReferences.add(position);
+         if (position.getMessageNr() >= 0)
+         {
+            synchronized (removedReferences)
+            {
+               removedReferences.add(position.getMessageNr());
+            }
+         }
+      }
+
+      /**
+       * @return the position of the lowest ACK on this page, or null if there are none
+       */
+      public PagePosition getFirstACK()
+      {
+         synchronized (acks)
+         {
+            if (bookmark != null)
+            {
+               return bookmark;
+            }
+            else if (acks.isEmpty())
+            {
+               return null;
+            }
+            else
+            {
+               return new PagePositionImpl(pageId, acks.first());
+            }
+         }
+      }
+
+      /**
+       * @return the IDs of the ACK records stored for this page
+       */
+      public long[] getAckRecords()
+      {
+         synchronized (acks)
+         {
+            return Arrays.copyOf(ackRecords, numberOfAckRecords);
+         }
+      }
+
+      public void clearAcks()
+      {
+         synchronized (acks)
+         {
+            acks.clear();
+            bookmark = null;
+            ackRecords = PageSubscriptionImpl.NO_RECORDS;
+            numberOfAckRecords = 0;
+         }
       }
 
       public void addACK(final PagePosition posACK)
@@ -1166,6 +1282,33 @@ class PageSubscriptionImpl implements PageSubscription
             confirmed.incrementAndGet();
             checkDone();
          }
+
+         if (added && persistent && posACK.getRecordID() >= 0)
+         {
+            scheduleCheckpoint();
+         }
+      }
+
+      // To be called during reload
+      public PagePosition loadACKs(final long recordID, final PagePosition snapshotBookmark, final PageBitmap snapshot)
+      {
+         PagePosition last = null;
+
+         if (snapshotBookmark != null)
+         {
+            last = new PagePositionImpl(pageId, snapshotBookmark.getMessageNr());
+            loadACK(last);
+         }
+
+         for (int messageNr = snapshot.first(); messageNr >= 0; messageNr = snapshot.next(messageNr + 1))
+         {
+            last = new PagePositionImpl(pageId, messageNr);
+            loadACK(last);
+         }
+
+         addAckRecords(new long[] { recordID });
+
+         return last;
       }
 
       // To be called during reload
@@ -1177,10 +1320,165 @@ class PageSubscriptionImpl implements PageSubscription
          }
       }
 
+      /**
+       * Collapses the ACK records of this page into a single snapshot record once there are
+       * {@link PageSubscriptionImpl#CHECKPOINT_RECORDS} of them, so a restart doesn't need to reload
+       * every ACK of the page.
+       */
+      private void scheduleCheckpoint()
+      {
+         synchronized (acks)
+         {
+            if (checkpointing || numberOfAckRecords < CHECKPOINT_RECORDS || isPendingDelete())
+            {
+               return;
+            }
+            checkpointing = true;
+         }
+
+         executor.execute(new Runnable()
+         {
+            public void run()
+            {
+               try
+               {
+                  checkpoint();
+               }
+               catch (Exception e)
+               {
+                  HornetQServerLogger.LOGGER.problemCleaningCursorPages(e);
+               }
+               finally
+               {
+                  synchronized (acks)
+                  {
+                     checkpointing = false;
+                  }
+               }
+            }
+         });
+      }
+
+      private void checkpoint() throws Exception
+      {
+         PageBitmap snapshot;
+         PagePosition snapshotBookmark;
+         long[] records;
+
+         // The captured records leave the page, so a cleanup happening meanwhile won't delete them twice
+         synchronized (acks)
+         {
+            if (isPendingDelete())
+            {
+               return;
+            }
+            snapshot = acks.copy();
+            snapshotBookmark = bookmark;
+            records = Arrays.copyOf(ackRecords, numberOfAckRecords);
+            ackRecords = PageSubscriptionImpl.NO_RECORDS;
+            numberOfAckRecords = 0;
+         }
+
+         long tx = store.generateUniqueID();
+
+         long recordID;
+
+         try
+         {
+            recordID = store.storeCursorAcksTransactional(tx, cursorId, pageId, snapshotBookmark, snapshot);
+
+            for (long record : records)
+            {
+               store.deleteCursorAcknowledgeTransactional(tx, record);
+            }
+
+            store.commit(tx);
+         }
+         catch (Exception e)
+         {
+            try
+            {
+               store.rollback(tx);
+            }
+            catch (Exception ignored)
+            {
+               // nothing that can be done here
+            }
+
+            addAckRecords(records);
+
+            throw e;
+         }
+
+         addAckRecords(new long[] { recordID });
+      }
+
+      /**
+       * Gives the records back to the page, or deletes them if the page was cleaned up meanwhile.
+       */
+      private void addAckRecords(final long[] records)
+      {
+         synchronized (acks)
+         {
+            if (!isPendingDelete())
+            {
+               for (long record : records)
+               {
+                  if (numberOfAckRecords == ackRecords.length)
+                  {
+                     ackRecords = Arrays.copyOf(ackRecords, Math.max(8, numberOfAckRecords * 2));
+                  }
+                  ackRecords[numberOfAckRecords++] = record;
+               }
+               return;
+            }
+         }
+
+         for (long record : records)
+         {
+            try
+            {
+               store.deleteCursorAcknowledge(record);
+            }
+            catch (Exception e)
+            {
+               HornetQServerLogger.LOGGER.warn("Error while deleting page-ack-record", e);
+            }
+         }
+      }
+
       private boolean internalAddACK(final PagePosition posACK)
       {
-         removedReferences.add(posACK);
-         return acks.add(posACK);
+         remove(posACK);
+
+         synchronized (acks)
+         {
+            boolean added;
+
+            if (posACK.getMessageNr() >= 0)
+            {
+               added = acks.add(posACK.getMessageNr());
+            }
+            else
+            {
+               added = bookmark == null || posACK.getMessageNr() < bookmark.getMessageNr();
+               if (added)
+               {
+                  bookmark = posACK;
+               }
+            }
+
+            if (added && posACK.getRecordID() >= 0)
+            {
+               if (numberOfAckRecords == ackRecords.length)
+               {
+                  ackRecords = Arrays.copyOf(ackRecords, Math.max(8, numberOfAckRecords * 2));
+               }
+               ackRecords[numberOfAckRecords++] = posACK.getRecordID();
+            }
+
+            return added;
+         }
       }
 
       /**
@@ -1217,6 +1515,25 @@ class PageSubscriptionImpl implements PageSubscription
 
    }
 
+   private static final class RecoveredACKs
+   {
+      private final long recordID;
+
+      private final long pageNr;
+
+      private final PagePosition bookmark;
+
+      private final PageBitmap acks;
+
+      private RecoveredACKs(final long recordID, final long pageNr, final PagePosition bookmark, final PageBitmap acks)
+      {
+         this.recordID = recordID;
+         this.pageNr = pageNr;
+         this.bookmark = bookmark;
+         this.acks = acks;
+      }
+   }
+
    private static class PageCursorTX extends TransactionOperationAbstract
    {
       private final Map<PageSubscriptionImpl, List<PagePosition>> pendingPositions =
@@ -1435,7 +1752,7 @@ class PageSubscriptionImpl implements PageSubscription
 
                if (valid)
                {
-                  match = match(message.getMessage());
+                  match = match(message);
 
                   if (!match)
                   {
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.impl;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.server.HornetQServerLogger;
+
+/**
+ * Schedules the depage of queues, limiting how many paging stores are depaging at once.
+ * <p>
+ * The depages of a store are executed in order on the executor of the store (as any other paging
+ * operation on the store), one at a time. When the limit is reached the stores wait for their
+ * turn in a round robin fashion: a store is placed at the end of the line after each depage, so
+ * an address with many queues catching up can't starve the others.
+ * <p>
+ * The time spent and the number of messages depaged are recorded on the store, see
+ * {@link PagingStore#addDepageStats(int, long, long)}.
+ */
+public class DepageScheduler
+{
+   // Attributes ----------------------------------------------------
+
+   private final int maxConcurrentStores;
+
+   private final Map<PagingStore, StoreDepages> stores = new HashMap<PagingStore, StoreDepages>();
+
+   private final LinkedList<StoreDepages> waiting = new LinkedList<StoreDepages>();
+
+   private int running;
+
+   // Constructors --------------------------------------------------
+
+   /**
+    * @param maxConcurrentStores how many stores can depage at once, -1 for no limit
+    */
+   public DepageScheduler(final int maxConcurrentStores)
+   {
+      this.maxConcurrentStores = maxConcurrentStores;
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * @param store the store the messages are depaged from
+    * @param executor the executor of the store
+    * @param depage the depage of a queue, returning the number of messages depaged
+    */
+   public void schedule(final PagingStore store, final Executor executor, final Callable<Integer> depage)
+   {
+      synchronized (this)
+      {
+         StoreDepages depages = stores.get(store);
+
+         if (depages == null)
+         {
+            depages = new StoreDepages(store, executor);
+            stores.put(store, depages);
+         }
+
+         depages.pending.add(new DepageRunner(depages, depage));
+
+         if (!depages.active)
+         {
+            depages.active = true;
+            waiting.add(depages);
+         }
+
+         dispatch();
+      }
+   }
+
+   public int getMaxConcurrentStores()
+   {
+      return maxConcurrentStores;
+   }
+
+   /**
+    * @return the number of stores depaging
+    */
+   public synchronized int getRunning()
+   {
+      return running;
+   }
+
+   /**
+    * @return the number of stores waiting for their turn to depage
+    */
+   public synchronized int getWaiting()
+   {
+      return waiting.size();
+   }
+
+   // Private -------------------------------------------------------
+
+   /**
+    * Should be called holding the lock
+    */
+   private void dispatch()
+   {
+      while (!waiting.isEmpty() && (maxConcurrentStores <= 0 || running < maxConcurrentStores))
+      {
+         StoreDepages depages = waiting.removeFirst();
+
+         running++;
+
+         try
+         {
+            depages.executor.execute(depages.pending.removeFirst());
+         }
+         catch (RejectedExecutionException e)
+         {
+            // the server is stopping
+            HornetQServerLogger.LOGGER.debug("Depage rejected on " + depages.store.getAddress(), e);
+            running--;
+            depages.pending.clear();
+            depages.active = false;
+            stores.remove(depages.store);
+         }
+      }
+   }
+
+   private void done(final StoreDepages depages)
+   {
+      synchronized (this)
+      {
+         running--;
+
+         if (depages.pending.isEmpty())
+         {
+            depages.active = false;
+            stores.remove(depages.store);
+         }
+         else
+         {
+            waiting.add(depages);
+         }
+
+         dispatch();
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class StoreDepages
+   {
+      private final PagingStore store;
+
+      private final Executor executor;
+
+      private final LinkedList<DepageRunner> pending = new LinkedList<DepageRunner>();
+
+      /**
+       * Either depaging or waiting for its turn
+       */
+      private boolean active;
+
+      StoreDepages(final PagingStore store, final Executor executor)
+      {
+         this.store = store;
+         this.executor = executor;
+      }
+   }
+
+   private final class DepageRunner implements Runnable
+   {
+      private final StoreDepages depages;
+
+      private final Callable<Integer> depage;
+
+      private final long scheduled = System.nanoTime();
+
+      DepageRunner(final StoreDepages depages, final Callable<Integer> depage)
+      {
+         this.depages = depages;
+         this.depage = depage;
+      }
+
+      public void run()
+      {
+         long start = System.nanoTime();
+
+         int messages = 0;
+
+         try
+         {
+            messages = depage.call();
+         }
+         catch (Exception e)
+         {
+            HornetQServerLogger.LOGGER.errorDelivering(e);
+         }
+         finally
+         {
+            depages.store.addDepageStats(messages, start - scheduled, System.nanoTime() - start);
+
+            done(depages);
+         }
+      }
+   }
+}
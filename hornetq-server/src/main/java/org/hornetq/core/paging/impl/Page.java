@@ -15,6 +15,7 @@ package org.hornetq.core.paging.impl;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -44,9 +45,14 @@ public class Page implements Comparable<Page>
 
    public static final int SIZE_RECORD = DataConstants.SIZE_BYTE + DataConstants.SIZE_INT + DataConstants.SIZE_BYTE;
 
-   private static final byte START_BYTE = (byte)'{';
+   static final byte START_BYTE = (byte)'{';
 
-   private static final byte END_BYTE = (byte)'}';
+   static final byte END_BYTE = (byte)'}';
+
+   /**
+    * Size of the buffer pages are read through
+    */
+   private static final int READ_BUFFER_SIZE = 64 * 1024;
 
    // Attributes ----------------------------------------------------
 
@@ -71,6 +77,16 @@ public class Page implements Comparable<Page>
 
    private final SimpleString storeName;
 
+   /**
+    * When set, messages are encoded into this buffer and only written to the file when it is
+    * flushed, so many messages are written to the file at once
+    */
+   private ByteBuffer writeBuffer;
+
+   private HornetQBuffer writeWrap;
+
+   private volatile PageCompression compression;
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -102,87 +118,150 @@ public class Page implements Comparable<Page>
       this.pageCache = pageCache;
    }
 
-   public synchronized List<PagedMessage> read(StorageManager storage) throws Exception
+   /**
+    * Sets the compression of the records written from now on, and where the time spent
+    * decompressing the page is added.
+    */
+   public void setCompression(final PageCompression compression)
    {
-      if (isDebug)
+      this.compression = compression;
+   }
+
+   /**
+    * Sets the buffer writes are coalesced on, which is flushed on {@link #flush()},
+    * {@link #sync()} and {@link #close()}, or when it is full. The page doesn't own the buffer and
+    * detaches from it on close so it can be used by the next page.
+    * <p>
+    * Without a write buffer every message is written to the file as it is paged.
+    */
+   public synchronized void setWriteBuffer(final ByteBuffer buffer)
+   {
+      if (buffer == null)
       {
-         HornetQServerLogger.LOGGER.debug("reading page " + this.pageId + " on address = " + storeName);
+         writeBuffer = null;
+         writeWrap = null;
+      }
+      else
+      {
+         writeBuffer = buffer;
+         writeWrap = HornetQBuffers.wrappedBuffer(buffer);
+         writeWrap.clear();
       }
+   }
 
-      if (!file.isOpen())
+   /**
+    * Reads every message of the page. The file is read through a buffer of bounded size, so the
+    * whole file is never held in memory at once (only the decoded messages are).
+    */
+   public synchronized List<PagedMessage> read(StorageManager storage) throws Exception
+   {
+      if (isDebug)
       {
-         throw HornetQMessageBundle.BUNDLE.invalidPageIO();
+         HornetQServerLogger.LOGGER.debug("reading page " + this.pageId + " on address = " + storeName);
       }
 
       ArrayList<PagedMessage> messages = new ArrayList<PagedMessage>();
 
-      size.set((int)file.size());
-      // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
-      ByteBuffer directBuffer = storage.allocateDirectBuffer((int)file.size());
+      PageReader reader = new PageReader(storage);
 
       try
       {
+         while (reader.next())
+         {
+            PagedMessage msg = reader.decode();
+            msg.initMessage(storage);
+            if (isTrace)
+            {
+               HornetQServerLogger.LOGGER.trace("Reading message " + msg + " on pageId=" + this.pageId + " for address=" + storeName);
+            }
+            messages.add(msg);
+         }
+      }
+      finally
+      {
+         reader.close();
+      }
 
-         file.position(0);
-         file.read(directBuffer);
+      numberOfMessages.set(messages.size());
 
-         directBuffer.rewind();
+      return messages;
+   }
 
-         HornetQBuffer fileBuffer = HornetQBuffers.wrappedBuffer(directBuffer);
-         fileBuffer.writerIndex(fileBuffer.capacity());
+   /**
+    * Reads the position of every message of the page, without decoding them. Messages can then be
+    * read as needed through {@link #readMessages(StorageManager, int, int)}. The messages of a
+    * compressed block all have the position of the block.
+    * @return the position of every message on the file, followed by the position where the last
+    *         message ends
+    */
+   public synchronized int[] readIndex(StorageManager storage) throws Exception
+   {
+      if (isDebug)
+      {
+         HornetQServerLogger.LOGGER.debug("indexing page " + this.pageId + " on address = " + storeName);
+      }
 
-         while (fileBuffer.readable())
-         {
-            final int position = fileBuffer.readerIndex();
+      int[] index = new int[16];
 
-            byte byteRead = fileBuffer.readByte();
+      int numberOfRecords = 0;
 
-            if (byteRead == Page.START_BYTE)
-            {
-               if (fileBuffer.readerIndex() + DataConstants.SIZE_INT < fileBuffer.capacity())
-               {
-                  int messageSize = fileBuffer.readInt();
-                  int oldPos = fileBuffer.readerIndex();
-                  if (fileBuffer.readerIndex() + messageSize < fileBuffer.capacity() &&
-                           fileBuffer.getByte(oldPos + messageSize) == Page.END_BYTE)
-                  {
-                     PagedMessage msg = new PagedMessageImpl();
-                     msg.decode(fileBuffer);
-                     byte b = fileBuffer.readByte();
-                     if (b != Page.END_BYTE)
-                     {
-                        // Sanity Check: This would only happen if there is a bug on decode or any internal code, as
-                        // this
-                        // constraint was already checked
-                        throw new IllegalStateException("Internal error, it wasn't possible to locate END_BYTE " + b);
-                     }
-                     msg.initMessage(storage);
-                     if (isTrace)
-                     {
-                        HornetQServerLogger.LOGGER.trace("Reading message " + msg + " on pageId=" + this.pageId + " for address=" + storeName);
-                     }
-                     messages.add(msg);
-                  }
-                  else
-                  {
-                     markFileAsSuspect(position, messages.size());
-                     break;
-                  }
-               }
-            }
-            else
+      PageReader reader = new PageReader(storage);
+
+      try
+      {
+         while (reader.next())
+         {
+            if (numberOfRecords + 1 == index.length)
             {
-               markFileAsSuspect(position, messages.size());
-               break;
+               index = Arrays.copyOf(index, index.length * 2);
             }
+
+            index[numberOfRecords++] = reader.getRecordPosition();
          }
+
+         index[numberOfRecords] = reader.getPosition();
       }
       finally
       {
-         storage.freeDirectBuffer(directBuffer);
+         reader.close();
       }
 
-      numberOfMessages.set(messages.size());
+      numberOfMessages.set(numberOfRecords);
+
+      return Arrays.copyOf(index, numberOfRecords + 1);
+   }
+
+   /**
+    * Reads the messages between two positions taken from {@link #readIndex(StorageManager)}, with a
+    * single read from the file when they fit on the read buffer.
+    * @param start where the first message starts on the file
+    * @param end where the last message ends
+    */
+   public synchronized List<PagedMessage> readMessages(StorageManager storage, int start, int end) throws Exception
+   {
+      ArrayList<PagedMessage> messages = new ArrayList<PagedMessage>();
+
+      PageReader reader = new PageReader(storage, start, end);
+
+      try
+      {
+         while (reader.next())
+         {
+            PagedMessage msg = reader.decode();
+            msg.initMessage(storage);
+            messages.add(msg);
+         }
+      }
+      finally
+      {
+         reader.close();
+      }
+
+      if (reader.getPosition() != end)
+      {
+         throw new IllegalStateException("Page " + pageId + " has no messages between positions " + start +
+                                         " and " + end);
+      }
 
       return messages;
    }
@@ -195,22 +274,31 @@ public class Page implements Comparable<Page>
          return;
       }
 
-      ByteBuffer buffer = fileFactory.newBuffer(message.getEncodeSize() + Page.SIZE_RECORD);
+      int recordSize = message.getEncodeSize() + Page.SIZE_RECORD;
+
+      if (writeWrap != null && recordSize > writeWrap.writableBytes())
+      {
+         flush();
+      }
+
+      if (writeWrap != null && recordSize <= writeWrap.writableBytes())
+      {
+         encodeRecord(writeWrap, message);
+      }
+      else
+      {
+         // no write buffer, or the message doesn't fit on it
+         ByteBuffer buffer = fileFactory.newBuffer(recordSize);
 
-      HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
-      wrap.clear();
+         HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
+         wrap.clear();
 
-      wrap.writeByte(Page.START_BYTE);
-      wrap.writeInt(0);
-      int startIndex = wrap.writerIndex();
-      message.encode(wrap);
-      int endIndex = wrap.writerIndex();
-      wrap.setInt(1, endIndex - startIndex); // The encoded length
-      wrap.writeByte(Page.END_BYTE);
+         encodeRecord(wrap, message);
 
-      buffer.rewind();
+         buffer.rewind();
 
-      file.writeDirect(buffer, false);
+         writeRecords(buffer);
+      }
 
       if (pageCache != null)
       {
@@ -218,13 +306,38 @@ public class Page implements Comparable<Page>
       }
 
       numberOfMessages.incrementAndGet();
-      size.addAndGet(buffer.limit());
+      size.addAndGet(recordSize);
 
       storageManager.pageWrite(message, pageId);
    }
 
+   /**
+    * Writes whatever is pending on the write buffer to the file, with a single write.
+    */
+   public synchronized void flush() throws Exception
+   {
+      if (writeWrap == null || writeWrap.writerIndex() == 0)
+      {
+         return;
+      }
+
+      writeBuffer.clear();
+      writeBuffer.limit(writeWrap.writerIndex());
+
+      try
+      {
+         writeRecords(writeBuffer);
+      }
+      finally
+      {
+         writeBuffer.clear();
+         writeWrap.clear();
+      }
+   }
+
    public void sync() throws Exception
    {
+      flush();
       file.sync();
    }
 
@@ -240,6 +353,11 @@ public class Page implements Comparable<Page>
 
    public synchronized void close() throws Exception
    {
+      if (file.isOpen())
+      {
+         flush();
+      }
+      setWriteBuffer(null);
       if (storageManager != null)
       {
          storageManager.pageClosed(storeName, pageId);
@@ -369,6 +487,40 @@ public class Page implements Comparable<Page>
       return true;
    }
 
+   /**
+    * Writes the records on the buffer, compressed when enabled. The size of the page is fixed by
+    * what compression saved.
+    */
+   private void writeRecords(final ByteBuffer records) throws Exception
+   {
+      PageCompression localCompression = compression;
+
+      if (localCompression != null && localCompression.isEnabled())
+      {
+         int length = records.limit();
+
+         int written = localCompression.write(file, records);
+
+         size.addAndGet(written - length);
+      }
+      else
+      {
+         file.writeDirect(records, false);
+      }
+   }
+
+   private static void encodeRecord(final HornetQBuffer buffer, final PagedMessage message)
+   {
+      int recordStart = buffer.writerIndex();
+      buffer.writeByte(Page.START_BYTE);
+      buffer.writeInt(0);
+      int startIndex = buffer.writerIndex();
+      message.encode(buffer);
+      int endIndex = buffer.writerIndex();
+      buffer.setInt(recordStart + 1, endIndex - startIndex); // The encoded length
+      buffer.writeByte(Page.END_BYTE);
+   }
+
    /**
     * @param position
     * @param msgNumber
@@ -383,4 +535,325 @@ public class Page implements Comparable<Page>
    {
       return file;
    }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * Walks through the records of the page, reading the file a buffer at a time. A record larger
+    * than the buffer gets a buffer of its own.
+    */
+   private final class PageReader
+   {
+      private final StorageManager storage;
+
+      // where the reading ends
+      private final int fileSize;
+
+      private final boolean wholeFile;
+
+      private ByteBuffer directBuffer;
+
+      private HornetQBuffer fileBuffer;
+
+      // position on the file of the first byte of the buffer
+      private int bufferPosition;
+
+      // position on the file of the next record
+      private int position;
+
+      private int recordPosition;
+
+      private int recordSize;
+
+      // the buffer holding the current record, and where it starts on it
+      private HornetQBuffer recordBuffer;
+
+      private int recordIndex;
+
+      // the records of the compressed block being read, all on the position of the block
+      private HornetQBuffer block;
+
+      private int blockPosition;
+
+      private int blockIndex;
+
+      private int messagesRead;
+
+      /**
+       * Reads the whole file.
+       */
+      PageReader(final StorageManager storage) throws Exception
+      {
+         this(storage, 0, -1);
+      }
+
+      /**
+       * Reads the records between {@code start} and {@code end}, {@code -1} meaning the end of the
+       * file.
+       */
+      PageReader(final StorageManager storage, final int start, final int end) throws Exception
+      {
+         if (!file.isOpen())
+         {
+            throw HornetQMessageBundle.BUNDLE.invalidPageIO();
+         }
+
+         // what is still on the write buffer has to be on the file before it's read
+         flush();
+
+         this.storage = storage;
+
+         wholeFile = end < 0;
+
+         if (wholeFile)
+         {
+            fileSize = (int)file.size();
+
+            size.set(fileSize);
+         }
+         else
+         {
+            fileSize = end;
+         }
+
+         position = start;
+      }
+
+      /**
+       * Moves to the next valid record. The first invalid one ends the reading.
+       */
+      boolean next() throws Exception
+      {
+         if (block != null)
+         {
+            if (blockIndex < block.writerIndex())
+            {
+               return nextBlockRecord();
+            }
+
+            block = null;
+         }
+
+         if (position >= fileSize)
+         {
+            return false;
+         }
+
+         // START_BYTE and the size
+         if (!fill(position, DataConstants.SIZE_BYTE + DataConstants.SIZE_INT))
+         {
+            return invalidRecord();
+         }
+
+         int index = position - bufferPosition;
+
+         if (fileBuffer.getByte(index) == PageCompression.COMPRESSED_START_BYTE)
+         {
+            return readBlock();
+         }
+
+         if (fileBuffer.getByte(index) != Page.START_BYTE)
+         {
+            return invalidRecord();
+         }
+
+         int messageSize = fileBuffer.getInt(index + DataConstants.SIZE_BYTE);
+
+         if (messageSize < 0 || messageSize > fileSize - position - Page.SIZE_RECORD ||
+             !fill(position, messageSize + Page.SIZE_RECORD) ||
+             fileBuffer.getByte(position - bufferPosition + messageSize + Page.SIZE_RECORD - 1) != Page.END_BYTE)
+         {
+            return invalidRecord();
+         }
+
+         recordPosition = position;
+         recordSize = messageSize;
+         recordBuffer = fileBuffer;
+         recordIndex = position - bufferPosition;
+         position += messageSize + Page.SIZE_RECORD;
+         messagesRead++;
+
+         return true;
+      }
+
+      PagedMessage decode()
+      {
+         PagedMessage msg = new PagedMessageImpl();
+
+         int index = recordIndex + DataConstants.SIZE_BYTE + DataConstants.SIZE_INT;
+
+         recordBuffer.readerIndex(index);
+         msg.decode(recordBuffer);
+
+         if (recordBuffer.readerIndex() != index + recordSize)
+         {
+            // Sanity Check: This would only happen if there is a bug on decode or any internal code, as
+            // the record boundaries were already checked
+            throw new IllegalStateException("Internal error, it wasn't possible to locate END_BYTE at " +
+                                            recordPosition);
+         }
+
+         return msg;
+      }
+
+      int getRecordPosition()
+      {
+         return recordPosition;
+      }
+
+      /**
+       * @return the position following the last valid record
+       */
+      int getPosition()
+      {
+         return position;
+      }
+
+      void close() throws Exception
+      {
+         // as if the whole file had been read, so writes are appended
+         file.position(fileSize);
+
+         if (directBuffer != null)
+         {
+            storage.freeDirectBuffer(directBuffer);
+            directBuffer = null;
+            fileBuffer = null;
+         }
+      }
+
+      /**
+       * Decompresses the block on the current position and moves to its first record.
+       */
+      private boolean readBlock() throws Exception
+      {
+         if (!fill(position, PageCompression.BLOCK_HEADER_SIZE))
+         {
+            return invalidRecord();
+         }
+
+         int index = position - bufferPosition;
+
+         int compressedSize = fileBuffer.getInt(index + DataConstants.SIZE_BYTE);
+
+         int recordsSize = fileBuffer.getInt(index + DataConstants.SIZE_BYTE + DataConstants.SIZE_INT);
+
+         if (compressedSize < 0 || recordsSize <= 0 ||
+             compressedSize > fileSize - position - PageCompression.BLOCK_RECORD_SIZE ||
+             !fill(position, compressedSize + PageCompression.BLOCK_RECORD_SIZE))
+         {
+            return invalidRecord();
+         }
+
+         index = position - bufferPosition;
+
+         if (fileBuffer.getByte(index + compressedSize + PageCompression.BLOCK_RECORD_SIZE - 1) != Page.END_BYTE)
+         {
+            return invalidRecord();
+         }
+
+         byte[] compressed = new byte[compressedSize];
+
+         fileBuffer.getBytes(index + PageCompression.BLOCK_HEADER_SIZE, compressed);
+
+         byte[] records = new byte[recordsSize];
+
+         if (!PageCompression.inflate(compressed, records, compression))
+         {
+            return invalidRecord();
+         }
+
+         block = HornetQBuffers.wrappedBuffer(records);
+         blockPosition = position;
+         blockIndex = 0;
+
+         position += compressedSize + PageCompression.BLOCK_RECORD_SIZE;
+
+         return nextBlockRecord();
+      }
+
+      private boolean nextBlockRecord()
+      {
+         int available = block.writerIndex() - blockIndex;
+
+         if (available < Page.SIZE_RECORD || block.getByte(blockIndex) != Page.START_BYTE)
+         {
+            block = null;
+            return invalidRecord();
+         }
+
+         int messageSize = block.getInt(blockIndex + DataConstants.SIZE_BYTE);
+
+         if (messageSize < 0 || messageSize > available - Page.SIZE_RECORD ||
+             block.getByte(blockIndex + messageSize + Page.SIZE_RECORD - 1) != Page.END_BYTE)
+         {
+            block = null;
+            return invalidRecord();
+         }
+
+         recordPosition = blockPosition;
+         recordSize = messageSize;
+         recordBuffer = block;
+         recordIndex = blockIndex;
+         blockIndex += messageSize + Page.SIZE_RECORD;
+         messagesRead++;
+
+         return true;
+      }
+
+      /**
+       * Only an invalid record found while reading the whole file means the file is damaged, a
+       * range would just be wrong.
+       */
+      private boolean invalidRecord()
+      {
+         if (wholeFile)
+         {
+            markFileAsSuspect(position, messagesRead);
+         }
+
+         return false;
+      }
+
+      /**
+       * Makes sure the buffer holds {@code length} bytes from {@code from}.
+       */
+      private boolean fill(final int from, final int length) throws Exception
+      {
+         if (length > fileSize - from)
+         {
+            return false;
+         }
+
+         if (fileBuffer != null && from >= bufferPosition && from + length <= bufferPosition + fileBuffer.capacity())
+         {
+            return true;
+         }
+
+         int bytesToRead = Math.min(Math.max(length, Page.READ_BUFFER_SIZE), fileSize - from);
+
+         if (directBuffer == null || directBuffer.capacity() < bytesToRead)
+         {
+            if (directBuffer != null)
+            {
+               storage.freeDirectBuffer(directBuffer);
+            }
+            // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
+            directBuffer = storage.allocateDirectBuffer(bytesToRead);
+         }
+
+         directBuffer.clear();
+         directBuffer.limit(bytesToRead);
+
+         file.position(from);
+         file.read(directBuffer);
+
+         bufferPosition = from;
+
+         fileBuffer = HornetQBuffers.wrappedBuffer(directBuffer);
+         fileBuffer.writerIndex(fileBuffer.capacity());
+
+         return fileBuffer.capacity() >= length;
+      }
+   }
 }
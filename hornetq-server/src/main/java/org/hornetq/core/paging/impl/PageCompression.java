@@ -0,0 +1,216 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.impl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.utils.DataConstants;
+
+/**
+ * Compression of the records written to the page files of a store.
+ * <p>
+ * Records written at once are compressed together (Deflate) into a single block:
+ *
+ * <pre>
+ * COMPRESSED_START_BYTE, compressed size (int), records size (int), compressed records, END_BYTE
+ * </pre>
+ *
+ * A block is only written when it is smaller than the records, so reading a page never depends on
+ * compression being enabled. The compression ratio and the time spent compressing and
+ * decompressing are kept for the page stats.
+ */
+public final class PageCompression
+{
+   // Constants -----------------------------------------------------
+
+   static final byte COMPRESSED_START_BYTE = (byte)'[';
+
+   static final int BLOCK_HEADER_SIZE = DataConstants.SIZE_BYTE + DataConstants.SIZE_INT + DataConstants.SIZE_INT;
+
+   static final int BLOCK_RECORD_SIZE = BLOCK_HEADER_SIZE + DataConstants.SIZE_BYTE;
+
+   // Attributes ----------------------------------------------------
+
+   private volatile boolean enabled;
+
+   private Deflater deflater;
+
+   private byte[] input;
+
+   private byte[] output;
+
+   private final AtomicLong bytesIn = new AtomicLong();
+
+   private final AtomicLong bytesOut = new AtomicLong();
+
+   private final AtomicLong time = new AtomicLong();
+
+   // Constructors --------------------------------------------------
+
+   public PageCompression(final boolean enabled)
+   {
+      this.enabled = enabled;
+   }
+
+   // Public --------------------------------------------------------
+
+   public boolean isEnabled()
+   {
+      return enabled;
+   }
+
+   public void setEnabled(final boolean enabled)
+   {
+      this.enabled = enabled;
+   }
+
+   /**
+    * @return bytes written to the page files divided by the bytes of the records written while
+    *         compression was enabled, 1 if nothing was written
+    */
+   public double getRatio()
+   {
+      long in = bytesIn.get();
+
+      return in == 0 ? 1 : (double)bytesOut.get() / in;
+   }
+
+   /**
+    * @return the time spent compressing and decompressing records, in milliseconds
+    */
+   public long getTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(time.get());
+   }
+
+   /**
+    * Releases the native memory of the compressor, it will be created again if needed.
+    */
+   public synchronized void release()
+   {
+      if (deflater != null)
+      {
+         deflater.end();
+         deflater = null;
+      }
+      input = null;
+      output = null;
+   }
+
+   // Package protected ---------------------------------------------
+
+   /**
+    * Writes the records between position 0 and the limit of the buffer, as a compressed block if
+    * it's smaller.
+    * @return the number of bytes written to the file
+    */
+   synchronized int write(final SequentialFile file, final ByteBuffer records) throws Exception
+   {
+      int length = records.limit();
+
+      long start = System.nanoTime();
+
+      if (deflater == null)
+      {
+         deflater = new Deflater(Deflater.BEST_SPEED);
+      }
+
+      if (input == null || input.length < length)
+      {
+         input = new byte[length];
+         output = new byte[length];
+      }
+
+      records.position(0);
+      records.get(input, 0, length);
+      records.position(0);
+
+      deflater.reset();
+      deflater.setInput(input, 0, length);
+      deflater.finish();
+
+      int maxCompressed = length - BLOCK_RECORD_SIZE;
+
+      int compressedSize = maxCompressed > 0 ? deflater.deflate(output, BLOCK_HEADER_SIZE, maxCompressed) : 0;
+
+      boolean compressed = maxCompressed > 0 && deflater.finished();
+
+      time.addAndGet(System.nanoTime() - start);
+
+      bytesIn.addAndGet(length);
+
+      if (!compressed)
+      {
+         // not worth it
+         file.writeDirect(records, false);
+
+         bytesOut.addAndGet(length);
+
+         return length;
+      }
+
+      ByteBuffer block = ByteBuffer.wrap(output, 0, compressedSize + BLOCK_RECORD_SIZE);
+      block.put(COMPRESSED_START_BYTE);
+      block.putInt(compressedSize);
+      block.putInt(length);
+      block.position(BLOCK_HEADER_SIZE + compressedSize);
+      block.put(Page.END_BYTE);
+      block.flip();
+
+      file.writeDirect(block, false);
+
+      bytesOut.addAndGet(block.limit());
+
+      return block.limit();
+   }
+
+   /**
+    * Decompresses a block.
+    * @param compression where the time spent is added, may be null
+    * @return false if the block is damaged
+    */
+   static boolean inflate(final byte[] compressed, final byte[] records, final PageCompression compression)
+   {
+      long start = System.nanoTime();
+
+      Inflater inflater = new Inflater();
+      try
+      {
+         inflater.setInput(compressed);
+
+         int size = inflater.inflate(records);
+
+         return size == records.length && inflater.finished();
+      }
+      catch (DataFormatException e)
+      {
+         return false;
+      }
+      finally
+      {
+         inflater.end();
+
+         if (compression != null)
+         {
+            compression.time.addAndGet(System.nanoTime() - start);
+         }
+      }
+   }
+}
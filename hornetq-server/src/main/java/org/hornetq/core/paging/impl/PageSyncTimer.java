@@ -23,7 +23,10 @@ import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.persistence.OperationContext;
 
 /**
- * This will batch multiple calls waiting to perform a sync in a single call
+ * This will batch multiple calls waiting to perform a sync in a single call.
+ * <p>
+ * Writes to the page are coalesced in between ticks too: each tick writes whatever the current page
+ * has on its write buffer, followed by a single sync if anyone is waiting for one.
  *
  * @author clebertsuconic
  *
@@ -78,6 +81,19 @@ final class PageSyncTimer
       syncOperations.add(ctx);
    }
 
+   /**
+    * Schedules a tick to write the pending messages of the current page, even if nobody needs a
+    * sync.
+    */
+   synchronized void addFlush()
+   {
+      if (!pendingSync)
+      {
+         pendingSync = true;
+         scheduledExecutor.schedule(runnable, timeSync, TimeUnit.NANOSECONDS);
+      }
+   }
+
    private void tick()
    {
       OperationContext [] pendingSyncsArray;
@@ -96,6 +112,10 @@ final class PageSyncTimer
          {
             store.ioSync();
          }
+         else
+         {
+            store.ioFlush();
+         }
       }
       catch (Exception e)
       {
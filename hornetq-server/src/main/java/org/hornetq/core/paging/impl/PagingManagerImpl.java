@@ -16,20 +16,29 @@ package org.hornetq.core.paging.impl;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.hornetq.api.config.HornetQDefaultConfiguration;
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.management.ManagementHelper;
+import org.hornetq.api.core.management.NotificationType;
 import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.PagingStoreFactory;
+import org.hornetq.core.paging.cursor.PageCursorProvider;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.postoffice.PostOffice;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.settings.HierarchicalRepository;
+import org.hornetq.core.server.management.Notification;
+import org.hornetq.core.server.management.NotificationService;
 import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.utils.TypedProperties;
 
 /**
  *
@@ -63,6 +72,10 @@ public class PagingManagerImpl implements PagingManager
 
    private final StorageManager storageManager;
 
+   private final DepageScheduler depageScheduler;
+
+   private final NotificationService notificationService;
+
    private final ConcurrentMap</*TransactionID*/Long, PageTransactionInfo> transactions =
             new ConcurrentHashMap<Long, PageTransactionInfo>();
 
@@ -77,11 +90,40 @@ public class PagingManagerImpl implements PagingManager
    public PagingManagerImpl(final PagingStoreFactory pagingSPI,
                             final StorageManager storageManager,
                             final HierarchicalRepository<AddressSettings> addressSettingsRepository)
+   {
+      this(pagingSPI,
+           storageManager,
+           addressSettingsRepository,
+           HornetQDefaultConfiguration.DEFAULT_PAGE_MAX_CONCURRENT_DEPAGE);
+   }
+
+   /**
+    * @param maxConcurrentDepage how many stores can depage into their queues at once, -1 for no
+    *           limit
+    */
+   public PagingManagerImpl(final PagingStoreFactory pagingSPI,
+                            final StorageManager storageManager,
+                            final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                            final int maxConcurrentDepage)
+   {
+      this(pagingSPI, storageManager, addressSettingsRepository, maxConcurrentDepage, null);
+   }
+
+   /**
+    * @param notificationService where the page cleanups are notified, null for none
+    */
+   public PagingManagerImpl(final PagingStoreFactory pagingSPI,
+                            final StorageManager storageManager,
+                            final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                            final int maxConcurrentDepage,
+                            final NotificationService notificationService)
    {
       pagingStoreFactory = pagingSPI;
       this.addressSettingsRepository = addressSettingsRepository;
       addressSettingsRepository.registerListener(this);
       this.storageManager = storageManager;
+      this.depageScheduler = new DepageScheduler(maxConcurrentDepage);
+      this.notificationService = notificationService;
    }
 
    @Override
@@ -154,6 +196,40 @@ public class PagingManagerImpl implements PagingManager
       return newStore(storeName);
    }
 
+   public void scheduleDepage(final PagingStore store, final Executor executor, final Callable<Integer> depage)
+   {
+      depageScheduler.schedule(store, executor, depage);
+   }
+
+   public void notifyPageCleanup(final PagingStore store, final int deletedPages, final long cleanupTime)
+   {
+      if (notificationService == null)
+      {
+         return;
+      }
+
+      PageCursorProvider provider = store.getCursorProvider();
+
+      long hits = provider.getCacheHits();
+      long reads = hits + provider.getCacheMisses();
+
+      TypedProperties props = new TypedProperties();
+      props.putSimpleStringProperty(ManagementHelper.HDR_ADDRESS, store.getAddress());
+      props.putIntProperty(ManagementHelper.HDR_DELETED_PAGES, deletedPages);
+      props.putLongProperty(ManagementHelper.HDR_CLEANUP_TIME, cleanupTime);
+      props.putDoubleProperty(ManagementHelper.HDR_DEPAGE_RATE, store.getDepageRate());
+      props.putDoubleProperty(ManagementHelper.HDR_PAGE_CACHE_HIT_RATIO, reads == 0 ? 0 : (double)hits / reads);
+
+      try
+      {
+         notificationService.sendNotification(new Notification(null, NotificationType.PAGE_CLEANUP, props));
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.warn("Error sending the page cleanup notification of " + store.getAddress(), e);
+      }
+   }
+
    /** this will be set by the postOffice itself.
     *  There is no way to set this on the constructor as the PagingManager is constructed before the postOffice.
     *  (There is a one-to-one relationship here) */
@@ -40,6 +40,7 @@ import org.hornetq.core.transaction.TransactionOperation;
 import org.hornetq.core.transaction.TransactionPropertyIndexes;
 import org.hornetq.utils.FutureLatch;
 
+import java.nio.ByteBuffer;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -67,6 +68,12 @@ public class PagingStoreImpl implements PagingStore
 {
    // Constants -----------------------------------------------------
 
+   /**
+    * Size of the buffer writes to the current page are coalesced on between two ticks of the sync
+    * timer
+    */
+   private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
    // Attributes ----------------------------------------------------
 
    private final SimpleString address;
@@ -87,6 +94,11 @@ public class PagingStoreImpl implements PagingStore
    // Used to schedule sync threads
    private final PageSyncTimer syncTimer;
 
+   // Reused by every current page, only when there's a sync timer to flush it
+   private ByteBuffer writeBuffer;
+
+   private final PageCompression compression;
+
    private long maxSize;
 
    private long pageSize;
@@ -102,6 +114,20 @@ public class PagingStoreImpl implements PagingStore
    // Bytes consumed by the queue on the memory
    private final AtomicLong sizeInBytes = new AtomicLong();
 
+   private final AtomicLong depagedMessages = new AtomicLong();
+
+   private final AtomicLong depageTime = new AtomicLong();
+
+   private final AtomicLong depageWaitTime = new AtomicLong();
+
+   private final Object depageRateLock = new Object();
+
+   private long depageRateTime = System.nanoTime();
+
+   private long depageRateMessages;
+
+   private double depageRate;
+
    private volatile int numberOfPages;
 
    private volatile int firstPageId;
@@ -180,10 +206,13 @@ public class PagingStoreImpl implements PagingStore
          this.syncTimer = null;
       }
 
+      this.compression = new PageCompression(addressSettings.isPageCompression());
+
       this.cursorProvider = new PageCursorProviderImpl(this,
          this.storageManager,
          executor,
-         addressSettings.getPageCacheMaxSize());
+         addressSettings.getPageCacheMaxSize(),
+         addressSettings.getPageCacheMaxBytes());
 
    }
 
@@ -201,6 +230,12 @@ public class PagingStoreImpl implements PagingStore
       if (cursorProvider != null)
       {
          cursorProvider.setCacheMaxSize(addressSettings.getPageCacheMaxSize());
+         cursorProvider.setCacheMaxBytes(addressSettings.getPageCacheMaxBytes());
+      }
+
+      if (compression != null)
+      {
+         compression.setEnabled(addressSettings.isPageCompression());
       }
    }
 
@@ -238,6 +273,60 @@ public class PagingStoreImpl implements PagingStore
       return cursorProvider;
    }
 
+   public void addDepageStats(final int messages, final long waitTime, final long depageTime)
+   {
+      depagedMessages.addAndGet(messages);
+      depageWaitTime.addAndGet(waitTime);
+      this.depageTime.addAndGet(depageTime);
+   }
+
+   public long getDepagedMessages()
+   {
+      return depagedMessages.get();
+   }
+
+   public long getDepageTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(depageTime.get());
+   }
+
+   public long getDepageWaitTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(depageWaitTime.get());
+   }
+
+   public double getDepageRate()
+   {
+      synchronized (depageRateLock)
+      {
+         long now = System.nanoTime();
+
+         long elapsed = now - depageRateTime;
+
+         if (elapsed >= TimeUnit.SECONDS.toNanos(1))
+         {
+            long messages = depagedMessages.get();
+
+            depageRate = (messages - depageRateMessages) * (double)TimeUnit.SECONDS.toNanos(1) / elapsed;
+
+            depageRateTime = now;
+            depageRateMessages = messages;
+         }
+
+         return depageRate;
+      }
+   }
+
+   public double getPageCompressionRatio()
+   {
+      return compression.getRatio();
+   }
+
+   public long getPageCompressionTime()
+   {
+      return compression.getTime();
+   }
+
    public long getFirstPage()
    {
       return firstPageId;
@@ -357,6 +446,23 @@ public class PagingStoreImpl implements PagingStore
       }
    }
 
+   public void ioFlush() throws Exception
+   {
+      lock.readLock().lock();
+
+      try
+      {
+         if (currentPage != null)
+         {
+            currentPage.flush();
+         }
+      }
+      finally
+      {
+         lock.readLock().unlock();
+      }
+   }
+
    public void processReload() throws Exception
    {
       cursorProvider.processReload();
@@ -389,6 +495,10 @@ public class PagingStoreImpl implements PagingStore
             currentPage.close();
             currentPage = null;
          }
+
+         writeBuffer = null;
+
+         compression.release();
       }
    }
 
@@ -462,10 +572,11 @@ public class PagingStoreImpl implements PagingStore
                {
                   currentPage = createPage(currentPageId);
                   currentPage.open();
+                  attachWriteBuffer(currentPage);
 
                   List<PagedMessage> messages = currentPage.read(storageManager);
 
-                  LivePageCache pageCache = new LivePageCacheImpl(currentPage);
+                  LivePageCache pageCache = new LivePageCacheImpl(currentPage, storageManager);
 
                   for (PagedMessage msg : messages)
                   {
@@ -601,6 +712,8 @@ public class PagingStoreImpl implements PagingStore
 
       Page page = new Page(storeName, storageManager, fileFactory, file, pageNumber);
 
+      page.setCompression(compression);
+
       // To create the file
       file.open();
 
@@ -926,6 +1039,10 @@ public class PagingStoreImpl implements PagingStore
             {
                sync();
             }
+            else if (syncTimer != null)
+            {
+               syncTimer.addFlush();
+            }
 
             return true;
          }
@@ -1093,7 +1210,7 @@ public class PagingStoreImpl implements PagingStore
 
          currentPage = createPage(tmpCurrentPageId);
 
-         LivePageCache pageCache = new LivePageCacheImpl(currentPage);
+         LivePageCache pageCache = new LivePageCacheImpl(currentPage, storageManager);
 
          currentPage.setLiveCache(pageCache);
 
@@ -1103,6 +1220,8 @@ public class PagingStoreImpl implements PagingStore
 
          currentPage.open();
 
+         attachWriteBuffer(currentPage);
+
          currentPageId = tmpCurrentPageId;
 
          if (currentPageId < firstPageId)
@@ -1116,6 +1235,25 @@ public class PagingStoreImpl implements PagingStore
       }
    }
 
+   /**
+    * Writes to the current page are coalesced on a single buffer, which the sync timer flushes with
+    * one write (and one sync when requested) per tick.
+    */
+   private void attachWriteBuffer(final Page page)
+   {
+      if (syncTimer == null)
+      {
+         return;
+      }
+
+      if (writeBuffer == null)
+      {
+         writeBuffer = fileFactory.allocateDirectBuffer(WRITE_BUFFER_SIZE);
+      }
+
+      page.setWriteBuffer(writeBuffer);
+   }
+
    /**
     * @param pageID
     * @return
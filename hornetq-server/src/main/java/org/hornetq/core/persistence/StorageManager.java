@@ -32,6 +32,7 @@ import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.cursor.PagePosition;
+import org.hornetq.core.paging.cursor.impl.PageBitmap;
 import org.hornetq.core.persistence.config.PersistedAddressSetting;
 import org.hornetq.core.persistence.config.PersistedRoles;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager;
@@ -173,6 +174,14 @@ public interface StorageManager extends HornetQComponent
 
    void storePageCompleteTransactional(long txID, long queueID, PagePosition position) throws Exception;
 
+   /**
+    * Stores every ACK of a subscription on a page as a single record, to replace the ACK records
+    * (deleted on the same transaction). It's deleted as any other ACK record.
+    * @param bookmark the lowest ACK before the first message of the page, null if none
+    * @return the ID of the record
+    */
+   long storeCursorAcksTransactional(long txID, long queueID, long pageNr, PagePosition bookmark, PageBitmap acks) throws Exception;
+
    void deletePageComplete(long ackID) throws Exception;
 
    void updateScheduledDeliveryTimeTransactional(long txID, MessageReference ref) throws Exception;
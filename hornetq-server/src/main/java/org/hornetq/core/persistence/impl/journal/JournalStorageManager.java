@@ -61,7 +61,9 @@ import org.hornetq.core.journal.impl.AIOSequentialFileFactory;
 import org.hornetq.core.journal.impl.JournalFile;
 import org.hornetq.core.journal.impl.JournalImpl;
 import org.hornetq.core.journal.impl.JournalReaderCallback;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.journal.impl.StripedJournal;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagedMessage;
@@ -70,6 +72,7 @@ import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.cursor.PagePosition;
 import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PagedReferenceImpl;
+import org.hornetq.core.paging.cursor.impl.PageBitmap;
 import org.hornetq.core.paging.cursor.impl.PagePositionImpl;
 import org.hornetq.core.paging.impl.PageTransactionInfoImpl;
 import org.hornetq.core.paging.impl.PagingStoreImpl;
@@ -127,6 +130,9 @@ public class JournalStorageManager implements StorageManager
 {
    private static final long CHECKPOINT_BATCH_SIZE = Integer.MAX_VALUE;
 
+   // sub-directories of the journal directory holding the message journal stripes
+   private static final String STRIPE_DIRECTORY_PREFIX = "stripe-";
+
    // grouping journal record type
    private static final byte GROUP_RECORD = 20;
 
@@ -177,6 +183,8 @@ public class JournalStorageManager implements StorageManager
 
    public static final byte PAGE_CURSOR_COMPLETE = 42;
 
+   public static final byte PAGE_CURSOR_ACKS = 43;
+
    private final Semaphore pageMaxConcurrentIO;
 
    private final BatchingIDGenerator idGenerator;
@@ -240,6 +248,8 @@ public class JournalStorageManager implements StorageManager
 
    private final String journalDir;
 
+   private final List<String> stripeDirectories = new ArrayList<String>();
+
    private final String largeMessagesDirectory;
 
    private boolean journalLoaded = false;
@@ -263,7 +273,8 @@ public class JournalStorageManager implements StorageManager
 
       executor = executorFactory.getExecutor();
 
-      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO)
+      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO &&
+               config.getJournalType() != JournalType.MAPPED)
       {
          throw HornetQMessageBundle.BUNDLE.invalidJournal();
       }
@@ -280,7 +291,7 @@ public class JournalStorageManager implements StorageManager
 
       SequentialFileFactory bindingsFF = new NIOSequentialFileFactory(bindingsDir, criticalErrorListener);
 
-      Journal localBindings = new JournalImpl(1024 * 1024,
+      JournalImpl localBindings = new JournalImpl(1024 * 1024,
          2,
          config.getJournalCompactMinFiles(),
          config.getJournalCompactPercentage(),
@@ -289,6 +300,8 @@ public class JournalStorageManager implements StorageManager
          "bindings",
          1);
 
+      localBindings.setRecordChecksum(config.isJournalRecordChecksum());
+
       bindingsJournal = localBindings;
       originalBindingsJournal = localBindings;
 
@@ -306,42 +319,59 @@ public class JournalStorageManager implements StorageManager
       if (config.getJournalType() == JournalType.ASYNCIO)
       {
          HornetQServerLogger.LOGGER.journalUseAIO();
-
-         journalFF = new AIOSequentialFileFactory(journalDir,
-            config.getJournalBufferSize_AIO(),
-            config.getJournalBufferTimeout_AIO(),
-            config.isLogJournalWriteRate(),
-            criticalErrorListener);
       }
       else if (config.getJournalType() == JournalType.NIO)
       {
          HornetQServerLogger.LOGGER.journalUseNIO();
-         journalFF = new NIOSequentialFileFactory(journalDir,
-            true,
-            config.getJournalBufferSize_NIO(),
-            config.getJournalBufferTimeout_NIO(),
-            config.isLogJournalWriteRate(),
-            criticalErrorListener);
+      }
+      else if (config.getJournalType() == JournalType.MAPPED)
+      {
+         HornetQServerLogger.LOGGER.journalUseMapped();
       }
       else
       {
          throw HornetQMessageBundle.BUNDLE.invalidJournalType2(config.getJournalType());
       }
 
+      journalFF = createJournalFactory(config, journalDir, criticalErrorListener);
+
       idGenerator = new BatchingIDGenerator(0, JournalStorageManager.CHECKPOINT_BATCH_SIZE, this);
 
-      Journal localMessage = new JournalImpl(config.getJournalFileSize(),
-         config.getJournalMinFiles(),
-         config.getJournalCompactMinFiles(),
-         config.getJournalCompactPercentage(),
-         journalFF,
-         "hornetq-data",
-         "hq",
-         config.getJournalType() == JournalType.ASYNCIO ? config.getJournalMaxIO_AIO()
-            : config.getJournalMaxIO_NIO());
+      JournalImpl localMessage = createMessageJournal(config, journalFF);
 
-      messageJournal = localMessage;
-      originalMessageJournal = localMessage;
+      int stripes = getJournalStripes(config);
+
+      // a replicated store needs a single JournalImpl
+      if (stripes > 1 && !config.isSharedStore())
+      {
+         HornetQServerLogger.LOGGER.journalStripesIgnored(stripes);
+
+         stripes = 1;
+      }
+
+      if (stripes > 1)
+      {
+         Journal[] journals = new Journal[stripes];
+
+         journals[0] = localMessage;
+
+         for (int i = 1; i < stripes; i++)
+         {
+            String stripeDir = new File(journalDir, JournalStorageManager.STRIPE_DIRECTORY_PREFIX + i).getPath();
+
+            stripeDirectories.add(stripeDir);
+
+            journals[i] = createMessageJournal(config, createJournalFactory(config, stripeDir, criticalErrorListener));
+         }
+
+         messageJournal = new StripedJournal(executorFactory.getExecutor(), journals);
+      }
+      else
+      {
+         messageJournal = localMessage;
+      }
+
+      originalMessageJournal = messageJournal;
 
       largeMessagesDirectory = config.getLargeMessagesDirectory();
 
@@ -1124,6 +1154,24 @@ public class JournalStorageManager implements StorageManager
          new CursorAckRecordEncoding(queueID, position));
    }
 
+   public long storeCursorAcksTransactional(long txID, long queueID, long pageNr, PagePosition bookmark, PageBitmap acks) throws Exception
+   {
+      readLock();
+      try
+      {
+         long recordID = idGenerator.generateID();
+         messageJournal.appendAddRecordTransactional(txID,
+            recordID,
+            PAGE_CURSOR_ACKS,
+            new CursorAcksRecordEncoding(queueID, pageNr, bookmark, acks));
+         return recordID;
+      }
+      finally
+      {
+         readUnLock();
+      }
+   }
+
    public void deletePageComplete(long ackID) throws Exception
    {
       messageJournal.appendDeleteRecord(ackID, false);
@@ -1786,6 +1834,26 @@ public class JournalStorageManager implements StorageManager
                   break;
                }
 
+               case PAGE_CURSOR_ACKS:
+               {
+                  CursorAcksRecordEncoding encoding = new CursorAcksRecordEncoding();
+                  encoding.decode(buff);
+
+                  PageSubscription sub = locateSubscription(encoding.queueID, pageSubscriptions, queueInfos, pagingManager);
+
+                  if (sub != null)
+                  {
+                     sub.reloadACKs(record.id, encoding.pageNr, encoding.bookmark, encoding.acks);
+                  }
+                  else
+                  {
+                     HornetQServerLogger.LOGGER.journalCannotFindQueueReloading(encoding.queueID);
+                     messageJournal.appendDeleteRecord(record.id, false);
+                  }
+
+                  break;
+               }
+
                default:
                {
                   throw new IllegalStateException("Invalid record type " + recordType);
@@ -2216,6 +2284,11 @@ public class JournalStorageManager implements StorageManager
 
       checkAndCreateDir(journalDir, createJournalDir);
 
+      for (String stripeDir : stripeDirectories)
+      {
+         checkAndCreateDir(stripeDir, true);
+      }
+
       checkAndCreateDir(largeMessagesDirectory, createJournalDir);
 
       cleanupIncompleteFiles();
@@ -2406,6 +2479,109 @@ public class JournalStorageManager implements StorageManager
 
    // Private ----------------------------------------------------------------------------------
 
+   private static SequentialFileFactory createJournalFactory(final Configuration config,
+                                                             final String directory,
+                                                             final IOCriticalErrorListener criticalErrorListener)
+   {
+      SequentialFileFactory factory;
+
+      if (config.getJournalType() == JournalType.ASYNCIO)
+      {
+         factory = new AIOSequentialFileFactory(directory,
+            config.getJournalBufferSize_AIO(),
+            config.getJournalBufferTimeout_AIO(),
+            config.isLogJournalWriteRate(),
+            criticalErrorListener);
+      }
+      else if (config.getJournalType() == JournalType.NIO)
+      {
+         factory = new NIOSequentialFileFactory(directory,
+            true,
+            config.getJournalBufferSize_NIO(),
+            config.getJournalBufferTimeout_NIO(),
+            config.isLogJournalWriteRate(),
+            criticalErrorListener);
+      }
+      else
+      {
+         factory = new MappedSequentialFileFactory(directory,
+            true,
+            config.getJournalBufferSize_NIO(),
+            config.getJournalBufferTimeout_NIO(),
+            config.isLogJournalWriteRate(),
+            criticalErrorListener);
+      }
+
+      if (config.isJournalBufferAdaptiveTimeout())
+      {
+         // the configured buffer timeout becomes the upper bound
+         int maxTimeout = config.getJournalType() == JournalType.ASYNCIO ? config.getJournalBufferTimeout_AIO()
+            : config.getJournalBufferTimeout_NIO();
+
+         factory.setBufferAdaptiveTimeout(Math.min(config.getJournalBufferMinTimeout(), maxTimeout), maxTimeout);
+      }
+
+      return factory;
+   }
+
+   private static JournalImpl createMessageJournal(final Configuration config, final SequentialFileFactory factory)
+   {
+      JournalImpl journal = new JournalImpl(config.getJournalFileSize(),
+         config.getJournalMinFiles(),
+         config.getJournalCompactMinFiles(),
+         config.getJournalCompactPercentage(),
+         factory,
+         "hornetq-data",
+         "hq",
+         config.getJournalType() == JournalType.ASYNCIO ? config.getJournalMaxIO_AIO()
+            : config.getJournalMaxIO_NIO());
+
+      journal.setLoadThreads(config.getJournalLoadThreads());
+
+      journal.setCompactMaxRate(config.getJournalCompactMaxRate());
+
+      journal.setCompactFilesPerPass(config.getJournalCompactFilesPerPass());
+
+      journal.setMaxPreCreatedFiles(config.getJournalMaxPreCreatedFiles());
+
+      journal.setRecordChecksum(config.isJournalRecordChecksum());
+
+      return journal;
+   }
+
+   /**
+    * Records stay on the stripe they were written to, so the stripes already in the journal
+    * directory are kept even if fewer are configured.
+    */
+   private static int getJournalStripes(final Configuration config)
+   {
+      int stripes = config.getJournalStripes();
+
+      String[] files = new File(config.getJournalDirectory()).list();
+
+      if (files != null)
+      {
+         for (String file : files)
+         {
+            if (file.startsWith(JournalStorageManager.STRIPE_DIRECTORY_PREFIX))
+            {
+               try
+               {
+                  int stripe = Integer.parseInt(file.substring(JournalStorageManager.STRIPE_DIRECTORY_PREFIX.length()));
+
+                  stripes = Math.max(stripes, stripe + 1);
+               }
+               catch (NumberFormatException ignored)
+               {
+                  // not a stripe
+               }
+            }
+         }
+      }
+
+      return stripes;
+   }
+
    private void checkAndCreateDir(final String dir, final boolean create)
    {
       File f = new File(dir);
@@ -3630,6 +3806,68 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   /**
+    * Every ACK of a subscription on a page, replacing their {@link CursorAckRecordEncoding}s.
+    */
+   public static final class CursorAcksRecordEncoding implements EncodingSupport
+   {
+      public long queueID;
+
+      public long pageNr;
+
+      public PagePosition bookmark;
+
+      public PageBitmap acks;
+
+      public CursorAcksRecordEncoding(final long queueID,
+                                      final long pageNr,
+                                      final PagePosition bookmark,
+                                      final PageBitmap acks)
+      {
+         this.queueID = queueID;
+         this.pageNr = pageNr;
+         this.bookmark = bookmark;
+         this.acks = acks;
+      }
+
+      public CursorAcksRecordEncoding()
+      {
+      }
+
+      @Override
+      public String toString()
+      {
+         return "CursorAcksRecordEncoding [queueID=" + queueID + ", pageNr=" + pageNr + ", bookmark=" + bookmark +
+                ", acks=" + acks + "]";
+      }
+
+      public int getEncodeSize()
+      {
+         return DataConstants.SIZE_LONG + DataConstants.SIZE_LONG + DataConstants.SIZE_BOOLEAN +
+                DataConstants.SIZE_INT + acks.getEncodeSize();
+      }
+
+      public void encode(HornetQBuffer buffer)
+      {
+         buffer.writeLong(queueID);
+         buffer.writeLong(pageNr);
+         buffer.writeBoolean(bookmark != null);
+         buffer.writeInt(bookmark != null ? bookmark.getMessageNr() : 0);
+         acks.encode(buffer);
+      }
+
+      public void decode(HornetQBuffer buffer)
+      {
+         queueID = buffer.readLong();
+         pageNr = buffer.readLong();
+         boolean hasBookmark = buffer.readBoolean();
+         int bookmarkNr = buffer.readInt();
+         bookmark = hasBookmark ? new PagePositionImpl(pageNr, bookmarkNr) : null;
+         acks = new PageBitmap();
+         acks.decode(buffer);
+      }
+   }
+
    private class LargeMessageTXFailureCallback implements TransactionFailureCallback
    {
       private final Map<Long, ServerMessage> messages;
@@ -3824,6 +4062,15 @@ public class JournalStorageManager implements StorageManager
             return encoding;
          }
 
+         case PAGE_CURSOR_ACKS:
+         {
+            CursorAcksRecordEncoding encoding = new CursorAcksRecordEncoding();
+
+            encoding.decode(buffer);
+
+            return encoding;
+         }
+
          case JournalStorageManager.QUEUE_BINDING_RECORD:
             return newBindingEncoding(id, buffer);
 
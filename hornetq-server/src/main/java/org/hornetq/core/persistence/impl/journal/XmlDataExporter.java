@@ -18,6 +18,7 @@ import static org.hornetq.core.persistence.impl.journal.JournalStorageManager.AC
 import static org.hornetq.core.persistence.impl.journal.JournalStorageManager.ADD_LARGE_MESSAGE;
 import static org.hornetq.core.persistence.impl.journal.JournalStorageManager.ADD_MESSAGE;
 import static org.hornetq.core.persistence.impl.journal.JournalStorageManager.ADD_REF;
+import static org.hornetq.core.persistence.impl.journal.JournalStorageManager.PAGE_CURSOR_ACKS;
 import static org.hornetq.core.persistence.impl.journal.JournalStorageManager.PAGE_TRANSACTION;
 import static org.hornetq.core.persistence.impl.journal.JournalStorageManager.QUEUE_BINDING_RECORD;
 import static org.hornetq.core.persistence.impl.journal.JournalStorageManager.newObjectEncoding;
@@ -71,6 +72,7 @@ import org.hornetq.core.paging.impl.PagingStoreFactoryNIO;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.AckDescribe;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.CursorAckRecordEncoding;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager.CursorAcksRecordEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.MessageDescribe;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PageUpdateTXEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PersistentQueueBindingEncoding;
@@ -316,6 +318,24 @@ public final class XmlDataExporter
 
             set.add(encoding.position);
          }
+         else if (info.userRecordType == PAGE_CURSOR_ACKS)
+         {
+            CursorAcksRecordEncoding encoding = new CursorAcksRecordEncoding();
+            encoding.decode(buff);
+
+            Set<PagePosition> set = cursorRecords.get(encoding.queueID);
+
+            if (set == null)
+            {
+               set = new HashSet<PagePosition>();
+               cursorRecords.put(encoding.queueID, set);
+            }
+
+            for (int messageNr = encoding.acks.first(); messageNr >= 0; messageNr = encoding.acks.next(messageNr + 1))
+            {
+               set.add(new PagePositionImpl(encoding.pageNr, messageNr));
+            }
+         }
          else if (info.userRecordType == PAGE_TRANSACTION)
          {
             if (info.isUpdate)
@@ -35,6 +35,7 @@ import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.cursor.PagePosition;
+import org.hornetq.core.paging.cursor.impl.PageBitmap;
 import org.hornetq.core.persistence.GroupingInfo;
 import org.hornetq.core.persistence.OperationContext;
 import org.hornetq.core.persistence.QueueBindingInfo;
@@ -467,6 +468,11 @@ public class NullStorageManager implements StorageManager
    {
    }
 
+   public long storeCursorAcksTransactional(long txID, long queueID, long pageNr, PagePosition bookmark, PageBitmap acks) throws Exception
+   {
+      return 0;
+   }
+
    public void deletePageComplete(long ackID) throws Exception
    {
    }
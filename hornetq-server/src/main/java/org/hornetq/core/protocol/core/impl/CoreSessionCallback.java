@@ -12,7 +12,10 @@
  */
 package org.hornetq.core.protocol.core.impl;
 
+import java.util.List;
+
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.protocol.core.Channel;
 import org.hornetq.core.protocol.core.Packet;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionProducerCreditsFailMessage;
@@ -20,6 +23,8 @@ import org.hornetq.core.protocol.core.impl.wireformat.SessionProducerCreditsMess
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveLargeMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessageBatch;
+import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.ServerMessage;
 import org.hornetq.spi.core.protocol.ProtocolManager;
 import org.hornetq.spi.core.protocol.SessionCallback;
@@ -81,6 +86,48 @@ public final class CoreSessionCallback implements SessionCallback
       return size;
    }
 
+   public int sendMessages(List<MessageReference> refs, long consumerID)
+   {
+      int count = refs.size();
+
+      if (count == 1 || !channel.supports(PacketImpl.SESS_RECEIVE_MSG_BATCH))
+      {
+         // Older clients can't read batches
+         int size = 0;
+
+         for (MessageReference ref : refs)
+         {
+            size += sendMessage(ref.getMessage(), consumerID, ref.getDeliveryCount());
+         }
+
+         return size;
+      }
+
+      MessageInternal[] messages = new MessageInternal[count];
+
+      int[] deliveryCounts = new int[count];
+
+      for (int i = 0; i < count; i++)
+      {
+         MessageReference ref = refs.get(i);
+
+         messages[i] = ref.getMessage();
+
+         deliveryCounts[i] = ref.getDeliveryCount();
+      }
+
+      Packet packet = new SessionReceiveMessageBatch(consumerID, messages, deliveryCounts, count);
+
+      int size = 0;
+
+      if (channel.sendBatched(packet))
+      {
+         size = packet.getPacketSize();
+      }
+
+      return size;
+   }
+
    public void sendProducerCreditsMessage(int credits, SimpleString address)
    {
       Packet packet = new SessionProducerCreditsMessage(credits, address);
@@ -557,7 +557,7 @@ public class ReplicatedJournal implements Journal
    @Override
    public SequentialFileFactory getFileFactory()
    {
-      throw new UnsupportedOperationException();
+      return localJournal.getFileFactory();
    }
 
    public int getFileSize()
@@ -26,6 +26,12 @@ public interface Consumer
 {
    HandleStatus handle(MessageReference reference) throws Exception;
 
+   /**
+    * Called once the queue is done handing references to its consumers, so any reference handled
+    * but held back to be sent together with others goes out.
+    */
+   void flushDeliveries();
+
    Filter getFilter();
 
    String debug();
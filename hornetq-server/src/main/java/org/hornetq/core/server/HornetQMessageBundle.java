@@ -512,4 +512,7 @@ public interface HornetQMessageBundle
    @Message(id = 119144, value =  "Invalid Page IO, PagingManager was stopped or closed", format = Message.Format.MESSAGE_FORMAT)
    HornetQIllegalStateException invalidPageIO();
 
+   @Message(id = 119145, value = "journal-stripes must be 1 when the store is replicated (shared-store is false), it is {0}", format = Message.Format.MESSAGE_FORMAT)
+   IllegalArgumentException journalStripesWithReplication(Integer stripes);
+
 }
@@ -145,6 +145,10 @@ public interface HornetQServerLogger extends BasicLogger
    @Message(id = 221017, value = "Using NIO Journal", format = Message.Format.MESSAGE_FORMAT)
    void journalUseNIO();
 
+   @LogMessage(level = Logger.Level.INFO)
+   @Message(id = 221046, value = "Using memory mapped Journal", format = Message.Format.MESSAGE_FORMAT)
+   void journalUseMapped();
+
    @LogMessage(level = Logger.Level.INFO)
    @Message(id = 221018, value = "{0}% loaded", format = Message.Format.MESSAGE_FORMAT)
    void percentLoaded(Long percent);
@@ -986,6 +990,11 @@ public interface HornetQServerLogger extends BasicLogger
    @Message(id = 222217, value = "Error when trying to start replication {0}", format = Message.Format.MESSAGE_FORMAT)
    void errorStartingReplication(BackupReplicationStartFailedMessage.BackupRegistrationProblem problem);
 
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222218, value = "The store is replicated, so the message journal uses a single journal instead of {0} stripes",
+            format = Message.Format.MESSAGE_FORMAT)
+   void journalStripesIgnored(int stripes);
+
    @LogMessage(level = Logger.Level.ERROR)
    @Message(id = 224002, value = "Failure in initialisation", format = Message.Format.MESSAGE_FORMAT)
    void initializationError(@Cause Throwable e);
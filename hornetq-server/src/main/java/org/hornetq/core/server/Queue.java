@@ -98,7 +98,7 @@ public interface Queue extends Bindable
 
    MessageReference removeReferenceWithID(long id) throws Exception;
 
-   MessageReference getReference(long id);
+   MessageReference getReference(long id) throws Exception;
 
    int deleteAllReferences() throws Exception;
 
@@ -145,6 +145,11 @@ public interface Queue extends Bindable
 
    LinkedListIterator<MessageReference> iterator();
 
+   /**
+    * @return a copy of the references waiting for delivery, taken between two deliveries
+    */
+   List<MessageReference> getQueuedReferences() throws Exception;
+
    void setExpiryAddress(SimpleString expiryAddress);
 
    /**
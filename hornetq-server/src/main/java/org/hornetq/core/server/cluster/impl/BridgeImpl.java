@@ -412,6 +412,10 @@ public class BridgeImpl implements Bridge, SessionFailureListener, SendAcknowled
       return filter;
    }
 
+   public void flushDeliveries()
+   {
+   }
+
    public SimpleString getForwardingAddress()
    {
       return forwardingAddress;
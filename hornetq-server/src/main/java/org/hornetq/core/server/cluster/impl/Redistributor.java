@@ -79,6 +79,10 @@ public class Redistributor implements Consumer
       return null;
    }
 
+   public void flushDeliveries()
+   {
+   }
+
    public String debug()
    {
       return toString();
@@ -89,10 +93,14 @@ public class Redistributor implements Consumer
       active = true;
    }
 
-   public synchronized void stop() throws Exception
+   public void stop() throws Exception
    {
-      active = false;
+      synchronized (this)
+      {
+         active = false;
+      }
 
+      // not holding the lock while flushing, as the queue's executor may be waiting on it in handle
       boolean ok = flushExecutor();
 
       if (!ok)
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hornetq.core.server.MessageReference;
+
+/**
+ * The references delivered by a consumer and not acknowledged yet.
+ * <p>
+ * References are linked in delivery order, for the acknowledgements of every reference up to a
+ * message, and indexed by message ID on an open addressing table of primitive longs, so individual
+ * acknowledgements and expiries don't scan the consumer window.
+ * <p>
+ * A message delivered again before its previous delivery was removed is chained to it, the oldest
+ * delivery of a message is the one indexed and the first one removed.
+ */
+final class DeliveringRefs
+{
+   // Constants -----------------------------------------------------
+
+   private static final int INITIAL_CAPACITY = 16;
+
+   // Attributes ----------------------------------------------------
+
+   private Node head;
+
+   private Node tail;
+
+   private int size;
+
+   private long[] keys = new long[INITIAL_CAPACITY];
+
+   private Node[] nodes = new Node[INITIAL_CAPACITY];
+
+   private int indexed;
+
+   // Public --------------------------------------------------------
+
+   public synchronized void add(final MessageReference ref)
+   {
+      Node node = new Node(ref);
+
+      if (tail == null)
+      {
+         head = node;
+      }
+      else
+      {
+         tail.next = node;
+         node.prev = tail;
+      }
+
+      tail = node;
+
+      size++;
+
+      int slot = find(node.id);
+
+      if (nodes[slot] == null)
+      {
+         keys[slot] = node.id;
+         nodes[slot] = node;
+
+         if (++indexed * 2 > nodes.length)
+         {
+            resize(nodes.length * 2);
+         }
+      }
+      else
+      {
+         Node last = nodes[slot];
+
+         while (last.sameID != null)
+         {
+            last = last.sameID;
+         }
+
+         last.sameID = node;
+      }
+   }
+
+   /**
+    * @return the oldest reference, null if empty
+    */
+   public synchronized MessageReference poll()
+   {
+      Node node = head;
+
+      if (node == null)
+      {
+         return null;
+      }
+
+      remove(node);
+
+      return node.ref;
+   }
+
+   /**
+    * @return the oldest reference to the message, null if there is none
+    */
+   public synchronized MessageReference remove(final long messageID)
+   {
+      Node node = nodes[find(messageID)];
+
+      if (node == null)
+      {
+         return null;
+      }
+
+      remove(node);
+
+      return node.ref;
+   }
+
+   /**
+    * @return the references in delivery order
+    */
+   public synchronized List<MessageReference> toList()
+   {
+      List<MessageReference> list = new ArrayList<MessageReference>(size);
+
+      for (Node node = head; node != null; node = node.next)
+      {
+         list.add(node.ref);
+      }
+
+      return list;
+   }
+
+   public synchronized void clear()
+   {
+      head = null;
+      tail = null;
+      size = 0;
+      keys = new long[INITIAL_CAPACITY];
+      nodes = new Node[INITIAL_CAPACITY];
+      indexed = 0;
+   }
+
+   public synchronized int size()
+   {
+      return size;
+   }
+
+   public synchronized boolean isEmpty()
+   {
+      return size == 0;
+   }
+
+   // Private -------------------------------------------------------
+
+   /**
+    * The node is always the oldest of its message, as only the oldest are removed
+    */
+   private void remove(final Node node)
+   {
+      if (node.prev == null)
+      {
+         head = node.next;
+      }
+      else
+      {
+         node.prev.next = node.next;
+      }
+
+      if (node.next == null)
+      {
+         tail = node.prev;
+      }
+      else
+      {
+         node.next.prev = node.prev;
+      }
+
+      size--;
+
+      int slot = find(node.id);
+
+      if (node.sameID != null)
+      {
+         nodes[slot] = node.sameID;
+      }
+      else
+      {
+         delete(slot);
+      }
+   }
+
+   /**
+    * @return the slot of the message, or the empty slot where it would be
+    */
+   private int find(final long id)
+   {
+      int mask = nodes.length - 1;
+
+      int slot = hash(id) & mask;
+
+      while (nodes[slot] != null && keys[slot] != id)
+      {
+         slot = slot + 1 & mask;
+      }
+
+      return slot;
+   }
+
+   /**
+    * Linear probing deletion, moving back the entries which would not be found past the empty slot
+    */
+   private void delete(int slot)
+   {
+      int mask = nodes.length - 1;
+
+      nodes[slot] = null;
+
+      indexed--;
+
+      int next = slot;
+
+      while (true)
+      {
+         next = next + 1 & mask;
+
+         if (nodes[next] == null)
+         {
+            return;
+         }
+
+         int ideal = hash(keys[next]) & mask;
+
+         boolean reachable = slot <= next ? slot < ideal && ideal <= next : slot < ideal || ideal <= next;
+
+         if (!reachable)
+         {
+            keys[slot] = keys[next];
+            nodes[slot] = nodes[next];
+            nodes[next] = null;
+            slot = next;
+         }
+      }
+   }
+
+   private void resize(final int capacity)
+   {
+      long[] oldKeys = keys;
+
+      Node[] oldNodes = nodes;
+
+      keys = new long[capacity];
+      nodes = new Node[capacity];
+
+      for (int i = 0; i < oldNodes.length; i++)
+      {
+         if (oldNodes[i] != null)
+         {
+            int slot = find(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            nodes[slot] = oldNodes[i];
+         }
+      }
+   }
+
+   private static int hash(final long id)
+   {
+      int hash = (int)(id ^ id >>> 32) * 0x9E3779B9;
+
+      return hash ^ hash >>> 16;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class Node
+   {
+      private final MessageReference ref;
+
+      private final long id;
+
+      private Node prev;
+
+      private Node next;
+
+      // the next delivery of the same message
+      private Node sameID;
+
+      private Node(final MessageReference ref)
+      {
+         this.ref = ref;
+         this.id = ref.getMessage().getMessageID();
+      }
+   }
+}
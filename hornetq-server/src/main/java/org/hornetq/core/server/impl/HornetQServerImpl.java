@@ -1287,9 +1287,12 @@ public class HornetQServerImpl implements HornetQServer
          scheduledPool,
          executorFactory,
          configuration.isJournalSyncNonTransactional(),
-         shutdownOnCriticalIO),
+         shutdownOnCriticalIO,
+         configuration.getJournalType()),
          storageManager,
-         addressSettingsRepository);
+         addressSettingsRepository,
+         configuration.getPageMaxConcurrentDepage(),
+         managementService);
    }
 
    /**
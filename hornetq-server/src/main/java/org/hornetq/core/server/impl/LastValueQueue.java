@@ -12,6 +12,7 @@
  */
 package org.hornetq.core.server.impl;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
@@ -154,6 +155,19 @@ public class LastValueQueue extends QueueImpl
       }
    }
 
+   /*
+    * Every reference goes through the last value check, and the queue lock keeps the poller from moving
+    * them back before they are all there
+    */
+   @Override
+   public synchronized void addHead(final List<MessageReference> refs)
+   {
+      for (MessageReference ref : refs)
+      {
+         addHead(ref);
+      }
+   }
+
    private class HolderReference implements MessageReference
    {
       private final SimpleString prop;
@@ -0,0 +1,1096 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.paging.cursor.PageSubscription;
+import org.hornetq.core.persistence.StorageManager;
+import org.hornetq.core.postoffice.PostOffice;
+import org.hornetq.core.server.Consumer;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.server.RoutingContext;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.settings.HierarchicalRepository;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.core.transaction.Transaction;
+import org.hornetq.utils.ExecutorFactory;
+import org.hornetq.utils.LinkedListIterator;
+
+/**
+ * A queue spread over a number of partitions, each one a {@link QueueImpl} with its own references,
+ * executor and consumers, so the deliveries of a single busy queue run in parallel.
+ * <p>
+ * The partitions share the ID of the queue, so the journal records and the page subscription are the
+ * ones of a single queue. A message is routed to the partition given by the hash of its
+ * {@link Message#HDR_GROUP_ID} if it has one, and of its ID otherwise, so the messages of a group
+ * always end up on the same partition and the same consumer.
+ * <p>
+ * Consumers are spread over the partitions, every partition having at least one consumer as long as
+ * the queue has any: with fewer consumers than partitions a consumer is given several partitions. The
+ * consumers are rebalanced whenever one is added or removed.
+ * <p>
+ * Paged messages are depaged and delivered through the first partition only.
+ */
+public class PartitionedQueue implements Queue
+{
+   // Attributes ----------------------------------------------------
+
+   private final long id;
+
+   private final SimpleString address;
+
+   private final SimpleString name;
+
+   private final boolean durable;
+
+   private final boolean temporary;
+
+   private final QueueImpl[] partitions;
+
+   private volatile PageSubscription pageSubscription;
+
+   // copied on write, in the order they are given to the partitions
+   private volatile List<Consumer> consumers = Collections.emptyList();
+
+   private final Executor executor = new PartitionsExecutor();
+
+   // Constructors --------------------------------------------------
+
+   public PartitionedQueue(final long id,
+                           final SimpleString address,
+                           final SimpleString name,
+                           final Filter filter,
+                           final PageSubscription pageSubscription,
+                           final boolean durable,
+                           final boolean temporary,
+                           final ScheduledExecutorService scheduledExecutor,
+                           final PostOffice postOffice,
+                           final StorageManager storageManager,
+                           final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                           final ExecutorFactory executorFactory,
+                           final int numberOfPartitions)
+   {
+      if (numberOfPartitions < 1)
+      {
+         throw new IllegalArgumentException("A queue needs at least one partition: " + numberOfPartitions);
+      }
+
+      this.id = id;
+
+      this.address = address;
+
+      this.name = name;
+
+      this.durable = durable;
+
+      this.temporary = temporary;
+
+      this.pageSubscription = pageSubscription;
+
+      partitions = new QueueImpl[numberOfPartitions];
+
+      for (int i = 0; i < numberOfPartitions; i++)
+      {
+         partitions[i] = new Partition(id,
+                                       address,
+                                       name,
+                                       filter,
+                                       i == 0 ? pageSubscription : null,
+                                       durable,
+                                       temporary,
+                                       scheduledExecutor,
+                                       postOffice,
+                                       storageManager,
+                                       addressSettingsRepository,
+                                       executorFactory.getExecutor());
+      }
+   }
+
+   // Bindable implementation ---------------------------------------
+
+   public void route(final ServerMessage message, final RoutingContext context) throws Exception
+   {
+      context.addQueue(address, partitionFor(message));
+   }
+
+   // Queue implementation ------------------------------------------
+
+   public SimpleString getName()
+   {
+      return name;
+   }
+
+   public long getID()
+   {
+      return id;
+   }
+
+   public Filter getFilter()
+   {
+      return partitions[0].getFilter();
+   }
+
+   public PageSubscription getPageSubscription()
+   {
+      return pageSubscription;
+   }
+
+   public boolean isDurable()
+   {
+      return durable;
+   }
+
+   public boolean isTemporary()
+   {
+      return temporary;
+   }
+
+   public SimpleString getAddress()
+   {
+      return address;
+   }
+
+   public synchronized void addConsumer(final Consumer consumer) throws Exception
+   {
+      List<Consumer> newConsumers = new ArrayList<Consumer>(consumers);
+
+      newConsumers.add(consumer);
+
+      consumers = Collections.unmodifiableList(newConsumers);
+
+      rebalance();
+   }
+
+   public synchronized void removeConsumer(final Consumer consumer) throws Exception
+   {
+      int index = consumers.indexOf(consumer);
+
+      if (index < 0)
+      {
+         return;
+      }
+
+      // the last consumer takes the place of the removed one, so only its partitions are changed
+      List<Consumer> newConsumers = new ArrayList<Consumer>(consumers);
+
+      Consumer last = newConsumers.remove(newConsumers.size() - 1);
+
+      if (index < newConsumers.size())
+      {
+         newConsumers.set(index, last);
+      }
+
+      consumers = Collections.unmodifiableList(newConsumers);
+
+      rebalance();
+   }
+
+   public int getConsumerCount()
+   {
+      return consumers.size();
+   }
+
+   public Collection<Consumer> getConsumers()
+   {
+      return consumers;
+   }
+
+   public boolean hasMatchingConsumer(final ServerMessage message)
+   {
+      return partitionFor(message).hasMatchingConsumer(message);
+   }
+
+   public void reload(final MessageReference ref)
+   {
+      MessageReference partitionRef = toPartition(ref);
+
+      partitionRef.getQueue().reload(partitionRef);
+   }
+
+   public void addTail(final MessageReference ref)
+   {
+      addTail(ref, false);
+   }
+
+   public void addTail(final MessageReference ref, final boolean direct)
+   {
+      MessageReference partitionRef = toPartition(ref);
+
+      partitionRef.getQueue().addTail(partitionRef, direct);
+   }
+
+   public void addHead(final MessageReference ref)
+   {
+      MessageReference partitionRef = toPartition(ref);
+
+      partitionRef.getQueue().addHead(partitionRef);
+   }
+
+   public void addHead(final List<MessageReference> refs)
+   {
+      Map<Queue, List<MessageReference>> partitionRefs = new LinkedHashMap<Queue, List<MessageReference>>();
+
+      for (MessageReference ref : refs)
+      {
+         MessageReference partitionRef = toPartition(ref);
+
+         List<MessageReference> list = partitionRefs.get(partitionRef.getQueue());
+
+         if (list == null)
+         {
+            list = new ArrayList<MessageReference>();
+
+            partitionRefs.put(partitionRef.getQueue(), list);
+         }
+
+         list.add(partitionRef);
+      }
+
+      for (Map.Entry<Queue, List<MessageReference>> entry : partitionRefs.entrySet())
+      {
+         entry.getKey().addHead(entry.getValue());
+      }
+   }
+
+   public void acknowledge(final MessageReference ref) throws Exception
+   {
+      partitionOf(ref).acknowledge(ref);
+   }
+
+   public void acknowledge(final Transaction tx, final MessageReference ref) throws Exception
+   {
+      partitionOf(ref).acknowledge(tx, ref);
+   }
+
+   public void reacknowledge(final Transaction tx, final MessageReference ref) throws Exception
+   {
+      partitionOf(ref).reacknowledge(tx, ref);
+   }
+
+   public void cancel(final Transaction tx, final MessageReference ref)
+   {
+      partitionOf(ref).cancel(tx, ref);
+   }
+
+   public void cancel(final MessageReference ref, final long timeBase) throws Exception
+   {
+      partitionOf(ref).cancel(ref, timeBase);
+   }
+
+   public void expire(final MessageReference ref) throws Exception
+   {
+      partitionOf(ref).expire(ref);
+   }
+
+   public boolean checkRedelivery(final MessageReference ref, final long timeBase) throws Exception
+   {
+      return partitionOf(ref).checkRedelivery(ref, timeBase);
+   }
+
+   public void referenceHandled()
+   {
+      // The references are delivered by the partitions, which are told about them directly
+      partitions[0].referenceHandled();
+   }
+
+   public void deliverAsync()
+   {
+      for (QueueImpl partition : partitions)
+      {
+         partition.deliverAsync();
+      }
+   }
+
+   public void forceDelivery()
+   {
+      for (QueueImpl partition : partitions)
+      {
+         partition.forceDelivery();
+      }
+   }
+
+   public void destroyPaging() throws Exception
+   {
+      partitions[0].destroyPaging();
+
+      pageSubscription = null;
+   }
+
+   public long getMessageCount()
+   {
+      long count = 0;
+
+      for (QueueImpl partition : partitions)
+      {
+         count += partition.getMessageCount();
+      }
+
+      return count;
+   }
+
+   public long getInstantMessageCount()
+   {
+      long count = 0;
+
+      for (QueueImpl partition : partitions)
+      {
+         count += partition.getInstantMessageCount();
+      }
+
+      return count;
+   }
+
+   public int getDeliveringCount()
+   {
+      int count = 0;
+
+      for (QueueImpl partition : partitions)
+      {
+         count += partition.getDeliveringCount();
+      }
+
+      return count;
+   }
+
+   public int getScheduledCount()
+   {
+      int count = 0;
+
+      for (QueueImpl partition : partitions)
+      {
+         count += partition.getScheduledCount();
+      }
+
+      return count;
+   }
+
+   public List<MessageReference> getScheduledMessages()
+   {
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (QueueImpl partition : partitions)
+      {
+         refs.addAll(partition.getScheduledMessages());
+      }
+
+      return refs;
+   }
+
+   public long getMessagesAdded()
+   {
+      long count = 0;
+
+      for (QueueImpl partition : partitions)
+      {
+         count += partition.getMessagesAdded();
+      }
+
+      return count;
+   }
+
+   public long getInstantMessagesAdded()
+   {
+      long count = 0;
+
+      for (QueueImpl partition : partitions)
+      {
+         count += partition.getInstantMessagesAdded();
+      }
+
+      return count;
+   }
+
+   public MessageReference removeReferenceWithID(final long id) throws Exception
+   {
+      for (QueueImpl partition : partitions)
+      {
+         MessageReference ref = partition.removeReferenceWithID(id);
+
+         if (ref != null)
+         {
+            return ref;
+         }
+      }
+
+      return null;
+   }
+
+   public MessageReference getReference(final long id) throws Exception
+   {
+      for (QueueImpl partition : partitions)
+      {
+         MessageReference ref = partition.getReference(id);
+
+         if (ref != null)
+         {
+            return ref;
+         }
+      }
+
+      return null;
+   }
+
+   public int deleteAllReferences() throws Exception
+   {
+      int count = 0;
+
+      for (QueueImpl partition : partitions)
+      {
+         count += partition.deleteAllReferences();
+      }
+
+      return count;
+   }
+
+   public boolean deleteReference(final long messageID) throws Exception
+   {
+      for (QueueImpl partition : partitions)
+      {
+         if (partition.deleteReference(messageID))
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   public int deleteMatchingReferences(final Filter filter) throws Exception
+   {
+      int count = 0;
+
+      for (QueueImpl partition : partitions)
+      {
+         count += partition.deleteMatchingReferences(filter);
+      }
+
+      return count;
+   }
+
+   public boolean expireReference(final long messageID) throws Exception
+   {
+      for (QueueImpl partition : partitions)
+      {
+         if (partition.expireReference(messageID))
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   public int expireReferences(final Filter filter) throws Exception
+   {
+      int count = 0;
+
+      for (QueueImpl partition : partitions)
+      {
+         count += partition.expireReferences(filter);
+      }
+
+      return count;
+   }
+
+   public void expireReferences() throws Exception
+   {
+      for (QueueImpl partition : partitions)
+      {
+         partition.expireReferences();
+      }
+   }
+
+   public boolean sendMessageToDeadLetterAddress(final long messageID) throws Exception
+   {
+      for (QueueImpl partition : partitions)
+      {
+         if (partition.sendMessageToDeadLetterAddress(messageID))
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   public int sendMessagesToDeadLetterAddress(final Filter filter) throws Exception
+   {
+      int count = 0;
+
+      for (QueueImpl partition : partitions)
+      {
+         count += partition.sendMessagesToDeadLetterAddress(filter);
+      }
+
+      return count;
+   }
+
+   public boolean changeReferencePriority(final long messageID, final byte newPriority) throws Exception
+   {
+      for (QueueImpl partition : partitions)
+      {
+         if (partition.changeReferencePriority(messageID, newPriority))
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   public int changeReferencesPriority(final Filter filter, final byte newPriority) throws Exception
+   {
+      int count = 0;
+
+      for (QueueImpl partition : partitions)
+      {
+         count += partition.changeReferencesPriority(filter, newPriority);
+      }
+
+      return count;
+   }
+
+   public boolean moveReference(final long messageID, final SimpleString toAddress) throws Exception
+   {
+      return moveReference(messageID, toAddress, false);
+   }
+
+   public boolean moveReference(final long messageID, final SimpleString toAddress, final boolean rejectDuplicates) throws Exception
+   {
+      for (QueueImpl partition : partitions)
+      {
+         if (partition.moveReference(messageID, toAddress, rejectDuplicates))
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   public int moveReferences(final Filter filter, final SimpleString toAddress) throws Exception
+   {
+      return moveReferences(filter, toAddress, false);
+   }
+
+   public int moveReferences(final Filter filter, final SimpleString toAddress, final boolean rejectDuplicates) throws Exception
+   {
+      int count = 0;
+
+      for (QueueImpl partition : partitions)
+      {
+         count += partition.moveReferences(filter, toAddress, rejectDuplicates);
+      }
+
+      return count;
+   }
+
+   public void addRedistributor(final long delay)
+   {
+      for (QueueImpl partition : partitions)
+      {
+         partition.addRedistributor(delay);
+      }
+   }
+
+   public void cancelRedistributor() throws Exception
+   {
+      for (QueueImpl partition : partitions)
+      {
+         partition.cancelRedistributor();
+      }
+   }
+
+   public LinkedListIterator<MessageReference> iterator()
+   {
+      return new PartitionsIterator();
+   }
+
+   public List<MessageReference> getQueuedReferences() throws Exception
+   {
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      for (QueueImpl partition : partitions)
+      {
+         refs.addAll(partition.getQueuedReferences());
+      }
+
+      return refs;
+   }
+
+   public void setExpiryAddress(final SimpleString expiryAddress)
+   {
+      for (QueueImpl partition : partitions)
+      {
+         partition.setExpiryAddress(expiryAddress);
+      }
+   }
+
+   public void pause()
+   {
+      for (QueueImpl partition : partitions)
+      {
+         partition.pause();
+      }
+   }
+
+   public void resume()
+   {
+      for (QueueImpl partition : partitions)
+      {
+         partition.resume();
+      }
+   }
+
+   public boolean isPaused()
+   {
+      return partitions[0].isPaused();
+   }
+
+   /**
+    * @return an executor running the tasks after everything already given to the executors of the
+    *         partitions
+    */
+   public Executor getExecutor()
+   {
+      return executor;
+   }
+
+   public void resetAllIterators()
+   {
+      for (QueueImpl partition : partitions)
+      {
+         partition.resetAllIterators();
+      }
+   }
+
+   public boolean flushExecutor()
+   {
+      boolean ok = true;
+
+      for (QueueImpl partition : partitions)
+      {
+         ok &= partition.flushExecutor();
+      }
+
+      return ok;
+   }
+
+   public void close() throws Exception
+   {
+      for (QueueImpl partition : partitions)
+      {
+         partition.close();
+      }
+   }
+
+   public boolean isDirectDeliver()
+   {
+      for (QueueImpl partition : partitions)
+      {
+         if (!partition.isDirectDeliver())
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   public boolean isInternalQueue()
+   {
+      return partitions[0].isInternalQueue();
+   }
+
+   public void setInternalQueue(final boolean internalQueue)
+   {
+      for (QueueImpl partition : partitions)
+      {
+         partition.setInternalQueue(internalQueue);
+      }
+   }
+
+   // Public --------------------------------------------------------
+
+   public int getNumberOfPartitions()
+   {
+      return partitions.length;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "PartitionedQueue[name=" + name + ", partitions=" + partitions.length + "]@" +
+             Integer.toHexString(System.identityHashCode(this));
+   }
+
+   // Private -------------------------------------------------------
+
+   private QueueImpl partitionFor(final ServerMessage message)
+   {
+      SimpleString groupID = message.getSimpleStringProperty(Message.HDR_GROUP_ID);
+
+      long key = groupID != null ? groupID.hashCode() : message.getMessageID();
+
+      int hash = (int)(key ^ key >>> 32) * 0x9E3779B9;
+
+      hash ^= hash >>> 16;
+
+      return partitions[(hash & Integer.MAX_VALUE) % partitions.length];
+   }
+
+   /**
+    * @return the partition holding the reference
+    */
+   private Queue partitionOf(final MessageReference ref)
+   {
+      return ref.getQueue() == this ? partitionFor(ref.getMessage()) : ref.getQueue();
+   }
+
+   /**
+    * References created for this queue (e.g. when reloading the journal) are given to their
+    * partition, as everything done with a reference goes through its queue
+    */
+   private MessageReference toPartition(final MessageReference ref)
+   {
+      if (ref.getQueue() == this)
+      {
+         return new PartitionReference(ref, partitionFor(ref.getMessage()));
+      }
+      else
+      {
+         return ref;
+      }
+   }
+
+   /**
+    * Partition <i>i</i> is given the consumers <i>i</i>, <i>i + partitions</i>... or, with fewer
+    * consumers than partitions, consumer <i>i % consumers</i>
+    */
+   private void rebalance() throws Exception
+   {
+      List<Consumer> consumers = this.consumers;
+
+      for (int i = 0; i < partitions.length; i++)
+      {
+         Set<Consumer> assigned = new HashSet<Consumer>();
+
+         if (consumers.size() >= partitions.length)
+         {
+            for (int j = i; j < consumers.size(); j += partitions.length)
+            {
+               assigned.add(consumers.get(j));
+            }
+         }
+         else if (!consumers.isEmpty())
+         {
+            assigned.add(consumers.get(i % consumers.size()));
+         }
+
+         Set<Consumer> current = partitions[i].getConsumers();
+
+         boolean added = false;
+
+         for (Consumer consumer : assigned)
+         {
+            if (!current.contains(consumer))
+            {
+               partitions[i].addConsumer(consumer);
+
+               added = true;
+            }
+         }
+
+         for (Consumer consumer : current)
+         {
+            if (!assigned.contains(consumer))
+            {
+               partitions[i].removeConsumer(consumer);
+            }
+         }
+
+         if (added)
+         {
+            partitions[i].deliverAsync();
+         }
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private final class Partition extends QueueImpl
+   {
+      Partition(final long id,
+                final SimpleString address,
+                final SimpleString name,
+                final Filter filter,
+                final PageSubscription pageSubscription,
+                final boolean durable,
+                final boolean temporary,
+                final ScheduledExecutorService scheduledExecutor,
+                final PostOffice postOffice,
+                final StorageManager storageManager,
+                final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                final Executor executor)
+      {
+         super(id,
+               address,
+               name,
+               filter,
+               pageSubscription,
+               durable,
+               temporary,
+               scheduledExecutor,
+               postOffice,
+               storageManager,
+               addressSettingsRepository,
+               executor);
+      }
+
+      /**
+       * Every partition is routed to through the subscription of the queue, while only the first
+       * one depages from it
+       */
+      @Override
+      public PageSubscription getPageSubscription()
+      {
+         return PartitionedQueue.this.pageSubscription;
+      }
+
+      // The partitions share the queue name, which QueueImpl is compared by
+
+      @Override
+      public boolean equals(final Object other)
+      {
+         return this == other;
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return System.identityHashCode(this);
+      }
+   }
+
+   /**
+    * Runs a task on the executor of a partition, once every partition got to it
+    */
+   private final class PartitionsExecutor implements Executor
+   {
+      public void execute(final Runnable command)
+      {
+         final AtomicInteger pending = new AtomicInteger(partitions.length);
+
+         for (QueueImpl partition : partitions)
+         {
+            partition.getExecutor().execute(new Runnable()
+            {
+               public void run()
+               {
+                  if (pending.decrementAndGet() == 0)
+                  {
+                     command.run();
+                  }
+               }
+            });
+         }
+      }
+   }
+
+   private final class PartitionsIterator implements LinkedListIterator<MessageReference>
+   {
+      private final List<LinkedListIterator<MessageReference>> iterators = new ArrayList<LinkedListIterator<MessageReference>>();
+
+      private int partition;
+
+      // the partition which returned the last reference
+      private int last = -1;
+
+      private PartitionsIterator()
+      {
+         iterators.add(partitions[0].iterator());
+      }
+
+      public boolean hasNext()
+      {
+         while (!iterators.get(partition).hasNext())
+         {
+            if (partition == partitions.length - 1)
+            {
+               return false;
+            }
+
+            partition++;
+
+            if (partition == iterators.size())
+            {
+               iterators.add(partitions[partition].iterator());
+            }
+         }
+
+         return true;
+      }
+
+      public MessageReference next()
+      {
+         if (!hasNext())
+         {
+            throw new NoSuchElementException();
+         }
+
+         last = partition;
+
+         return iterators.get(partition).next();
+      }
+
+      public void remove()
+      {
+         iterators.get(last).remove();
+      }
+
+      public void repeat()
+      {
+         if (last >= 0)
+         {
+            partition = last;
+
+            iterators.get(last).repeat();
+         }
+      }
+
+      public void close()
+      {
+         for (LinkedListIterator<MessageReference> iterator : iterators)
+         {
+            iterator.close();
+         }
+      }
+   }
+
+   private static final class PartitionReference implements MessageReference
+   {
+      private final MessageReference ref;
+
+      private final Queue partition;
+
+      PartitionReference(final MessageReference ref, final Queue partition)
+      {
+         this.ref = ref;
+
+         this.partition = partition;
+      }
+
+      public boolean isPaged()
+      {
+         return ref.isPaged();
+      }
+
+      public ServerMessage getMessage()
+      {
+         return ref.getMessage();
+      }
+
+      public int getMessageMemoryEstimate()
+      {
+         return ref.getMessageMemoryEstimate();
+      }
+
+      public MessageReference copy(final Queue queue)
+      {
+         return ref.copy(queue);
+      }
+
+      public long getScheduledDeliveryTime()
+      {
+         return ref.getScheduledDeliveryTime();
+      }
+
+      public void setScheduledDeliveryTime(final long scheduledDeliveryTime)
+      {
+         ref.setScheduledDeliveryTime(scheduledDeliveryTime);
+      }
+
+      public int getDeliveryCount()
+      {
+         return ref.getDeliveryCount();
+      }
+
+      public void setDeliveryCount(final int deliveryCount)
+      {
+         ref.setDeliveryCount(deliveryCount);
+      }
+
+      public void setPersistedCount(final int deliveryCount)
+      {
+         ref.setPersistedCount(deliveryCount);
+      }
+
+      public int getPersistedCount()
+      {
+         return ref.getPersistedCount();
+      }
+
+      public void incrementDeliveryCount()
+      {
+         ref.incrementDeliveryCount();
+      }
+
+      public void decrementDeliveryCount()
+      {
+         ref.decrementDeliveryCount();
+      }
+
+      public Queue getQueue()
+      {
+         return partition;
+      }
+
+      public void acknowledge() throws Exception
+      {
+         partition.acknowledge(this);
+      }
+
+      public void acknowledge(final Transaction tx) throws Exception
+      {
+         partition.acknowledge(tx, this);
+      }
+
+      public void handled()
+      {
+         partition.referenceHandled();
+      }
+
+      @Override
+      public String toString()
+      {
+         return "PartitionReference[" + ref + ", partition=" + partition + "]";
+      }
+   }
+}
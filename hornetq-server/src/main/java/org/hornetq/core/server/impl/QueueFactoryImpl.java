@@ -92,6 +92,22 @@ public class QueueFactoryImpl implements QueueFactory
                                     addressSettingsRepository,
                                     executorFactory.getExecutor());
       }
+      else if (addressSettings.getQueuePartitions() > 1)
+      {
+         queue = new PartitionedQueue(persistenceID,
+                                      address,
+                                      name,
+                                      filter,
+                                      pageSubscription,
+                                      durable,
+                                      temporary,
+                                      scheduledExecutor,
+                                      postOffice,
+                                      storageManager,
+                                      addressSettingsRepository,
+                                      executorFactory,
+                                      addressSettings.getQueuePartitions());
+      }
       else
       {
          queue = new QueueImpl(persistenceID,
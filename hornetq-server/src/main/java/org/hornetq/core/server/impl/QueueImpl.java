@@ -16,26 +16,34 @@ package org.hornetq.core.server.impl;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
+import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PagedReference;
 import org.hornetq.core.persistence.StorageManager;
@@ -110,8 +118,21 @@ public class QueueImpl implements Queue
    // Messages will first enter intermediateMessageReferences
    // Before they are added to messageReferences
    // This is to avoid locking the queue on the producer
+   // They are moved in batches by a single poller on the executor, scheduled only when not already pending
    private final ConcurrentLinkedQueue<MessageReference> intermediateMessageReferences = new ConcurrentLinkedQueue<MessageReference>();
 
+   // The size of intermediateMessageReferences, which is expensive to compute on the queue itself
+   private final AtomicInteger intermediateMessageCount = new AtomicInteger(0);
+
+   private final AtomicBoolean pollerScheduled = new AtomicBoolean(false);
+
+   // References cancelled back into the queue, moved to the head of messageReferences by the same poller
+   // Each entry is moved at once, so a rolled back transaction goes back in order
+   private final ConcurrentLinkedQueue<List<MessageReference>> headMessageReferences = new ConcurrentLinkedQueue<List<MessageReference>>();
+
+   // The number of references on headMessageReferences
+   private final AtomicInteger headMessageCount = new AtomicInteger(0);
+
    // This is where messages are stored
    private final PriorityLinkedList<MessageReference> messageReferences = new PriorityLinkedListImpl<MessageReference>(QueueImpl.NUM_PRIORITIES);
 
@@ -121,15 +142,16 @@ public class QueueImpl implements Queue
    // The estimate of memory being consumed by this queue. Used to calculate instances of messages to depage
    private final AtomicInteger queueMemorySize = new AtomicInteger(0);
 
+   // Like messageReferences, pos and groups, this is only changed by tasks on the executor, see getExecutor()
    private final List<ConsumerHolder> consumerList = new ArrayList<ConsumerHolder>();
 
    private final ScheduledDeliveryHandler scheduledDeliveryHandler;
 
-   private long messagesAdded;
+   private final AtomicLong messagesAdded = new AtomicLong(0);
 
    protected final AtomicInteger deliveringCount = new AtomicInteger(0);
 
-   private boolean paused;
+   private volatile boolean paused;
 
    private final Runnable deliverRunner = new DeliverRunner();
 
@@ -152,8 +174,11 @@ public class QueueImpl implements Queue
    private ScheduledFuture<?> checkQueueSizeFuture;
 
    // We cache the consumers here since we don't want to include the redistributor
+   // This is copied on write, so it can be read without locking the queue (e.g. while routing)
 
-   private final Set<Consumer> consumerSet = new HashSet<Consumer>();
+   private volatile Set<Consumer> consumerSet = Collections.emptySet();
+
+   private final Object consumerSetLock = new Object();
 
    private final Map<SimpleString, Consumer> groups = new HashMap<SimpleString, Consumer>();
 
@@ -197,15 +222,18 @@ public class QueueImpl implements Queue
 
       boolean foundRef = false;
 
-      synchronized (this)
+      try
       {
-         Iterator<MessageReference> iter = messageReferences.iterator();
-         while (iter.hasNext())
+         for (MessageReference reference : getQueuedReferences())
          {
             foundRef = true;
-            out.println("reference = " + iter.next());
+            out.println("reference = " + reference);
          }
       }
+      catch (Exception e)
+      {
+         out.println("Couldn't list the references: " + e);
+      }
 
       if (!foundRef)
       {
@@ -383,29 +411,15 @@ public class QueueImpl implements Queue
    }
 
    /* Called when a message is cancelled back into the queue */
-   public synchronized void addHead(final MessageReference ref)
+   public void addHead(final MessageReference ref)
    {
-      if (scheduledDeliveryHandler.checkAndSchedule(ref, false))
-      {
-         return;
-      }
-
-      internalAddHead(ref);
-
-      directDeliver = false;
+      offerHead(Collections.singletonList(ref));
    }
 
    /* Called when a message is cancelled back into the queue */
-   public synchronized void addHead(final List<MessageReference> refs)
+   public void addHead(final List<MessageReference> refs)
    {
-      for (MessageReference ref: refs)
-      {
-         addHead(ref);
-      }
-
-      resetAllIterators();
-
-      deliverAsync();
+      offerHead(refs);
    }
 
    public synchronized void reload(final MessageReference ref)
@@ -418,7 +432,7 @@ public class QueueImpl implements Queue
 
       directDeliver = false;
 
-      messagesAdded++;
+      messagesAdded.incrementAndGet();
    }
 
    public void addTail(final MessageReference ref)
@@ -430,10 +444,7 @@ public class QueueImpl implements Queue
    {
       if (scheduledDeliveryHandler.checkAndSchedule(ref, true))
       {
-         synchronized (this)
-         {
-            messagesAdded++;
-         }
+         messagesAdded.incrementAndGet();
 
          return;
       }
@@ -445,9 +456,10 @@ public class QueueImpl implements Queue
       {
          if (direct && !directDeliver &&
              intermediateMessageReferences.isEmpty() &&
+             headMessageReferences.isEmpty() &&
              messageReferences.isEmpty() &&
-             !pageIterator.hasNext() &&
-             !pageSubscription.isPaging())
+             (pageIterator == null || !pageIterator.hasNext()) &&
+             (pageSubscription == null || !pageSubscription.isPaging()))
          {
             // We must block on the executor to ensure any async deliveries have completed or we might get out of order
             // deliveries
@@ -470,9 +482,11 @@ public class QueueImpl implements Queue
 
       intermediateMessageReferences.add(ref);
 
+      intermediateMessageCount.incrementAndGet();
+
       directDeliver = false;
 
-      getExecutor().execute(concurrentPoller);
+      schedulePoller();
    }
 
    public void forceDelivery()
@@ -513,20 +527,16 @@ public class QueueImpl implements Queue
          checkQueueSizeFuture.cancel(false);
       }
 
-      getExecutor().execute(new Runnable(){
-         public void run()
-         {
-            try
-            {
-               cancelRedistributor();
-            }
-            catch (Exception e)
-            {
-               // nothing that could be done anyway.. just logging
-               HornetQServerLogger.LOGGER.warn(e.getMessage(), e);
-            }
-         }
-      });
+      // not on the executor, as stopping the redistributor waits for it
+      try
+      {
+         cancelRedistributor();
+      }
+      catch (Exception e)
+      {
+         // nothing that could be done anyway.. just logging
+         HornetQServerLogger.LOGGER.warn(e.getMessage(), e);
+      }
    }
 
    public Executor getExecutor()
@@ -566,139 +576,143 @@ public class QueueImpl implements Queue
       return ok;
    }
 
-   public synchronized void addConsumer(final Consumer consumer) throws Exception
+   /**
+    * The consumer is handed to the executor, and this waits for it to take part in the deliveries:
+    * a forced delivery may be queued on the other executor should the queue stop paging meanwhile.
+    */
+   public void addConsumer(final Consumer consumer) throws Exception
    {
       if (HornetQServerLogger.LOGGER.isDebugEnabled())
       {
          HornetQServerLogger.LOGGER.debug(this + " adding consumer " + consumer);
       }
 
-      cancelRedistributor();
-
       if (consumer.getFilter() != null)
       {
          consumerWithFilterCount.incrementAndGet();
       }
 
-      consumerList.add(new ConsumerHolder(consumer));
-
-      consumerSet.add(consumer);
-   }
+      synchronized (consumerSetLock)
+      {
+         Set<Consumer> consumers = new HashSet<Consumer>(consumerSet);
+         consumers.add(consumer);
+         consumerSet = Collections.unmodifiableSet(consumers);
+      }
 
-   public synchronized void removeConsumer(final Consumer consumer) throws Exception
-   {
-      Iterator<ConsumerHolder> iter = consumerList.iterator();
+      // only once the consumer is visible, or a redistributor being added on the executor would miss it
+      cancelRedistributor();
 
-      while (iter.hasNext())
+      try
       {
-         ConsumerHolder holder = iter.next();
-
-         if (holder.consumer == consumer)
+         callOnQueue(new Callable<Void>()
          {
-            if (holder.iter != null)
+            public Void call()
             {
-               holder.iter.close();
-            }
-
-            iter.remove();
-
-            break;
-         }
-      }
+               synchronized (QueueImpl.this)
+               {
+                  consumerList.add(new ConsumerHolder(consumer));
+               }
 
-      if (pos > 0 && pos >= consumerList.size())
-      {
-         pos = consumerList.size() - 1;
+               return null;
+            }
+         });
       }
-
-      consumerSet.remove(consumer);
-
-      List<SimpleString> gids = new ArrayList<SimpleString>();
-
-      for (SimpleString groupID : groups.keySet())
+      catch (IllegalStateException e)
       {
-         if (consumer == groups.get(groupID))
+         // the task was dropped, so the consumer never made it to the deliveries
+         synchronized (consumerSetLock)
          {
-            gids.add(groupID);
+            Set<Consumer> consumers = new HashSet<Consumer>(consumerSet);
+            consumers.remove(consumer);
+            consumerSet = Collections.unmodifiableSet(consumers);
          }
-      }
 
-      for (SimpleString gid : gids)
-      {
-         groups.remove(gid);
-      }
+         if (consumer.getFilter() != null)
+         {
+            consumerWithFilterCount.decrementAndGet();
+         }
 
-      if (consumer.getFilter() != null)
-      {
-         consumerWithFilterCount.decrementAndGet();
+         throw e;
       }
    }
 
-   public synchronized void addRedistributor(final long delay)
+   /**
+    * The consumer is taken out of {@link #getConsumers()} straight away, and out of the deliveries
+    * once the executor gets to it. A consumer must refuse the references it is handed once stopped.
+    */
+   public void removeConsumer(final Consumer consumer) throws Exception
    {
-      if (redistributorFuture != null)
+      synchronized (consumerSetLock)
       {
-         redistributorFuture.cancel(false);
-
-         futures.remove(redistributorFuture);
+         Set<Consumer> consumers = new HashSet<Consumer>(consumerSet);
+         consumers.remove(consumer);
+         consumerSet = Collections.unmodifiableSet(consumers);
       }
 
-      if (redistributor != null)
+      if (consumer.getFilter() != null)
       {
-         // Just prompt delivery
-         deliverAsync();
+         consumerWithFilterCount.decrementAndGet();
       }
 
-      if (delay > 0)
+      executeOnQueue(new Runnable()
       {
-         if (consumerSet.isEmpty())
+         public void run()
          {
-            DelayedAddRedistributor dar = new DelayedAddRedistributor(executor);
-
-            redistributorFuture = scheduledExecutor.schedule(dar, delay, TimeUnit.MILLISECONDS);
-
-            futures.add(redistributorFuture);
+            synchronized (QueueImpl.this)
+            {
+               internalRemoveConsumer(consumer);
+            }
          }
-      }
-      else
-      {
-         internalAddRedistributor(executor);
-      }
+      });
    }
 
-   public synchronized void cancelRedistributor() throws Exception
+   public void addRedistributor(final long delay)
    {
-      if (redistributor != null)
+      executeOnQueue(new Runnable()
       {
-         redistributor.stop();
-         Redistributor redistributorToRemove = redistributor;
-         redistributor = null;
-
-         Iterator<ConsumerHolder> iter = consumerList.iterator();
-
-         while (iter.hasNext())
+         public void run()
          {
-            ConsumerHolder holder = iter.next();
-
-            if (holder.consumer == redistributorToRemove)
+            synchronized (QueueImpl.this)
             {
-               iter.remove();
-
-               break;
+               scheduleRedistributor(delay);
             }
          }
+      });
+   }
+
+   public void cancelRedistributor() throws Exception
+   {
+      final Redistributor redistributorToRemove;
+
+      synchronized (this)
+      {
+         redistributorToRemove = redistributor;
 
-         if (pos > 0 && pos >= consumerList.size())
+         redistributor = null;
+
+         if (redistributorFuture != null)
          {
-            pos = consumerList.size() - 1;
+            redistributorFuture.cancel(false);
+
+            redistributorFuture = null;
          }
       }
 
-      if (redistributorFuture != null)
+      if (redistributorToRemove != null)
       {
-         redistributorFuture.cancel(false);
+         // stopping waits for the executor, so it can't be done holding the queue lock
+         redistributorToRemove.stop();
 
-         redistributorFuture = null;
+         executeOnQueue(new Runnable()
+         {
+            public void run()
+            {
+               synchronized (QueueImpl.this)
+               {
+                  internalRemoveConsumer(redistributorToRemove);
+               }
+            }
+         });
       }
    }
 
@@ -715,27 +729,23 @@ public class QueueImpl implements Queue
       super.finalize();
    }
 
-   public synchronized int getConsumerCount()
+   public int getConsumerCount()
    {
       return consumerSet.size();
    }
 
-   public synchronized Set<Consumer> getConsumers()
+   /**
+    * @return a snapshot of the consumers, not including the redistributor
+    */
+   public Set<Consumer> getConsumers()
    {
       return consumerSet;
    }
 
-   public synchronized boolean hasMatchingConsumer(final ServerMessage message)
+   public boolean hasMatchingConsumer(final ServerMessage message)
    {
-      for (ConsumerHolder holder : consumerList)
+      for (Consumer consumer : consumerSet)
       {
-         Consumer consumer = holder.consumer;
-
-         if (consumer instanceof Redistributor)
-         {
-            continue;
-         }
-
          Filter filter = consumer.getFilter();
 
          if (filter == null)
@@ -758,6 +768,36 @@ public class QueueImpl implements Queue
       return new SynchronizedIterator(messageReferences.iterator());
    }
 
+   public List<MessageReference> getQueuedReferences() throws Exception
+   {
+      return callOnQueue(new Callable<List<MessageReference>>()
+      {
+         public List<MessageReference> call()
+         {
+            synchronized (QueueImpl.this)
+            {
+               List<MessageReference> refs = new ArrayList<MessageReference>(messageReferences.size());
+
+               LinkedListIterator<MessageReference> iter = messageReferences.iterator();
+
+               try
+               {
+                  while (iter.hasNext())
+                  {
+                     refs.add(iter.next());
+                  }
+               }
+               finally
+               {
+                  iter.close();
+               }
+
+               return refs;
+            }
+         }
+      });
+   }
+
    public synchronized MessageReference removeReferenceWithID(final long id) throws Exception
    {
       LinkedListIterator<MessageReference> iterator = iterator();
@@ -796,29 +836,9 @@ public class QueueImpl implements Queue
       }
    }
 
-   public synchronized MessageReference getReference(final long id)
+   public MessageReference getReference(final long id) throws Exception
    {
-      LinkedListIterator<MessageReference> iterator = iterator();
-
-      try
-      {
-
-         while (iterator.hasNext())
-         {
-            MessageReference ref = iterator.next();
-
-            if (ref.getMessage().getMessageID() == id)
-            {
-               return ref;
-            }
-         }
-
-         return null;
-      }
-      finally
-      {
-         iterator.close();
-      }
+      return findReference(id);
    }
 
    public long getMessageCount()
@@ -850,31 +870,30 @@ public class QueueImpl implements Queue
       return count.get();
    }
 
+   /**
+    * Read without the queue lock, so it may be off by the references the executor is moving.
+    */
    public long getInstantMessageCount()
    {
-      synchronized (this)
+      // cancelled references have left the delivering count already
+      long count = messageReferences.size() + headMessageCount.get() + getScheduledCount() + deliveringCount.get();
+
+      if (pageSubscription != null)
       {
-         if (pageSubscription != null)
-         {
-            // messageReferences will have depaged messages which we need to discount from the counter as they are
-            // counted on the pageSubscription as well
-            return messageReferences.size() + getScheduledCount() +
-                   deliveringCount.get() +
-                   pageSubscription.getMessageCount();
-         }
-         else
-         {
-            return messageReferences.size() + getScheduledCount() + deliveringCount.get();
-         }
+         // messageReferences will have depaged messages which we need to discount from the counter as they are
+         // counted on the pageSubscription as well
+         count += pageSubscription.getMessageCount();
       }
+
+      return count;
    }
 
-   public synchronized int getScheduledCount()
+   public int getScheduledCount()
    {
       return scheduledDeliveryHandler.getScheduledCount();
    }
 
-   public synchronized List<MessageReference> getScheduledMessages()
+   public List<MessageReference> getScheduledMessages()
    {
       return scheduledDeliveryHandler.getScheduledReferences();
    }
@@ -970,17 +989,12 @@ public class QueueImpl implements Queue
       getRefsOperation(tx).addAck(reference);
    }
 
-   public synchronized void cancel(final MessageReference reference, final long timeBase) throws Exception
+   public void cancel(final MessageReference reference, final long timeBase) throws Exception
    {
       deliveringCount.decrementAndGet();
       if (checkRedelivery(reference, timeBase))
       {
-         if (!scheduledDeliveryHandler.checkAndSchedule(reference, false))
-         {
-            internalAddHead(reference);
-         }
-
-         resetAllIterators();
+         offerHead(Collections.singletonList(reference));
       }
    }
 
@@ -1045,16 +1059,13 @@ public class QueueImpl implements Queue
 
    public long getInstantMessagesAdded()
    {
-      synchronized (this)
+      if (pageSubscription != null)
       {
-         if (pageSubscription != null)
-         {
-            return messagesAdded + pageSubscription.getCounter().getValue() - pagedReferences.get();
-         }
-         else
-         {
-            return messagesAdded;
-         }
+         return messagesAdded.get() + pageSubscription.getCounter().getValue() - pagedReferences.get();
+      }
+      else
+      {
+         return messagesAdded.get();
       }
     }
 
@@ -1063,81 +1074,72 @@ public class QueueImpl implements Queue
       return deleteMatchingReferences(null);
    }
 
-   public synchronized int deleteMatchingReferences(final Filter filter) throws Exception
+   public int deleteMatchingReferences(final Filter filter) throws Exception
    {
       int count = 0;
 
       Transaction tx = new TransactionImpl(storageManager);
 
-      LinkedListIterator<MessageReference> iter = iterator();
-      try
+      List<MessageReference> matching = new ArrayList<MessageReference>();
+
+      for (MessageReference ref : getMatchingReferences(filter))
+      {
+         if (ref.isPaged() && pageIterator == null)
+         {
+            // this means the queue is being removed
+            // hence paged references are just going away through
+            // page cleanup
+            continue;
+         }
+
+         matching.add(ref);
+      }
+
+      for (MessageReference ref : removeReferences(matching))
       {
+         deliveringCount.incrementAndGet();
+         acknowledge(tx, ref);
+         count++;
+      }
+
+      List<MessageReference> cancelled = scheduledDeliveryHandler.cancel(filter);
+      for (MessageReference messageReference : cancelled)
+      {
+         deliveringCount.incrementAndGet();
+         acknowledge(tx, messageReference);
+         count++;
+      }
+
 
-         while (iter.hasNext())
+      if (pageIterator != null)
+      {
+         // System.out.println("QueueMemorySize before depage = " + queueMemorySize.get());
+         while (pageIterator.hasNext())
          {
-            MessageReference ref = iter.next();
+            PagedReference reference = pageIterator.next();
+            pageIterator.remove();
 
-            if (ref.isPaged() && pageIterator == null)
+            if (filter == null || filter.match(reference.getMessage()))
             {
-               // this means the queue is being removed
-               // hence paged references are just going away through
-               // page cleanup
-               continue;
+               count++;
+               pageSubscription.ack(reference);
             }
-
-            if (filter == null || filter.match(ref.getMessage()))
+            else
             {
-               deliveringCount.incrementAndGet();
-               acknowledge(tx, ref);
-               iter.remove();
-               refRemoved(ref);
-               count++;
+               addTail(reference, false);
             }
          }
+      }
 
-         List<MessageReference> cancelled = scheduledDeliveryHandler.cancel(filter);
-         for (MessageReference messageReference : cancelled)
-         {
-            deliveringCount.incrementAndGet();
-            acknowledge(tx, messageReference);
-            count++;
-         }
+      tx.commit();
 
 
-         if (pageIterator != null)
-         {
-            // System.out.println("QueueMemorySize before depage = " + queueMemorySize.get());
-            while (pageIterator.hasNext())
-            {
-               PagedReference reference = pageIterator.next();
-               pageIterator.remove();
+      if (filter != null && pageIterator != null)
+      {
+         scheduleDepage(false);
+      }
 
-               if (filter == null || filter.match(reference.getMessage()))
-               {
-                  count++;
-                  pageSubscription.ack(reference);
-               }
-               else
-               {
-                  addTail(reference, false);
-               }
-            }
-         }
-
-         tx.commit();
-
-
-         if (filter != null && pageIterator != null)
-         {
-            scheduleDepage(false);
-         }
-
-         return count;
-      }
-      finally
-      {
-         iter.close();
-      }
+      return count;
    }
 
    public void destroyPaging() throws Exception
@@ -1151,97 +1153,56 @@ public class QueueImpl implements Queue
       }
    }
 
-   public synchronized boolean deleteReference(final long messageID) throws Exception
+   public boolean deleteReference(final long messageID) throws Exception
    {
       boolean deleted = false;
 
       Transaction tx = new TransactionImpl(storageManager);
 
-      LinkedListIterator<MessageReference> iter = iterator();
-      try
-      {
-
-         while (iter.hasNext())
-         {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
-            {
-               deliveringCount.incrementAndGet();
-               acknowledge(tx, ref);
-               iter.remove();
-               refRemoved(ref);
-               deleted = true;
-               break;
-            }
-         }
+      MessageReference ref = findReference(messageID);
 
-         tx.commit();
-
-         return deleted;
-      }
-      finally
+      if (removeReference(ref))
       {
-         iter.close();
+         deliveringCount.incrementAndGet();
+         acknowledge(tx, ref);
+         deleted = true;
       }
+
+      tx.commit();
+
+      return deleted;
    }
 
-   public synchronized boolean expireReference(final long messageID) throws Exception
+   public boolean expireReference(final long messageID) throws Exception
    {
-      LinkedListIterator<MessageReference> iter = iterator();
-      try
-      {
+      MessageReference ref = findReference(messageID);
 
-         while (iter.hasNext())
-         {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
-            {
-               deliveringCount.incrementAndGet();
-               expire(ref);
-               iter.remove();
-               refRemoved(ref);
-               return true;
-            }
-         }
-         return false;
-      }
-      finally
+      if (removeReference(ref))
       {
-         iter.close();
+         deliveringCount.incrementAndGet();
+         expire(ref);
+         return true;
       }
+
+      return false;
    }
 
-   public synchronized int expireReferences(final Filter filter) throws Exception
+   public int expireReferences(final Filter filter) throws Exception
    {
       Transaction tx = new TransactionImpl(storageManager);
 
       int count = 0;
-      LinkedListIterator<MessageReference> iter = iterator();
 
-      try
+      for (MessageReference ref : removeReferences(getMatchingReferences(filter)))
       {
+         deliveringCount.incrementAndGet();
+         expire(tx, ref);
+         count++;
+      }
 
-         while (iter.hasNext())
-         {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
-            {
-               deliveringCount.incrementAndGet();
-               expire(tx, ref);
-               iter.remove();
-               refRemoved(ref);
-               count++;
-            }
-         }
-
-         tx.commit();
+      tx.commit();
 
-         return count;
-      }
-      finally
-      {
-         iter.close();
-      }
+      return count;
    }
 
    public void expireReferences()
@@ -1249,101 +1210,83 @@ public class QueueImpl implements Queue
       getExecutor().execute(new Runnable(){
          public void run()
          {
+            List<MessageReference> expired = new ArrayList<MessageReference>();
+
+            boolean hasElements = false;
+
             synchronized (QueueImpl.this)
             {
-               LinkedListIterator<MessageReference> iter = iterator();
+               LinkedListIterator<MessageReference> iter = messageReferences.iterator();
 
                try
                {
-                  boolean expired = false;
-                  boolean hasElements = false;
                   while (iter.hasNext())
                   {
                      hasElements = true;
                      MessageReference ref = iter.next();
-                     try
-                     {
-                        if (ref.getMessage().isExpired())
-                        {
-                           deliveringCount.incrementAndGet();
-                           expired = true;
-                           expire(ref);
-                           iter.remove();
-                           refRemoved(ref);
-                        }
-                     }
-                     catch (Exception e)
+                     if (ref.getMessage().isExpired())
                      {
-                        HornetQServerLogger.LOGGER.errorExpiringReferencesOnQueue(e, ref);
+                        iter.remove();
+                        refRemoved(ref);
+                        expired.add(ref);
                      }
                   }
-
-                  // If empty we need to schedule depaging to make sure we would depage expired messages as well
-                  if ((!hasElements || expired) && pageIterator != null && pageIterator.hasNext())
-                  {
-                     scheduleDepage(true);
-                  }
                }
                finally
                {
                   iter.close();
                }
             }
+
+            // Moved to the expiry address outside of the queue lock
+            for (MessageReference ref : expired)
+            {
+               try
+               {
+                  deliveringCount.incrementAndGet();
+                  expire(ref);
+               }
+               catch (Exception e)
+               {
+                  HornetQServerLogger.LOGGER.errorExpiringReferencesOnQueue(e, ref);
+               }
+            }
+
+            // If empty we need to schedule depaging to make sure we would depage expired messages as well
+            if ((!hasElements || !expired.isEmpty()) && pageIterator != null && pageIterator.hasNext())
+            {
+               scheduleDepage(true);
+            }
          }
       });
    }
 
-   public synchronized boolean sendMessageToDeadLetterAddress(final long messageID) throws Exception
+   public boolean sendMessageToDeadLetterAddress(final long messageID) throws Exception
    {
-      LinkedListIterator<MessageReference> iter = iterator();
+      MessageReference ref = findReference(messageID);
 
-      try
+      if (removeReference(ref))
       {
-         while (iter.hasNext())
-         {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
-            {
-               deliveringCount.incrementAndGet();
-               sendToDeadLetterAddress(ref);
-               iter.remove();
-               refRemoved(ref);
-               return true;
-            }
-         }
-         return false;
-      }
-      finally
-      {
-         iter.close();
+         deliveringCount.incrementAndGet();
+         sendToDeadLetterAddress(ref);
+         return true;
       }
+
+      return false;
    }
 
-   public synchronized int sendMessagesToDeadLetterAddress(Filter filter) throws Exception
+   public int sendMessagesToDeadLetterAddress(Filter filter) throws Exception
    {
       int count = 0;
-      LinkedListIterator<MessageReference> iter = iterator();
 
-      try
-      {
-         while (iter.hasNext())
-         {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
-            {
-               deliveringCount.incrementAndGet();
-               sendToDeadLetterAddress(ref);
-               iter.remove();
-               refRemoved(ref);
-               count++;
-            }
-         }
-         return count;
-      }
-      finally
+      for (MessageReference ref : removeReferences(getMatchingReferences(filter)))
       {
-         iter.close();
+         deliveringCount.incrementAndGet();
+         sendToDeadLetterAddress(ref);
+         count++;
       }
+
+      return count;
    }
 
    public boolean moveReference(final long messageID, final SimpleString toAddress) throws Exception
@@ -1351,40 +1294,28 @@ public class QueueImpl implements Queue
       return moveReference(messageID, toAddress, false);
    }
 
-   public synchronized boolean moveReference(final long messageID,
-                                             final SimpleString toAddress,
-                                             final boolean rejectDuplicate) throws Exception
+   public boolean moveReference(final long messageID,
+                                final SimpleString toAddress,
+                                final boolean rejectDuplicate) throws Exception
    {
-      LinkedListIterator<MessageReference> iter = iterator();
+      MessageReference ref = findReference(messageID);
 
-      try
+      if (removeReference(ref))
       {
-         while (iter.hasNext())
+         deliveringCount.incrementAndGet();
+         try
          {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
-            {
-               iter.remove();
-               refRemoved(ref);
-               deliveringCount.incrementAndGet();
-               try
-               {
-                  move(toAddress, ref, false, rejectDuplicate);
-               }
-               catch (Exception e)
-               {
-                  deliveringCount.decrementAndGet();
-                  throw e;
-               }
-               return true;
-            }
+            move(toAddress, ref, false, rejectDuplicate);
          }
-         return false;
-      }
-      finally
-      {
-         iter.close();
+         catch (Exception e)
+         {
+            deliveringCount.decrementAndGet();
+            throw e;
+         }
+         return true;
       }
+
+      return false;
    }
 
    public int moveReferences(final Filter filter, final SimpleString toAddress) throws Exception
@@ -1392,9 +1323,9 @@ public class QueueImpl implements Queue
       return moveReferences(filter, toAddress, false);
    }
 
-   public synchronized int moveReferences(final Filter filter,
-                                          final SimpleString toAddress,
-                                          final boolean rejectDuplicates) throws Exception
+   public int moveReferences(final Filter filter,
+                             final SimpleString toAddress,
+                             final boolean rejectDuplicates) throws Exception
    {
       Transaction tx = new TransactionImpl(storageManager);
 
@@ -1402,72 +1333,57 @@ public class QueueImpl implements Queue
 
       try
       {
-         LinkedListIterator<MessageReference> iter = iterator();
+         DuplicateIDCache targetDuplicateCache = postOffice.getDuplicateIDCache(toAddress);
 
-         try
+         for (MessageReference ref : removeReferences(getMatchingReferences(filter)))
          {
+            boolean ignored = false;
 
-            DuplicateIDCache targetDuplicateCache = postOffice.getDuplicateIDCache(toAddress);
-
-            while (iter.hasNext())
-            {
-               MessageReference ref = iter.next();
-               if (filter == null || filter.match(ref.getMessage()))
-               {
-                  boolean ignored = false;
-
-                  deliveringCount.incrementAndGet();
-                  count++;
-
-                  if (rejectDuplicates)
-                  {
-                     byte[] duplicateBytes = ref.getMessage().getDuplicateIDBytes();
-                     if (duplicateBytes != null)
-                     {
-                        if (targetDuplicateCache.contains(duplicateBytes))
-                        {
-                           HornetQServerLogger.LOGGER.messageWithDuplicateID(ref.getMessage().getDuplicateProperty(), toAddress, address, address);
-                           acknowledge(tx, ref);
-                           ignored = true;
-                        }
-                     }
-                  }
-
-                  if (!ignored)
-                  {
-                     move(toAddress, tx, ref, false, rejectDuplicates);
-                  }
-                  iter.remove();
-               }
-            }
+            deliveringCount.incrementAndGet();
+            count++;
 
-            List<MessageReference> cancelled = scheduledDeliveryHandler.cancel(filter);
-            for (MessageReference ref : cancelled)
+            if (rejectDuplicates)
             {
                byte[] duplicateBytes = ref.getMessage().getDuplicateIDBytes();
                if (duplicateBytes != null)
                {
                   if (targetDuplicateCache.contains(duplicateBytes))
                   {
-                     HornetQServerLogger.LOGGER.messageWithDuplicateID(ref.getMessage().getDuplicateProperty(), toAddress, address);
-                     continue;
+                     HornetQServerLogger.LOGGER.messageWithDuplicateID(ref.getMessage().getDuplicateProperty(), toAddress, address, address);
+                     acknowledge(tx, ref);
+                     ignored = true;
                   }
                }
+            }
 
-               deliveringCount.incrementAndGet();
-               count++;
+            if (!ignored)
+            {
                move(toAddress, tx, ref, false, rejectDuplicates);
-               acknowledge(tx, ref);
             }
-
-            tx.commit();
-
-            return count;
          }
-         finally
+
+         List<MessageReference> cancelled = scheduledDeliveryHandler.cancel(filter);
+         for (MessageReference ref : cancelled)
          {
-            iter.close();
+            byte[] duplicateBytes = ref.getMessage().getDuplicateIDBytes();
+            if (duplicateBytes != null)
+            {
+               if (targetDuplicateCache.contains(duplicateBytes))
+               {
+                  HornetQServerLogger.LOGGER.messageWithDuplicateID(ref.getMessage().getDuplicateProperty(), toAddress, address);
+                  continue;
+               }
+            }
+
+            deliveringCount.incrementAndGet();
+            count++;
+            move(toAddress, tx, ref, false, rejectDuplicates);
+            acknowledge(tx, ref);
          }
+
+         tx.commit();
+
+         return count;
       }
       catch (Exception e)
       {
@@ -1476,180 +1392,434 @@ public class QueueImpl implements Queue
       }
    }
 
-   public synchronized boolean changeReferencePriority(final long messageID, final byte newPriority) throws Exception
+   public boolean changeReferencePriority(final long messageID, final byte newPriority) throws Exception
+   {
+      MessageReference ref = findReference(messageID);
+
+      if (removeReference(ref))
+      {
+         ref.getMessage().setPriority(newPriority);
+         addTail(ref, false);
+         return true;
+      }
+
+      return false;
+   }
+
+   public int changeReferencesPriority(final Filter filter, final byte newPriority) throws Exception
+   {
+      int count = 0;
+
+      for (MessageReference ref : removeReferences(getMatchingReferences(filter)))
+      {
+         count++;
+         ref.getMessage().setPriority(newPriority);
+         addTail(ref, false);
+      }
+
+      return count;
+   }
+
+   public synchronized void resetAllIterators()
    {
-      LinkedListIterator<MessageReference> iter = iterator();
+      for (ConsumerHolder holder : this.consumerList)
+      {
+         if (holder.iter != null)
+         {
+            holder.iter.close();
+         }
+         holder.iter = null;
+      }
+   }
+
+   public void pause()
+   {
+      paused = true;
+   }
+
+   public void resume()
+   {
+      paused = false;
+
+      deliverAsync();
+   }
+
+   public boolean isPaused()
+   {
+      return paused;
+   }
+
+   public boolean isDirectDeliver()
+   {
+      return directDeliver;
+   }
+
+   /**
+    * @return the internalQueue
+    */
+   public boolean isInternalQueue()
+   {
+      return internalQueue;
+   }
+
+   /**
+    * @param internalQueue the internalQueue to set
+    */
+   public void setInternalQueue(boolean internalQueue)
+   {
+      this.internalQueue = internalQueue;
+   }
+
+   // Public
+   // -----------------------------------------------------------------------------
+
+   @Override
+   public boolean equals(final Object other)
+   {
+      if (this == other)
+      {
+         return true;
+      }
+      if (!(other instanceof QueueImpl)) return false;
+
+      QueueImpl qother = (QueueImpl)other;
+
+      return name.equals(qother.name);
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return name.hashCode();
+   }
+
+   @Override
+   public String toString()
+   {
+      return "QueueImpl[name=" + name.toString() + ", postOffice=" + this.postOffice + "]@" + Integer.toHexString(System.identityHashCode(this));
+   }
+
+   /**
+    * The caller of this method requires synchronized on the queue.
+    * I'm not going to add synchronized to this method just for a precaution,
+    * as I'm not 100% sure this won't cause any extra runtime.
+    * @param ref
+    */
+   private void internalAddTail(final MessageReference ref)
+   {
+      refAdded(ref);
+      messageReferences.addTail(ref, ref.getMessage().getPriority());
+   }
+
+   /**
+    * The caller of this method requires synchronized on the queue.
+    * I'm not going to add synchronized to this method just for a precaution,
+    * as I'm not 100% sure this won't cause any extra runtime.
+    * @param ref
+    */
+   private void internalAddHead(final MessageReference ref)
+   {
+      queueMemorySize.addAndGet(ref.getMessageMemoryEstimate());
+      refAdded(ref);
+      messageReferences.addHead(ref, ref.getMessage().getPriority());
+   }
+
+   private void offerHead(final List<MessageReference> refs)
+   {
+      List<MessageReference> head = new ArrayList<MessageReference>(refs.size());
+
+      for (MessageReference ref : refs)
+      {
+         if (!scheduledDeliveryHandler.checkAndSchedule(ref, false))
+         {
+            head.add(ref);
+         }
+      }
+
+      if (head.isEmpty())
+      {
+         return;
+      }
+
+      directDeliver = false;
+
+      headMessageCount.addAndGet(head.size());
+
+      headMessageReferences.add(head);
 
       try
       {
+         schedulePoller();
+      }
+      catch (RejectedExecutionException ignored)
+      {
+         // no-op
+      }
+   }
 
-         while (iter.hasNext())
+   /**
+    * Moves the cancelled references back to the head of the queue. The caller holds the queue lock.
+    *
+    * @return true if any reference was moved
+    */
+   private boolean pollHead()
+   {
+      boolean moved = false;
+
+      List<MessageReference> refs;
+
+      while ((refs = headMessageReferences.poll()) != null)
+      {
+         for (MessageReference ref : refs)
          {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
-            {
-               iter.remove();
-               refRemoved(ref);
-               ref.getMessage().setPriority(newPriority);
-               addTail(ref, false);
-               return true;
-            }
+            internalAddHead(ref);
          }
 
-         return false;
+         headMessageCount.addAndGet(-refs.size());
+
+         moved = true;
+      }
+
+      if (moved)
+      {
+         // the consumers may have gone past them already
+         resetAllIterators();
+      }
+
+      return moved;
+   }
+
+   /**
+    * Runs the task on the executor, after the deliveries already scheduled. If the executor doesn't
+    * take tasks anymore (e.g. the server is stopping) the task runs on the caller.
+    */
+   private void executeOnQueue(final Runnable task)
+   {
+      try
+      {
+         getExecutor().execute(task);
       }
-      finally
+      catch (RejectedExecutionException e)
       {
-         iter.close();
+         task.run();
       }
    }
 
-   public synchronized int changeReferencesPriority(final Filter filter, final byte newPriority) throws Exception
+   /**
+    * Same as {@link #executeOnQueue(Runnable)}, waiting for the result of the task.
+    */
+   private <T> T callOnQueue(final Callable<T> task) throws Exception
    {
-      LinkedListIterator<MessageReference> iter = iterator();
+      FutureTask<T> future = new FutureTask<T>(task);
+
+      executeOnQueue(future);
 
       try
       {
-         int count = 0;
-         while (iter.hasNext())
+         try
+         {
+            return future.get(10, TimeUnit.SECONDS);
+         }
+         catch (TimeoutException e)
          {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
+            if (future.cancel(false))
             {
-               count++;
-               iter.remove();
-               refRemoved(ref);
-               ref.getMessage().setPriority(newPriority);
-               addTail(ref, false);
+               throw new IllegalStateException("Timed out waiting for the executor of queue " + name);
             }
+
+            // already running, it has to finish now
+            return future.get();
          }
-         return count;
       }
-      finally
+      catch (ExecutionException e)
       {
-         iter.close();
+         if (e.getCause() instanceof Exception)
+         {
+            throw (Exception)e.getCause();
+         }
+
+         throw e;
       }
    }
 
-   public synchronized void resetAllIterators()
+   /**
+    * @return the references matching the filter, taken from a snapshot of the queue
+    */
+   private List<MessageReference> getMatchingReferences(final Filter filter) throws Exception
    {
-      for (ConsumerHolder holder : this.consumerList)
+      List<MessageReference> refs = getQueuedReferences();
+
+      if (filter == null)
       {
-         if (holder.iter != null)
-         {
-            holder.iter.close();
-         }
-         holder.iter = null;
+         return refs;
       }
-   }
 
-   public synchronized void pause()
-   {
-      paused = true;
-   }
+      List<MessageReference> matching = new ArrayList<MessageReference>();
 
-   public synchronized void resume()
-   {
-      paused = false;
+      for (MessageReference ref : refs)
+      {
+         if (filter.match(ref.getMessage()))
+         {
+            matching.add(ref);
+         }
+      }
 
-      deliverAsync();
+      return matching;
    }
 
-   public synchronized boolean isPaused()
+   private MessageReference findReference(final long messageID) throws Exception
    {
-      return paused;
-   }
+      for (MessageReference ref : getQueuedReferences())
+      {
+         if (ref.getMessage().getMessageID() == messageID)
+         {
+            return ref;
+         }
+      }
 
-   public boolean isDirectDeliver()
-   {
-      return directDeliver;
+      return null;
    }
 
    /**
-    * @return the internalQueue
+    * Takes the references out of the queue on the executor, so a delivery in progress isn't
+    * interrupted.
+    *
+    * @return the references that were still on the queue, the others have been delivered meanwhile
     */
-   public boolean isInternalQueue()
+   private List<MessageReference> removeReferences(final List<MessageReference> refs) throws Exception
    {
-      return internalQueue;
-   }
+      if (refs.isEmpty())
+      {
+         return refs;
+      }
 
-   /**
-    * @param internalQueue the internalQueue to set
-    */
-   public void setInternalQueue(boolean internalQueue)
-   {
-      this.internalQueue = internalQueue;
-   }
+      return callOnQueue(new Callable<List<MessageReference>>()
+      {
+         public List<MessageReference> call()
+         {
+            Set<MessageReference> toRemove = Collections.newSetFromMap(new IdentityHashMap<MessageReference, Boolean>());
 
-   // Public
-   // -----------------------------------------------------------------------------
+            toRemove.addAll(refs);
 
-   @Override
-   public boolean equals(final Object other)
-   {
-      if (this == other)
-      {
-         return true;
-      }
-      if (!(other instanceof QueueImpl)) return false;
+            List<MessageReference> removed = new ArrayList<MessageReference>(refs.size());
 
-      QueueImpl qother = (QueueImpl)other;
+            synchronized (QueueImpl.this)
+            {
+               LinkedListIterator<MessageReference> iter = messageReferences.iterator();
 
-      return name.equals(qother.name);
-   }
+               try
+               {
+                  while (iter.hasNext() && removed.size() < toRemove.size())
+                  {
+                     MessageReference ref = iter.next();
 
-   @Override
-   public int hashCode()
-   {
-      return name.hashCode();
+                     if (toRemove.contains(ref))
+                     {
+                        iter.remove();
+                        refRemoved(ref);
+                        removed.add(ref);
+                     }
+                  }
+               }
+               finally
+               {
+                  iter.close();
+               }
+            }
+
+            return removed;
+         }
+      });
    }
 
-   @Override
-   public String toString()
+   private boolean removeReference(final MessageReference ref) throws Exception
    {
-      return "QueueImpl[name=" + name.toString() + ", postOffice=" + this.postOffice + "]@" + Integer.toHexString(System.identityHashCode(this));
+      return ref != null && !removeReferences(Collections.singletonList(ref)).isEmpty();
    }
 
-   /**
-    * The caller of this method requires synchronized on the queue.
-    * I'm not going to add synchronized to this method just for a precaution,
-    * as I'm not 100% sure this won't cause any extra runtime.
-    * @param ref
-    */
-   private void internalAddTail(final MessageReference ref)
+   private void schedulePoller()
    {
-      refAdded(ref);
-      messageReferences.addTail(ref, ref.getMessage().getPriority());
+      if (pollerScheduled.compareAndSet(false, true))
+      {
+         try
+         {
+            getExecutor().execute(concurrentPoller);
+         }
+         catch (RejectedExecutionException e)
+         {
+            pollerScheduled.set(false);
+
+            throw e;
+         }
+      }
    }
 
    /**
-    * The caller of this method requires synchronized on the queue.
-    * I'm not going to add synchronized to this method just for a precaution,
-    * as I'm not 100% sure this won't cause any extra runtime.
-    * @param ref
+    * Moves the cancelled references, then every intermediate reference added before the poller
+    * started into the queue, and delivers them if the queue was empty.
+    * <p>
+    * Every reference added before a task is submitted to the executor is then on the queue when the
+    * task runs, as {@link #flushExecutor()} and {@link #getMessageCount()} expect. The queue lock is
+    * released every {@link #MAX_DELIVERIES_IN_LOOP} references.
     */
-   private void internalAddHead(final MessageReference ref)
+   private void doPoll()
    {
-      queueMemorySize.addAndGet(ref.getMessageMemoryEstimate());
-      refAdded(ref);
-      messageReferences.addHead(ref, ref.getMessage().getPriority());
-   }
+      // cleared before counting, so a reference added after the count schedules another poller
+      pollerScheduled.set(false);
 
-   private synchronized void doPoll()
-   {
-      MessageReference ref = intermediateMessageReferences.poll();
+      int remaining = intermediateMessageCount.get();
 
-      if (ref != null)
-      {
-         internalAddTail(ref);
+      boolean deliver = false;
 
-         messagesAdded++;
+      boolean first = true;
 
-         if (consumerWithFilterCount.get() > 0 || messageReferences.size() == 1)
+      while (first || remaining > 0)
+      {
+         synchronized (this)
          {
-            deliver();
+            if (first)
+            {
+               deliver = remaining > 0 && (consumerWithFilterCount.get() > 0 || messageReferences.isEmpty());
+
+               if (pollHead())
+               {
+                  deliver = true;
+               }
+
+               first = false;
+            }
+
+            int polled = 0;
+
+            while (polled < MAX_DELIVERIES_IN_LOOP && remaining > 0)
+            {
+               MessageReference ref = intermediateMessageReferences.poll();
+
+               if (ref == null)
+               {
+                  // moved meanwhile by a poller on the other executor, see getExecutor()
+                  remaining = 0;
+
+                  break;
+               }
+
+               intermediateMessageCount.decrementAndGet();
+
+               internalAddTail(ref);
+
+               messagesAdded.incrementAndGet();
+
+               polled++;
+
+               remaining--;
+            }
          }
       }
+
+      if (deliver)
+      {
+         deliver();
+      }
    }
 
    /**
@@ -1693,6 +1863,8 @@ public class QueueImpl implements Queue
 
                deliverAsync();
 
+               flushDeliveries();
+
                return;
             }
 
@@ -1705,6 +1877,8 @@ public class QueueImpl implements Queue
 
                deliverAsync();
 
+               flushDeliveries();
+
                return;
             }
 
@@ -1819,6 +1993,8 @@ public class QueueImpl implements Queue
                pos = 0;
             }
          }
+
+         flushDeliveries();
       }
 
       if (pageIterator != null && messageReferences.size() == 0 && pageSubscription.isPaging() && pageIterator.hasNext() && !depagePending)
@@ -1827,6 +2003,17 @@ public class QueueImpl implements Queue
       }
    }
 
+   /**
+    * Lets the consumers send what they held back while a delivery pass handed them references
+    */
+   private void flushDeliveries()
+   {
+      for (ConsumerHolder holder : consumerList)
+      {
+         holder.consumer.flushDeliveries();
+      }
+   }
+
    /**
     * @param ref
     */
@@ -1859,17 +2046,21 @@ public class QueueImpl implements Queue
             HornetQServerLogger.LOGGER.trace("Scheduling depage for queue " + this.getName());
          }
          depagePending = true;
-         pageSubscription.getExecutor().execute(new DepageRunner(scheduleExpiry));
+         PagingStore store = pageSubscription.getPagingStore();
+         store.getPagingManager().scheduleDepage(store, pageSubscription.getExecutor(), new DepageRunner(scheduleExpiry));
       }
    }
 
-   private void depage(final boolean scheduleExpiry)
+   /**
+    * @return the number of messages depaged
+    */
+   private int depage(final boolean scheduleExpiry)
    {
       depagePending = false;
 
       if (paused || pageIterator == null)
       {
-         return;
+         return 0;
       }
 
       long maxSize = pageSubscription.getPagingStore().getPageSizeBytes();
@@ -1926,6 +2117,82 @@ public class QueueImpl implements Queue
          // This will just call an executor
          expireReferences();
       }
+
+      return depaged;
+   }
+
+   private void internalRemoveConsumer(final Consumer consumer)
+   {
+      Iterator<ConsumerHolder> iter = consumerList.iterator();
+
+      while (iter.hasNext())
+      {
+         ConsumerHolder holder = iter.next();
+
+         if (holder.consumer == consumer)
+         {
+            if (holder.iter != null)
+            {
+               holder.iter.close();
+            }
+
+            iter.remove();
+
+            break;
+         }
+      }
+
+      if (pos > 0 && pos >= consumerList.size())
+      {
+         pos = consumerList.size() - 1;
+      }
+
+      List<SimpleString> gids = new ArrayList<SimpleString>();
+
+      for (SimpleString groupID : groups.keySet())
+      {
+         if (consumer == groups.get(groupID))
+         {
+            gids.add(groupID);
+         }
+      }
+
+      for (SimpleString gid : gids)
+      {
+         groups.remove(gid);
+      }
+   }
+
+   private void scheduleRedistributor(final long delay)
+   {
+      if (redistributorFuture != null)
+      {
+         redistributorFuture.cancel(false);
+
+         futures.remove(redistributorFuture);
+      }
+
+      if (redistributor != null)
+      {
+         // Just prompt delivery
+         deliverAsync();
+      }
+
+      if (delay > 0)
+      {
+         if (consumerSet.isEmpty())
+         {
+            DelayedAddRedistributor dar = new DelayedAddRedistributor(executor);
+
+            redistributorFuture = scheduledExecutor.schedule(dar, delay, TimeUnit.MILLISECONDS);
+
+            futures.add(redistributorFuture);
+         }
+      }
+      else
+      {
+         internalAddRedistributor(executor);
+      }
    }
 
    private void internalAddRedistributor(final Executor executor)
@@ -2171,12 +2438,14 @@ public class QueueImpl implements Queue
 
          if (status == HandleStatus.HANDLED)
          {
+            consumer.flushDeliveries();
+
             if (groupID != null && groupConsumer == null)
             {
                groups.put(groupID, consumer);
             }
 
-            messagesAdded++;
+            messagesAdded.incrementAndGet();
 
             return true;
          }
@@ -2217,7 +2486,8 @@ public class QueueImpl implements Queue
       }
    }
 
-   private synchronized HandleStatus handle(final MessageReference reference, final Consumer consumer)
+   /* Called with the queue lock held, from deliver or deliverDirect */
+   private HandleStatus handle(final MessageReference reference, final Consumer consumer)
    {
       HandleStatus status;
       try
@@ -2409,10 +2679,7 @@ public class QueueImpl implements Queue
 
             QueueImpl queue = entry.getKey();
 
-            synchronized (queue)
-            {
-               queue.postRollback(refs);
-            }
+            queue.postRollback(refs);
          }
       }
 
@@ -2420,10 +2687,7 @@ public class QueueImpl implements Queue
       {
          for (MessageReference ref : refsToAck)
          {
-            synchronized (ref.getQueue())
-            {
-               postAcknowledge(ref);
-            }
+            postAcknowledge(ref);
          }
 
          if (pagedMessagesToPostACK != null)
@@ -2467,12 +2731,18 @@ public class QueueImpl implements Queue
 
       public void run()
       {
-         synchronized (QueueImpl.this)
+         executeOnQueue(new Runnable()
          {
-            internalAddRedistributor(executor);
+            public void run()
+            {
+               synchronized (QueueImpl.this)
+               {
+                  internalAddRedistributor(executor);
 
-            futures.remove(this);
-         }
+                  futures.remove(DelayedAddRedistributor.this);
+               }
+            }
+         });
       }
    }
 
@@ -2491,7 +2761,7 @@ public class QueueImpl implements Queue
       }
    }
 
-   private final class DepageRunner implements Runnable
+   private final class DepageRunner implements Callable<Integer>
    {
       final boolean scheduleExpiry;
 
@@ -2500,15 +2770,16 @@ public class QueueImpl implements Queue
          this.scheduleExpiry = scheduleExpiry;
       }
 
-      public void run()
+      public Integer call()
       {
          try
          {
-            depage(scheduleExpiry);
+            return depage(scheduleExpiry);
          }
          catch (Exception e)
          {
             HornetQServerLogger.LOGGER.errorDelivering(e);
+            return 0;
          }
       }
    }
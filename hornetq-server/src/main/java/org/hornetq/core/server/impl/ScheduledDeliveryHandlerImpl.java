@@ -13,12 +13,14 @@
 package org.hornetq.core.server.impl;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.hornetq.core.filter.Filter;
@@ -29,6 +31,14 @@ import org.hornetq.core.server.ScheduledDeliveryHandler;
 
 /**
  * Handles scheduling deliveries to a queue at the correct time.
+ * <p>
+ * The references are kept on a hierarchical timing wheel: the first level has a slot per
+ * millisecond, and every slot of the next level covers a full turn of the level below it. A
+ * reference is placed on the lowest level that reaches its delivery time, and moved down a level
+ * when its slot comes up, until it is due. References too far ahead for the wheel wait on an
+ * overflow heap. Scheduling and cancelling a reference are constant time, and a single task on
+ * the scheduled executor, set for the next slot coming up, hands the due references back to the
+ * queue in batches.
  *
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  * @author <a href="ataylor@redhat.com">Andy Taylor</a>
@@ -39,11 +49,67 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
 {
    private static final boolean trace = HornetQServerLogger.LOGGER.isTraceEnabled();
 
+   private static final int WHEEL_BITS = 6;
+
+   private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+   private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+   /** 4 levels of 64 slots reach about 4.6 hours ahead */
+   private static final int LEVELS = 4;
+
+   private static final int TOP_SHIFT = WHEEL_BITS * (LEVELS - 1);
+
+   private static final long WHEEL_SPAN = 1L << (WHEEL_BITS * LEVELS);
+
+   private static final Comparator<Slot> SLOT_COMPARATOR = new Comparator<Slot>()
+   {
+      public int compare(final Slot slot1, final Slot slot2)
+      {
+         return slot1.expiration < slot2.expiration ? -1 : slot1.expiration == slot2.expiration ? 0 : 1;
+      }
+   };
+
+   private static final Comparator<ScheduledEntry> ENTRY_COMPARATOR = new Comparator<ScheduledEntry>()
+   {
+      public int compare(final ScheduledEntry entry1, final ScheduledEntry entry2)
+      {
+         if (entry1.deliveryTime != entry2.deliveryTime)
+         {
+            return entry1.deliveryTime < entry2.deliveryTime ? -1 : 1;
+         }
+         return entry1.sequence < entry2.sequence ? -1 : entry1.sequence == entry2.sequence ? 0 : 1;
+      }
+   };
+
    private final ScheduledExecutorService scheduledExecutor;
 
    private final Object lockDelivery = new Object();
 
-   private final LinkedList<MessageReference> scheduledReferences = new LinkedList<MessageReference>();
+   private final Runnable deliveryRunnable = new ScheduledDeliveryRunnable();
+
+   // The fields below are guarded by this
+
+   /** The slots of every level, created as they are used */
+   private final Slot[][] wheel = new Slot[LEVELS][];
+
+   /** The slots holding references, by expiration. It decides when the delivery task runs next */
+   private final PriorityQueue<Slot> pendingSlots = new PriorityQueue<Slot>(11, SLOT_COMPARATOR);
+
+   private final PriorityQueue<ScheduledEntry> overflow = new PriorityQueue<ScheduledEntry>(11, ENTRY_COMPARATOR);
+
+   private final Map<Long, ScheduledEntry> entriesByID = new HashMap<Long, ScheduledEntry>();
+
+   /** The time the wheel has reached, every pending slot expires after it */
+   private long currentTime;
+
+   private long sequence;
+
+   private int scheduledCount;
+
+   private ScheduledFuture<?> future;
+
+   private long nextRun = Long.MAX_VALUE;
 
    public ScheduledDeliveryHandlerImpl(final ScheduledExecutorService scheduledExecutor)
    {
@@ -61,141 +127,468 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
             HornetQServerLogger.LOGGER.trace("Scheduling delivery for " + ref + " to occur at " + deliveryTime);
          }
 
-         ScheduledDeliveryRunnable runnable = new ScheduledDeliveryRunnable(ref.getScheduledDeliveryTime());
-
-         synchronized (scheduledReferences)
+         synchronized (this)
          {
-            if (tail)
-            {
-               // We do the opposite what the parameter says as the Runnable will always add it to the head
-               scheduledReferences.addFirst(ref);
-            }
-            else
+            long now = System.currentTimeMillis();
+
+            // Nothing is waiting for the wheel to pass this point, so it can catch up with the clock without
+            // flushing any slot
+            if (nextEvent() > now)
             {
-               // We do the opposite what the parameter says as the Runnable will always add it to the head
-               scheduledReferences.add(ref);
+               currentTime = Math.max(currentTime, now);
             }
-         }
 
-         scheduleDelivery(runnable, deliveryTime);
+            ScheduledEntry entry = new ScheduledEntry(ref, deliveryTime, sequence++, tail);
+
+            entriesByID.put(ref.getMessage().getMessageID(), entry);
+
+            scheduledCount++;
+
+            place(entry, tail);
+
+            scheduleNext(now);
+         }
 
          return true;
       }
       return false;
    }
 
-   public int getScheduledCount()
+   public synchronized int getScheduledCount()
+   {
+      return scheduledCount;
+   }
+
+   public synchronized List<MessageReference> getScheduledReferences()
    {
-      synchronized (scheduledReferences)
+      List<MessageReference> refs = new ArrayList<MessageReference>(scheduledCount);
+
+      for (ScheduledEntry entry : entries())
       {
-         return scheduledReferences.size();
+         refs.add(entry.ref);
       }
+
+      return refs;
    }
 
-   public List<MessageReference> getScheduledReferences()
+   public synchronized List<MessageReference> cancel(final Filter filter)
    {
       List<MessageReference> refs = new ArrayList<MessageReference>();
 
-      synchronized (scheduledReferences)
+      for (ScheduledEntry entry : entries())
       {
-         refs.addAll(scheduledReferences);
+         if (filter == null || filter.match(entry.ref.getMessage()))
+         {
+            remove(entry);
+            refs.add(entry.ref);
+         }
       }
+
       return refs;
    }
 
-   public List<MessageReference> cancel(final Filter filter)
+   public synchronized MessageReference removeReferenceWithID(final long id)
    {
-      List<MessageReference> refs = new ArrayList<MessageReference>();
+      ScheduledEntry entry = entriesByID.get(id);
 
-      synchronized (scheduledReferences)
+      if (entry == null)
       {
-         Iterator<MessageReference> iter = scheduledReferences.iterator();
+         return null;
+      }
+
+      remove(entry);
+
+      return entry.ref;
+   }
+
+   /**
+    * Places the entry on the lowest level reaching its delivery time, or on the overflow heap. Entries already due
+    * go on the next slot so they are still delivered by the delivery task.
+    */
+   private void place(final ScheduledEntry entry, final boolean tail)
+   {
+      long deliveryTime = Math.max(entry.deliveryTime, currentTime + 1);
 
-         while (iter.hasNext())
+      for (int level = 0; level < LEVELS; level++)
+      {
+         int shift = WHEEL_BITS * level;
+
+         long slotNumber = deliveryTime >> shift;
+
+         if (slotNumber - (currentTime >> shift) < WHEEL_SIZE)
          {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
+            Slot slot = slot(level, (int)(slotNumber & WHEEL_MASK));
+
+            if (tail)
+            {
+               slot.addLast(entry);
+            }
+            else
+            {
+               slot.addFirst(entry);
+            }
+
+            if (!slot.pending)
             {
-               iter.remove();
-               refs.add(ref);
+               slot.expiration = slotNumber << shift;
+               slot.pending = true;
+               pendingSlots.add(slot);
             }
+
+            return;
          }
       }
-      return refs;
+
+      overflow.add(entry);
    }
 
-   public MessageReference removeReferenceWithID(final long id)
+   private Slot slot(final int level, final int index)
    {
-      synchronized (scheduledReferences)
+      Slot[] slots = wheel[level];
+
+      if (slots == null)
+      {
+         slots = new Slot[WHEEL_SIZE];
+         wheel[level] = slots;
+      }
+
+      Slot slot = slots[index];
+
+      if (slot == null)
+      {
+         slot = new Slot();
+         slots[index] = slot;
+      }
+
+      return slot;
+   }
+
+   private void remove(final ScheduledEntry entry)
+   {
+      if (entry.slot != null)
+      {
+         entry.slot.remove(entry);
+      }
+      else
       {
-         Iterator<MessageReference> iter = scheduledReferences.iterator();
-         while (iter.hasNext())
+         // Left on the heap, and dropped when it reaches the top
+         entry.removed = true;
+      }
+
+      forget(entry);
+   }
+
+   private void forget(final ScheduledEntry entry)
+   {
+      long id = entry.ref.getMessage().getMessageID();
+
+      if (entriesByID.get(id) == entry)
+      {
+         entriesByID.remove(id);
+      }
+
+      scheduledCount--;
+   }
+
+   private List<ScheduledEntry> entries()
+   {
+      List<ScheduledEntry> entries = new ArrayList<ScheduledEntry>(scheduledCount);
+
+      for (Slot[] slots : wheel)
+      {
+         if (slots != null)
          {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == id)
+            for (Slot slot : slots)
             {
-               iter.remove();
-               return ref;
+               if (slot != null)
+               {
+                  for (ScheduledEntry entry = slot.head; entry != null; entry = entry.next)
+                  {
+                     entries.add(entry);
+                  }
+               }
             }
          }
       }
 
-      return null;
+      for (ScheduledEntry entry : overflow)
+      {
+         if (!entry.removed)
+         {
+            entries.add(entry);
+         }
+      }
+
+      return entries;
    }
 
-   private void scheduleDelivery(final ScheduledDeliveryRunnable runnable, final long deliveryTime)
+   /**
+    * @return the time of the next slot coming up, or of the next entry to be moved from the overflow heap into the
+    *         wheel
+    */
+   private long nextEvent()
    {
-      long now = System.currentTimeMillis();
+      long next = Long.MAX_VALUE;
 
-      long delay = deliveryTime - now;
+      Slot slot = pendingSlots.peek();
 
-      if (delay < 0)
+      if (slot != null)
       {
-         delay = 0;
+         next = slot.expiration;
       }
 
-      scheduledExecutor.schedule(runnable, delay, TimeUnit.MILLISECONDS);
+      ScheduledEntry entry = overflowHead();
+
+      if (entry != null)
+      {
+         next = Math.min(next, overflowTime(entry));
+      }
+
+      return next;
    }
 
-   private class ScheduledDeliveryRunnable implements Runnable
+   private ScheduledEntry overflowHead()
+   {
+      ScheduledEntry entry = overflow.peek();
+
+      while (entry != null && entry.removed)
+      {
+         overflow.poll();
+         entry = overflow.peek();
+      }
+
+      return entry;
+   }
+
+   /**
+    * @return when the entry is reached by the top level of the wheel
+    */
+   private static long overflowTime(final ScheduledEntry entry)
+   {
+      return entry.deliveryTime - WHEEL_SPAN + (1L << TOP_SHIFT);
+   }
+
+   /**
+    * Turns the wheel up to now, moving the entries of every slot that came up a level down, and collecting the ones
+    * that are due in the order they are due.
+    */
+   private void advance(final long now, final List<ScheduledEntry> due)
+   {
+      while (true)
+      {
+         Slot slot = pendingSlots.peek();
+
+         ScheduledEntry overflowEntry = overflowHead();
+
+         if (overflowEntry != null && overflowTime(overflowEntry) <= now &&
+             (slot == null || overflowTime(overflowEntry) < slot.expiration))
+         {
+            overflow.poll();
+
+            currentTime = Math.max(currentTime, overflowTime(overflowEntry));
+
+            place(overflowEntry, true);
+         }
+         else if (slot != null && slot.expiration <= now)
+         {
+            pendingSlots.poll();
+
+            slot.pending = false;
+
+            currentTime = Math.max(currentTime, slot.expiration);
+
+            ScheduledEntry entry = slot.clear();
+
+            while (entry != null)
+            {
+               ScheduledEntry next = entry.next;
+
+               entry.next = null;
+               entry.prev = null;
+
+               if (entry.deliveryTime <= currentTime)
+               {
+                  forget(entry);
+
+                  due.add(entry);
+               }
+               else
+               {
+                  place(entry, true);
+               }
+
+               entry = next;
+            }
+         }
+         else
+         {
+            break;
+         }
+      }
+
+      currentTime = Math.max(currentTime, now);
+   }
+
+   private void scheduleNext(final long now)
+   {
+      long next = nextEvent();
+
+      if (next < nextRun)
+      {
+         if (future != null)
+         {
+            future.cancel(false);
+         }
+
+         nextRun = next;
+
+         future = scheduledExecutor.schedule(deliveryRunnable, Math.max(0, next - now), TimeUnit.MILLISECONDS);
+      }
+   }
+
+   private static final class ScheduledEntry
+   {
+      private final MessageReference ref;
+
+      private final long deliveryTime;
+
+      private final long sequence;
+
+      private Slot slot;
+
+      private ScheduledEntry prev;
+
+      private ScheduledEntry next;
+
+      private boolean removed;
+
+      ScheduledEntry(final MessageReference ref, final long deliveryTime, final long sequence, final boolean tail)
+      {
+         this.ref = ref;
+         this.deliveryTime = deliveryTime;
+         // Entries put back on the head come out of the overflow heap ahead of the others for the same time
+         this.sequence = tail ? sequence : -sequence;
+      }
+   }
+
+   private static final class Slot
    {
-      private final long scheduledTime;
+      private ScheduledEntry head;
+
+      private ScheduledEntry tail;
+
+      private long expiration;
+
+      private boolean pending;
 
-      public ScheduledDeliveryRunnable(final long scheduledTime)
+      void addLast(final ScheduledEntry entry)
       {
-         this.scheduledTime = scheduledTime;
+         entry.slot = this;
+         entry.prev = tail;
+         if (tail == null)
+         {
+            head = entry;
+         }
+         else
+         {
+            tail.next = entry;
+         }
+         tail = entry;
       }
 
+      void addFirst(final ScheduledEntry entry)
+      {
+         entry.slot = this;
+         entry.next = head;
+         if (head == null)
+         {
+            tail = entry;
+         }
+         else
+         {
+            head.prev = entry;
+         }
+         head = entry;
+      }
+
+      void remove(final ScheduledEntry entry)
+      {
+         if (entry.prev == null)
+         {
+            head = entry.next;
+         }
+         else
+         {
+            entry.prev.next = entry.next;
+         }
+         if (entry.next == null)
+         {
+            tail = entry.prev;
+         }
+         else
+         {
+            entry.next.prev = entry.prev;
+         }
+         entry.prev = null;
+         entry.next = null;
+         entry.slot = null;
+      }
+
+      /**
+       * Empties the slot, returning its first entry
+       */
+      ScheduledEntry clear()
+      {
+         ScheduledEntry first = head;
+         for (ScheduledEntry entry = head; entry != null; entry = entry.next)
+         {
+            entry.slot = null;
+         }
+         head = null;
+         tail = null;
+         return first;
+      }
+   }
+
+   private class ScheduledDeliveryRunnable implements Runnable
+   {
       public void run()
       {
          HashMap<Queue, LinkedList<MessageReference>> refs = new HashMap<Queue, LinkedList<MessageReference>>();
 
          synchronized (lockDelivery)
          {
-            synchronized (scheduledReferences)
+            synchronized (ScheduledDeliveryHandlerImpl.this)
             {
+               future = null;
 
-               Iterator<MessageReference> iter = scheduledReferences.iterator();
-               while (iter.hasNext())
-               {
-                  MessageReference reference = iter.next();
-                  if (reference.getScheduledDeliveryTime() <= this.scheduledTime)
-                  {
-                     iter.remove();
+               nextRun = Long.MAX_VALUE;
 
-                     reference.setScheduledDeliveryTime(0);
+               long now = System.currentTimeMillis();
 
-                     LinkedList<MessageReference> references = refs.get(reference.getQueue());
+               List<ScheduledEntry> due = new ArrayList<ScheduledEntry>();
 
-                     if (references == null)
-                     {
-                        references = new LinkedList<MessageReference>();
-                        refs.put(reference.getQueue(), references);
-                     }
+               advance(now, due);
 
-                     references.add(reference);
+               for (ScheduledEntry entry : due)
+               {
+                  MessageReference reference = entry.ref;
+
+                  reference.setScheduledDeliveryTime(0);
+
+                  LinkedList<MessageReference> references = refs.get(reference.getQueue());
+
+                  if (references == null)
+                  {
+                     references = new LinkedList<MessageReference>();
+                     refs.put(reference.getQueue(), references);
                   }
+
+                  // Queue.addHead puts every reference of the list ahead of the previous one
+                  references.addFirst(reference);
                }
+
+               scheduleNext(now);
             }
 
             for (Map.Entry<Queue, LinkedList<MessageReference>> entry : refs.entrySet())
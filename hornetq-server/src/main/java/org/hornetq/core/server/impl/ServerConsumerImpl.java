@@ -13,9 +13,10 @@
 
 package org.hornetq.core.server.impl;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -32,6 +33,7 @@ import org.hornetq.core.message.BodyEncoder;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.postoffice.Binding;
 import org.hornetq.core.postoffice.QueueBinding;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessageBatch;
 import org.hornetq.core.server.HandleStatus;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.server.HornetQMessageBundle;
@@ -105,7 +107,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
    private final StorageManager storageManager;
 
-   private final java.util.Queue<MessageReference> deliveringRefs = new ConcurrentLinkedQueue<MessageReference>();
+   private final DeliveringRefs deliveringRefs = new DeliveringRefs();
 
    private final SessionCallback callback;
 
@@ -117,6 +119,14 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
    private boolean transferring = false;
 
+   private final int deliveryBatchSize;
+
+   /** Standard messages handled but not sent yet, only used when delivering in batches */
+   private final List<MessageReference> pendingDeliveries;
+
+   /** The credits taken by the pending deliveries, settled once their packet is sent */
+   private int pendingCredits;
+
    /* As well as consumer credit based flow control, we also tap into TCP flow control (assuming transport is using TCP)
     * This is useful in the case where consumer-window-size = -1, but we don't want to OOM by sending messages ad infinitum to the Netty
     * write queue when the TCP buffer is full, e.g. the client is slow or has died.
@@ -137,6 +147,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
                              final SessionCallback callback,
                              final boolean preAcknowledge,
                              final boolean strictUpdateDeliveryCount,
+                             final int deliveryBatchSize,
                              final ManagementService managementService) throws Exception
    {
       this.id = id;
@@ -165,6 +176,10 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
       this.strictUpdateDeliveryCount = strictUpdateDeliveryCount;
 
+      this.deliveryBatchSize = deliveryBatchSize;
+
+      pendingDeliveries = deliveryBatchSize > 1 ? new ArrayList<MessageReference>(deliveryBatchSize) : null;
+
       this.callback.addReadyListener(this);
 
       this.creationTime = System.currentTimeMillis();
@@ -306,6 +321,9 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
          if (message.isLargeMessage())
          {
+            // The messages held back go first
+            sendPendingDeliveries();
+
             deliverLargeMessage(ref, message);
          }
          else
@@ -322,6 +340,17 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       return filter;
    }
 
+   public void flushDeliveries()
+   {
+      if (pendingDeliveries != null)
+      {
+         synchronized (lock)
+         {
+            sendPendingDeliveries();
+         }
+      }
+   }
+
    public void close(final boolean failed) throws Exception
    {
       callback.removeReadyListener(this);
@@ -430,6 +459,8 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
                      forcedDeliveryMessage.putLongProperty(ClientConsumerImpl.FORCED_DELIVERY_MESSAGE, sequence);
                      forcedDeliveryMessage.setAddress(messageQueue.getName());
 
+                     sendPendingDeliveries();
+
                      callback.sendMessage(forcedDeliveryMessage, id, 0);
                   }
                }
@@ -469,7 +500,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
       if (!deliveringRefs.isEmpty())
       {
-         for (MessageReference ref : deliveringRefs)
+         for (MessageReference ref : deliveringRefs.toList())
          {
             if (isTrace)
             {
@@ -706,25 +737,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
       // Expiries can come in out of sequence with respect to delivery order
 
-      Iterator<MessageReference> iter = deliveringRefs.iterator();
-
-      MessageReference ref = null;
-
-      while (iter.hasNext())
-      {
-         MessageReference theRef = iter.next();
-
-         if (theRef.getMessage().getMessageID() == messageID)
-         {
-            iter.remove();
-
-            ref = theRef;
-
-            break;
-         }
-      }
-
-      return ref;
+      return deliveringRefs.remove(messageID);
    }
 
    public void readyForWriting(final boolean ready)
@@ -795,6 +808,29 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
     */
    private void deliverStandardMessage(final MessageReference ref, final ServerMessage message)
    {
+      if (pendingDeliveries != null)
+      {
+         // The credits are taken now so the queue stops handing us references once they are used up, and settled
+         // with the actual packet size when the batch is sent
+         int size = message.getEncodeSize() + SessionReceiveMessageBatch.MESSAGE_OVERHEAD;
+
+         pendingDeliveries.add(ref);
+
+         pendingCredits += size;
+
+         if (availableCredits != null)
+         {
+            availableCredits.addAndGet(-size);
+         }
+
+         if (pendingDeliveries.size() >= deliveryBatchSize)
+         {
+            sendPendingDeliveries();
+         }
+
+         return;
+      }
+
       int packetSize = callback.sendMessage(message, id, ref.getDeliveryCount());
 
       if (availableCredits != null)
@@ -811,6 +847,45 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       }
    }
 
+   /**
+    * Sends the messages held back by {@link #deliverStandardMessage(MessageReference, ServerMessage)}, must be
+    * called within the lock
+    */
+   private void sendPendingDeliveries()
+   {
+      if (pendingDeliveries == null || pendingDeliveries.isEmpty())
+      {
+         return;
+      }
+
+      int packetSize = callback.sendMessages(pendingDeliveries, id);
+
+      if (availableCredits != null)
+      {
+         int previous = availableCredits.getAndAdd(pendingCredits - packetSize);
+
+         if (HornetQServerLogger.LOGGER.isTraceEnabled())
+         {
+            HornetQServerLogger.LOGGER.trace(this + "::FlowControl::delivery batch of " +
+                      pendingDeliveries.size() +
+                      " taking " +
+                      packetSize +
+                      " from credits, available now is " +
+                      availableCredits);
+         }
+
+         // Credits received while the batch was held may have been swallowed by the estimate
+         if (previous <= 0 && previous + pendingCredits - packetSize > 0)
+         {
+            promptDelivery();
+         }
+      }
+
+      pendingDeliveries.clear();
+
+      pendingCredits = 0;
+   }
+
    // Inner classes
    // ------------------------------------------------------------------------
 
@@ -1071,6 +1146,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
             }
          }
 
+         flushDeliveries();
       }
 
    }
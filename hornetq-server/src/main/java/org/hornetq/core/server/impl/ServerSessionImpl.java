@@ -352,6 +352,7 @@ public class ServerSessionImpl implements ServerSession, FailureListener
                                                        callback,
                                                        preAcknowledge,
                                                        strictUpdateDeliveryCount,
+                                                       server.getConfiguration().getDeliveryBatchSize(),
                                                        managementService);
 
       consumers.put(consumer.getID(), consumer);
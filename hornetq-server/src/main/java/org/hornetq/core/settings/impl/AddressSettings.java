@@ -45,6 +45,10 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    public static final int DEFAULT_PAGE_MAX_CACHE = 5;
 
+   public static final long DEFAULT_PAGE_MAX_CACHE_BYTES = DEFAULT_PAGE_MAX_CACHE * DEFAULT_PAGE_SIZE;
+
+   public static final boolean DEFAULT_PAGE_COMPRESSION = false;
+
    public static final int DEFAULT_MESSAGE_COUNTER_HISTORY_DAY_LIMIT = 0;
 
    public static final long DEFAULT_REDELIVER_DELAY = 0L;
@@ -53,6 +57,8 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    public static final boolean DEFAULT_LAST_VALUE_QUEUE = false;
 
+   public static final int DEFAULT_QUEUE_PARTITIONS = 1;
+
    public static final long DEFAULT_REDISTRIBUTION_DELAY = -1;
 
    public static final long DEFAULT_EXPIRY_DELAY = -1;
@@ -67,6 +73,10 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    private Integer pageMaxCache = null;
 
+   private Long pageCacheMaxBytes = null;
+
+   private Boolean pageCompression = null;
+
    private Boolean dropMessagesWhenFull = null;
 
    private Integer maxDeliveryAttempts = null;
@@ -87,6 +97,8 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    private Boolean lastValueQueue = null;
 
+   private Integer queuePartitions = null;
+
    private Long redistributionDelay = null;
 
    private Boolean sendToDLAOnNoRoute = null;
@@ -101,6 +113,16 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       this.lastValueQueue = lastValueQueue;
    }
 
+   public int getQueuePartitions()
+   {
+      return queuePartitions != null ? queuePartitions : AddressSettings.DEFAULT_QUEUE_PARTITIONS;
+   }
+
+   public void setQueuePartitions(final int queuePartitions)
+   {
+      this.queuePartitions = queuePartitions;
+   }
+
    public AddressFullMessagePolicy getAddressFullMessagePolicy()
    {
       return addressFullMessagePolicy != null ? addressFullMessagePolicy
@@ -132,6 +154,26 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       this.pageMaxCache = pageMaxCache;
    }
 
+   public long getPageCacheMaxBytes()
+   {
+      return pageCacheMaxBytes != null ? pageCacheMaxBytes : AddressSettings.DEFAULT_PAGE_MAX_CACHE_BYTES;
+   }
+
+   public void setPageCacheMaxBytes(final long pageCacheMaxBytes)
+   {
+      this.pageCacheMaxBytes = pageCacheMaxBytes;
+   }
+
+   public boolean isPageCompression()
+   {
+      return pageCompression != null ? pageCompression : AddressSettings.DEFAULT_PAGE_COMPRESSION;
+   }
+
+   public void setPageCompression(final boolean pageCompression)
+   {
+      this.pageCompression = pageCompression;
+   }
+
    public long getMaxSizeBytes()
    {
       return maxSizeBytes != null ? maxSizeBytes : AddressSettings.DEFAULT_MAX_SIZE_BYTES;
@@ -265,6 +307,14 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       {
          pageMaxCache = merged.pageMaxCache;
       }
+      if (pageCacheMaxBytes == null)
+      {
+         pageCacheMaxBytes = merged.pageCacheMaxBytes;
+      }
+      if (pageCompression == null)
+      {
+         pageCompression = merged.pageCompression;
+      }
       if (pageSizeBytes == null)
       {
          pageSizeBytes = merged.getPageSizeBytes();
@@ -305,6 +355,10 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       {
          sendToDLAOnNoRoute = merged.sendToDLAOnNoRoute;
       }
+      if (queuePartitions == null)
+      {
+         queuePartitions = merged.queuePartitions;
+      }
       if (addressFullMessagePolicy == null)
       {
          addressFullMessagePolicy = merged.addressFullMessagePolicy;
@@ -356,6 +410,22 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       redistributionDelay = BufferHelper.readNullableLong(buffer);
 
       sendToDLAOnNoRoute = BufferHelper.readNullableBoolean(buffer);
+
+      // settings stored by older versions end here
+      if (buffer.readable())
+      {
+         pageCacheMaxBytes = BufferHelper.readNullableLong(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         pageCompression = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         queuePartitions = BufferHelper.readNullableInteger(buffer);
+      }
    }
 
    /* (non-Javadoc)
@@ -379,7 +449,10 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
              BufferHelper.sizeOfNullableLong(expiryDelay) +
              BufferHelper.sizeOfNullableBoolean(lastValueQueue) +
              BufferHelper.sizeOfNullableLong(redistributionDelay) +
-             BufferHelper.sizeOfNullableBoolean(sendToDLAOnNoRoute);
+             BufferHelper.sizeOfNullableBoolean(sendToDLAOnNoRoute) +
+             BufferHelper.sizeOfNullableLong(pageCacheMaxBytes) +
+             BufferHelper.sizeOfNullableBoolean(pageCompression) +
+             BufferHelper.sizeOfNullableInteger(queuePartitions);
    }
 
    /* (non-Javadoc)
@@ -419,6 +492,12 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       BufferHelper.writeNullableLong(buffer, redistributionDelay);
 
       BufferHelper.writeNullableBoolean(buffer, sendToDLAOnNoRoute);
+
+      BufferHelper.writeNullableLong(buffer, pageCacheMaxBytes);
+
+      BufferHelper.writeNullableBoolean(buffer, pageCompression);
+
+      BufferHelper.writeNullableInteger(buffer, queuePartitions);
    }
 
    /* (non-Javadoc)
@@ -435,12 +514,15 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       result = prime * result + ((expiryAddress == null) ? 0 : expiryAddress.hashCode());
       result = prime * result + ((expiryDelay == null) ? 0 : expiryDelay.hashCode());
       result = prime * result + ((lastValueQueue == null) ? 0 : lastValueQueue.hashCode());
+      result = prime * result + ((queuePartitions == null) ? 0 : queuePartitions.hashCode());
       result = prime * result + ((maxDeliveryAttempts == null) ? 0 : maxDeliveryAttempts.hashCode());
       result = prime * result + ((maxSizeBytes == null) ? 0 : maxSizeBytes.hashCode());
       result = prime * result +
                ((messageCounterHistoryDayLimit == null) ? 0 : messageCounterHistoryDayLimit.hashCode());
       result = prime * result + ((pageSizeBytes == null) ? 0 : pageSizeBytes.hashCode());
       result = prime * result + ((pageMaxCache == null) ? 0 : pageMaxCache.hashCode());
+      result = prime * result + ((pageCacheMaxBytes == null) ? 0 : pageCacheMaxBytes.hashCode());
+      result = prime * result + ((pageCompression == null) ? 0 : pageCompression.hashCode());
       result = prime * result + ((redeliveryDelay == null) ? 0 : redeliveryDelay.hashCode());
       result = prime * result + ((redeliveryMultiplier == null) ? 0 : redeliveryMultiplier.hashCode());
       result = prime * result + ((maxRedeliveryDelay == null) ? 0 : maxRedeliveryDelay.hashCode());
@@ -504,6 +586,13 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       }
       else if (!lastValueQueue.equals(other.lastValueQueue))
          return false;
+      if (queuePartitions == null)
+      {
+         if (other.queuePartitions != null)
+            return false;
+      }
+      else if (!queuePartitions.equals(other.queuePartitions))
+         return false;
       if (maxDeliveryAttempts == null)
       {
          if (other.maxDeliveryAttempts != null)
@@ -539,6 +628,20 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       }
       else if (!pageMaxCache.equals(other.pageMaxCache))
          return false;
+      if (pageCacheMaxBytes == null)
+      {
+         if (other.pageCacheMaxBytes != null)
+            return false;
+      }
+      else if (!pageCacheMaxBytes.equals(other.pageCacheMaxBytes))
+         return false;
+      if (pageCompression == null)
+      {
+         if (other.pageCompression != null)
+            return false;
+      }
+      else if (!pageCompression.equals(other.pageCompression))
+         return false;
       if (redeliveryDelay == null)
       {
          if (other.redeliveryDelay != null)
@@ -594,6 +697,8 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
              expiryDelay +
              ", lastValueQueue=" +
              lastValueQueue +
+             ", queuePartitions=" +
+             queuePartitions +
              ", maxDeliveryAttempts=" +
              maxDeliveryAttempts +
              ", maxSizeBytes=" +
@@ -604,6 +709,10 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
              pageSizeBytes +
              ", pageMaxCache=" +
              pageMaxCache +
+             ", pageCacheMaxBytes=" +
+             pageCacheMaxBytes +
+             ", pageCompression=" +
+             pageCompression +
              ", redeliveryDelay=" +
              redeliveryDelay +
              ", redeliveryMultiplier=" +
@@ -13,7 +13,10 @@
 
 package org.hornetq.spi.core.protocol;
 
+import java.util.List;
+
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.ServerMessage;
 import org.hornetq.spi.core.remoting.ReadyListener;
 
@@ -32,6 +35,12 @@ public interface SessionCallback
 
    int sendMessage(ServerMessage message, long consumerID, int deliveryCount);
 
+   /**
+    * Sends the messages of several references to the same consumer, in one packet when the
+    * protocol allows it, and returns the number of bytes sent.
+    */
+   int sendMessages(List<MessageReference> refs, long consumerID);
+
    int sendLargeMessage(ServerMessage message, long consumerID, long bodySize, int deliveryCount);
 
    int sendLargeMessageContinuation(long consumerID, byte[] body, boolean continues, boolean requiresResponse);
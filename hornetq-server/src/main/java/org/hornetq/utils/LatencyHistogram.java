@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.hornetq.utils.json.JSONArray;
+import org.hornetq.utils.json.JSONException;
+import org.hornetq.utils.json.JSONObject;
+
+/**
+ * A histogram of latencies, on buckets of power of two microseconds (up to 1 microsecond, 2, 4...).
+ * The last bucket holds everything slower than the others.
+ */
+public final class LatencyHistogram
+{
+   // Constants -----------------------------------------------------
+
+   static final int NUMBER_OF_BUCKETS = 24;
+
+   // Attributes ----------------------------------------------------
+
+   private final AtomicLongArray buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+
+   // Public --------------------------------------------------------
+
+   /**
+    * @param nanoseconds the latency, as measured by {@link System#nanoTime()}
+    */
+   public void record(final long nanoseconds)
+   {
+      long micros = TimeUnit.NANOSECONDS.toMicros(nanoseconds);
+
+      int bucket = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+
+      buckets.incrementAndGet(Math.min(bucket, NUMBER_OF_BUCKETS - 1));
+   }
+
+   public long getCount()
+   {
+      long count = 0;
+
+      for (int i = 0; i < NUMBER_OF_BUCKETS; i++)
+      {
+         count += buckets.get(i);
+      }
+
+      return count;
+   }
+
+   /**
+    * @return the upper bound in microseconds of the bucket holding the percentile, -1 if nothing
+    *         was recorded or if it's on the last bucket
+    */
+   public long getPercentile(final double percentile)
+   {
+      long[] counts = getCounts();
+
+      long count = 0;
+
+      for (long bucketCount : counts)
+      {
+         count += bucketCount;
+      }
+
+      if (count == 0)
+      {
+         return -1;
+      }
+
+      long target = (long)Math.ceil(count * percentile / 100);
+
+      long seen = 0;
+
+      for (int i = 0; i < NUMBER_OF_BUCKETS - 1; i++)
+      {
+         seen += counts[i];
+
+         if (seen >= target)
+         {
+            return getUpperBound(i);
+         }
+      }
+
+      return -1;
+   }
+
+   public void reset()
+   {
+      for (int i = 0; i < NUMBER_OF_BUCKETS; i++)
+      {
+         buckets.set(i, 0);
+      }
+   }
+
+   /**
+    * @return the count, the 50th, 90th and 99th percentiles and every bucket with a value, as
+    *         <code>{"count":10,"p50":16,"p90":64,"p99":1024,"buckets":[{"le":16,"count":5},...]}</code>
+    *         (microseconds, -1 for the last bucket)
+    */
+   public String toJSON() throws JSONException
+   {
+      JSONObject json = new JSONObject();
+
+      json.put("count", getCount());
+      json.put("p50", getPercentile(50));
+      json.put("p90", getPercentile(90));
+      json.put("p99", getPercentile(99));
+
+      JSONArray array = new JSONArray();
+
+      long[] counts = getCounts();
+
+      for (int i = 0; i < NUMBER_OF_BUCKETS; i++)
+      {
+         if (counts[i] > 0)
+         {
+            JSONObject bucket = new JSONObject();
+            bucket.put("le", i == NUMBER_OF_BUCKETS - 1 ? -1 : getUpperBound(i));
+            bucket.put("count", counts[i]);
+            array.put(bucket);
+         }
+      }
+
+      json.put("buckets", array);
+
+      return json.toString();
+   }
+
+   @Override
+   public String toString()
+   {
+      return "LatencyHistogram [count=" + getCount() + ", p50=" + getPercentile(50) + ", p99=" + getPercentile(99) + "]";
+   }
+
+   // Private -------------------------------------------------------
+
+   private long[] getCounts()
+   {
+      long[] counts = new long[NUMBER_OF_BUCKETS];
+
+      for (int i = 0; i < NUMBER_OF_BUCKETS; i++)
+      {
+         counts[i] = buckets.get(i);
+      }
+
+      return counts;
+   }
+
+   private static long getUpperBound(final int bucket)
+   {
+      return 1L << bucket;
+   }
+}
@@ -75,6 +75,7 @@ public class ConfigurationImplTest extends UnitTestCase
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_FILE_DEPLOYMENT_ENABLED, conf.isFileDeploymentEnabled());
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_PERSIST_DELIVERY_COUNT_BEFORE_DELIVERY,
                           conf.isPersistDeliveryCountBeforeDelivery());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_DELIVERY_BATCH_SIZE, conf.getDeliveryBatchSize());
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_FILE_DEPLOYER_SCAN_PERIOD, conf.getFileDeployerScanPeriod());
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_THREAD_POOL_MAX_SIZE, conf.getThreadPoolMaxSize());
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JMX_MANAGEMENT_ENABLED, conf.isJMXManagementEnabled());
@@ -82,12 +83,21 @@ public class ConfigurationImplTest extends UnitTestCase
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_ASYNC_CONNECTION_EXECUTION_ENABLED,
                           conf.isAsyncConnectionExecutionEnabled());
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_PAGING_DIR, conf.getPagingDirectory());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_PAGE_MAX_CONCURRENT_DEPAGE, conf.getPageMaxConcurrentDepage());
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_LARGE_MESSAGES_DIR, conf.getLargeMessagesDirectory());
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_COMPACT_PERCENTAGE, conf.getJournalCompactPercentage());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_LOAD_THREADS, conf.getJournalLoadThreads());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_COMPACT_MAX_RATE, conf.getJournalCompactMaxRate());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_COMPACT_FILES_PER_PASS, conf.getJournalCompactFilesPerPass());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_MAX_PRE_CREATED_FILES, conf.getJournalMaxPreCreatedFiles());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_STRIPES, conf.getJournalStripes());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_RECORD_CHECKSUM, conf.isJournalRecordChecksum());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO, conf.getJournalBufferTimeout_AIO());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_NIO, conf.getJournalBufferTimeout_NIO());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_AIO, conf.getJournalBufferSize_AIO());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_NIO, conf.getJournalBufferSize_NIO());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_BUFFER_ADAPTIVE_TIMEOUT, conf.isJournalBufferAdaptiveTimeout());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_BUFFER_MIN_TIMEOUT, conf.getJournalBufferMinTimeout());
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_LOG_WRITE_RATE, conf.isLogJournalWriteRate());
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_PERF_BLAST_PAGES, conf.getJournalPerfBlastPages());
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_MESSAGE_COUNTER_ENABLED, conf.isMessageCounterEnabled());
@@ -186,6 +196,10 @@ public class ConfigurationImplTest extends UnitTestCase
          conf.setPersistDeliveryCountBeforeDelivery(b);
          Assert.assertEquals(b, conf.isPersistDeliveryCountBeforeDelivery());
 
+         i = RandomUtil.randomInt();
+         conf.setDeliveryBatchSize(i);
+         Assert.assertEquals(i, conf.getDeliveryBatchSize());
+
          b = RandomUtil.randomBoolean();
          conf.setEnabledAsyncConnectionExecution(b);
          Assert.assertEquals(b, conf.isAsyncConnectionExecutionEnabled());
@@ -238,6 +252,30 @@ public class ConfigurationImplTest extends UnitTestCase
          conf.setJournalCompactPercentage(i);
          Assert.assertEquals(i, conf.getJournalCompactPercentage());
 
+         i = RandomUtil.randomInt();
+         conf.setJournalLoadThreads(i);
+         Assert.assertEquals(i, conf.getJournalLoadThreads());
+
+         l = RandomUtil.randomLong();
+         conf.setJournalCompactMaxRate(l);
+         Assert.assertEquals(l, conf.getJournalCompactMaxRate());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalCompactFilesPerPass(i);
+         Assert.assertEquals(i, conf.getJournalCompactFilesPerPass());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalMaxPreCreatedFiles(i);
+         Assert.assertEquals(i, conf.getJournalMaxPreCreatedFiles());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalStripes(i);
+         Assert.assertEquals(i, conf.getJournalStripes());
+
+         b = RandomUtil.randomBoolean();
+         conf.setJournalRecordChecksum(b);
+         Assert.assertEquals(b, conf.isJournalRecordChecksum());
+
          i = RandomUtil.randomInt();
          conf.setJournalBufferSize_AIO(i);
          Assert.assertEquals(i, conf.getJournalBufferSize_AIO());
@@ -254,6 +292,14 @@ public class ConfigurationImplTest extends UnitTestCase
          conf.setJournalBufferTimeout_NIO(i);
          Assert.assertEquals(i, conf.getJournalBufferTimeout_NIO());
 
+         b = RandomUtil.randomBoolean();
+         conf.setJournalBufferAdaptiveTimeout(b);
+         Assert.assertEquals(b, conf.isJournalBufferAdaptiveTimeout());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalBufferMinTimeout(i);
+         Assert.assertEquals(i, conf.getJournalBufferMinTimeout());
+
          b = RandomUtil.randomBoolean();
          conf.setLogJournalWriteRate(b);
          Assert.assertEquals(b, conf.isLogJournalWriteRate());
@@ -270,6 +316,10 @@ public class ConfigurationImplTest extends UnitTestCase
          conf.setPagingDirectory(s);
          Assert.assertEquals(s, conf.getPagingDirectory());
 
+         i = RandomUtil.randomInt();
+         conf.setPageMaxConcurrentDepage(i);
+         Assert.assertEquals(i, conf.getPageMaxConcurrentDepage());
+
          s = RandomUtil.randomString();
          conf.setLargeMessagesDirectory(s);
          Assert.assertEquals(s, conf.getLargeMessagesDirectory());
@@ -468,6 +518,14 @@ public class ConfigurationImplTest extends UnitTestCase
       conf.setJournalBufferTimeout_NIO(i);
       Assert.assertEquals(i, conf.getJournalBufferTimeout_NIO());
 
+      b = RandomUtil.randomBoolean();
+      conf.setJournalBufferAdaptiveTimeout(b);
+      Assert.assertEquals(b, conf.isJournalBufferAdaptiveTimeout());
+
+      i = RandomUtil.randomInt();
+      conf.setJournalBufferMinTimeout(i);
+      Assert.assertEquals(i, conf.getJournalBufferMinTimeout());
+
       b = RandomUtil.randomBoolean();
       conf.setLogJournalWriteRate(b);
       Assert.assertEquals(b, conf.isLogJournalWriteRate());
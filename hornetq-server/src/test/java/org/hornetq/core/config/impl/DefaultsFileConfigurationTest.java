@@ -102,6 +102,19 @@ public class DefaultsFileConfigurationTest extends ConfigurationImplTest
 
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_COMPACT_PERCENTAGE, conf.getJournalCompactPercentage());
 
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_LOAD_THREADS, conf.getJournalLoadThreads());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_COMPACT_MAX_RATE, conf.getJournalCompactMaxRate());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_COMPACT_FILES_PER_PASS, conf.getJournalCompactFilesPerPass());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_MAX_PRE_CREATED_FILES, conf.getJournalMaxPreCreatedFiles());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_STRIPES, conf.getJournalStripes());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_DELIVERY_BATCH_SIZE, conf.getDeliveryBatchSize());
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_RECORD_CHECKSUM, conf.isJournalRecordChecksum());
+
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_MIN_FILES, conf.getJournalMinFiles());
 
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_MAX_IO_AIO, conf.getJournalMaxIO_AIO());
@@ -116,12 +129,18 @@ public class DefaultsFileConfigurationTest extends ConfigurationImplTest
 
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_NIO, conf.getJournalBufferSize_NIO());
 
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_BUFFER_ADAPTIVE_TIMEOUT, conf.isJournalBufferAdaptiveTimeout());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_JOURNAL_BUFFER_MIN_TIMEOUT, conf.getJournalBufferMinTimeout());
+
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_CREATE_BINDINGS_DIR, conf.isCreateBindingsDir());
 
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_CREATE_JOURNAL_DIR, conf.isCreateJournalDir());
 
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_PAGING_DIR, conf.getPagingDirectory());
 
+      Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_PAGE_MAX_CONCURRENT_DEPAGE, conf.getPageMaxConcurrentDepage());
+
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_LARGE_MESSAGES_DIR, conf.getLargeMessagesDirectory());
 
       Assert.assertEquals(HornetQDefaultConfiguration.DEFAULT_WILDCARD_ROUTING_ENABLED, conf.isWildcardRoutingEnabled());
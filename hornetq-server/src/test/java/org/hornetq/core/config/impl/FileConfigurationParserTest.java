@@ -91,6 +91,31 @@ public class FileConfigurationParserTest extends UnitTestCase
       assertEquals("anodegroupname", config.getBackupGroupName());
    }
 
+   public void testJournalStripesRefusedWithReplication() throws Exception
+   {
+      FileConfigurationParser parser = new FileConfigurationParser();
+
+      String stripesPart = "<journal-stripes>3</journal-stripes>";
+
+      String configStr = firstPart + "<shared-store>true</shared-store>" + stripesPart + lastPart;
+
+      Configuration config = parser.parseMainConfig(new ByteArrayInputStream(configStr.getBytes("UTF-8")));
+
+      assertEquals(3, config.getJournalStripes());
+
+      configStr = firstPart + "<shared-store>false</shared-store>" + stripesPart + lastPart;
+
+      try
+      {
+         parser.parseMainConfig(new ByteArrayInputStream(configStr.getBytes("UTF-8")));
+         fail("a replicated store can't be striped");
+      }
+      catch (IllegalArgumentException expected)
+      {
+         // expected
+      }
+   }
+
    private static String firstPart =
             "<configuration xmlns=\"urn:hornetq\"\n" +
             "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
@@ -65,16 +65,20 @@ public class FileConfigurationTest extends ConfigurationImplTest
       Assert.assertEquals(true, conf.isBackup());
       Assert.assertEquals(true, conf.isSharedStore());
       Assert.assertEquals(true, conf.isPersistDeliveryCountBeforeDelivery());
+      Assert.assertEquals(16, conf.getDeliveryBatchSize());
       Assert.assertEquals("pagingdir", conf.getPagingDirectory());
       Assert.assertEquals("somedir", conf.getBindingsDirectory());
       Assert.assertEquals(false, conf.isCreateBindingsDir());
 
       Assert.assertEquals("max concurrent io", 17, conf.getPageMaxConcurrentIO());
+      Assert.assertEquals(3, conf.getPageMaxConcurrentDepage());
       Assert.assertEquals("somedir2", conf.getJournalDirectory());
       Assert.assertEquals(false, conf.isCreateJournalDir());
       Assert.assertEquals(JournalType.NIO, conf.getJournalType());
       Assert.assertEquals(10000, conf.getJournalBufferSize_NIO());
       Assert.assertEquals(1000, conf.getJournalBufferTimeout_NIO());
+      Assert.assertEquals(true, conf.isJournalBufferAdaptiveTimeout());
+      Assert.assertEquals(100, conf.getJournalBufferMinTimeout());
       Assert.assertEquals(56546, conf.getJournalMaxIO_NIO());
 
       Assert.assertEquals(false, conf.isJournalSyncTransactional());
@@ -83,6 +87,12 @@ public class FileConfigurationTest extends ConfigurationImplTest
       Assert.assertEquals(100, conf.getJournalMinFiles());
       Assert.assertEquals(123, conf.getJournalCompactMinFiles());
       Assert.assertEquals(33, conf.getJournalCompactPercentage());
+      Assert.assertEquals(4, conf.getJournalLoadThreads());
+      Assert.assertEquals(1048576, conf.getJournalCompactMaxRate());
+      Assert.assertEquals(5, conf.getJournalCompactFilesPerPass());
+      Assert.assertEquals(4, conf.getJournalMaxPreCreatedFiles());
+      Assert.assertEquals(3, conf.getJournalStripes());
+      Assert.assertEquals(true, conf.isJournalRecordChecksum());
 
       Assert.assertEquals("largemessagesdir", conf.getLargeMessagesDirectory());
       Assert.assertEquals(95, conf.getMemoryWarningThreshold());
@@ -278,7 +288,10 @@ public class FileConfigurationTest extends ConfigurationImplTest
       assertEquals(81781728121878l, conf.getAddressesSettings().get("a1").getMaxSizeBytes());
       assertEquals(81738173872337l, conf.getAddressesSettings().get("a1").getPageSizeBytes());
       assertEquals(10, conf.getAddressesSettings().get("a1").getPageCacheMaxSize());
+      assertEquals(1048576, conf.getAddressesSettings().get("a1").getPageCacheMaxBytes());
+      assertTrue(conf.getAddressesSettings().get("a1").isPageCompression());
       assertEquals(4, conf.getAddressesSettings().get("a1").getMessageCounterHistoryDayLimit());
+      assertEquals(4, conf.getAddressesSettings().get("a1").getQueuePartitions());
 
       assertEquals("a2.1", conf.getAddressesSettings().get("a2").getDeadLetterAddress().toString());
       assertEquals("a2.2", conf.getAddressesSettings().get("a2").getExpiryAddress().toString());
@@ -286,7 +299,10 @@ public class FileConfigurationTest extends ConfigurationImplTest
       assertEquals(932489234928324l, conf.getAddressesSettings().get("a2").getMaxSizeBytes());
       assertEquals(7126716262626l, conf.getAddressesSettings().get("a2").getPageSizeBytes());
       assertEquals(20, conf.getAddressesSettings().get("a2").getPageCacheMaxSize());
+      assertEquals(2097152, conf.getAddressesSettings().get("a2").getPageCacheMaxBytes());
+      assertFalse(conf.getAddressesSettings().get("a2").isPageCompression());
       assertEquals(8, conf.getAddressesSettings().get("a2").getMessageCounterHistoryDayLimit());
+      assertEquals(1, conf.getAddressesSettings().get("a2").getQueuePartitions());
 
 
       assertEquals(2, conf.getQueueConfigurations().size());
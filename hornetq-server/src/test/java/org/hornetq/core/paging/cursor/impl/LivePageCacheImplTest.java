@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.paging.PagedMessage;
+import org.hornetq.core.paging.impl.Page;
+import org.hornetq.core.paging.impl.PagedMessageImpl;
+import org.hornetq.core.persistence.impl.nullpm.NullStorageManager;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A LivePageCacheImplTest
+ */
+public class LivePageCacheImplTest extends UnitTestCase
+{
+   private static final SimpleString ADDRESS = new SimpleString("address");
+
+   public void testLiveAndReleased() throws Exception
+   {
+      recreateDirectory(getTestDir());
+
+      NIOSequentialFileFactory factory = new NIOSequentialFileFactory(getTestDir());
+
+      SequentialFile file = factory.createSequentialFile("00001.page", 1);
+
+      Page page = new Page(ADDRESS, new NullStorageManager(), factory, file, 1);
+
+      page.open();
+
+      LivePageCacheImpl cache = new LivePageCacheImpl(page, new NullStorageManager());
+
+      page.setLiveCache(cache);
+
+      int numberOfMessages = 1000;
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         // one of them is bigger than a chunk
+         page.write(new PagedMessageImpl(createMessage(i, i == 500 ? LivePageCacheImpl.CHUNK_SIZE * 2 : i),
+                                         new long[] { i }));
+      }
+
+      Assert.assertTrue(cache.isLive());
+      Assert.assertEquals(0, cache.getMemorySize());
+      Assert.assertEquals(numberOfMessages, cache.getNumberOfMessages());
+      Assert.assertNull(cache.getMessage(numberOfMessages));
+
+      assertMessages(cache, numberOfMessages);
+
+      // decoded on every call, nothing but the encoded bytes is kept while the page is live
+      Assert.assertNotSame(cache.getMessage(10), cache.getMessage(10));
+
+      page.close();
+
+      Assert.assertFalse(cache.isLive());
+      Assert.assertTrue(cache.getMemorySize() > LivePageCacheImpl.CHUNK_SIZE * 2);
+
+      assertMessages(cache, numberOfMessages);
+
+      int pooled = LivePageCacheImpl.getPooledChunks();
+
+      // evicted, the messages are now read from the file
+      cache.close();
+
+      Assert.assertEquals(0, cache.getMemorySize());
+      Assert.assertTrue(LivePageCacheImpl.getPooledChunks() > pooled ||
+                        LivePageCacheImpl.getPooledChunks() == LivePageCacheImpl.MAX_POOLED_CHUNKS);
+
+      assertMessages(cache, numberOfMessages);
+
+      Assert.assertEquals(numberOfMessages, cache.getMessages().length);
+   }
+
+   private void assertMessages(final LivePageCacheImpl cache, final int numberOfMessages)
+   {
+      PagedMessage[] messages = cache.getMessages();
+
+      Assert.assertEquals(numberOfMessages, messages.length);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         PagedMessage message = cache.getMessage(i);
+
+         Assert.assertEquals(i, message.getMessage().getMessageID());
+         Assert.assertEquals(i, message.getQueueIDs()[0]);
+         Assert.assertEquals(ADDRESS, message.getMessage().getAddress());
+         Assert.assertEquals(i, message.getMessage().getIntProperty("i").intValue());
+         Assert.assertEquals(i, messages[i].getMessage().getMessageID());
+      }
+   }
+
+   private ServerMessage createMessage(final int id, final int bodySize)
+   {
+      ServerMessage message = new ServerMessageImpl(id, 100);
+
+      message.setAddress(ADDRESS);
+
+      message.putIntProperty("i", id);
+
+      for (int j = 0; j < bodySize; j++)
+      {
+         message.getBodyBuffer().writeByte(UnitTestCase.getSamplebyte(j));
+      }
+
+      return message;
+   }
+}
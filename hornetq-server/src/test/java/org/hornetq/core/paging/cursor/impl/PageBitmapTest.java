@@ -0,0 +1,191 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A PageBitmapTest
+ */
+public class PageBitmapTest extends UnitTestCase
+{
+   public void testAddContains() throws Exception
+   {
+      PageBitmap bitmap = new PageBitmap();
+
+      Assert.assertTrue(bitmap.isEmpty());
+      Assert.assertEquals(-1, bitmap.first());
+      Assert.assertFalse(bitmap.contains(0));
+      Assert.assertFalse(bitmap.contains(-1));
+
+      Assert.assertTrue(bitmap.add(10000));
+      Assert.assertFalse(bitmap.add(10000));
+      Assert.assertTrue(bitmap.add(63));
+      Assert.assertTrue(bitmap.add(64));
+
+      Assert.assertEquals(3, bitmap.size());
+      Assert.assertEquals(63, bitmap.first());
+      Assert.assertTrue(bitmap.contains(10000));
+      Assert.assertTrue(bitmap.contains(64));
+      Assert.assertFalse(bitmap.contains(65));
+      Assert.assertFalse(bitmap.contains(10000 + 64));
+      Assert.assertFalse(bitmap.contains(100000));
+
+      try
+      {
+         bitmap.add(-1);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+
+      bitmap.clear();
+
+      Assert.assertTrue(bitmap.isEmpty());
+      Assert.assertFalse(bitmap.contains(64));
+   }
+
+   public void testFullBlocksReleased() throws Exception
+   {
+      PageBitmap bitmap = new PageBitmap();
+
+      int numberOfMessages = PageBitmap.BLOCK_SIZE * 3 + 10;
+
+      for (int i = numberOfMessages - 1; i >= 0; i--)
+      {
+         Assert.assertFalse(bitmap.containsAll(numberOfMessages));
+         Assert.assertTrue(bitmap.add(i));
+      }
+
+      Assert.assertTrue(bitmap.containsAll(numberOfMessages));
+      Assert.assertFalse(bitmap.containsAll(numberOfMessages + 1));
+      Assert.assertEquals(numberOfMessages, bitmap.size());
+      Assert.assertEquals(0, bitmap.first());
+
+      // only the last block holds bits
+      Assert.assertTrue(bitmap.getMemorySize() < 1024);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         Assert.assertTrue(bitmap.contains(i));
+         Assert.assertFalse(bitmap.add(i));
+      }
+   }
+
+   public void testEncodeDecode() throws Exception
+   {
+      Random random = new Random(1);
+
+      PageBitmap bitmap = new PageBitmap();
+
+      BitSet expected = new BitSet();
+
+      // a full block, a sparse block, a dense block and an empty one
+      for (int i = 0; i < PageBitmap.BLOCK_SIZE; i++)
+      {
+         add(bitmap, expected, i);
+      }
+
+      for (int i = 0; i < 10; i++)
+      {
+         add(bitmap, expected, PageBitmap.BLOCK_SIZE + random.nextInt(PageBitmap.BLOCK_SIZE));
+      }
+
+      for (int i = 0; i < 2000; i++)
+      {
+         add(bitmap, expected, PageBitmap.BLOCK_SIZE * 2 + random.nextInt(PageBitmap.BLOCK_SIZE));
+      }
+
+      add(bitmap, expected, PageBitmap.BLOCK_SIZE * 4 + PageBitmap.BLOCK_SIZE - 1);
+
+      HornetQBuffer buffer = HornetQBuffers.fixedBuffer(bitmap.getEncodeSize());
+
+      bitmap.encode(buffer);
+
+      Assert.assertEquals(bitmap.getEncodeSize(), buffer.writerIndex());
+
+      PageBitmap decoded = new PageBitmap();
+
+      decoded.decode(buffer);
+
+      Assert.assertFalse(buffer.readable());
+      Assert.assertEquals(expected.cardinality(), decoded.size());
+      Assert.assertEquals(bitmap.getEncodeSize(), decoded.getEncodeSize());
+
+      for (int i = 0; i < PageBitmap.BLOCK_SIZE * 6; i++)
+      {
+         Assert.assertEquals(expected.get(i), decoded.contains(i));
+      }
+
+      PageBitmap empty = new PageBitmap();
+
+      buffer = HornetQBuffers.fixedBuffer(empty.getEncodeSize());
+
+      empty.encode(buffer);
+
+      decoded.decode(buffer);
+
+      Assert.assertTrue(decoded.isEmpty());
+   }
+
+   public void testNextAndCopy() throws Exception
+   {
+      Random random = new Random(2);
+
+      PageBitmap bitmap = new PageBitmap();
+
+      BitSet expected = new BitSet();
+
+      for (int i = 0; i < PageBitmap.BLOCK_SIZE; i++)
+      {
+         add(bitmap, expected, PageBitmap.BLOCK_SIZE + i);
+      }
+
+      for (int i = 0; i < 100; i++)
+      {
+         add(bitmap, expected, PageBitmap.BLOCK_SIZE * 3 + random.nextInt(PageBitmap.BLOCK_SIZE));
+      }
+
+      PageBitmap copy = bitmap.copy();
+
+      for (int i = 0; i < PageBitmap.BLOCK_SIZE * 5; i++)
+      {
+         Assert.assertEquals(expected.nextSetBit(i), bitmap.next(i));
+         Assert.assertEquals(expected.nextSetBit(i), copy.next(i));
+      }
+
+      Assert.assertEquals(expected.cardinality(), copy.size());
+
+      // the copy is independent of the original
+      Assert.assertTrue(copy.add(0));
+      Assert.assertFalse(bitmap.contains(0));
+      bitmap.clear();
+      Assert.assertEquals(expected.cardinality() + 1, copy.size());
+      Assert.assertTrue(copy.contains(PageBitmap.BLOCK_SIZE));
+   }
+
+   private void add(final PageBitmap bitmap, final BitSet expected, final int messageNr)
+   {
+      Assert.assertEquals(!expected.get(messageNr), bitmap.add(messageNr));
+      expected.set(messageNr);
+   }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.paging.PagedMessage;
+import org.hornetq.core.paging.cursor.PageCache;
+import org.hornetq.core.paging.impl.Page;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A PageCacheMapTest
+ */
+public class PageCacheMapTest extends UnitTestCase
+{
+   public void testEvictLeastRecentlyUsed() throws Exception
+   {
+      PageCacheMap map = new PageCacheMap(3, -1);
+
+      FakeCache[] caches = new FakeCache[4];
+
+      for (int i = 0; i < 3; i++)
+      {
+         caches[i] = new FakeCache(i, 10);
+         map.put(i, caches[i]);
+      }
+
+      // page 0 is now more recent than page 1
+      Assert.assertSame(caches[0], map.get(0));
+
+      caches[3] = new FakeCache(3, 10);
+      map.put(3, caches[3]);
+
+      Assert.assertEquals(3, map.size());
+      Assert.assertFalse(map.containsKey(1));
+      Assert.assertTrue(caches[1].closed);
+      Assert.assertFalse(caches[0].closed);
+      Assert.assertEquals(1, map.getEvictions());
+      Assert.assertEquals(30, map.getMemorySize());
+   }
+
+   public void testEvictOnBytes() throws Exception
+   {
+      PageCacheMap map = new PageCacheMap(-1, 100);
+
+      FakeCache first = new FakeCache(1, 40);
+      FakeCache second = new FakeCache(2, 40);
+
+      map.put(1, first);
+      map.put(2, second);
+
+      Assert.assertEquals(80, map.getMemorySize());
+
+      // the caches grow as their messages are read
+      second.memorySize = 70;
+
+      Assert.assertSame(second, map.get(2));
+
+      Assert.assertTrue(first.closed);
+      Assert.assertFalse(second.closed);
+      Assert.assertEquals(70, map.getMemorySize());
+
+      // the cache being accessed stays even when alone over the limit
+      second.memorySize = 200;
+
+      Assert.assertSame(second, map.get(2));
+      Assert.assertEquals(1, map.size());
+      Assert.assertEquals(1, map.getEvictions());
+
+      map.setMaxBytes(-1);
+      map.put(3, new FakeCache(3, 200));
+      Assert.assertEquals(2, map.size());
+
+      map.setMaxBytes(300);
+      Assert.assertEquals(1, map.size());
+      Assert.assertTrue(second.closed);
+   }
+
+   public void testOnlyAccessedCacheMeasured() throws Exception
+   {
+      PageCacheMap map = new PageCacheMap(-1, -1);
+
+      FakeCache first = new FakeCache(1, 10);
+      FakeCache second = new FakeCache(2, 10);
+
+      map.put(1, first);
+      map.put(2, second);
+
+      first.memorySize = 50;
+
+      map.get(2);
+      Assert.assertEquals(20, map.getMemorySize());
+
+      map.get(1);
+      Assert.assertEquals(60, map.getMemorySize());
+
+      map.put(1, first);
+      Assert.assertEquals(60, map.getMemorySize());
+   }
+
+   public void testLiveNotEvicted() throws Exception
+   {
+      PageCacheMap map = new PageCacheMap(1, -1);
+
+      FakeCache live = new FakeCache(1, 0);
+      live.live = true;
+
+      map.put(1, live);
+      map.put(2, new FakeCache(2, 10));
+
+      Assert.assertEquals(2, map.size());
+      Assert.assertFalse(live.closed);
+
+      map.put(3, new FakeCache(3, 10));
+
+      Assert.assertEquals(2, map.size());
+      Assert.assertTrue(map.containsKey(1));
+      Assert.assertTrue(map.containsKey(3));
+
+      Assert.assertSame(live, map.remove(1));
+      Assert.assertEquals(1, map.size());
+      Assert.assertEquals(10, map.getMemorySize());
+   }
+
+   private static final class FakeCache implements PageCache
+   {
+      private final long pageId;
+
+      private long memorySize;
+
+      private boolean live;
+
+      private boolean closed;
+
+      FakeCache(final long pageId, final long memorySize)
+      {
+         this.pageId = pageId;
+         this.memorySize = memorySize;
+      }
+
+      public Page getPage()
+      {
+         return null;
+      }
+
+      public long getPageId()
+      {
+         return pageId;
+      }
+
+      public int getNumberOfMessages()
+      {
+         return 0;
+      }
+
+      public PagedMessage[] getMessages()
+      {
+         return new PagedMessage[0];
+      }
+
+      public long getMemorySize()
+      {
+         return closed ? 0 : memorySize;
+      }
+
+      public boolean isLive()
+      {
+         return live;
+      }
+
+      public PagedMessage getMessage(final int messageNumber)
+      {
+         return null;
+      }
+
+      public void lock()
+      {
+      }
+
+      public void unlock()
+      {
+      }
+
+      public void close()
+      {
+         closed = true;
+      }
+   }
+}
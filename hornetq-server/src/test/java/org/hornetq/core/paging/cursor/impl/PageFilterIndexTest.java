@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.paging.PagedMessage;
+import org.hornetq.core.paging.impl.PagedMessageImpl;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A PageFilterIndexTest
+ */
+public class PageFilterIndexTest extends UnitTestCase
+{
+   public void testEvaluatedOnce() throws Exception
+   {
+      PageFilterIndex index = new PageFilterIndex();
+
+      // matches even, odd and every message
+      ModuloFilter even = new ModuloFilter(2, 0);
+      ModuloFilter odd = new ModuloFilter(2, 1);
+      ModuloFilter all = new ModuloFilter(1, 0);
+
+      index.addSubscription(1, even);
+      index.addSubscription(2, odd);
+      index.addSubscription(3, all);
+      index.addSubscription(4, null);
+
+      int numberOfMessages = 100;
+
+      for (int subscription = 1; subscription <= 4; subscription++)
+      {
+         for (int i = 0; i < numberOfMessages; i++)
+         {
+            boolean expected = subscription == 1 ? i % 2 == 0 : subscription == 2 ? i % 2 == 1 : true;
+
+            Assert.assertEquals(expected, index.match(subscription, new PagePositionImpl(1, i), message(i, 1, 2, 3, 4)));
+         }
+      }
+
+      Assert.assertEquals(numberOfMessages, even.count);
+      Assert.assertEquals(numberOfMessages, odd.count);
+      Assert.assertEquals(numberOfMessages, all.count);
+
+      // only the subscriptions the message is routed to are evaluated
+      Assert.assertTrue(index.match(3, new PagePositionImpl(2, 0), message(0, 3)));
+
+      Assert.assertEquals(numberOfMessages, even.count);
+      Assert.assertEquals(numberOfMessages + 1, all.count);
+
+      Assert.assertEquals(2, index.getNumberOfPages());
+
+      index.removePage(2);
+
+      Assert.assertEquals(1, index.getNumberOfPages());
+
+      // the results are discarded when the subscriptions change
+      index.removeSubscription(2);
+
+      Assert.assertEquals(0, index.getNumberOfPages());
+
+      Assert.assertTrue(index.match(1, new PagePositionImpl(1, 0), message(0, 1, 2, 3)));
+
+      Assert.assertEquals(numberOfMessages + 1, even.count);
+      Assert.assertEquals(numberOfMessages, odd.count);
+      Assert.assertEquals(numberOfMessages + 2, all.count);
+   }
+
+   public void testSingleFilter() throws Exception
+   {
+      PageFilterIndex index = new PageFilterIndex();
+
+      ModuloFilter even = new ModuloFilter(2, 0);
+
+      index.addSubscription(1, even);
+
+      for (int i = 0; i < 10; i++)
+      {
+         Assert.assertTrue(index.match(1, new PagePositionImpl(1, 0), message(0, 1)));
+      }
+
+      // nothing is shared, so nothing is kept
+      Assert.assertEquals(10, even.count);
+      Assert.assertEquals(0, index.getNumberOfPages());
+   }
+
+   public void testMaxPages() throws Exception
+   {
+      PageFilterIndex index = new PageFilterIndex();
+
+      index.addSubscription(1, new ModuloFilter(2, 0));
+      index.addSubscription(2, new ModuloFilter(2, 1));
+
+      for (int page = 0; page < PageFilterIndex.MAX_PAGES * 2; page++)
+      {
+         index.match(1, new PagePositionImpl(page, 0), message(0, 1, 2));
+      }
+
+      Assert.assertEquals(PageFilterIndex.MAX_PAGES, index.getNumberOfPages());
+   }
+
+   private PagedMessage message(final int id, final long... queueIDs)
+   {
+      ServerMessage message = new ServerMessageImpl(id, 100);
+
+      message.putIntProperty("i", id);
+
+      return new PagedMessageImpl(message, queueIDs);
+   }
+
+   private static final class ModuloFilter implements Filter
+   {
+      private final int divisor;
+
+      private final int remainder;
+
+      private int count;
+
+      private ModuloFilter(final int divisor, final int remainder)
+      {
+         this.divisor = divisor;
+         this.remainder = remainder;
+      }
+
+      public boolean match(final ServerMessage message)
+      {
+         count++;
+         return message.getIntProperty("i") % divisor == remainder;
+      }
+
+      public SimpleString getFilterString()
+      {
+         return new SimpleString("i % " + divisor + " = " + remainder);
+      }
+   }
+}
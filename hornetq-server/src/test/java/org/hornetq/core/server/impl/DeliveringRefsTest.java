@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server.impl;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A DeliveringRefsTest
+ */
+public class DeliveringRefsTest extends UnitTestCase
+{
+   public void testOrderAndRemove() throws Exception
+   {
+      DeliveringRefs refs = new DeliveringRefs();
+
+      Assert.assertTrue(refs.isEmpty());
+      Assert.assertNull(refs.poll());
+      Assert.assertNull(refs.remove(1));
+
+      for (int i = 0; i < 100; i++)
+      {
+         refs.add(ref(i));
+      }
+
+      Assert.assertEquals(100, refs.size());
+
+      Assert.assertEquals(50, refs.remove(50).getMessage().getMessageID());
+      Assert.assertNull(refs.remove(50));
+      Assert.assertEquals(99, refs.remove(99).getMessage().getMessageID());
+
+      for (int i = 0; i < 99; i++)
+      {
+         if (i != 50)
+         {
+            Assert.assertEquals(i, refs.poll().getMessage().getMessageID());
+         }
+      }
+
+      Assert.assertTrue(refs.isEmpty());
+      Assert.assertNull(refs.poll());
+   }
+
+   public void testRedelivered() throws Exception
+   {
+      DeliveringRefs refs = new DeliveringRefs();
+
+      MessageReference first = ref(1);
+      MessageReference second = ref(1);
+
+      refs.add(first);
+      refs.add(ref(2));
+      refs.add(second);
+
+      Assert.assertSame(first, refs.remove(1));
+      Assert.assertSame(second, refs.remove(1));
+      Assert.assertNull(refs.remove(1));
+
+      Assert.assertEquals(1, refs.size());
+      Assert.assertEquals(2, refs.toList().get(0).getMessage().getMessageID());
+
+      refs.clear();
+
+      Assert.assertTrue(refs.isEmpty());
+      Assert.assertNull(refs.remove(2));
+   }
+
+   public void testRandom() throws Exception
+   {
+      DeliveringRefs refs = new DeliveringRefs();
+
+      LinkedList<MessageReference> expected = new LinkedList<MessageReference>();
+
+      Random random = new Random(1);
+
+      long nextID = 0;
+
+      for (int i = 0; i < 100000; i++)
+      {
+         int operation = random.nextInt(10);
+
+         if (operation < 5)
+         {
+            // a few redeliveries of messages still delivering
+            long id = random.nextInt(20) == 0 && nextID > 0 ? random.nextInt((int)nextID) : nextID++;
+            MessageReference ref = ref(id);
+            refs.add(ref);
+            expected.add(ref);
+         }
+         else if (operation < 7)
+         {
+            Assert.assertSame(expected.poll(), refs.poll());
+         }
+         else
+         {
+            long id = nextID == 0 ? 0 : random.nextInt((int)nextID);
+
+            MessageReference ref = null;
+
+            for (Iterator<MessageReference> iterator = expected.iterator(); iterator.hasNext();)
+            {
+               MessageReference candidate = iterator.next();
+               if (candidate.getMessage().getMessageID() == id)
+               {
+                  iterator.remove();
+                  ref = candidate;
+                  break;
+               }
+            }
+
+            Assert.assertSame(ref, refs.remove(id));
+         }
+
+         Assert.assertEquals(expected.size(), refs.size());
+      }
+
+      Assert.assertEquals(expected, refs.toList());
+   }
+
+   private MessageReference ref(final long id)
+   {
+      return new MessageReferenceImpl(new ServerMessageImpl(id, 100), null);
+   }
+}
@@ -149,6 +149,10 @@ public class OutgoingTweetsHandler implements Consumer, ConnectorService
       return filter;
    }
 
+   public void flushDeliveries()
+   {
+   }
+
    public HandleStatus handle(final MessageReference ref) throws Exception
    {
       if (filter != null && !filter.match(ref.getMessage()))
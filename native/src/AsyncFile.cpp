@@ -205,6 +205,25 @@ void AsyncFile::preAllocate(THREAD_CONTEXT , off_t position, int blocks, size_t
 }
 
 
+/** Reserves the blocks on the file system without writing them, what leaves them zeroed.
+ *  Returns false when the file system can't do it, so the caller can use preAllocate instead.
+ *  posix_fallocate is not used as its emulation (for when it's not supported) can't write on files opened with O_DIRECT */
+bool AsyncFile::allocate(THREAD_CONTEXT, off_t position, off_t size)
+{
+	if (::fallocate(fileHandle, 0, position, size) == 0)
+	{
+		return true;
+	}
+
+	if (errno == EOPNOTSUPP || errno == ENOSYS)
+	{
+		return false;
+	}
+
+	throw AIOException (NATIVE_ERROR_PREALLOCATE_FILE, "Error pre allocating the file");
+}
+
+
 /** Write directly to the file without using libaio queue */
 void AsyncFile::writeInternal(THREAD_CONTEXT, long position, size_t size, void *& buffer)
 {
@@ -81,6 +81,7 @@ public:
 	// Finishes the polling thread (if any) and return
 	void stopPoller(THREAD_CONTEXT threadContext);
 	void preAllocate(THREAD_CONTEXT threadContext, off_t position, int blocks, size_t size, int fillChar);
+	bool allocate(THREAD_CONTEXT threadContext, off_t position, off_t size);
 	
 	void pollEvents(THREAD_CONTEXT threadContext);
 	
@@ -320,6 +320,23 @@ JNIEXPORT void JNICALL Java_org_hornetq_core_asyncio_impl_AsynchronousFileImpl_f
 }
 
 
+JNIEXPORT jboolean JNICALL Java_org_hornetq_core_asyncio_impl_AsynchronousFileImpl_fallocate
+  (JNIEnv * env, jclass, jobject controllerAddress, jlong position, jlong size)
+{
+	try
+	{
+		AIOController * controller = getController(env, controllerAddress);
+
+		return controller->fileOutput.allocate(env, position, size) ? JNI_TRUE : JNI_FALSE;
+	}
+	catch (AIOException& e)
+	{
+		throwException(env, e.getErrorCode(), e.what());
+		return JNI_FALSE;
+	}
+}
+
+
 
 /** It does nothing... just return true to make sure it has all the binary dependencies */
 JNIEXPORT jint JNICALL Java_org_hornetq_core_asyncio_impl_AsynchronousFileImpl_getNativeVersion
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.client;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.Interceptor;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.MessageHandler;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.config.Configuration;
+import org.hornetq.core.protocol.core.Packet;
+import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.spi.core.protocol.RemotingConnection;
+import org.hornetq.tests.util.ServiceTestBase;
+
+/**
+ * A BatchDeliveryTest
+ */
+public class BatchDeliveryTest extends ServiceTestBase
+{
+   private static final SimpleString ADDRESS = new SimpleString("BatchDeliveryTestAddress");
+
+   private final AtomicInteger batches = new AtomicInteger(0);
+
+   private final AtomicInteger singles = new AtomicInteger(0);
+
+   private HornetQServer server;
+
+   private ServerLocator locator;
+
+   protected boolean isNetty()
+   {
+      return false;
+   }
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      Configuration config = createDefaultConfig(isNetty());
+      config.setDeliveryBatchSize(10);
+
+      server = createServer(false, config);
+      server.start();
+
+      locator = createFactory(isNetty());
+      locator.addIncomingInterceptor(new Interceptor()
+      {
+         public boolean intercept(final Packet packet, final RemotingConnection connection) throws HornetQException
+         {
+            if (packet.getType() == PacketImpl.SESS_RECEIVE_MSG_BATCH)
+            {
+               batches.incrementAndGet();
+            }
+            else if (packet.getType() == PacketImpl.SESS_RECEIVE_MSG)
+            {
+               singles.incrementAndGet();
+            }
+            return true;
+         }
+      });
+   }
+
+   public void testMessagesAndOrder() throws Exception
+   {
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(ADDRESS, ADDRESS, null, false);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      final int numMessages = 500;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createMessage(false);
+         message.putIntProperty("count", i);
+         message.getBodyBuffer().writeString("message " + i);
+         producer.send(message);
+      }
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      session.start();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         Assert.assertEquals(i, message.getIntProperty("count").intValue());
+         Assert.assertEquals("message " + i, message.getBodyBuffer().readString());
+         Assert.assertEquals(ADDRESS, message.getAddress());
+         Assert.assertEquals(1, message.getDeliveryCount());
+         message.acknowledge();
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      Assert.assertTrue(batches.get() > 0);
+      Assert.assertTrue(batches.get() + singles.get() < numMessages);
+
+      session.close();
+
+      Assert.assertEquals(0, server.locateQueue(ADDRESS).getMessageCount());
+   }
+
+   public void testRedelivery() throws Exception
+   {
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, false, false);
+
+      session.createQueue(ADDRESS, ADDRESS, null, false);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      final int numMessages = 50;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createMessage(false);
+         message.putIntProperty("count", i);
+         producer.send(message);
+      }
+
+      session.commit();
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      session.start();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         message.acknowledge();
+      }
+
+      session.rollback();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         Assert.assertEquals(i, message.getIntProperty("count").intValue());
+         Assert.assertEquals(2, message.getDeliveryCount());
+         message.acknowledge();
+      }
+
+      session.commit();
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      session.close();
+   }
+
+   public void testFlowControl() throws Exception
+   {
+      // A window smaller than a batch, the credits are taken as messages are handled
+      locator.setConsumerWindowSize(1024);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(ADDRESS, ADDRESS, null, false);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      final int numMessages = 1000;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createMessage(false);
+         message.getBodyBuffer().writeBytes(new byte[100]);
+         producer.send(message);
+      }
+
+      final CountDownLatch latch = new CountDownLatch(numMessages);
+
+      final AtomicInteger errors = new AtomicInteger(0);
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      consumer.setMessageHandler(new MessageHandler()
+      {
+         public void onMessage(final ClientMessage message)
+         {
+            try
+            {
+               message.acknowledge();
+            }
+            catch (HornetQException e)
+            {
+               errors.incrementAndGet();
+            }
+            latch.countDown();
+         }
+      });
+
+      session.start();
+
+      Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+      Assert.assertEquals(0, errors.get());
+
+      session.close();
+   }
+
+   public void testLargeMessagesKeepOrder() throws Exception
+   {
+      locator.setMinLargeMessageSize(1024);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(ADDRESS, ADDRESS, null, false);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      final int numMessages = 60;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createMessage(false);
+         message.putIntProperty("count", i);
+         message.getBodyBuffer().writeBytes(new byte[i % 7 == 0 ? 4096 : 10]);
+         producer.send(message);
+      }
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      session.start();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         Assert.assertEquals(i, message.getIntProperty("count").intValue());
+         Assert.assertEquals(i % 7 == 0 ? 4096 : 10, message.getBodySize());
+         message.acknowledge();
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      session.close();
+   }
+}
@@ -250,6 +250,100 @@ public class PagingTest extends ServiceTestBase
       System.out.println("pgComplete = " + pgComplete);
    }
 
+   public void testCheckpointACKsAndRestart() throws Exception
+   {
+      clearData();
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      // a single big page, so every ACK is on the same page
+      server = createServer(true, config, 1024 * 1024, 10 * 1024 * 1024, new HashMap<String, AddressSettings>());
+
+      server.start();
+
+      final int numberOfMessages = 3000;
+
+      final int numberOfACKs = 2500;
+
+      locator = createInVMNonHALocator();
+
+      locator.setBlockOnNonDurableSend(true);
+      locator.setBlockOnDurableSend(true);
+      locator.setBlockOnAcknowledge(true);
+      locator.setAckBatchSize(0);
+
+      ClientSessionFactory sf = locator.createSessionFactory();
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(PagingTest.ADDRESS, PagingTest.ADDRESS, null, true);
+
+      Queue queue = server.locateQueue(PagingTest.ADDRESS);
+
+      queue.getPageSubscription().getPagingStore().startPaging();
+
+      ClientProducer producer = session.createProducer(PagingTest.ADDRESS);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("id", i);
+         producer.send(message);
+      }
+
+      session.start();
+
+      ClientConsumer consumer = session.createConsumer(PagingTest.ADDRESS);
+
+      for (int i = 0; i < numberOfACKs; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull(message);
+         assertEquals(i, message.getIntProperty("id").intValue());
+         message.acknowledge();
+      }
+
+      session.close();
+      sf.close();
+
+      queue.getPageSubscription().flushExecutors();
+
+      server.stop();
+
+      HashMap<Integer, AtomicInteger> counts = countJournalLivingRecords(config);
+
+      AtomicInteger snapshots = counts.get((int)JournalStorageManager.PAGE_CURSOR_ACKS);
+      AtomicInteger acks = counts.get((int)JournalStorageManager.ACKNOWLEDGE_CURSOR);
+
+      assertNotNull(snapshots);
+      assertEquals(1, snapshots.get());
+      assertTrue(acks == null || acks.get() < numberOfACKs / 2);
+
+      server.start();
+
+      sf = createSessionFactory(locator);
+
+      session = sf.createSession(false, true, true);
+
+      session.start();
+
+      consumer = session.createConsumer(PagingTest.ADDRESS);
+
+      for (int i = numberOfACKs; i < numberOfMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull(message);
+         assertEquals(i, message.getIntProperty("id").intValue());
+         message.acknowledge();
+      }
+
+      assertNull(consumer.receiveImmediate());
+
+      session.close();
+   }
+
    public void testPreparedACKAndRestart() throws Exception
    {
       clearData();
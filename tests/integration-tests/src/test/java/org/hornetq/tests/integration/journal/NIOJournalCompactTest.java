@@ -1238,6 +1238,196 @@ public class NIOJournalCompactTest extends JournalImplTestBase
 
    }
 
+   public void testCompactMaxRate() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+
+      createJournal();
+      startJournal();
+      load();
+
+      for (int i = 0; i < 200; i++)
+      {
+         add(i);
+         if (i > 0 && i % 20 == 0)
+         {
+            journal.forceMoveNextFile();
+         }
+      }
+
+      for (int i = 0; i < 200; i += 2)
+      {
+         delete(i);
+      }
+
+      journal.forceMoveNextFile();
+
+      // the compactor should take about a second to read the data files
+      ((JournalImpl)journal).setCompactMaxRate(journal.getDataFilesCount() * (long)fileSize);
+
+      final CountDownLatch compactDone = new CountDownLatch(1);
+
+      Thread compactThread = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            try
+            {
+               journal.testCompact();
+            }
+            catch (Throwable e)
+            {
+               e.printStackTrace();
+            }
+            finally
+            {
+               compactDone.countDown();
+            }
+         }
+      };
+
+      long start = System.currentTimeMillis();
+
+      compactThread.start();
+
+      // the journal keeps taking records while it's being compacted
+      int appended = 0;
+      while (!compactDone.await(10, TimeUnit.MILLISECONDS))
+      {
+         add(1000 + appended++);
+      }
+
+      compactThread.join();
+
+      Assert.assertTrue(System.currentTimeMillis() - start >= 900);
+      Assert.assertTrue(appended > 0);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testCompactOldestFilesOnly() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+
+      createJournal();
+      startJournal();
+      load();
+
+      for (int i = 0; i < 200; i++)
+      {
+         add(i);
+         if (i > 0 && i % 20 == 0)
+         {
+            journal.forceMoveNextFile();
+         }
+      }
+
+      // the records on the oldest files are updated on the newer ones
+      update(1, 3, 5);
+
+      for (int i = 0; i < 200; i += 2)
+      {
+         delete(i);
+      }
+
+      journal.forceMoveNextFile();
+
+      ((JournalImpl)journal).setCompactFilesPerPass(3);
+
+      JournalFile[] before = ((JournalImpl)journal).getDataFiles();
+
+      journal.testCompact();
+
+      JournalFile[] after = ((JournalImpl)journal).getDataFiles();
+
+      // the 3 oldest files fit on a single one, the other ones are left as they were and the
+      // current file was added after them when compacting started
+      Assert.assertEquals(before.length - 1, after.length);
+      for (int i = 3; i < before.length; i++)
+      {
+         Assert.assertSame(before[i], after[i - 2]);
+      }
+
+      // the records moved keep their updates on the files that weren't compacted
+      update(5);
+      delete(1, 3);
+
+      checkAndReclaimFiles();
+
+      journal.testCompact();
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   public void testCompactOldestFilesWithTransactions() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+
+      createJournal();
+      startJournal();
+      load();
+
+      // committed on the fourth file
+      addTx(1000, 1000, 1001);
+
+      for (int i = 0; i < 200; i++)
+      {
+         add(i);
+         if (i > 0 && i % 20 == 0)
+         {
+            journal.forceMoveNextFile();
+         }
+
+         if (i == 70)
+         {
+            commit(1000);
+         }
+
+         if (i == 110)
+         {
+            // still open when compacting
+            addTx(2000, 2000);
+         }
+      }
+
+      for (int i = 0; i < 200; i += 2)
+      {
+         delete(i);
+      }
+
+      journal.forceMoveNextFile();
+
+      ((JournalImpl)journal).setCompactFilesPerPass(1);
+
+      JournalFile[] before = ((JournalImpl)journal).getDataFiles();
+
+      journal.testCompact();
+
+      JournalFile[] after = ((JournalImpl)journal).getDataFiles();
+
+      // the oldest file is only compacted together with the file holding the commit
+      Assert.assertEquals(before.length - 2, after.length);
+      for (int i = 4; i < before.length; i++)
+      {
+         Assert.assertSame(before[i], after[i - 3]);
+      }
+
+      commit(2000);
+      delete(1000);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
    public void testLiveSize() throws Exception
    {
       setup(2, 60 * 1024, true);
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.journal.JournalLoadInformation;
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.impl.JournalImpl;
+
+/**
+ * Runs the whole journal test suite with the files being read in parallel on load.
+ */
+public class NIOParallelLoadJournalImplTest extends NIOJournalImplTest
+{
+   @Override
+   public void createJournal() throws Exception
+   {
+      super.createJournal();
+      ((JournalImpl)journal).setLoadThreads(4);
+   }
+
+   public void testFileLoadInformation() throws Exception
+   {
+      setup(10, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      for (long i = 0; i < 100; i++)
+      {
+         add(i);
+      }
+
+      for (long i = 0; i < 50; i++)
+      {
+         update(i);
+      }
+
+      addTx(1000, 200, 201, 202, 203, 204, 205, 206, 207, 208, 209, 210);
+      commit(1000);
+
+      for (long i = 90; i < 100; i++)
+      {
+         delete(i);
+      }
+
+      stopJournal(false);
+
+      int numberOfFiles = fileFactory.listFiles(fileExtension).size();
+
+      Assert.assertTrue("the test needs records spread over several files", numberOfFiles > 4);
+
+      createJournal();
+      startJournal();
+
+      List<RecordInfo> committedRecords = new ArrayList<RecordInfo>();
+      List<PreparedTransactionInfo> preparedTransactions = new ArrayList<PreparedTransactionInfo>();
+
+      JournalLoadInformation info = journal.load(committedRecords, preparedTransactions, null);
+
+      checkRecordsEquivalent(records, committedRecords);
+      Assert.assertEquals(0, preparedTransactions.size());
+
+      Assert.assertEquals(numberOfFiles, info.getFileLoadInformation().size());
+
+      long lastFileID = -1;
+      int numberOfRecords = 0;
+      for (JournalLoadInformation.FileLoadInformation fileInfo : info.getFileLoadInformation())
+      {
+         Assert.assertTrue(fileInfo.getFileID() > lastFileID);
+         lastFileID = fileInfo.getFileID();
+         Assert.assertEquals(10 * 1024, fileInfo.getFileSize());
+         Assert.assertTrue(fileInfo.getReadTime() >= 0);
+         Assert.assertTrue(fileInfo.getLoadTime() >= 0);
+         numberOfRecords += fileInfo.getNumberOfRecords();
+      }
+
+      // adds + updates + transactional adds + commit + deletes
+      Assert.assertEquals(100 + 50 + 11 + 1 + 10, numberOfRecords);
+
+      stopJournal();
+   }
+}
@@ -39,6 +39,7 @@ import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.tests.util.RandomUtil;
 import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.json.JSONObject;
 
 /**
  * A QueueControlTest
@@ -296,6 +297,72 @@ public class AddressControlTest extends ManagementTestBase
          Assert.assertEquals(1024, addressControl.getNumberOfBytesPerPage());
    }
 
+   public void testPagingStatistics() throws Exception
+   {
+      session.close();
+      server.stop();
+      server.getConfiguration().setPersistenceEnabled(true);
+
+      SimpleString address = RandomUtil.randomSimpleString();
+
+      AddressSettings addressSettings = new AddressSettings();
+      addressSettings.setPageSizeBytes(1024);
+      addressSettings.setMaxSizeBytes(10 * 1024);
+
+      server.getAddressSettingsRepository().addMatch(address.toString(), addressSettings);
+      server.start();
+
+      session = createSessionFactory(createInVMNonHALocator()).createSession(false, true, false);
+      session.createQueue(address, address, true);
+
+      int numberOfMessages = 100;
+
+      ClientProducer producer = session.createProducer(address);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage msg = session.createMessage(true);
+         msg.getBodyBuffer().writeBytes(new byte[512]);
+         producer.send(msg);
+      }
+      session.commit();
+      session.close();
+
+      // the pages are read from their files after a restart
+      server.stop();
+      server.start();
+
+      AddressControl addressControl = createManagementControl(address);
+      Assert.assertTrue(addressControl.isPaging());
+      Assert.assertEquals(0, addressControl.getPageCleanupCount());
+
+      session = createSessionFactory(createInVMNonHALocator()).createSession(false, true, false);
+      session.start();
+
+      ManagementTestBase.consumeMessages(numberOfMessages, session, address);
+
+      long timeout = System.currentTimeMillis() + 5000;
+      while (addressControl.getPageCleanupCount() == 0 && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      Assert.assertTrue(addressControl.getPageCleanupCount() > 0);
+      Assert.assertTrue(addressControl.getPageCleanupTime() >= 0);
+
+      Assert.assertTrue(addressControl.getDepagedMessages() > 0);
+      Assert.assertTrue(addressControl.getDepageTime() >= 0);
+      Assert.assertTrue(addressControl.getDepageRate() >= 0);
+
+      double hitRatio = addressControl.getPageCacheHitRatio();
+      Assert.assertTrue(hitRatio >= 0 && hitRatio <= 1);
+      Assert.assertTrue(addressControl.getPageCacheEvictions() >= 0);
+
+      JSONObject readLatency = new JSONObject(addressControl.getPageReadLatencyAsJSON());
+      Assert.assertTrue(readLatency.getLong("count") > 0);
+      Assert.assertTrue(readLatency.getJSONArray("buckets").length() > 0);
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
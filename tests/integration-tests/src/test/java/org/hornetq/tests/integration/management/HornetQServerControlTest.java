@@ -44,6 +44,7 @@ import org.hornetq.core.remoting.impl.invm.InVMAcceptorFactory;
 import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.HornetQServers;
+import org.hornetq.core.server.JournalType;
 import org.hornetq.core.transaction.impl.XidImpl;
 import org.hornetq.tests.util.RandomUtil;
 import org.hornetq.tests.util.UnitTestCase;
@@ -132,6 +133,9 @@ public class HornetQServerControlTest extends ManagementTestBase
          Assert.assertEquals(conf.getJournalBufferSize_AIO(), serverControl.getJournalBufferSize());
          Assert.assertEquals(conf.getJournalBufferTimeout_AIO(), serverControl.getJournalBufferTimeout());
       }
+      Assert.assertEquals(conf.isJournalBufferAdaptiveTimeout(), serverControl.isJournalBufferAdaptiveTimeout());
+      // the buffer doesn't go below its timeout unless the timeout is adaptive
+      Assert.assertEquals(serverControl.getJournalBufferTimeout(), serverControl.getJournalBufferMinTimeout());
       Assert.assertEquals(conf.isCreateBindingsDir(), serverControl.isCreateBindingsDir());
       Assert.assertEquals(conf.isCreateJournalDir(), serverControl.isCreateJournalDir());
       Assert.assertEquals(conf.getPagingDirectory(), serverControl.getPagingDirectory());
@@ -148,6 +152,53 @@ public class HornetQServerControlTest extends ManagementTestBase
       Assert.assertEquals(conf.isFailoverOnServerShutdown(), serverControl.isFailoverOnServerShutdown());
    }
 
+   public void testJournalBufferStatistics() throws Exception
+   {
+      HornetQServerControl serverControl = createManagementControl();
+
+      Assert.assertEquals(serverControl.getJournalBufferTimeout(), serverControl.getJournalBufferCurrentTimeout());
+
+      long flushCount = serverControl.getJournalBufferFlushCount();
+      long bytesFlushed = serverControl.getJournalBufferBytesFlushed();
+
+      ServerLocator locator = HornetQClient.createServerLocatorWithoutHA(new TransportConfiguration(UnitTestCase.INVM_CONNECTOR_FACTORY));
+      ClientSessionFactory csf = createSessionFactory(locator);
+      ClientSession session = csf.createSession();
+
+      SimpleString queue = RandomUtil.randomSimpleString();
+      session.createQueue(queue, queue, true);
+
+      ClientProducer producer = session.createProducer(queue);
+      for (int i = 0; i < 10; i++)
+      {
+         producer.send(session.createMessage(true));
+      }
+
+      session.close();
+      locator.close();
+
+      Assert.assertTrue(serverControl.getJournalBufferFlushCount() > flushCount);
+      Assert.assertTrue(serverControl.getJournalBufferBytesFlushed() > bytesFlushed);
+      Assert.assertTrue(serverControl.getJournalBufferAverageSyncLatency() > 0);
+   }
+
+   public void testJournalBufferMinTimeoutInEffect() throws Exception
+   {
+      int timeout = conf.getJournalType() == JournalType.ASYNCIO ? conf.getJournalBufferTimeout_AIO()
+                                                                 : conf.getJournalBufferTimeout_NIO();
+
+      conf.setJournalBufferAdaptiveTimeout(true);
+      conf.setJournalBufferMinTimeout(timeout * 2);
+
+      restartServer();
+
+      HornetQServerControl serverControl = createManagementControl();
+
+      // a minimum above the buffer timeout is capped by it
+      Assert.assertEquals(timeout, serverControl.getJournalBufferMinTimeout());
+      Assert.assertEquals(timeout, serverControl.getJournalBufferCurrentTimeout());
+   }
+
    public void testGetConnectors() throws Exception
    {
       HornetQServerControl serverControl = createManagementControl();
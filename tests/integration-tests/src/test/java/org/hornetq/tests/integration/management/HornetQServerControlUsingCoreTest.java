@@ -465,6 +465,36 @@ public class HornetQServerControlUsingCoreTest extends HornetQServerControlTest
             return (Integer)proxy.retrieveAttributeValue("JournalBufferTimeout");
          }
 
+         public boolean isJournalBufferAdaptiveTimeout()
+         {
+            return (Boolean)proxy.retrieveAttributeValue("journalBufferAdaptiveTimeout");
+         }
+
+         public int getJournalBufferMinTimeout()
+         {
+            return (Integer)proxy.retrieveAttributeValue("JournalBufferMinTimeout");
+         }
+
+         public int getJournalBufferCurrentTimeout()
+         {
+            return (Integer)proxy.retrieveAttributeValue("JournalBufferCurrentTimeout");
+         }
+
+         public long getJournalBufferFlushCount()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalBufferFlushCount", Long.class);
+         }
+
+         public long getJournalBufferBytesFlushed()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalBufferBytesFlushed", Long.class);
+         }
+
+         public long getJournalBufferAverageSyncLatency()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalBufferAverageSyncLatency", Long.class);
+         }
+
          public int getJournalCompactMinFiles()
          {
             return (Integer)proxy.retrieveAttributeValue("JournalCompactMinFiles");
@@ -242,6 +242,54 @@ public class QueueControlTest extends ManagementTestBase
       session.deleteQueue(queue);
    }
 
+   public void testGetPageLag() throws Exception
+   {
+      // messages are only paged when persistence is enabled
+      session.close();
+      server.stop();
+      server.getConfiguration().setPersistenceEnabled(true);
+
+      SimpleString address = RandomUtil.randomSimpleString();
+      SimpleString queue = RandomUtil.randomSimpleString();
+
+      AddressSettings addressSettings = new AddressSettings();
+      addressSettings.setPageSizeBytes(1024);
+      addressSettings.setMaxSizeBytes(10 * 1024);
+      server.getAddressSettingsRepository().addMatch(address.toString(), addressSettings);
+
+      server.start();
+
+      session = createSessionFactory(locator).createSession(false, true, false);
+      session.start();
+
+      session.createQueue(address, queue, null, false);
+
+      QueueControl queueControl = createManagementControl(address, queue);
+      Assert.assertEquals(0, queueControl.getPagedMessageCount());
+      Assert.assertEquals(0, queueControl.getPageLag());
+
+      int numberOfMessages = 100;
+
+      ClientProducer producer = session.createProducer(address);
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(false);
+         message.getBodyBuffer().writeBytes(new byte[512]);
+         producer.send(message);
+      }
+
+      Assert.assertTrue(queueControl.getPagedMessageCount() > 0);
+      Assert.assertTrue(queueControl.getPagedMessageCount() < numberOfMessages);
+      Assert.assertTrue(queueControl.getPageLag() > 0);
+
+      ManagementTestBase.consumeMessages(numberOfMessages, session, queue);
+
+      Assert.assertEquals(0, queueControl.getPagedMessageCount());
+      Assert.assertEquals(0, queueControl.getPageLag());
+
+      session.deleteQueue(queue);
+   }
+
    public void testGetMessagesAdded() throws Exception
    {
       SimpleString address = RandomUtil.randomSimpleString();
@@ -37,6 +37,13 @@ public class QueueControlUsingCoreTest extends QueueControlTest
    @Override
    protected QueueControl createManagementControl(final SimpleString address, final SimpleString queue) throws Exception
    {
+      if (session.isClosed())
+      {
+         // the server was restarted by the test
+         session = createSessionFactory(locator).createSession(false, true, true);
+         session.start();
+      }
+
       return new QueueControl()
       {
          private final CoreMessagingProxy proxy = new CoreMessagingProxy(session, ResourceNames.CORE_QUEUE + queue);
@@ -101,6 +108,16 @@ public class QueueControlUsingCoreTest extends QueueControlTest
             return ((Number)proxy.retrieveAttributeValue("messageCount")).longValue();
          }
 
+         public long getPagedMessageCount()
+         {
+            return ((Number)proxy.retrieveAttributeValue("pagedMessageCount")).longValue();
+         }
+
+         public long getPageLag()
+         {
+            return ((Number)proxy.retrieveAttributeValue("pageLag")).longValue();
+         }
+
          public long getMessagesAdded()
          {
             return (Integer)proxy.retrieveAttributeValue("messagesAdded");
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.config.Configuration;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.server.impl.PartitionedQueue;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.tests.util.ServiceTestBase;
+
+/**
+ * A PartitionedQueueTest
+ */
+public class PartitionedQueueTest extends ServiceTestBase
+{
+   private final SimpleString address = new SimpleString("PartitionedTestAddress");
+
+   private final SimpleString queueName = new SimpleString("PartitionedTestQueue");
+
+   private HornetQServer server;
+
+   private Configuration configuration;
+
+   private ServerLocator locator;
+
+   private ClientSessionFactory sf;
+
+   public void testGroupsStayOnOneConsumer() throws Exception
+   {
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(address, queueName, null, true);
+
+      Queue queue = server.locateQueue(queueName);
+
+      Assert.assertTrue(queue instanceof PartitionedQueue);
+      Assert.assertEquals(4, ((PartitionedQueue)queue).getNumberOfPartitions());
+
+      ClientConsumer[] consumers = new ClientConsumer[4];
+
+      for (int i = 0; i < consumers.length; i++)
+      {
+         consumers[i] = session.createConsumer(queueName);
+      }
+
+      ClientProducer producer = session.createProducer(address);
+
+      final int numMessages = 400;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = createTextMessage(session, "m" + i);
+         if (i % 2 == 0)
+         {
+            message.putStringProperty(Message.HDR_GROUP_ID, new SimpleString("group" + i % 10));
+         }
+         producer.send(message);
+      }
+
+      session.start();
+
+      Map<String, Integer> groups = new HashMap<String, Integer>();
+
+      int received = 0;
+
+      for (int i = 0; i < consumers.length; i++)
+      {
+         int count = 0;
+
+         ClientMessage message;
+
+         while ((message = consumers[i].receive(500)) != null)
+         {
+            message.acknowledge();
+
+            count++;
+
+            String group = message.getStringProperty(Message.HDR_GROUP_ID);
+
+            if (group != null)
+            {
+               Integer previous = groups.put(group, i);
+               Assert.assertTrue(previous == null || previous == i);
+            }
+         }
+
+         // every consumer owns a partition, and ungrouped messages are spread over all of them
+         Assert.assertTrue(count > 0);
+
+         received += count;
+      }
+
+      Assert.assertEquals(numMessages, received);
+      Assert.assertEquals(5, groups.size());
+
+      Assert.assertEquals(0, queue.getMessageCount());
+      Assert.assertEquals(numMessages, queue.getMessagesAdded());
+
+      session.close();
+   }
+
+   public void testRestart() throws Exception
+   {
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(address, queueName, null, true);
+
+      ClientProducer producer = session.createProducer(address);
+
+      final int numMessages = 100;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = createTextMessage(session, "m" + i);
+         message.setDurable(true);
+         producer.send(message);
+      }
+
+      session.close();
+
+      restartServer();
+
+      Queue queue = server.locateQueue(queueName);
+
+      Assert.assertTrue(queue instanceof PartitionedQueue);
+      Assert.assertEquals(numMessages, queue.getMessageCount());
+
+      session = sf.createSession(false, true, true);
+
+      ClientConsumer consumer = session.createConsumer(queueName);
+
+      session.start();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         message.acknowledge();
+      }
+
+      Assert.assertNull(consumer.receiveImmediate());
+
+      session.close();
+
+      restartServer();
+
+      Assert.assertEquals(0, server.locateQueue(queueName).getMessageCount());
+   }
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+
+      clearData();
+
+      configuration = createDefaultConfig();
+      configuration.setSecurityEnabled(false);
+
+      startServer();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      if (locator != null)
+      {
+         locator.close();
+      }
+
+      if (server != null && server.isStarted())
+      {
+         server.stop();
+      }
+
+      locator = null;
+      server = null;
+
+      super.tearDown();
+   }
+
+   private void startServer() throws Exception
+   {
+      server = createServer(true, configuration);
+
+      AddressSettings settings = new AddressSettings();
+      settings.setQueuePartitions(4);
+      server.getAddressSettingsRepository().addMatch(address.toString(), settings);
+
+      server.start();
+
+      locator = createInVMNonHALocator();
+      locator.setBlockOnAcknowledge(true);
+      locator.setBlockOnDurableSend(true);
+      locator.setAckBatchSize(0);
+      sf = createSessionFactory(locator);
+   }
+
+   private void restartServer() throws Exception
+   {
+      locator.close();
+
+      server.stop();
+
+      startServer();
+   }
+}
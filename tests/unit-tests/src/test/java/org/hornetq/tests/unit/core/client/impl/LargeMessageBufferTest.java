@@ -41,6 +41,7 @@ import org.hornetq.core.client.impl.LargeMessageControllerImpl;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionQueueQueryResponseMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveLargeMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessageBatch;
 import org.hornetq.tests.util.RandomUtil;
 import org.hornetq.tests.util.UnitTestCase;
 import org.hornetq.utils.HornetQBufferInputStream;
@@ -880,6 +881,10 @@ public class LargeMessageBufferTest extends UnitTestCase
 
       }
 
+      public void handleMessageBatch(final SessionReceiveMessageBatch batch) throws Exception
+      {
+      }
+
       public boolean isBrowseOnly()
       {
          
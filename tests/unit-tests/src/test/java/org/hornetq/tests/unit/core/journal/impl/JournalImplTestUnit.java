@@ -14,16 +14,23 @@
 package org.hornetq.tests.unit.core.journal.impl;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
 
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.HornetQIOErrorException;
 import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.core.journal.PreparedTransactionInfo;
 import org.hornetq.core.journal.RecordInfo;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.tests.unit.UnitTestLogger;
 import org.hornetq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
 import org.hornetq.tests.util.RandomUtil;
@@ -637,7 +644,285 @@ public abstract class JournalImplTestUnit extends JournalImplTestBase
       stopJournal();
    }
 
+   public void testPreCreateFiles() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      ((JournalImpl)journal).setMaxPreCreatedFiles(3);
+      startJournal();
+      load();
+
+      Assert.assertEquals(0, journal.getFreeFilesCount());
+
+      // the journal moves through the files faster than one per second, so all the pre-created files are used
+      for (int i = 0; i < 200; i++)
+      {
+         add(i);
+      }
+
+      long timeout = System.currentTimeMillis() + 5000;
+      while (journal.getFreeFilesCount() < 3 && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      Assert.assertEquals(3, journal.getFreeFilesCount());
+
+      int numberOfFiles = calculateNumberOfFiles(10 * 1024,
+                                                 journal.getAlignment(),
+                                                 200,
+                                                 JournalImpl.SIZE_ADD_RECORD + recordLength);
+
+      Assert.assertEquals(numberOfFiles, journal.getDataFilesCount());
+
+      // the current file, the one opened ahead and the pre-created ones
+      Assert.assertEquals(numberOfFiles + 2 + 3, fileFactory.listFiles(fileExtension).size());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+      stopJournal();
+   }
+
+   public void testRecordChecksum() throws Exception
+   {
+      setup(10, 10 * 1024, true);
+      createJournal();
+      ((JournalImpl)journal).setRecordChecksum(true);
+      startJournal();
+      load();
+
+      add(1, 2, 3, 4, 5);
+      update(1, 2);
+      delete(3);
+      addTx(10, 6, 7);
+      updateTx(10, 1);
+      deleteTx(10, 4);
+      commit(10);
+      addTx(11, 8, 9);
+      prepare(11, new SimpleEncoding(10, (byte)0));
+      addTx(12, 20);
+      rollback(12);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      // records with and without checksums share the same files
+      add(30, 31);
+      update(30);
+
+      stopJournal();
+      createJournal();
+      ((JournalImpl)journal).setRecordChecksum(true);
+      startJournal();
+      loadAndCheck();
+
+      journal.testCompact();
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+      stopJournal();
+   }
+
+   public void testChecksumFormatVersionOnlyWhenEnabled() throws Exception
+   {
+      setup(10, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      add(1, 2);
+
+      Assert.assertEquals(JournalImpl.FORMAT_VERSION, journal.getCurrentFile().getJournalVersion());
+
+      stopJournal();
+      createJournal();
+      ((JournalImpl)journal).setRecordChecksum(true);
+      startJournal();
+      loadAndCheck();
+
+      // the file written without checksums isn't appended to anymore
+      Assert.assertEquals(JournalImpl.CHECKSUM_FORMAT_VERSION, journal.getCurrentFile().getJournalVersion());
+
+      add(3, 4);
+      update(1);
+
+      try
+      {
+         ((JournalImpl)journal).setRecordChecksum(false);
+         Assert.fail("the checksum can't be changed on a loaded journal");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+      stopJournal();
+   }
+
+   public void testCorruptedRecordIgnored() throws Exception
+   {
+      setup(10, 10 * 1024, true);
+      createJournal();
+      ((JournalImpl)journal).setRecordChecksum(true);
+      startJournal();
+      load();
+
+      add(1, 2, 3);
+
+      stopJournal();
+
+      fileFactory.start();
+
+      boolean corrupted = false;
+
+      for (String fileName : fileFactory.listFiles(fileExtension))
+      {
+         SequentialFile file = fileFactory.createSequentialFile(fileName, 1);
+
+         file.open();
+
+         ByteBuffer buffer = fileFactory.newBuffer((int)file.size());
+
+         file.read(buffer);
+
+         for (int i = JournalImpl.SIZE_HEADER; i + JournalImpl.SIZE_ADD_RECORD < buffer.limit() && !corrupted; i++)
+         {
+            // type, fileID, compact count (with the checksum flag) and the record ID
+            if (buffer.get(i) == JournalImpl.ADD_RECORD &&
+                buffer.get(i + 5) == JournalInternalRecord.CHECKSUM_FLAG &&
+                buffer.getLong(i + 6) == 2)
+            {
+               // the data of the record, the size checks can't see this one
+               int dataPos = i + 19 + recordLength / 2;
+
+               buffer.put(dataPos, (byte)~buffer.get(dataPos));
+
+               buffer.rewind();
+
+               file.position(0);
+
+               file.writeDirect(buffer, true);
+
+               corrupted = true;
+            }
+         }
+
+         file.close();
+      }
+
+      fileFactory.stop();
+
+      Assert.assertTrue(corrupted);
+
+      removeRecordsForID(2);
+
+      createJournal();
+      startJournal();
+      loadAndCheck();
+      stopJournal();
+   }
    // Validate the methods that are used on assertions
+   public void testConcurrentAppends() throws Exception
+   {
+      // small files, so the producers keep filling the ends of the files and moving to the next ones
+      setup(2, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      final int threads = 10;
+      final int recordsPerThread = 200;
+
+      final CountDownLatch start = new CountDownLatch(1);
+      final AtomicInteger errors = new AtomicInteger(0);
+
+      Thread[] producers = new Thread[threads];
+      for (int i = 0; i < threads; i++)
+      {
+         final int producerID = i;
+         producers[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+                  for (int j = 0; j < recordsPerThread; j++)
+                  {
+                     long id = producerID * recordsPerThread + j;
+
+                     // records of many sizes, so they end at every position of the files
+                     byte[] record = generateRecord(10 + (int)(id * 37 % 300));
+
+                     journal.appendAddRecord(id, (byte)0, record, j % 10 == 0);
+
+                     if (j % 3 == 0)
+                     {
+                        journal.appendDeleteRecord(id, false);
+                     }
+                     else
+                     {
+                        synchronized (records)
+                        {
+                           records.add(new RecordInfo(id, (byte)0, record, false, (short)0));
+                        }
+                     }
+                  }
+               }
+               catch (Throwable e)
+               {
+                  e.printStackTrace();
+                  errors.incrementAndGet();
+               }
+            }
+         };
+         producers[i].start();
+      }
+
+      start.countDown();
+
+      for (Thread producer : producers)
+      {
+         producer.join();
+      }
+
+      Assert.assertEquals(0, errors.get());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+
+      List<RecordInfo> committedRecords = new ArrayList<RecordInfo>();
+
+      journal.load(committedRecords, new ArrayList<PreparedTransactionInfo>(), null);
+
+      // the records of different producers are in no particular order on the files
+      Comparator<RecordInfo> byID = new Comparator<RecordInfo>()
+      {
+         public int compare(final RecordInfo r1, final RecordInfo r2)
+         {
+            return r1.id < r2.id ? -1 : r1.id == r2.id ? 0 : 1;
+         }
+      };
+
+      Collections.sort(records, byID);
+      Collections.sort(committedRecords, byID);
+
+      checkRecordsEquivalent(records, committedRecords);
+
+      stopJournal();
+   }
+
    public void testCalculations() throws Exception
    {
 
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.journal.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.core.journal.impl.dataformat.JournalRecordChecksum;
+import org.hornetq.tests.util.RandomUtil;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A JournalRecordChecksumTest
+ */
+public class JournalRecordChecksumTest extends UnitTestCase
+{
+   public void testKnownValue() throws Exception
+   {
+      ByteBuffer buffer = ByteBuffer.wrap("123456789".getBytes("US-ASCII"));
+
+      Assert.assertEquals(0xE3069283, JournalRecordChecksum.crc32c(buffer, 0, 9));
+      Assert.assertEquals(0xE3069283, JournalRecordChecksum.tableCrc32c(buffer, 0, 9));
+   }
+
+   public void testTableMatchesDefault() throws Exception
+   {
+      byte[] bytes = RandomUtil.randomBytes(1000);
+
+      ByteBuffer[] buffers = new ByteBuffer[] { ByteBuffer.wrap(bytes),
+                                                ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN),
+                                                ByteBuffer.allocateDirect(bytes.length),
+                                                ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.LITTLE_ENDIAN) };
+
+      for (ByteBuffer buffer : buffers)
+      {
+         buffer.put(bytes);
+         buffer.position(3);
+
+         for (int position = 0; position < 9; position++)
+         {
+            for (int length = 0; length < 100; length += 7)
+            {
+               Assert.assertEquals(JournalRecordChecksum.crc32c(buffer, position, length),
+                                   JournalRecordChecksum.tableCrc32c(buffer, position, length));
+            }
+         }
+
+         Assert.assertEquals(3, buffer.position());
+         Assert.assertEquals(bytes.length, buffer.limit());
+      }
+   }
+
+   public void testHornetQBuffer() throws Exception
+   {
+      byte[] bytes = RandomUtil.randomBytes(100);
+
+      HornetQBuffer buffer = HornetQBuffers.fixedBuffer(110);
+
+      buffer.writeBytes(new byte[10]);
+      buffer.writeBytes(bytes);
+
+      Assert.assertEquals(JournalRecordChecksum.crc32c(ByteBuffer.wrap(bytes), 0, bytes.length),
+                          JournalRecordChecksum.crc32c(buffer, 10, bytes.length));
+      Assert.assertEquals(0, buffer.readerIndex());
+      Assert.assertEquals(110, buffer.writerIndex());
+   }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.journal.impl;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.journal.impl.JournalFile;
+import org.hornetq.core.journal.impl.JournalFileImpl;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.JournalRecordIndex;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A JournalRecordIndexTest
+ */
+public class JournalRecordIndexTest extends UnitTestCase
+{
+   private final JournalFile file1 = new JournalFileImpl(null, 1, JournalImpl.FORMAT_VERSION);
+
+   private final JournalFile file2 = new JournalFileImpl(null, 2, JournalImpl.FORMAT_VERSION);
+
+   private final JournalFile file3 = new JournalFileImpl(null, 3, JournalImpl.FORMAT_VERSION);
+
+   public void testAddUpdateDelete() throws Exception
+   {
+      JournalRecordIndex index = new JournalRecordIndex();
+
+      index.add(1, file1, 100);
+      index.add(2, file1, 50);
+
+      Assert.assertEquals(2, index.size());
+      Assert.assertEquals(2, file1.getPosCount());
+      Assert.assertEquals(150, file1.getLiveSize());
+
+      Assert.assertTrue(index.addUpdate(1, file2, 10));
+      Assert.assertTrue(index.addUpdate(1, file2, 10));
+      Assert.assertFalse(index.addUpdate(3, file2, 10));
+
+      Assert.assertEquals(2, file2.getPosCount());
+      Assert.assertEquals(20, file2.getLiveSize());
+
+      Assert.assertTrue(index.delete(1, file3));
+      Assert.assertFalse(index.delete(1, file3));
+      Assert.assertFalse(index.contains(1));
+      Assert.assertTrue(index.contains(2));
+
+      Assert.assertEquals(1, file3.getNegCount(file1));
+      Assert.assertEquals(2, file3.getNegCount(file2));
+      Assert.assertEquals(50, file1.getLiveSize());
+      Assert.assertEquals(0, file2.getLiveSize());
+
+      Assert.assertEquals(1, index.size());
+   }
+
+   public void testManyRecords() throws Exception
+   {
+      JournalRecordIndex index = new JournalRecordIndex();
+
+      Random random = new Random(1);
+
+      Set<Long> expected = new HashSet<Long>();
+
+      for (int i = 0; i < 100000; i++)
+      {
+         long id = random.nextInt(20000) - 1000;
+
+         if (expected.contains(id))
+         {
+            Assert.assertTrue(index.delete(id, file2));
+            expected.remove(id);
+         }
+         else
+         {
+            index.add(id, file1, 1);
+            expected.add(id);
+         }
+      }
+
+      Assert.assertEquals(expected.size(), index.size());
+
+      for (long id = -1000; id < 19000; id++)
+      {
+         Assert.assertEquals(expected.contains(id), index.contains(id));
+      }
+
+      long[] ids = index.getIDs();
+      Assert.assertEquals(expected.size(), ids.length);
+      for (long id : ids)
+      {
+         Assert.assertTrue(expected.contains(id));
+      }
+
+      Assert.assertEquals(expected.size(), file1.getLiveSize());
+   }
+
+   public void testPutAll() throws Exception
+   {
+      JournalRecordIndex index = new JournalRecordIndex();
+      JournalRecordIndex newRecords = new JournalRecordIndex();
+
+      index.add(1, file1, 10);
+      newRecords.add(2, file2, 10);
+      newRecords.addUpdate(2, file2, 5);
+
+      index.putAll(newRecords);
+
+      long[] ids = index.getIDs();
+      Arrays.sort(ids);
+      Assert.assertTrue(Arrays.equals(new long[] { 1, 2 }, ids));
+
+      // counts are not taken twice
+      Assert.assertEquals(2, file2.getPosCount());
+
+      Assert.assertTrue(index.delete(2, file3));
+      Assert.assertEquals(2, file3.getNegCount(file2));
+      Assert.assertEquals(0, file2.getLiveSize());
+   }
+
+   public void testReplaceCompacted() throws Exception
+   {
+      JournalFile compactedFile = new JournalFileImpl(null, 1, JournalImpl.FORMAT_VERSION);
+
+      JournalRecordIndex index = new JournalRecordIndex();
+      JournalRecordIndex compacted = new JournalRecordIndex();
+
+      // record 1 is added and updated on the file being compacted, and updated again on file2
+      index.add(1, file1, 10);
+      index.addUpdate(1, file1, 5);
+      index.addUpdate(1, file2, 5);
+      index.add(2, file2, 10);
+
+      compacted.add(1, compactedFile, 10);
+      compacted.addUpdate(1, compactedFile, 5);
+
+      index.replaceCompacted(compacted, new HashSet<JournalFile>(Arrays.asList(file1)));
+
+      Assert.assertEquals(2, index.size());
+
+      Assert.assertTrue(index.delete(1, file3));
+      Assert.assertEquals(2, file3.getNegCount(compactedFile));
+      Assert.assertEquals(1, file3.getNegCount(file2));
+      Assert.assertEquals(0, file3.getNegCount(file1));
+      Assert.assertEquals(0, compactedFile.getLiveSize());
+      Assert.assertEquals(10, file2.getLiveSize());
+   }
+}
@@ -966,6 +966,15 @@ public class ReclaimerTest extends UnitTestCase
          return totalDep;
       }
 
+      public void completeTransaction(final JournalFile completionFile)
+      {
+      }
+
+      public long getLastCompletionFileID()
+      {
+         return -1;
+      }
+
       /* (non-Javadoc)
        * @see org.hornetq.core.journal.impl.JournalFile#getJournalVersion()
        */
@@ -0,0 +1,374 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.hornetq.core.journal.IOCompletion;
+import org.hornetq.core.journal.Journal;
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.StripedJournal;
+import org.hornetq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A StripedJournalTest
+ */
+public class StripedJournalTest extends UnitTestCase
+{
+   private static final byte RECORD_TYPE = 1;
+
+   private final List<FakeSequentialFileFactory> factories = new ArrayList<FakeSequentialFileFactory>();
+
+   private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+   private JournalImpl[] stripes;
+
+   private StripedJournal journal;
+
+   private final List<RecordInfo> records = new ArrayList<RecordInfo>();
+
+   private final List<PreparedTransactionInfo> prepared = new ArrayList<PreparedTransactionInfo>();
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      if (journal != null && journal.isStarted())
+      {
+         journal.stop();
+      }
+
+      executor.shutdown();
+
+      super.tearDown();
+   }
+
+   public void testRecordsSpreadOverStripes() throws Exception
+   {
+      createJournal(3);
+
+      for (long id = 0; id < 30; id++)
+      {
+         journal.appendAddRecord(id, RECORD_TYPE, new byte[] { (byte)id }, false);
+      }
+
+      for (long id = 0; id < 30; id += 2)
+      {
+         journal.appendUpdateRecord(id, RECORD_TYPE, new byte[] { (byte)(id + 1) }, false);
+      }
+
+      for (long id = 0; id < 30; id += 5)
+      {
+         journal.appendDeleteRecord(id, false);
+      }
+
+      for (JournalImpl stripe : stripes)
+      {
+         Assert.assertTrue(stripe.getNumberOfRecords() > 0);
+      }
+
+      Assert.assertEquals(24, journal.getNumberOfRecords());
+
+      reload(3);
+
+      Assert.assertEquals(24 + 12, records.size());
+
+      long lastID = -1;
+
+      for (RecordInfo record : records)
+      {
+         Assert.assertFalse(record.id % 5 == 0);
+         Assert.assertTrue(record.id >= lastID);
+
+         if (record.id == lastID)
+         {
+            Assert.assertTrue(record.isUpdate);
+            Assert.assertEquals(record.id + 1, record.data[0]);
+         }
+
+         lastID = record.id;
+      }
+   }
+
+   public void testCommitOnSingleStripe() throws Exception
+   {
+      createJournal(3);
+
+      journal.appendAddRecordTransactional(100, 1, RECORD_TYPE, new byte[] { 1 });
+      journal.appendUpdateRecordTransactional(100, 1, RECORD_TYPE, new byte[] { 2 });
+      journal.appendCommitRecord(100, true);
+
+      reload(3);
+
+      Assert.assertEquals(2, records.size());
+      Assert.assertEquals(1, stripes[1].getNumberOfRecords());
+      Assert.assertEquals(0, stripes[0].getNumberOfRecords());
+   }
+
+   public void testCommitOnManyStripes() throws Exception
+   {
+      createJournal(3);
+
+      for (long id = 0; id < 10; id++)
+      {
+         journal.appendAddRecordTransactional(100, id, RECORD_TYPE, new byte[] { (byte)id });
+      }
+
+      journal.appendCommitRecord(100, true);
+
+      journal.appendDeleteRecordTransactional(101, 1);
+      journal.appendDeleteRecordTransactional(101, 2);
+      journal.appendCommitRecord(101, true);
+
+      journal.appendAddRecordTransactional(102, 20, RECORD_TYPE, new byte[] { 20 });
+      journal.appendAddRecordTransactional(102, 21, RECORD_TYPE, new byte[] { 21 });
+      journal.appendRollbackRecord(102, true);
+
+      reload(3);
+
+      Assert.assertEquals(8, records.size());
+      Assert.assertEquals(0, prepared.size());
+
+      // the commit decisions are gone
+      Assert.assertEquals(8, journal.getNumberOfRecords());
+   }
+
+   public void testCommitOnManyStripesDoesntBlock() throws Exception
+   {
+      createJournal(3);
+
+      for (long id = 0; id < 6; id++)
+      {
+         journal.appendAddRecordTransactional(100, id, RECORD_TYPE, new byte[] { (byte)id });
+      }
+
+      for (FakeSequentialFileFactory factory : factories)
+      {
+         factory.setHoldCallbacks(true, null);
+      }
+
+      final CountDownLatch committed = new CountDownLatch(1);
+
+      journal.appendCommitRecord(100, true, new IOCompletion()
+      {
+         public void storeLineUp()
+         {
+         }
+
+         public void done()
+         {
+            committed.countDown();
+         }
+
+         public void onError(final int errorCode, final String errorMessage)
+         {
+         }
+      });
+
+      // nothing was synced yet
+      Assert.assertEquals(1, committed.getCount());
+
+      long timeout = System.currentTimeMillis() + 5000;
+
+      while (!committed.await(10, TimeUnit.MILLISECONDS) && System.currentTimeMillis() < timeout)
+      {
+         for (FakeSequentialFileFactory factory : factories)
+         {
+            factory.flushAllCallbacks();
+         }
+      }
+
+      Assert.assertEquals(0, committed.getCount());
+
+      for (FakeSequentialFileFactory factory : factories)
+      {
+         factory.setHoldCallbacks(false, null);
+      }
+
+      reload(3);
+
+      Assert.assertEquals(6, records.size());
+      Assert.assertEquals(6, journal.getNumberOfRecords());
+   }
+
+   public void testDecidedCommitRecovered() throws Exception
+   {
+      createJournal(3);
+
+      // a crash after the decision was stored, the second stripe never got the commit
+      stripes[0].appendAddRecordTransactional(100, 3, RECORD_TYPE, new byte[] { 3 });
+      stripes[1].appendAddRecordTransactional(100, 4, RECORD_TYPE, new byte[] { 4 });
+      stripes[0].appendPrepareRecord(100, new byte[0], true);
+      stripes[1].appendPrepareRecord(100, new byte[0], true);
+      stripes[0].appendAddRecord(-1 - 100, (byte)0, new byte[0], true);
+      stripes[0].appendCommitRecord(100, true);
+
+      reload(3);
+
+      Assert.assertEquals(2, records.size());
+      Assert.assertEquals(0, prepared.size());
+
+      reload(3);
+
+      Assert.assertEquals(2, records.size());
+      Assert.assertEquals(2, journal.getNumberOfRecords());
+   }
+
+   public void testUndecidedCommitRolledBack() throws Exception
+   {
+      createJournal(3);
+
+      // a crash before the decision was stored
+      stripes[0].appendAddRecordTransactional(100, 3, RECORD_TYPE, new byte[] { 3 });
+      stripes[1].appendAddRecordTransactional(100, 4, RECORD_TYPE, new byte[] { 4 });
+      stripes[2].appendAddRecordTransactional(100, 5, RECORD_TYPE, new byte[] { 5 });
+      stripes[0].appendPrepareRecord(100, new byte[0], true);
+      stripes[1].appendPrepareRecord(100, new byte[0], true);
+
+      reload(3);
+
+      Assert.assertEquals(0, records.size());
+      Assert.assertEquals(0, prepared.size());
+
+      reload(3);
+
+      Assert.assertEquals(0, records.size());
+      Assert.assertEquals(0, prepared.size());
+   }
+
+   public void testPreparedTransactionMerged() throws Exception
+   {
+      createJournal(3);
+
+      byte[] xid = new byte[] { 1, 2, 3 };
+
+      for (long id = 0; id < 6; id++)
+      {
+         journal.appendAddRecordTransactional(100, id, RECORD_TYPE, new byte[] { (byte)id });
+      }
+
+      journal.appendPrepareRecord(100, xid, true);
+
+      reload(3);
+
+      Assert.assertEquals(0, records.size());
+      Assert.assertEquals(1, prepared.size());
+      Assert.assertEquals(100, prepared.get(0).id);
+      assertEqualsByteArrays(xid, prepared.get(0).extraData);
+      Assert.assertEquals(6, prepared.get(0).records.size());
+
+      journal.appendCommitRecord(100, true);
+
+      reload(3);
+
+      Assert.assertEquals(6, records.size());
+      Assert.assertEquals(0, prepared.size());
+   }
+
+   public void testIncompletePrepareRolledBack() throws Exception
+   {
+      createJournal(3);
+
+      // a crash while preparing, the second stripe never got the prepare
+      stripes[0].appendAddRecordTransactional(100, 3, RECORD_TYPE, new byte[] { 3 });
+      stripes[1].appendAddRecordTransactional(100, 4, RECORD_TYPE, new byte[] { 4 });
+      stripes[0].appendPrepareRecord(100, new byte[] { 1 }, true);
+
+      reload(3);
+
+      Assert.assertEquals(0, records.size());
+      Assert.assertEquals(0, prepared.size());
+   }
+
+   public void testStripesAdded() throws Exception
+   {
+      createJournal(2);
+
+      for (long id = 0; id < 12; id++)
+      {
+         journal.appendAddRecord(id, RECORD_TYPE, new byte[] { (byte)id }, false);
+      }
+
+      reload(3);
+
+      Assert.assertEquals(12, records.size());
+
+      // the records stay on the stripe they were written to
+      for (long id = 0; id < 12; id++)
+      {
+         journal.appendUpdateRecord(id, RECORD_TYPE, new byte[] { (byte)id }, false);
+      }
+
+      journal.appendDeleteRecordTransactional(100, 4);
+      journal.appendDeleteRecordTransactional(100, 5);
+      journal.appendCommitRecord(100, true);
+
+      journal.appendAddRecord(12, RECORD_TYPE, new byte[] { 12 }, false);
+      journal.appendAddRecord(13, RECORD_TYPE, new byte[] { 13 }, false);
+
+      Assert.assertEquals(0, stripes[2].getNumberOfRecords());
+
+      reload(3);
+
+      Assert.assertEquals(22, records.size());
+   }
+
+   // Private -------------------------------------------------------
+
+   private void createJournal(final int numberOfStripes) throws Exception
+   {
+      while (factories.size() < numberOfStripes)
+      {
+         factories.add(new FakeSequentialFileFactory(1, true));
+      }
+
+      stripes = new JournalImpl[numberOfStripes];
+
+      for (int i = 0; i < numberOfStripes; i++)
+      {
+         stripes[i] = new JournalImpl(10 * 1024, 2, 0, 0, factories.get(i), "hq-stripe", "hq", 1);
+      }
+
+      journal = new StripedJournal(executor, (Journal[])stripes);
+
+      journal.start();
+
+      load();
+   }
+
+   private void reload(final int numberOfStripes) throws Exception
+   {
+      journal.stop();
+
+      createJournal(numberOfStripes);
+   }
+
+   private void load() throws Exception
+   {
+      records.clear();
+
+      prepared.clear();
+
+      journal.load(records, prepared, null);
+   }
+}
@@ -13,9 +13,13 @@
 
 package org.hornetq.tests.unit.core.journal.impl;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
@@ -223,12 +227,249 @@ public class TimedBufferTest extends UnitTestCase
 
    }
 
+   public void testAdaptiveTimeout() throws Exception
+   {
+      final int syncLatency = 2; // in milliseconds
+      final int minTimeout = TimedBufferTest.ONE_SECOND / 100000;
+      final int recordSize = 16;
+
+      class TestObserver implements TimedBufferObserver
+      {
+         public void flushBuffer(final ByteBuffer buffer, final boolean sync, final List<IOAsyncTask> callbacks)
+         {
+            if (sync)
+            {
+               try
+               {
+                  Thread.sleep(syncLatency);
+               }
+               catch (InterruptedException e)
+               {
+               }
+            }
+
+            for (IOAsyncTask callback : callbacks)
+            {
+               callback.done();
+            }
+         }
+
+         public ByteBuffer newBuffer(final int minSize, final int maxSize)
+         {
+            return ByteBuffer.allocate(maxSize);
+         }
+
+         public int getRemainingBytes()
+         {
+            return Integer.MAX_VALUE;
+         }
+      }
+
+      final TimedBuffer timedBuffer = new TimedBuffer(100 * 1024, TimedBufferTest.ONE_SECOND / 1000, false);
+
+      timedBuffer.setAdaptiveTimeout(minTimeout, TimedBufferTest.ONE_SECOND);
+
+      Assert.assertTrue(timedBuffer.isAdaptiveTimeout());
+      Assert.assertEquals(minTimeout, timedBuffer.getTimeout());
+
+      timedBuffer.start();
+
+      try
+      {
+         timedBuffer.setObserver(new TestObserver());
+
+         // a single producer waiting on every sync: there is nothing to batch, waiting would only
+         // add to the latency
+         for (int i = 0; i < 20; i++)
+         {
+            writeAndWait(timedBuffer, recordSize);
+         }
+
+         Assert.assertEquals(minTimeout, timedBuffer.getTimeout());
+         Assert.assertEquals(20, timedBuffer.getSyncFlushCount());
+         Assert.assertEquals(20 * recordSize, timedBuffer.getBytesFlushed());
+         Assert.assertTrue(timedBuffer.getAverageSyncLatency() >= syncLatency * 1000000L);
+
+         // many producers asking for syncs more often than a sync takes: they're batched by
+         // waiting about as long as a sync
+         final int threads = 10;
+         final AtomicInteger errors = new AtomicInteger(0);
+
+         Thread[] producers = new Thread[threads];
+         for (int i = 0; i < threads; i++)
+         {
+            producers[i] = new Thread()
+            {
+               @Override
+               public void run()
+               {
+                  try
+                  {
+                     for (int j = 0; j < 50; j++)
+                     {
+                        writeAndWait(timedBuffer, recordSize);
+                     }
+                  }
+                  catch (Throwable e)
+                  {
+                     e.printStackTrace();
+                     errors.incrementAndGet();
+                  }
+               }
+            };
+            producers[i].start();
+         }
+
+         for (Thread producer : producers)
+         {
+            producer.join();
+         }
+
+         Assert.assertEquals(0, errors.get());
+
+         Assert.assertTrue(timedBuffer.getTimeout() > minTimeout);
+         Assert.assertTrue(timedBuffer.getAverageSyncInterval() < timedBuffer.getAverageSyncLatency());
+         Assert.assertTrue(timedBuffer.getSyncFlushCount() < 20 + threads * 50);
+         Assert.assertEquals((20 + threads * 50) * recordSize, timedBuffer.getBytesFlushed());
+      }
+      finally
+      {
+         timedBuffer.stop();
+      }
+   }
+
+   public void testConcurrentProducers() throws Exception
+   {
+      final int threads = 10;
+      final int recordsPerThread = 1000;
+      final int recordSize = 16;
+
+      final ByteArrayOutputStream flushedBytes = new ByteArrayOutputStream();
+      final AtomicInteger flushedCallbacks = new AtomicInteger(0);
+      class TestObserver implements TimedBufferObserver
+      {
+         public void flushBuffer(final ByteBuffer buffer, final boolean sync, final List<IOAsyncTask> callbacks)
+         {
+            buffer.flip();
+            byte[] bytes = new byte[buffer.limit()];
+            buffer.get(bytes);
+            flushedBytes.write(bytes, 0, bytes.length);
+            flushedCallbacks.addAndGet(callbacks.size());
+         }
+
+         public ByteBuffer newBuffer(final int minSize, final int maxSize)
+         {
+            return ByteBuffer.allocate(maxSize);
+         }
+
+         public int getRemainingBytes()
+         {
+            return Integer.MAX_VALUE;
+         }
+      }
+
+      final TimedBuffer timedBuffer = new TimedBuffer(1000, TimedBufferTest.ONE_SECOND / 1000, false);
+
+      timedBuffer.start();
+
+      try
+      {
+         timedBuffer.setObserver(new TestObserver());
+
+         final CountDownLatch start = new CountDownLatch(1);
+         final AtomicInteger errors = new AtomicInteger(0);
+
+         Thread[] producers = new Thread[threads];
+         for (int i = 0; i < threads; i++)
+         {
+            final int producerID = i;
+            producers[i] = new Thread()
+            {
+               @Override
+               public void run()
+               {
+                  try
+                  {
+                     start.await();
+                     for (int j = 0; j < recordsPerThread; j++)
+                     {
+                        HornetQBuffer buff = HornetQBuffers.fixedBuffer(recordSize);
+                        buff.writeLong(producerID);
+                        buff.writeLong(j);
+
+                        Assert.assertTrue(timedBuffer.checkSize(recordSize));
+                        timedBuffer.addBytes(buff, j % 10 == 0, dummyCallback);
+                     }
+                  }
+                  catch (Throwable e)
+                  {
+                     e.printStackTrace();
+                     errors.incrementAndGet();
+                  }
+               }
+            };
+            producers[i].start();
+         }
+
+         start.countDown();
+
+         for (Thread producer : producers)
+         {
+            producer.join();
+         }
+
+         Assert.assertEquals(0, errors.get());
+
+         timedBuffer.flush();
+
+         Assert.assertEquals(threads * recordsPerThread, flushedCallbacks.get());
+
+         // every record is flushed once, and the records from each producer keep their order
+         ByteBuffer flushed = ByteBuffer.wrap(flushedBytes.toByteArray());
+         Assert.assertEquals(threads * recordsPerThread * recordSize, flushed.limit());
+
+         long[] lastRecord = new long[threads];
+         Arrays.fill(lastRecord, -1);
+         while (flushed.hasRemaining())
+         {
+            int producerID = (int)flushed.getLong();
+            long record = flushed.getLong();
+            Assert.assertEquals(lastRecord[producerID] + 1, record);
+            lastRecord[producerID] = record;
+         }
+      }
+      finally
+      {
+         timedBuffer.stop();
+      }
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
 
    // Private -------------------------------------------------------
 
+   private void writeAndWait(final TimedBuffer timedBuffer, final int recordSize) throws Exception
+   {
+      final CountDownLatch synced = new CountDownLatch(1);
+
+      Assert.assertTrue(timedBuffer.checkSize(recordSize));
+      timedBuffer.addBytes(HornetQBuffers.wrappedBuffer(new byte[recordSize]), true, new IOAsyncTask()
+      {
+         public void done()
+         {
+            synced.countDown();
+         }
+
+         public void onError(final int errorCode, final String errorMessage)
+         {
+         }
+      });
+
+      Assert.assertTrue(synced.await(10, TimeUnit.SECONDS));
+   }
+
    // Inner classes -------------------------------------------------
 
 }
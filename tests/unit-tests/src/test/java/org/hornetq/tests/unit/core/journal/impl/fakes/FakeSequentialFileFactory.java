@@ -27,6 +27,7 @@ import org.hornetq.api.core.HornetQExceptionType;
 import org.hornetq.core.asyncio.BufferCallback;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOAsyncTask;
+import org.hornetq.core.journal.JournalBufferStatistics;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.journal.impl.TimedBuffer;
@@ -379,6 +380,11 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
          }
       }
 
+      public void preallocate(final int pos, final int size, final byte fillCharacter) throws Exception
+      {
+         fill(pos, size, fillCharacter);
+      }
+
       public int read(final ByteBuffer bytes) throws Exception
       {
          return read(bytes, null);
@@ -739,6 +745,15 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
    {
    }
 
+   public JournalBufferStatistics getBufferStatistics()
+   {
+      return null;
+   }
+
+   public void setBufferAdaptiveTimeout(final int minTimeout, final int maxTimeout)
+   {
+   }
+
    /* (non-Javadoc)
     * @see org.hornetq.core.journal.SequentialFileFactory#testFlush()
     */
@@ -23,14 +23,17 @@ import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.impl.Page;
+import org.hornetq.core.paging.impl.PageCompression;
 import org.hornetq.core.paging.impl.PagedMessageImpl;
 import org.hornetq.core.persistence.impl.nullpm.NullStorageManager;
 import org.hornetq.core.server.ServerMessage;
 import org.hornetq.core.server.impl.ServerMessageImpl;
 import org.hornetq.tests.unit.core.journal.impl.fakes.FakeSequentialFileFactory;
+import org.hornetq.tests.util.RandomUtil;
 import org.hornetq.tests.util.UnitTestCase;
 
 /**
@@ -62,6 +65,18 @@ public class PageTest extends UnitTestCase
       testDamagedPage(new NIOSequentialFileFactory(getTestDir()), 1000);
    }
 
+   public void testPageWithMapped() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testAdd(new MappedSequentialFileFactory(getTestDir()), 1000);
+   }
+
+   public void testDamagedDataWithMapped() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testDamagedPage(new MappedSequentialFileFactory(getTestDir()), 1000);
+   }
+
    public void testPageFakeWithoutCallbacks() throws Exception
    {
       testAdd(new FakeSequentialFileFactory(1, false), 10);
@@ -73,6 +88,290 @@ public class PageTest extends UnitTestCase
       testDamagedPage(new FakeSequentialFileFactory(1, false), 100);
    }
 
+   public void testReadIndexWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testReadIndex(new NIOSequentialFileFactory(getTestDir()));
+   }
+
+   public void testReadIndexFake() throws Exception
+   {
+      testReadIndex(new FakeSequentialFileFactory(1, false));
+   }
+
+   public void testWriteBufferWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testWriteBuffer(new NIOSequentialFileFactory(getTestDir()));
+   }
+
+   public void testWriteBufferFake() throws Exception
+   {
+      testWriteBuffer(new FakeSequentialFileFactory(1, false));
+   }
+
+   /** Writes coalesced on a buffer only reach the file when it's flushed or full */
+   protected void testWriteBuffer(final SequentialFileFactory factory) throws Exception
+   {
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      impl.setWriteBuffer(factory.newBuffer(1024));
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      ArrayList<HornetQBuffer> buffers = addPageElements(simpleDestination, impl, 100);
+
+      Assert.assertTrue(file.size() > 0);
+      Assert.assertTrue(file.size() < impl.getSize());
+
+      // bigger than the write buffer
+      ServerMessage bigMessage = new ServerMessageImpl(100, 2048);
+      bigMessage.getBodyBuffer().writeBytes(new byte[2048]);
+      bigMessage.setAddress(simpleDestination);
+      impl.write(new PagedMessageImpl(bigMessage, new long[0]));
+
+      Assert.assertEquals(impl.getSize(), file.size());
+
+      buffers.addAll(addPageElements(simpleDestination, impl, 5));
+
+      impl.flush();
+
+      Assert.assertEquals(impl.getSize(), file.size());
+
+      // pending writes are flushed on close
+      buffers.addAll(addPageElements(simpleDestination, impl, 5));
+
+      int size = impl.getSize();
+
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      List<PagedMessage> msgs = impl.read(new NullStorageManager());
+
+      Assert.assertEquals(size, impl.getSize());
+
+      Assert.assertEquals(buffers.size() + 1, msgs.size());
+
+      Assert.assertEquals(bigMessage.getEndOfBodyPosition(), msgs.remove(100).getMessage().getEndOfBodyPosition());
+
+      for (int i = 0; i < msgs.size(); i++)
+      {
+         UnitTestCase.assertEqualsByteArrays(buffers.get(i).toByteBuffer().array(), msgs.get(i)
+                                                                                        .getMessage()
+                                                                                        .getBodyBuffer()
+                                                                                        .toByteBuffer()
+                                                                                        .array());
+      }
+
+      impl.delete(null);
+   }
+
+   public void testCompressionWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testCompression(new NIOSequentialFileFactory(getTestDir()));
+   }
+
+   public void testCompressionFake() throws Exception
+   {
+      testCompression(new FakeSequentialFileFactory(1, false));
+   }
+
+   /** Compressed blocks mixed with records that didn't compress, read whole and through the index */
+   protected void testCompression(final SequentialFileFactory factory) throws Exception
+   {
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      PageCompression compression = new PageCompression(true);
+
+      impl.setCompression(compression);
+
+      impl.open();
+
+      impl.setWriteBuffer(factory.newBuffer(4096));
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      int[] bodySizes = new int[] { 100, 100, 100, 10 * 1024, 100, 3000, 1, 100, 100 };
+
+      // random bodies don't compress
+      boolean[] random = new boolean[] { false, false, false, false, false, true, false, false, false };
+
+      int[] encodeSizes = new int[bodySizes.length];
+
+      for (int i = 0; i < bodySizes.length; i++)
+      {
+         ServerMessage msg = new ServerMessageImpl(i, 100);
+
+         msg.getBodyBuffer().writeBytes(random[i] ? RandomUtil.randomBytes(bodySizes[i]) : new byte[bodySizes[i]]);
+
+         msg.setAddress(simpleDestination);
+
+         PagedMessage pagedMessage = new PagedMessageImpl(msg, new long[0]);
+
+         encodeSizes[i] = pagedMessage.getEncodeSize();
+
+         compression.setEnabled(i != 6);
+
+         impl.write(pagedMessage);
+
+         if (i == 4 || i == 5 || i == 6)
+         {
+            impl.flush();
+         }
+      }
+
+      impl.sync();
+
+      Assert.assertEquals(file.size(), impl.getSize());
+      Assert.assertTrue(compression.getRatio() < 0.5);
+
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      // reading doesn't depend on compression being enabled
+      impl.setCompression(new PageCompression(false));
+
+      List<PagedMessage> msgs = impl.read(new NullStorageManager());
+
+      Assert.assertEquals(bodySizes.length, msgs.size());
+
+      for (int i = 0; i < bodySizes.length; i++)
+      {
+         Assert.assertEquals(i, msgs.get(i).getMessage().getMessageID());
+         Assert.assertEquals(encodeSizes[i], msgs.get(i).getEncodeSize());
+      }
+
+      int[] index = impl.readIndex(new NullStorageManager());
+
+      Assert.assertEquals(bodySizes.length + 1, index.length);
+      Assert.assertEquals(file.size(), index[bodySizes.length]);
+
+      // 0-2 on one block, 3 on its own block, 4 on a block, 5 and 6 as they were, 7-8 on a block
+      Assert.assertEquals(index[0], index[2]);
+      Assert.assertTrue(index[3] > index[2]);
+      Assert.assertTrue(index[4] > index[3]);
+      Assert.assertTrue(index[5] > index[4]);
+      Assert.assertEquals(encodeSizes[5] + Page.SIZE_RECORD, index[6] - index[5]);
+      Assert.assertEquals(encodeSizes[6] + Page.SIZE_RECORD, index[7] - index[6]);
+      Assert.assertEquals(index[7], index[8]);
+
+      List<PagedMessage> range = impl.readMessages(new NullStorageManager(), index[3], index[7]);
+
+      Assert.assertEquals(4, range.size());
+
+      for (int i = 0; i < range.size(); i++)
+      {
+         Assert.assertEquals(i + 3, range.get(i).getMessage().getMessageID());
+      }
+
+      range = impl.readMessages(new NullStorageManager(), index[7], index[bodySizes.length]);
+
+      Assert.assertEquals(2, range.size());
+      Assert.assertEquals(7, range.get(0).getMessage().getMessageID());
+
+      impl.delete(null);
+   }
+
+   /** Messages read one by one through the index, some of them bigger than the read buffer */
+   protected void testReadIndex(final SequentialFileFactory factory) throws Exception
+   {
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      int[] bodySizes = new int[] { 10, 100 * 1024, 0, 1, 70 * 1024, 10, 10 };
+
+      for (int i = 0; i < bodySizes.length; i++)
+      {
+         ServerMessage msg = new ServerMessageImpl(i, 100);
+
+         for (int j = 0; j < bodySizes[i]; j++)
+         {
+            msg.getBodyBuffer().writeByte((byte)'b');
+         }
+
+         msg.setAddress(simpleDestination);
+
+         impl.write(new PagedMessageImpl(msg, new long[0]));
+      }
+
+      impl.sync();
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      int[] index = impl.readIndex(new NullStorageManager());
+
+      Assert.assertEquals(bodySizes.length + 1, index.length);
+      Assert.assertEquals(bodySizes.length, impl.getNumberOfMessages());
+      Assert.assertEquals(0, index[0]);
+      Assert.assertEquals(file.size(), index[bodySizes.length]);
+
+      List<PagedMessage> msgs = impl.read(new NullStorageManager());
+
+      Assert.assertEquals(bodySizes.length, msgs.size());
+
+      for (int i = 0; i < bodySizes.length; i++)
+      {
+         Assert.assertEquals(i, msgs.get(i).getMessage().getMessageID());
+      }
+
+      Assert.assertTrue(msgs.get(1).getMessage().getEncodeSize() > 100 * 1024);
+
+      // out of order, the way a cursor seeking on the page would
+      for (int i = bodySizes.length - 1; i >= 0; i--)
+      {
+         List<PagedMessage> single = impl.readMessages(new NullStorageManager(), index[i], index[i + 1]);
+
+         Assert.assertEquals(1, single.size());
+
+         PagedMessage msg = single.get(0);
+
+         Assert.assertEquals(i, msg.getMessage().getMessageID());
+         Assert.assertEquals(simpleDestination, msg.getMessage().getAddress());
+         Assert.assertEquals(msgs.get(i).getMessage().getEncodeSize(), msg.getMessage().getEncodeSize());
+      }
+
+      List<PagedMessage> range = impl.readMessages(new NullStorageManager(), index[1], index[bodySizes.length]);
+
+      Assert.assertEquals(bodySizes.length - 1, range.size());
+
+      for (int i = 1; i < bodySizes.length; i++)
+      {
+         Assert.assertEquals(i, range.get(i - 1).getMessage().getMessageID());
+      }
+
+      try
+      {
+         impl.readMessages(new NullStorageManager(), index[1] + 1, index[2]);
+         Assert.fail("Exception expected");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      impl.delete(null);
+   }
+
    /** Validate if everything we add is recovered */
    protected void testAdd(final SequentialFileFactory factory, final int numberOfElements) throws Exception
    {
@@ -15,7 +15,12 @@ package org.hornetq.tests.unit.core.paging.impl;
 
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
@@ -108,6 +113,64 @@ public class PagingManagerImplTest extends UnitTestCase
 
    }
 
+   public void testDepageTakesTurns() throws Exception
+   {
+      HierarchicalRepository<AddressSettings> addressSettings = new HierarchicalObjectRepository<AddressSettings>();
+      addressSettings.setDefault(new AddressSettings());
+
+      PagingStoreFactoryNIO storeFactory = new PagingStoreFactoryNIO(getPageDir(),
+                                                                     100, null,
+                                new OrderedExecutorFactory(Executors.newCachedThreadPool()),
+                                true);
+
+      storeFactory.setPostOffice(new FakePostOffice());
+
+      PagingManagerImpl managerImpl = new PagingManagerImpl(storeFactory,
+                                                            new NullStorageManager(),
+                                                            addressSettings,
+                                                            1);
+
+      managerImpl.start();
+
+      PagingStore storeA = managerImpl.getPageStore(new SimpleString("a"));
+      PagingStore storeB = managerImpl.getPageStore(new SimpleString("b"));
+
+      // executes the depages only when asked, on the test thread
+      final LinkedList<Runnable> executed = new LinkedList<Runnable>();
+      Executor executor = new Executor()
+      {
+         public void execute(final Runnable command)
+         {
+            executed.add(command);
+         }
+      };
+
+      final List<String> order = new ArrayList<String>();
+
+      for (int i = 1; i <= 3; i++)
+      {
+         managerImpl.scheduleDepage(storeA, executor, new TestDepage(order, "a" + i, 10));
+      }
+
+      managerImpl.scheduleDepage(storeB, executor, new TestDepage(order, "b1", 5));
+
+      // only one store at a time
+      Assert.assertEquals(1, executed.size());
+
+      while (!executed.isEmpty())
+      {
+         executed.removeFirst().run();
+         Assert.assertTrue(executed.size() <= 1);
+      }
+
+      Assert.assertEquals(Arrays.asList("a1", "b1", "a2", "a3"), order);
+
+      Assert.assertEquals(30, storeA.getDepagedMessages());
+      Assert.assertEquals(5, storeB.getDepagedMessages());
+
+      managerImpl.stop();
+   }
+
    @Override
    protected void setUp() throws Exception
    {
@@ -159,4 +222,26 @@ public class PagingManagerImplTest extends UnitTestCase
 
    // Inner classes -------------------------------------------------
 
+
+   private static final class TestDepage implements Callable<Integer>
+   {
+      private final List<String> order;
+
+      private final String name;
+
+      private final int messages;
+
+      TestDepage(final List<String> order, final String name, final int messages)
+      {
+         this.order = order;
+         this.name = name;
+         this.messages = messages;
+      }
+
+      public Integer call()
+      {
+         order.add(name);
+         return messages;
+      }
+   }
 }
@@ -50,6 +50,7 @@ import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.PagingStoreFactory;
 import org.hornetq.core.paging.cursor.PagePosition;
+import org.hornetq.core.paging.cursor.impl.PageBitmap;
 import org.hornetq.core.paging.impl.Page;
 import org.hornetq.core.paging.impl.PageTransactionInfoImpl;
 import org.hornetq.core.paging.impl.PagingStoreImpl;
@@ -1251,6 +1252,11 @@ public class PagingStoreImplTest extends UnitTestCase
       {
       }
 
+      public long storeCursorAcksTransactional(long txID, long queueID, long pageNr, PagePosition bookmark, PageBitmap acks) throws Exception
+      {
+         return 0;
+      }
+
       public void deletePageComplete(long ackID) throws Exception
       {
       }
@@ -460,6 +460,15 @@ public class FakeQueue implements Queue
       return null;
    }
 
+   /* (non-Javadoc)
+    * @see org.hornetq.core.server.Queue#getQueuedReferences()
+    */
+   public List<MessageReference> getQueuedReferences()
+   {
+      // no-op
+      return null;
+   }
+
    /* (non-Javadoc)
     * @see org.hornetq.core.server.Queue#list(org.hornetq.core.filter.Filter)
     */
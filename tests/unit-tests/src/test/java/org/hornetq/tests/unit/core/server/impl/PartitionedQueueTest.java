@@ -0,0 +1,305 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.server.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.server.impl.PartitionedQueue;
+import org.hornetq.core.server.impl.RoutingContextImpl;
+import org.hornetq.tests.unit.core.server.impl.fakes.FakeConsumer;
+import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.LinkedListIterator;
+import org.hornetq.utils.OrderedExecutorFactory;
+
+/**
+ * A PartitionedQueueTest
+ */
+public class PartitionedQueueTest extends UnitTestCase
+{
+   private static final SimpleString queue1 = new SimpleString("queue1");
+
+   private static final SimpleString address1 = new SimpleString("address1");
+
+   private ScheduledExecutorService scheduledExecutor;
+
+   private ExecutorService executor;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+      executor = Executors.newCachedThreadPool();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      scheduledExecutor.shutdownNow();
+      executor.shutdownNow();
+      super.tearDown();
+   }
+
+   public void testRouting() throws Exception
+   {
+      PartitionedQueue queue = createQueue(4);
+
+      Set<Queue> partitions = new HashSet<Queue>();
+
+      Map<SimpleString, Queue> groups = new HashMap<SimpleString, Queue>();
+
+      for (int i = 0; i < 1000; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         SimpleString group = new SimpleString("group" + i % 10);
+
+         ref.getMessage().putStringProperty(Message.HDR_GROUP_ID, group);
+
+         RoutingContextImpl context = new RoutingContextImpl(null);
+
+         queue.route(ref.getMessage(), context);
+
+         Assert.assertEquals(1, context.getQueueCount());
+
+         Queue partition = context.getNonDurableQueues(address1).get(0);
+
+         // the messages of a group always go to the same partition
+         Queue previous = groups.put(group, partition);
+
+         Assert.assertTrue(previous == null || previous == partition);
+
+         Assert.assertEquals(queue.getID(), partition.getID());
+
+         ref.getMessage().removeProperty(Message.HDR_GROUP_ID);
+
+         context = new RoutingContextImpl(null);
+
+         queue.route(ref.getMessage(), context);
+
+         partitions.add(context.getNonDurableQueues(address1).get(0));
+      }
+
+      Assert.assertEquals(4, partitions.size());
+   }
+
+   public void testConsumersOnEveryPartition() throws Exception
+   {
+      PartitionedQueue queue = createQueue(4);
+
+      final int numMessages = 200;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         queue.addTail(generateReference(queue, i));
+      }
+
+      Assert.assertTrue(queue.flushExecutor());
+
+      Assert.assertEquals(numMessages, queue.getMessageCount());
+      Assert.assertEquals(numMessages, queue.getMessagesAdded());
+
+      // a single consumer gets the messages of every partition
+      FakeConsumer cons1 = new FakeConsumer();
+
+      queue.addConsumer(cons1);
+
+      queue.deliverAsync();
+
+      waitForReferences(queue, numMessages);
+
+      Assert.assertEquals(numMessages, cons1.getReferences().size());
+
+      for (MessageReference ref : cons1.getReferences())
+      {
+         Assert.assertNotSame(queue, ref.getQueue());
+
+         ref.getQueue().acknowledge(ref);
+      }
+
+      cons1.clearReferences();
+
+      Assert.assertEquals(0, queue.getDeliveringCount());
+      Assert.assertEquals(0, queue.getMessageCount());
+
+      // each of four consumers gets a partition
+      FakeConsumer[] consumers = new FakeConsumer[] { cons1, new FakeConsumer(), new FakeConsumer(), new FakeConsumer() };
+
+      for (int i = 1; i < consumers.length; i++)
+      {
+         queue.addConsumer(consumers[i]);
+      }
+
+      Assert.assertEquals(4, queue.getConsumerCount());
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         queue.addTail(generateReference(queue, numMessages + i));
+      }
+
+      waitForReferences(queue, numMessages);
+
+      for (FakeConsumer consumer : consumers)
+      {
+         Set<Queue> partitions = new HashSet<Queue>();
+
+         for (MessageReference ref : consumer.getReferences())
+         {
+            partitions.add(ref.getQueue());
+         }
+
+         Assert.assertEquals(1, partitions.size());
+      }
+
+      // the partitions of a closed consumer are given to the others
+      queue.removeConsumer(cons1);
+
+      Assert.assertEquals(3, queue.getConsumerCount());
+      Assert.assertFalse(queue.getConsumers().contains(cons1));
+
+      cons1.clearReferences();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         queue.addTail(generateReference(queue, numMessages * 2 + i));
+      }
+
+      waitForReferences(queue, numMessages * 2);
+
+      Assert.assertTrue(cons1.getReferences().isEmpty());
+      Assert.assertEquals(numMessages * 3, queue.getMessagesAdded());
+   }
+
+   public void testIterator() throws Exception
+   {
+      PartitionedQueue queue = createQueue(3);
+
+      final int numMessages = 30;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         queue.addTail(generateReference(queue, i));
+      }
+
+      Assert.assertTrue(queue.flushExecutor());
+
+      Set<Long> ids = new HashSet<Long>();
+
+      LinkedListIterator<MessageReference> iterator = queue.iterator();
+
+      while (iterator.hasNext())
+      {
+         MessageReference ref = iterator.next();
+
+         Assert.assertTrue(ids.add(ref.getMessage().getMessageID()));
+
+         iterator.repeat();
+
+         Assert.assertSame(ref, iterator.next());
+      }
+
+      iterator.close();
+
+      Assert.assertEquals(numMessages, ids.size());
+
+      iterator = queue.iterator();
+
+      while (iterator.hasNext())
+      {
+         if (iterator.next().getMessage().getMessageID() % 2 == 0)
+         {
+            iterator.remove();
+         }
+      }
+
+      iterator.close();
+
+      Assert.assertNotNull(queue.getReference(1));
+      Assert.assertNull(queue.getReference(2));
+
+      Assert.assertEquals(numMessages / 2, queue.getMessageCount());
+
+      Assert.assertEquals(1, queue.removeReferenceWithID(1).getMessage().getMessageID());
+      Assert.assertNull(queue.removeReferenceWithID(1));
+
+      Assert.assertEquals(numMessages / 2 - 1, queue.getMessageCount());
+   }
+
+   public void testScheduled() throws Exception
+   {
+      PartitionedQueue queue = createQueue(2);
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      for (int i = 0; i < 10; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+
+         ref.setScheduledDeliveryTime(System.currentTimeMillis() + 200);
+
+         queue.addTail(ref);
+      }
+
+      Assert.assertEquals(10, queue.getScheduledCount());
+      Assert.assertEquals(10, queue.getScheduledMessages().size());
+
+      waitForReferences(queue, 10);
+
+      Assert.assertEquals(10, consumer.getReferences().size());
+      Assert.assertEquals(0, queue.getScheduledCount());
+   }
+
+   private PartitionedQueue createQueue(final int partitions)
+   {
+      return new PartitionedQueue(1,
+                                  PartitionedQueueTest.address1,
+                                  PartitionedQueueTest.queue1,
+                                  null,
+                                  null,
+                                  false,
+                                  false,
+                                  scheduledExecutor,
+                                  null,
+                                  null,
+                                  null,
+                                  new OrderedExecutorFactory(executor),
+                                  partitions);
+   }
+
+   private void waitForReferences(final Queue queue, final int numMessages) throws Exception
+   {
+      long timeout = System.currentTimeMillis() + 5000;
+
+      while (queue.getDeliveringCount() < numMessages && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      Assert.assertEquals(numMessages, queue.getDeliveringCount());
+   }
+}
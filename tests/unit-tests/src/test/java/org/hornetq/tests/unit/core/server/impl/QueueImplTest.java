@@ -1293,6 +1293,100 @@ public class QueueImplTest extends UnitTestCase
       Assert.assertEquals(queue.getMessagesAdded(), 3);
    }
 
+   public void testConcurrentProducers() throws Exception
+   {
+      final QueueImpl queue = new QueueImpl(1,
+                                            QueueImplTest.address1,
+                                            QueueImplTest.queue1,
+                                            null,
+                                            false,
+                                            true,
+                                            scheduledExecutor,
+                                            null,
+                                            null,
+                                            null,
+                                            executor);
+
+      final int numberOfProducers = 5;
+
+      final int numberOfMessages = 2000;
+
+      final CountDownLatch start = new CountDownLatch(1);
+
+      List<Thread> producers = new ArrayList<Thread>();
+
+      for (int i = 0; i < numberOfProducers; i++)
+      {
+         final int producer = i;
+
+         Thread thread = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+
+                  for (int j = 0; j < numberOfMessages; j++)
+                  {
+                     queue.addTail(generateReference(queue, producer * numberOfMessages + j));
+                  }
+               }
+               catch (InterruptedException e)
+               {
+                  e.printStackTrace();
+               }
+            }
+         };
+
+         producers.add(thread);
+
+         thread.start();
+      }
+
+      start.countDown();
+
+      for (Thread thread : producers)
+      {
+         thread.join();
+      }
+
+      Assert.assertTrue(queue.flushExecutor());
+
+      Assert.assertEquals(numberOfProducers * numberOfMessages, queue.getMessagesAdded());
+      Assert.assertEquals(numberOfProducers * numberOfMessages, queue.getMessageCount());
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      queue.deliverNow();
+
+      // a delivery hands at most MAX_DELIVERIES_IN_LOOP references before scheduling the next one
+      long timeout = System.currentTimeMillis() + 5000;
+      while (consumer.getReferences().size() < numberOfProducers * numberOfMessages && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      Assert.assertEquals(numberOfProducers * numberOfMessages, consumer.getReferences().size());
+
+      // the order of each producer is kept
+      long[] last = new long[numberOfProducers];
+
+      for (MessageReference ref : consumer.getReferences())
+      {
+         long id = ref.getMessage().getMessageID();
+
+         int producer = (int)(id / numberOfMessages);
+
+         Assert.assertTrue(id >= last[producer]);
+
+         last[producer] = id;
+      }
+   }
+
    public void testGetReference() throws Exception
    {
       QueueImpl queue = new QueueImpl(1,
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.server.impl;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import junit.framework.Assert;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.impl.QueueImpl;
+import org.hornetq.core.server.impl.ScheduledDeliveryHandlerImpl;
+import org.hornetq.tests.unit.core.server.impl.fakes.FakeConsumer;
+import org.hornetq.tests.util.UnitTestCase;
+
+/**
+ * A ScheduledDeliveryHandlerTest
+ */
+public class ScheduledDeliveryHandlerTest extends UnitTestCase
+{
+   private static final SimpleString queue1 = new SimpleString("queue1");
+
+   private static final SimpleString address1 = new SimpleString("address1");
+
+   private ScheduledExecutorService scheduledExecutor;
+
+   private ExecutorService executor;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+      executor = Executors.newSingleThreadExecutor();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      scheduledExecutor.shutdownNow();
+      executor.shutdownNow();
+      super.tearDown();
+   }
+
+   public void testDeliveredInOrderAndNotEarly() throws Exception
+   {
+      QueueImpl queue = createQueue();
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      long now = System.currentTimeMillis();
+
+      // on different levels of the wheel, and added out of order, far enough apart to be added before the first is
+      // due even on a cold JVM
+      long[] delays = new long[] { 1000, 150, 600, 50, 300, 1000, 150 };
+
+      for (int i = 0; i < delays.length; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+         ref.setScheduledDeliveryTime(now + delays[i]);
+         queue.addTail(ref);
+      }
+
+      Assert.assertEquals(delays.length, queue.getScheduledCount());
+
+      // ordered by time, and by arrival for the same time
+      long[] expected = new long[] { 3, 1, 6, 4, 2, 0, 5 };
+
+      for (long id : expected)
+      {
+         MessageReference ref = consumer.waitForNextReference(5000);
+
+         Assert.assertTrue(System.currentTimeMillis() >= now + delays[(int)id]);
+         Assert.assertEquals(id, ref.getMessage().getMessageID());
+         Assert.assertEquals(0, ref.getScheduledDeliveryTime());
+      }
+
+      Assert.assertEquals(0, queue.getScheduledCount());
+   }
+
+   public void testManyReferences() throws Exception
+   {
+      QueueImpl queue = createQueue();
+
+      FakeConsumer consumer = new FakeConsumer();
+
+      queue.addConsumer(consumer);
+
+      Random random = new Random();
+
+      final int numMessages = 5000;
+
+      long now = System.currentTimeMillis();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+         ref.setScheduledDeliveryTime(now + random.nextInt(500));
+         queue.addTail(ref);
+      }
+
+      long timeout = System.currentTimeMillis() + 5000;
+
+      while (queue.getDeliveringCount() < numMessages && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      Assert.assertEquals(numMessages, consumer.getReferences().size());
+      Assert.assertEquals(0, queue.getScheduledCount());
+   }
+
+   public void testRemoveAndCancel() throws Exception
+   {
+      QueueImpl queue = createQueue();
+
+      ScheduledDeliveryHandlerImpl handler = new ScheduledDeliveryHandlerImpl(scheduledExecutor);
+
+      long now = System.currentTimeMillis();
+
+      final int numMessages = 20;
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+         // half of them too far ahead for the wheel
+         ref.setScheduledDeliveryTime(now + (i % 2 == 0 ? 60000 : 10 * 3600 * 1000));
+         Assert.assertTrue(handler.checkAndSchedule(ref, true));
+      }
+
+      Assert.assertEquals(numMessages, handler.getScheduledCount());
+      Assert.assertEquals(numMessages, handler.getScheduledReferences().size());
+
+      Assert.assertEquals(2, handler.removeReferenceWithID(2).getMessage().getMessageID());
+      Assert.assertEquals(3, handler.removeReferenceWithID(3).getMessage().getMessageID());
+      Assert.assertNull(handler.removeReferenceWithID(3));
+
+      Assert.assertEquals(numMessages - 2, handler.getScheduledCount());
+
+      List<MessageReference> cancelled = handler.cancel(null);
+
+      Assert.assertEquals(numMessages - 2, cancelled.size());
+
+      Set<Long> ids = new HashSet<Long>();
+
+      for (MessageReference ref : cancelled)
+      {
+         ids.add(ref.getMessage().getMessageID());
+      }
+
+      Assert.assertEquals(numMessages - 2, ids.size());
+      Assert.assertFalse(ids.contains(2L));
+      Assert.assertFalse(ids.contains(3L));
+
+      Assert.assertEquals(0, handler.getScheduledCount());
+      Assert.assertTrue(handler.getScheduledReferences().isEmpty());
+
+      MessageReference ref = generateReference(queue, numMessages);
+      ref.setScheduledDeliveryTime(0);
+      Assert.assertFalse(handler.checkAndSchedule(ref, true));
+   }
+
+   private QueueImpl createQueue()
+   {
+      return new QueueImpl(1,
+                           ScheduledDeliveryHandlerTest.address1,
+                           ScheduledDeliveryHandlerTest.queue1,
+                           null,
+                           false,
+                           false,
+                           scheduledExecutor,
+                           null,
+                           null,
+                           null,
+                           executor);
+   }
+}
@@ -55,6 +55,10 @@ public class FakeConsumer implements Consumer
       return filter;
    }
 
+   public void flushDeliveries()
+   {
+   }
+
    public String debug()
    {
       return toString();
@@ -15,6 +15,8 @@ package org.hornetq.tests.unit.core.settings.impl;
 
 import junit.framework.Assert;
 
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
 import org.hornetq.core.settings.impl.AddressSettings;
@@ -33,6 +35,9 @@ public class AddressSettingsTest extends UnitTestCase
       Assert.assertEquals(AddressSettings.DEFAULT_MAX_DELIVERY_ATTEMPTS, addressSettings.getMaxDeliveryAttempts());
       Assert.assertEquals(addressSettings.getMaxSizeBytes(), AddressSettings.DEFAULT_MAX_SIZE_BYTES);
       Assert.assertEquals(AddressSettings.DEFAULT_PAGE_SIZE, addressSettings.getPageSizeBytes());
+      Assert.assertEquals(AddressSettings.DEFAULT_PAGE_MAX_CACHE_BYTES, addressSettings.getPageCacheMaxBytes());
+      Assert.assertEquals(AddressSettings.DEFAULT_PAGE_COMPRESSION, addressSettings.isPageCompression());
+      Assert.assertEquals(AddressSettings.DEFAULT_QUEUE_PARTITIONS, addressSettings.getQueuePartitions());
       Assert.assertEquals(AddressSettings.DEFAULT_MESSAGE_COUNTER_HISTORY_DAY_LIMIT,
                           addressSettings.getMessageCounterHistoryDayLimit());
       Assert.assertEquals(AddressSettings.DEFAULT_REDELIVER_DELAY, addressSettings.getRedeliveryDelay());
@@ -55,6 +60,9 @@ public class AddressSettingsTest extends UnitTestCase
       addressSettingsToMerge.setMessageCounterHistoryDayLimit(1002);
       addressSettingsToMerge.setRedeliveryDelay(1003);
       addressSettingsToMerge.setPageSizeBytes(1004);
+      addressSettingsToMerge.setPageCacheMaxBytes(1005);
+      addressSettingsToMerge.setPageCompression(true);
+      addressSettingsToMerge.setQueuePartitions(4);
       addressSettings.merge(addressSettingsToMerge);
       Assert.assertEquals(addressSettings.getDeadLetterAddress(), DLQ);
       Assert.assertEquals(addressSettings.getExpiryAddress(), exp);
@@ -63,6 +71,9 @@ public class AddressSettingsTest extends UnitTestCase
       Assert.assertEquals(addressSettings.getMessageCounterHistoryDayLimit(), 1002);
       Assert.assertEquals(addressSettings.getRedeliveryDelay(), 1003);
       Assert.assertEquals(addressSettings.getPageSizeBytes(), 1004);
+      Assert.assertEquals(addressSettings.getPageCacheMaxBytes(), 1005);
+      Assert.assertTrue(addressSettings.isPageCompression());
+      Assert.assertEquals(4, addressSettings.getQueuePartitions());
       Assert.assertEquals(AddressFullMessagePolicy.DROP, addressSettings.getAddressFullMessagePolicy());
    }
 
@@ -136,4 +147,36 @@ public class AddressSettingsTest extends UnitTestCase
       Assert.assertEquals(addressSettings.getMaxRedeliveryDelay(), 5000);
       Assert.assertEquals(AddressFullMessagePolicy.DROP, addressSettings.getAddressFullMessagePolicy());
    }
+
+   public void testEncodeDecode()
+   {
+      AddressSettings addressSettings = new AddressSettings();
+      addressSettings.setPageCacheMaxSize(7);
+      addressSettings.setPageCacheMaxBytes(1006);
+      addressSettings.setPageCompression(true);
+      addressSettings.setQueuePartitions(3);
+
+      HornetQBuffer buffer = HornetQBuffers.fixedBuffer(addressSettings.getEncodeSize());
+      addressSettings.encode(buffer);
+
+      AddressSettings decoded = new AddressSettings();
+      decoded.decode(buffer);
+
+      Assert.assertEquals(addressSettings, decoded);
+      Assert.assertEquals(1006, decoded.getPageCacheMaxBytes());
+      Assert.assertTrue(decoded.isPageCompression());
+      Assert.assertEquals(3, decoded.getQueuePartitions());
+
+      // settings stored before page-max-cache-bytes, page-compression and queue-partitions existed
+      buffer.readerIndex(0);
+      buffer.writerIndex(addressSettings.getEncodeSize() - 9 - 2 - 5);
+
+      decoded = new AddressSettings();
+      decoded.decode(buffer);
+
+      Assert.assertEquals(7, decoded.getPageCacheMaxSize());
+      Assert.assertEquals(AddressSettings.DEFAULT_PAGE_MAX_CACHE_BYTES, decoded.getPageCacheMaxBytes());
+      Assert.assertFalse(decoded.isPageCompression());
+      Assert.assertEquals(AddressSettings.DEFAULT_QUEUE_PARTITIONS, decoded.getQueuePartitions());
+   }
 }
@@ -2,6 +2,8 @@ package org.hornetq.tests.unit.util;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.paging.PageTransactionInfo;
@@ -55,6 +57,14 @@ public final class FakePagingManager implements PagingManager
    {
    }
 
+   public void scheduleDepage(final PagingStore store, final Executor executor, final Callable<Integer> depage)
+   {
+   }
+
+   public void notifyPageCleanup(final PagingStore store, final int deletedPages, final long cleanupTime)
+   {
+   }
+
    public PageTransactionInfo getTransaction(final long transactionID)
    {
       return null;
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.util;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.LatencyHistogram;
+import org.hornetq.utils.json.JSONArray;
+import org.hornetq.utils.json.JSONObject;
+
+/**
+ * A LatencyHistogramTest
+ */
+public class LatencyHistogramTest extends UnitTestCase
+{
+   public void testPercentiles() throws Exception
+   {
+      LatencyHistogram histogram = new LatencyHistogram();
+
+      Assert.assertEquals(0, histogram.getCount());
+      Assert.assertEquals(-1, histogram.getPercentile(50));
+
+      // 90 reads of 3 microseconds, 9 of 100 and one of 10 seconds
+      for (int i = 0; i < 90; i++)
+      {
+         histogram.record(TimeUnit.MICROSECONDS.toNanos(3));
+      }
+      for (int i = 0; i < 9; i++)
+      {
+         histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+      }
+      histogram.record(TimeUnit.SECONDS.toNanos(10));
+
+      Assert.assertEquals(100, histogram.getCount());
+      Assert.assertEquals(4, histogram.getPercentile(50));
+      Assert.assertEquals(4, histogram.getPercentile(90));
+      Assert.assertEquals(128, histogram.getPercentile(99));
+      Assert.assertEquals(-1, histogram.getPercentile(100));
+
+      JSONObject json = new JSONObject(histogram.toJSON());
+
+      Assert.assertEquals(100, json.getLong("count"));
+      Assert.assertEquals(128, json.getLong("p99"));
+
+      JSONArray buckets = json.getJSONArray("buckets");
+
+      Assert.assertEquals(3, buckets.length());
+      Assert.assertEquals(4, buckets.getJSONObject(0).getLong("le"));
+      Assert.assertEquals(90, buckets.getJSONObject(0).getLong("count"));
+      Assert.assertEquals(-1, buckets.getJSONObject(2).getLong("le"));
+
+      histogram.reset();
+
+      Assert.assertEquals(0, histogram.getCount());
+   }
+}